@@ -87,6 +87,15 @@ public abstract class AbstractBuffer extends BaseBuffer {
         this.readerIndex = index;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void skipBytes(final int length) throws IndexOutOfBoundsException, IOException {
+        checkReadableBytes(length);
+        this.readerIndex += length;
+    }
+
     /**
      * {@inheritDoc}
      */
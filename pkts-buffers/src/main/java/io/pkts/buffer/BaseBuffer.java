@@ -102,7 +102,7 @@ public abstract class BaseBuffer implements Buffer {
      * {@inheritDoc}
      */
     @Override
-    public final int indexOf(final int maxBytes, final byte... bytes) throws IOException, ByteNotFoundException,
+    public int indexOf(final int maxBytes, final byte... bytes) throws IOException, ByteNotFoundException,
             IllegalArgumentException {
         if (bytes.length == 0) {
             throw new IllegalArgumentException("No bytes specified. Not sure what you want me to look for");
@@ -138,7 +138,7 @@ public abstract class BaseBuffer implements Buffer {
      * {@inheritDoc}
      */
     @Override
-    public final Buffer readLine() throws IOException {
+    public Buffer readLine() throws IOException {
         final int start = getReaderIndex();
         boolean foundCR = false;
         while (hasReadableBytes()) {
@@ -170,7 +170,7 @@ public abstract class BaseBuffer implements Buffer {
      * {@inheritDoc}
      */
     @Override
-    public final Buffer readUntilSingleCRLF() throws IOException {
+    public Buffer readUntilSingleCRLF() throws IOException {
         final int start = getReaderIndex();
         int found = 0;
         while (found < 2 && hasReadableBytes()) {
@@ -192,7 +192,7 @@ public abstract class BaseBuffer implements Buffer {
     }
 
     @Override
-    public final Buffer readUntilDoubleCRLF() throws IOException {
+    public Buffer readUntilDoubleCRLF() throws IOException {
         final int start = getReaderIndex();
         int found = 0;
         while (found < 4 && hasReadableBytes()) {
@@ -215,7 +215,8 @@ public abstract class BaseBuffer implements Buffer {
 
     @Override
     public final int parseToInt() throws NumberFormatException, IOException {
-        return parseToInt(10);
+        final int start = getReaderIndex();
+        return parseToInt(start, start + getReadableBytes());
     }
 
     /**
@@ -341,6 +342,157 @@ public abstract class BaseBuffer implements Buffer {
         }
     }
 
+    @Override
+    public final int parseToInt(final int start, final int stop) throws NumberFormatException,
+    IndexOutOfBoundsException, IOException {
+        return (int) parseDecimal(start, stop, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public final int parseToUnsignedInt(final int start, final int stop) throws NumberFormatException,
+    IndexOutOfBoundsException, IOException {
+        return (int) parseUnsignedDecimal(start, stop, 0xFFFFFFFFL);
+    }
+
+    @Override
+    public final long parseToLong() throws NumberFormatException, IOException {
+        final int start = getReaderIndex();
+        return parseToLong(start, start + getReadableBytes());
+    }
+
+    @Override
+    public final long parseToLong(final int start, final int stop) throws NumberFormatException,
+    IndexOutOfBoundsException, IOException {
+        return parseDecimal(start, stop, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Override
+    public final long parseToUnsignedLong(final int start, final int stop) throws NumberFormatException,
+    IndexOutOfBoundsException, IOException {
+        return parseUnsignedDecimal(start, stop, -1L);
+    }
+
+    /**
+     * Parse a signed decimal value that must be within <code>min</code> and
+     * <code>max</code>. Just as {@link Integer#parseInt(String)} the value is
+     * accumulated as a negative number since the negative range is the larger
+     * one, which is what allows us to check for overflow before it happens.
+     */
+    private long parseDecimal(final int start, final int stop, final long min, final long max)
+            throws NumberFormatException, IndexOutOfBoundsException, IOException {
+        checkRange(start, stop);
+
+        int i = start;
+        final boolean negative = getByte(i) == '-';
+        if (negative) {
+            ++i;
+        }
+
+        if (i == stop) {
+            throw numberFormatException(start, stop);
+        }
+
+        final long limit = negative ? min : -max;
+        final long multmin = limit / 10;
+        long result = 0;
+        while (i < stop) {
+            final int digit = getByte(i++) - '0';
+            if (digit < 0 || digit > 9 || result < multmin) {
+                throw numberFormatException(start, stop);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw numberFormatException(start, stop);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Parse an unsigned decimal value that, when treated as unsigned, must not
+     * be larger than <code>max</code>.
+     */
+    private long parseUnsignedDecimal(final int start, final int stop, final long max)
+            throws NumberFormatException, IndexOutOfBoundsException, IOException {
+        checkRange(start, stop);
+
+        final long multmax = Long.divideUnsigned(max, 10);
+        final int lastDigit = (int) Long.remainderUnsigned(max, 10);
+        long result = 0;
+        for (int i = start; i < stop; ++i) {
+            final int digit = getByte(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw numberFormatException(start, stop);
+            }
+            final int compare = Long.compareUnsigned(result, multmax);
+            if (compare > 0 || compare == 0 && digit > lastDigit) {
+                throw numberFormatException(start, stop);
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private static void checkRange(final int start, final int stop) throws NumberFormatException,
+    IndexOutOfBoundsException {
+        if (start < 0 || stop < start) {
+            throw new IndexOutOfBoundsException("Invalid range [" + start + ", " + stop + ")");
+        }
+        if (start == stop) {
+            throw new NumberFormatException("Cannot convert an empty range to a number");
+        }
+    }
+
+    private NumberFormatException numberFormatException(final int start, final int stop) {
+        return new NumberFormatException("For input string: \"" + slice(start, stop) + "\"");
+    }
+
+    /**
+     * Compare the visible bytes of two buffers, irrespective of how those
+     * buffers are backed. This is the slow path used when two buffers of
+     * different types (e.g. a heap based {@link ByteBuffer} and a
+     * {@link DirectBuffer}) are compared, which happens all the time when
+     * e.g. header names parsed off of a memory mapped file are looked up in a
+     * map whose keys were created through {@link Buffers#wrap(String)}.
+     *
+     * @param ignoreCase
+     * @param a
+     * @param b
+     * @return
+     */
+    protected static boolean contentEquals(final boolean ignoreCase, final Buffer a, final Buffer b) {
+        if (a.getReadableBytes() != b.getReadableBytes()) {
+            return false;
+        }
+
+        try {
+            final int length = a.getReadableBytes();
+            for (int i = 0; i < length; ++i) {
+                final byte a1 = a.getByte(i);
+                final byte b1 = b.getByte(i);
+                if (a1 != b1 && !(ignoreCase && isSameLetterIgnoreCase(a1, b1))) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (final IOException | IndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * For 7-bit ascii leters, upper and lower-case only differ by one bit,
+     * i.e. 'A' is 0x41, and 'a' is 0x61. We need only compare the 5 least
+     * signifcant bits. See {@link ByteBuffer#equalsIgnoreCase(Object)} for
+     * the full story.
+     */
+    protected static boolean isSameLetterIgnoreCase(final byte a1, final byte b1) {
+        return ((a1 >= 'A' && a1 <= 'Z') || (a1 >= 'a' && a1 <= 'z'))
+                && ((b1 >= 'A' && b1 <= 'Z') || (b1 >= 'a' && b1 <= 'z'))
+                && (a1 & 0x1f) == (b1 & 0x1f);
+    }
+
     protected static boolean isByteInArray(final byte b, final byte[] bytes) {
         for (final byte x : bytes) {
             if (x == b) {
@@ -126,6 +126,17 @@ public class BoundedInputStreamBuffer extends BaseBuffer {
      */
     @Override
     public Buffer readBytes(final int length) throws IndexOutOfBoundsException, IOException {
+        return readBytes(length, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IOException
+     */
+    @Override
+    public Buffer readBytes(final int length, final BufferPool pool) throws IndexOutOfBoundsException,
+            IOException {
         if (!checkReadableBytesSafe(length)) {
             final int availableBytes = getReadableBytes();
             final int read = internalReadBytes(length);
@@ -142,17 +153,22 @@ public class BoundedInputStreamBuffer extends BaseBuffer {
         // perhaps we should create a composite buffer instead of this
         // copying???
         int index = 0;
-        final byte[] buf = new byte[length];
+        final byte[] buf = pool == null ? new byte[length] : null;
+        final DirectBuffer pooled = pool == null ? null : pool.allocateDirect(length);
         while (index < length) {
             final int spaceLeft = getAvailableLocalReadingSpace();
             final int readAtMost = Math.min(length - index, spaceLeft);
             final int localIndex = getLocalReaderIndex();
 
-            System.arraycopy(this.buffer, localIndex, buf, index, readAtMost);
+            if (pooled == null) {
+                System.arraycopy(this.buffer, localIndex, buf, index, readAtMost);
+            } else {
+                pooled.write(this.buffer, localIndex, readAtMost);
+            }
             this.readerIndex += readAtMost;
             index += readAtMost;
         }
-        return Buffers.wrap(buf);
+        return pooled == null ? Buffers.wrap(buf) : pooled;
 
     }
 
@@ -77,6 +77,54 @@ public interface Buffer extends Cloneable {
      */
     Buffer readBytes(int length) throws IndexOutOfBoundsException, IOException;
 
+    /**
+     * Same as {@link #readBytes(int)} but if the bytes have to be copied out
+     * of this buffer, which is the case for the buffers reading off of a
+     * stream, they are copied into a buffer from the pool instead of onto
+     * the heap. Buffers that can share their storage will do so just as with
+     * {@link #readBytes(int)} so either way, call {@link #release()} on the
+     * returned buffer once you're done with it.
+     *
+     * @param length
+     * @param pool
+     *            the pool to get the buffer from if the bytes have to be
+     *            copied. If null, this is the same as
+     *            {@link #readBytes(int)}.
+     * @return
+     * @throws IndexOutOfBoundsException
+     * @throws IOException
+     */
+    default Buffer readBytes(final int length, final BufferPool pool) throws IndexOutOfBoundsException, IOException {
+        return readBytes(length);
+    }
+
+    /**
+     * Hand the storage of this buffer back to the {@link BufferPool} it came
+     * from. Neither this buffer nor any slice of it may be used after it has
+     * been released. For buffers that didn't come from a pool, which is
+     * every buffer not created through {@link BufferPool#allocate(int)},
+     * this does nothing.
+     */
+    default void release() {
+        // nothing to release
+    }
+
+    /**
+     * Increase the readerIndex with the requested number of bytes without
+     * creating a new buffer for them. Use this when you know you are not
+     * interested in the bytes, such as when skipping the payload of a record
+     * you don't care about.
+     *
+     * @param length
+     * @throws IndexOutOfBoundsException
+     *             in case there isn't <code>length</code> bytes left to
+     *             skip.
+     * @throws IOException
+     */
+    default void skipBytes(final int length) throws IndexOutOfBoundsException, IOException {
+        readBytes(length);
+    }
+
     /**
      * Reads a line, i.e., it reads until we hit a line feed ('\n') or a
      * carriage return ('\r'), or a carriage return followed immediately by a
@@ -160,6 +208,23 @@ public interface Buffer extends Cloneable {
         return getArray();
     }
 
+    /**
+     * Get the readable bytes of this buffer as a {@link java.nio.ByteBuffer},
+     * e.g. for handing them over to a {@link java.nio.channels.FileChannel}.
+     * Buffers backed by an array or a {@link java.nio.ByteBuffer} return a
+     * view that shares the underlying storage, i.e. no bytes are copied, so
+     * the returned buffer is only valid for as long as this buffer isn't
+     * modified. Any other buffer returns a copy.
+     *
+     * Changing the position or limit of the returned buffer doesn't affect
+     * this buffer.
+     *
+     * @return
+     */
+    default java.nio.ByteBuffer toByteBuffer() {
+        return java.nio.ByteBuffer.wrap(getArray());
+    }
+
     /**
      * Check whether a particular bit within a byte is on or off.
      *
@@ -553,6 +618,86 @@ public interface Buffer extends Cloneable {
      */
     int parseToInt(int radix) throws NumberFormatException, IOException;
 
+    /**
+     * Parse the bytes between <code>start</code> (inclusive) and
+     * <code>stop</code> (exclusive) as a signed decimal integer. The indices
+     * are the same as for {@link #getByte(int)} and the reader index is not
+     * modified. The first byte may be a minus sign, every other byte must be
+     * a digit.
+     *
+     * Unlike going through {@link #toString()} and
+     * {@link Integer#parseInt(String)}, nothing is allocated unless the
+     * value turns out to be invalid.
+     *
+     * @param start
+     * @param stop
+     * @return
+     * @throws NumberFormatException
+     *             in case the range is empty, contains anything but digits
+     *             (and the leading sign) or if the value doesn't fit in an
+     *             <code>int</code>.
+     * @throws IndexOutOfBoundsException
+     *             in case the range is outside of this buffer.
+     * @throws IOException
+     *             in case anything goes wrong when reading from the underlying
+     *             stream.
+     */
+    int parseToInt(int start, int stop) throws NumberFormatException, IndexOutOfBoundsException, IOException;
+
+    /**
+     * Same as {@link #parseToInt(int, int)} but does not accept a sign and the
+     * value may be as large as 2<sup>32</sup>-1, which is then returned as
+     * the negative <code>int</code> with the same bits, just like
+     * {@link Integer#parseUnsignedInt(String)} does. Use
+     * {@link Integer#toUnsignedLong(int)} to get the actual value back.
+     *
+     * @param start
+     * @param stop
+     * @return
+     * @throws NumberFormatException
+     * @throws IndexOutOfBoundsException
+     * @throws IOException
+     */
+    int parseToUnsignedInt(int start, int stop) throws NumberFormatException, IndexOutOfBoundsException, IOException;
+
+    /**
+     * Parse all the readable bytes in this buffer as a signed decimal long
+     * value. The reader index will not be modified.
+     *
+     * @return
+     * @throws NumberFormatException
+     * @throws IOException
+     * @see #parseToLong(int, int)
+     */
+    long parseToLong() throws NumberFormatException, IOException;
+
+    /**
+     * The <code>long</code> version of {@link #parseToInt(int, int)}.
+     *
+     * @param start
+     * @param stop
+     * @return
+     * @throws NumberFormatException
+     * @throws IndexOutOfBoundsException
+     * @throws IOException
+     */
+    long parseToLong(int start, int stop) throws NumberFormatException, IndexOutOfBoundsException, IOException;
+
+    /**
+     * The <code>long</code> version of {@link #parseToUnsignedInt(int, int)},
+     * i.e., values up to 2<sup>64</sup>-1 are accepted and values larger than
+     * {@link Long#MAX_VALUE} come back as negative longs.
+     *
+     * @param start
+     * @param stop
+     * @return
+     * @throws NumberFormatException
+     * @throws IndexOutOfBoundsException
+     * @throws IOException
+     */
+    long parseToUnsignedLong(int start, int stop) throws NumberFormatException, IndexOutOfBoundsException,
+    IOException;
+
     /**
      * Dump the content of this buffer as a hex dump ala Wireshark. Mainly for
      * debugging purposes
@@ -654,7 +799,8 @@ public interface Buffer extends Cloneable {
     void write(String s) throws IndexOutOfBoundsException, WriteNotSupportedException, UnsupportedEncodingException;
 
     /**
-     * Write the integer value to this {@link Buffer} as a String.
+     * Write the integer value to this {@link Buffer} as a String. The digits
+     * are written straight into the buffer, there is no intermediate String.
      * 
      * @param value
      *            the value that will be converted to a String before being
@@ -709,6 +855,38 @@ public interface Buffer extends Cloneable {
     @Override
     int hashCode();
 
+    /**
+     * A hash code to go along with {@link #equalsIgnoreCase(Object)}, i.e.,
+     * any two buffers that are equal when ignoring case will have the same
+     * hash code. The 7-bit ASCII letters are folded to lower case before
+     * being hashed, any other byte is hashed as is.
+     *
+     * @return
+     */
+    default int hashCodeIgnoreCase() {
+        int result = 1;
+        try {
+            final int length = getReadableBytes();
+            for (int i = 0; i < length; ++i) {
+                result = 31 * result + toLowerCase(getByte(i));
+            }
+        } catch (final IOException e) {
+            throw new BufferException(e);
+        }
+        return result;
+    }
+
+    /**
+     * Helper method for folding a 7-bit ASCII upper case letter into lower
+     * case. Any other byte is returned as is.
+     *
+     * @param b
+     * @return
+     */
+    static byte toLowerCase(final byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b | 0x20) : b;
+    }
+
     @Override
     String toString();
 }
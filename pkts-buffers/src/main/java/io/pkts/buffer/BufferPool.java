@@ -0,0 +1,143 @@
+package io.pkts.buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A pool of off-heap buffers, i.e. {@link Buffer}s backed by direct
+ * {@link java.nio.ByteBuffer}s, for when you are processing a lot of data
+ * and don't want every single packet to end up on the heap.
+ *
+ * The pool is divided into size classes, each one a power of two between
+ * {@link #MIN_BUFFER_SIZE} and the max buffer size of the pool, and a
+ * request for a buffer is served from the smallest class that is large
+ * enough. Requests larger than the max buffer size are served by allocating
+ * a new direct buffer that never goes back into the pool.
+ *
+ * A buffer from the pool is handed back through {@link Buffer#release()}.
+ * After that, neither the buffer itself nor any slice of it may be used
+ * since the storage may already have been handed out again. Forgetting to
+ * release a buffer is harmless, it will simply be garbage collected instead
+ * of being re-used. The pool is safe to use from multiple threads.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class BufferPool {
+
+    /**
+     * The size of the smallest size class.
+     */
+    public static final int MIN_BUFFER_SIZE = 64;
+
+    /**
+     * Large enough for any packet that isn't the result of e.g. TCP
+     * segmentation offloading.
+     */
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 64 * 1024;
+
+    public static final int DEFAULT_MAX_POOLED_PER_CLASS = 256;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+
+    private final int maxBufferSize;
+
+    /**
+     * The idle buffers of each size class where class <code>i</code> holds
+     * buffers of <code>MIN_BUFFER_SIZE << i</code> bytes.
+     */
+    private final List<ArrayBlockingQueue<java.nio.ByteBuffer>> classes;
+
+    public BufferPool() {
+        this(DEFAULT_MAX_BUFFER_SIZE, DEFAULT_MAX_POOLED_PER_CLASS);
+    }
+
+    /**
+     * @param maxBufferSize
+     *            the largest buffer to keep in the pool. Will be rounded up
+     *            to the nearest power of two.
+     * @param maxPooledPerClass
+     *            the maximum number of idle buffers to keep around in each
+     *            size class. Buffers released to a full size class are left
+     *            for the garbage collector.
+     */
+    public BufferPool(final int maxBufferSize, final int maxPooledPerClass) {
+        if (maxBufferSize < MIN_BUFFER_SIZE || maxBufferSize > 1 << 30) {
+            throw new IllegalArgumentException("The max buffer size must be within [" + MIN_BUFFER_SIZE + ", "
+                    + (1 << 30) + "]");
+        }
+        if (maxPooledPerClass < 1) {
+            throw new IllegalArgumentException("The pool must be allowed to hold at least one buffer per class");
+        }
+
+        final int count = sizeClass(maxBufferSize) + 1;
+        this.maxBufferSize = MIN_BUFFER_SIZE << (count - 1);
+        this.classes = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            this.classes.add(new ArrayBlockingQueue<>(maxPooledPerClass));
+        }
+    }
+
+    /**
+     * Get a buffer from the pool with a capacity of (exactly)
+     * <code>capacity</code> bytes. Just as with
+     * {@link Buffers#createBuffer(int)}, the new buffer is empty and is
+     * filled by writing to it.
+     *
+     * @param capacity
+     * @return
+     */
+    public Buffer allocate(final int capacity) {
+        return allocateDirect(capacity);
+    }
+
+    DirectBuffer allocateDirect(final int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity cannot be negative");
+        }
+
+        if (capacity > this.maxBufferSize) {
+            return new DirectBuffer(0, 0, capacity, 0, java.nio.ByteBuffer.allocateDirect(capacity));
+        }
+
+        final int sizeClass = sizeClass(capacity);
+        java.nio.ByteBuffer storage = this.classes.get(sizeClass).poll();
+        if (storage == null) {
+            storage = java.nio.ByteBuffer.allocateDirect(MIN_BUFFER_SIZE << sizeClass);
+        }
+        return new DirectBuffer(0, 0, capacity, 0, storage, this);
+    }
+
+    /**
+     * Put the storage of a released buffer back into its size class.
+     */
+    void release(final java.nio.ByteBuffer storage) {
+        this.classes.get(sizeClass(storage.capacity())).offer(storage);
+    }
+
+    /**
+     * @return the largest buffer that will be kept in the pool.
+     */
+    public int getMaxBufferSize() {
+        return this.maxBufferSize;
+    }
+
+    /**
+     * @return the number of idle buffers currently held by the pool.
+     */
+    public int getIdleCount() {
+        int count = 0;
+        for (final ArrayBlockingQueue<java.nio.ByteBuffer> idle : this.classes) {
+            count += idle.size();
+        }
+        return count;
+    }
+
+    private static int sizeClass(final int capacity) {
+        if (capacity <= MIN_BUFFER_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+    }
+
+}
@@ -35,6 +35,18 @@ public final class Buffers {
     private final static int[] sizeTable = {
         9, 99, 999, 9999, 99999, 999999, 9999999, 99999999, 999999999, Integer.MAX_VALUE };
 
+    private final static long[] powersOfTen = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L, 10000000000L,
+        100000000000L, 1000000000000L, 10000000000000L, 100000000000000L, 1000000000000000L,
+        10000000000000000L, 100000000000000000L, 1000000000000000000L };
+
+    /**
+     * The min values cannot be negated so they are the only ones we don't
+     * calculate.
+     */
+    private final static byte[] IntegerMinValue = "-2147483648".getBytes(StandardCharsets.US_ASCII);
+    private final static byte[] LongMinValue = "-9223372036854775808".getBytes(StandardCharsets.US_ASCII);
+
     /**
      * An empty buffer.
      */
@@ -55,14 +67,14 @@ public final class Buffers {
      * @return
      */
     public static Buffer wrap(final int value) {
-        final int size = value < 0 ? stringSize(-value) + 1 : stringSize(value);
+        final int size = stringSizeOf(value);
         final byte[] bytes = new byte[size];
         getBytes(value, size, bytes);
         return new ByteBuffer(bytes);
     }
 
     public static Buffer wrap(final long value) {
-        final int size = value < 0 ? stringSize(-value) + 1 : stringSize(value);
+        final int size = stringSizeOf(value);
         final byte[] bytes = new byte[size];
         getBytes(value, size, bytes);
         return new ByteBuffer(bytes);
@@ -99,6 +111,29 @@ public final class Buffers {
         return new ByteBuffer(0, 0, buffer.length, 0, buffer);
     }
 
+    /**
+     * Same as {@link #createBuffer(int)} but the buffer is stored off-heap.
+     * Use a {@link BufferPool} if you are allocating a lot of these.
+     *
+     * @param capacity
+     * @return
+     */
+    public static Buffer createDirectBuffer(final int capacity) {
+        return new DirectBuffer(0, 0, capacity, 0, java.nio.ByteBuffer.allocateDirect(capacity));
+    }
+
+    /**
+     * Same as {@link #createBuffer(int)} but the buffer is borrowed from the
+     * pool and has to be handed back through {@link Buffer#release()}.
+     *
+     * @param capacity
+     * @param pool
+     * @return
+     */
+    public static Buffer createBuffer(final int capacity, final BufferPool pool) {
+        return pool.allocate(capacity);
+    }
+
     /**
      * Wrap the supplied byte array
      * 
@@ -140,21 +175,36 @@ public final class Buffers {
      * @return
      */
     public static Buffer wrap(final Buffer one, final Buffer two) {
-        // TODO: create an actual composite buffer. 
-        final int size1 = one != null ? one.getReadableBytes() : 0;
-        final int size2 = two != null ? two.getReadableBytes() : 0;
-        if (size1 == 0 && size2 > 0) {
-            return two.slice();
-        } else if (size2 == 0 && size1 > 0) {
-            return one.slice();
-        } else if (size2 == 0 && size1 == 0) {
-            return Buffers.EMPTY_BUFFER;
+        return wrap(new Buffer[] { one, two });
+    }
+
+    /**
+     * Combine any number of buffers into one, without copying any of them.
+     * Just as with {@link #wrap(Buffer, Buffer)}, the resulting buffer shares
+     * the underlying byte storage with the given buffers but has its own
+     * reader and writer index. Any null or empty buffer is ignored.
+     *
+     * @param buffers
+     * @return a {@link CompositeBuffer} if there were at least two buffers
+     *         with readable bytes, a slice of the only one if there were
+     *         just one and an empty buffer if there were none.
+     */
+    public static Buffer wrap(final Buffer... buffers) {
+        Buffer single = null;
+        int count = 0;
+        for (final Buffer buffer : buffers) {
+            if (buffer != null && buffer.getReadableBytes() > 0) {
+                single = buffer;
+                ++count;
+            }
         }
 
-        final Buffer composite = Buffers.createBuffer(size1 + size2);
-        one.getBytes(composite);
-        two.getBytes(composite);
-        return composite;
+        if (count == 0) {
+            return Buffers.EMPTY_BUFFER;
+        } else if (count == 1) {
+            return single.slice();
+        }
+        return CompositeBuffer.create(buffers);
     }
 
     /**
@@ -207,10 +257,13 @@ public final class Buffers {
      * Places characters representing the integer i into the character array buf. The characters are
      * placed into the buffer backwards starting with the least significant digit at the specified
      * index (exclusive), and working backwards from there.
-     * 
-     * Will fail if i == Integer.MIN_VALUE
      */
     public static void getBytes(int i, final int index, final byte[] buf) {
+        if (i == Integer.MIN_VALUE) {
+            System.arraycopy(IntegerMinValue, 0, buf, index - IntegerMinValue.length, IntegerMinValue.length);
+            return;
+        }
+
         int q, r;
         int charPos = index;
         byte sign = 0;
@@ -253,6 +306,9 @@ public final class Buffers {
      * @return
      */
     public static int stringSizeOf(final int value) {
+        if (value == Integer.MIN_VALUE) {
+            return IntegerMinValue.length;
+        }
         return value < 0 ? stringSize(-value) + 1 : stringSize(value);
     }
 
@@ -271,10 +327,13 @@ public final class Buffers {
      * Places characters representing the integer i into the character array buf. The characters are
      * placed into the buffer backwards starting with the least significant digit at the specified
      * index (exclusive), and working backwards from there.
-     *
-     * Will fail if i == Long.MIN_VALUE
      */
     public static void getBytes(long i, final int index, final byte[] buf) {
+        if (i == Long.MIN_VALUE) {
+            System.arraycopy(LongMinValue, 0, buf, index - LongMinValue.length, LongMinValue.length);
+            return;
+        }
+
         long q;
         int r;
         int charPos = index;
@@ -330,6 +389,9 @@ public final class Buffers {
      * @return
      */
     public static int stringSizeOf(final long value) {
+        if (value == Long.MIN_VALUE) {
+            return LongMinValue.length;
+        }
         return value < 0 ? stringSize(-value) + 1 : stringSize(value);
     }
 
@@ -345,5 +407,39 @@ public final class Buffers {
         return 19;
     }
 
+    /**
+     * Write the value as a String to the buffer one digit at a time, most
+     * significant digit first. Meant for those buffers that do not have a
+     * byte-array we can render the digits straight into and saves us from
+     * creating a temporary String (or byte-array) just to write a number.
+     *
+     * @param buffer
+     * @param value
+     * @throws IndexOutOfBoundsException
+     *             in case the buffer doesn't have room for all the digits, in
+     *             which case nothing is written.
+     */
+    static void writeAsString(final Buffer buffer, final long value) throws IndexOutOfBoundsException {
+        final int size = stringSizeOf(value);
+        if (buffer.getWritableBytes() < size) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        // work with the negative value since that one can always be represented
+        long remaining = value;
+        int count = size;
+        if (value < 0) {
+            buffer.write((byte) '-');
+            --count;
+        } else {
+            remaining = -value;
+        }
+
+        for (int i = count - 1; i >= 0; --i) {
+            final long q = remaining / powersOfTen[i];
+            buffer.write((byte) ('0' - q));
+            remaining -= q * powersOfTen[i];
+        }
+    }
 
 }
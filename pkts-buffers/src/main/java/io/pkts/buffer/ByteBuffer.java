@@ -147,6 +147,137 @@ public final class ByteBuffer extends AbstractBuffer {
         return getByte(this.readerIndex);
     }
 
+    /**
+     * Same as the one in {@link BaseBuffer} but since we have direct access
+     * to the array we can scan through it a word at a time instead.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int indexOf(final int maxBytes, final byte... bytes) throws ByteNotFoundException,
+            IllegalArgumentException {
+        if (bytes.length == 0) {
+            throw new IllegalArgumentException("No bytes specified. Not sure what you want me to look for");
+        }
+
+        if (maxBytes <= 0) {
+            throw new ByteNotFoundException(maxBytes, bytes);
+        }
+
+        final int from = this.lowerBoundary + this.readerIndex;
+        final int to = from + Math.min(maxBytes, getReadableBytes());
+        final int index = WordScanner.indexOfAny(this.buffer, from, to, bytes);
+        return index == -1 ? -1 : index - this.lowerBoundary;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer readLine() {
+        final int start = this.readerIndex;
+        final int end = getReadableEnd();
+        final int index = WordScanner.indexOfAny(this.buffer, this.lowerBoundary + start, end, LF, CR);
+        if (index == -1) {
+            if (start + this.lowerBoundary >= end) {
+                return null;
+            }
+            this.readerIndex = end - this.lowerBoundary;
+            return slice(start, this.readerIndex);
+        }
+
+        if (this.buffer[index] == LF) {
+            this.readerIndex = index + 1 - this.lowerBoundary;
+            return slice(start, index - this.lowerBoundary);
+        }
+
+        // any additional CRs are considered part of the line
+        int next = index + 1;
+        while (next < end && this.buffer[next] == CR) {
+            ++next;
+        }
+
+        if (next == end) {
+            this.readerIndex = end - this.lowerBoundary;
+            return slice(start, this.readerIndex);
+        }
+
+        this.readerIndex = (this.buffer[next] == LF ? next + 1 : next) - this.lowerBoundary;
+        return slice(start, next - 1 - this.lowerBoundary);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer readUntilSingleCRLF() {
+        final int index = findCRLF(2);
+        if (index == -1) {
+            return null;
+        }
+
+        final int start = this.readerIndex;
+        this.readerIndex = index + 2 - this.lowerBoundary;
+        return slice(start, index - this.lowerBoundary);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer readUntilDoubleCRLF() {
+        final int index = findCRLF(4);
+        if (index == -1) {
+            return null;
+        }
+
+        final int start = this.readerIndex;
+        this.readerIndex = index + 4 - this.lowerBoundary;
+        return slice(start, index - this.lowerBoundary);
+    }
+
+    /**
+     * Find a sequence of alternating CR and LF of the given length in the
+     * readable bytes. This is the same state machine as in {@link BaseBuffer}
+     * but whenever it is back at the start we skip ahead to the next CR a word
+     * at a time.
+     *
+     * @param length 2 for a single CRLF, 4 for a double one.
+     * @return the index into the array where the sequence starts or -1 if it
+     *         wasn't found.
+     */
+    private int findCRLF(final int length) {
+        final int end = getReadableEnd();
+        int i = this.lowerBoundary + this.readerIndex;
+        int found = 0;
+        while (found < length && i < end) {
+            if (found == 0) {
+                i = WordScanner.indexOf(this.buffer, i, end, CR);
+                if (i == -1) {
+                    return -1;
+                }
+                found = 1;
+            } else {
+                final byte b = this.buffer[i];
+                if (found % 2 == 0 && b == CR || found % 2 == 1 && b == LF) {
+                    ++found;
+                } else {
+                    found = 0;
+                }
+            }
+            ++i;
+        }
+
+        return found == length ? i - length : -1;
+    }
+
+    /**
+     * @return the index into the array right after the last readable byte.
+     */
+    private int getReadableEnd() {
+        return this.lowerBoundary + this.readerIndex + getReadableBytes();
+    }
+
     public long unsignedInt(final byte a, final byte b, final byte c, final byte d) {
         return (a & 0xff) << 24 | (b & 0xff) << 16 | (c & 0xff) << 8 | d & 0xff;
     }
@@ -256,6 +387,15 @@ public final class ByteBuffer extends AbstractBuffer {
         return HexDump.dumpHexString(buffer, lowerBoundary, upperBoundary - lowerBoundary);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public java.nio.ByteBuffer toByteBuffer() {
+        return java.nio.ByteBuffer.wrap(this.buffer, this.lowerBoundary + this.readerIndex, getReadableBytes())
+                .slice();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -292,11 +432,27 @@ public final class ByteBuffer extends AbstractBuffer {
         return internalEquals(true, other);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCodeIgnoreCase() {
+        int result = 1;
+        final int stop = this.lowerBoundary + getReadableBytes();
+        for (int i = this.lowerBoundary; i < stop; ++i) {
+            result = 31 * result + Buffer.toLowerCase(this.buffer[i]);
+        }
+        return result;
+    }
+
     private boolean internalEquals(final boolean ignoreCase, final Object other) {
         try {
             if (this == other) {
                 return true;
             }
+            if (!(other instanceof ByteBuffer) && other instanceof Buffer) {
+                return contentEquals(ignoreCase, this, (Buffer) other);
+            }
             final ByteBuffer b = (ByteBuffer) other;
             if (getReadableBytes() != b.getReadableBytes()) {
                 return false;
@@ -481,7 +637,7 @@ public final class ByteBuffer extends AbstractBuffer {
 
     @Override
     public void writeAsString(final int value) throws IndexOutOfBoundsException, WriteNotSupportedException {
-        final int size = value < 0 ? Buffers.stringSize(-value) + 1 : Buffers.stringSize(value);
+        final int size = Buffers.stringSizeOf(value);
         if (!checkWritableBytesSafe(size)) {
             throw new IndexOutOfBoundsException();
         }
@@ -491,7 +647,7 @@ public final class ByteBuffer extends AbstractBuffer {
 
     @Override
     public void writeAsString(final long value) throws IndexOutOfBoundsException, WriteNotSupportedException {
-        final int size = value < 0 ? Buffers.stringSize(-value) + 1 : Buffers.stringSize(value);
+        final int size = Buffers.stringSizeOf(value);
         if (!checkWritableBytesSafe(size)) {
             throw new IndexOutOfBoundsException();
         }
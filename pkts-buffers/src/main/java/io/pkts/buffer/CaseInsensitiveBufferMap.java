@@ -0,0 +1,147 @@
+/**
+ *
+ */
+package io.pkts.buffer;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A map keyed by {@link Buffer}s where the case of the keys doesn't matter,
+ * as is the case for e.g. SIP header names. Keys are compared using
+ * {@link Buffer#equalsIgnoreCase(Object)} and hashed using
+ * {@link Buffer#hashCodeIgnoreCase()} so a lookup is a single hash probe no
+ * matter the capitalization of the key you are looking for.
+ *
+ * Just as with any other hash map, changing the content (or the reader
+ * index) of a buffer once it has been used as a key will break the map.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class CaseInsensitiveBufferMap<V> extends AbstractMap<Buffer, V> {
+
+    private final Map<Key, V> map;
+
+    public CaseInsensitiveBufferMap() {
+        this.map = new HashMap<>();
+    }
+
+    public CaseInsensitiveBufferMap(final int initialCapacity) {
+        this.map = new HashMap<>(initialCapacity);
+    }
+
+    @Override
+    public V get(final Object key) {
+        if (!(key instanceof Buffer)) {
+            return null;
+        }
+        return this.map.get(new Key((Buffer) key));
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        if (!(key instanceof Buffer)) {
+            return false;
+        }
+        return this.map.containsKey(new Key((Buffer) key));
+    }
+
+    @Override
+    public V put(final Buffer key, final V value) {
+        return this.map.put(new Key(key), value);
+    }
+
+    @Override
+    public V remove(final Object key) {
+        if (!(key instanceof Buffer)) {
+            return null;
+        }
+        return this.map.remove(new Key((Buffer) key));
+    }
+
+    @Override
+    public int size() {
+        return this.map.size();
+    }
+
+    @Override
+    public void clear() {
+        this.map.clear();
+    }
+
+    @Override
+    public Set<Map.Entry<Buffer, V>> entrySet() {
+        return new AbstractSet<Map.Entry<Buffer, V>>() {
+            @Override
+            public Iterator<Map.Entry<Buffer, V>> iterator() {
+                final Iterator<Map.Entry<Key, V>> entries = CaseInsensitiveBufferMap.this.map.entrySet().iterator();
+                return new Iterator<Map.Entry<Buffer, V>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<Buffer, V> next() {
+                        final Map.Entry<Key, V> entry = entries.next();
+                        return new AbstractMap.SimpleEntry<Buffer, V>(entry.getKey().buffer, entry.getValue()) {
+                            @Override
+                            public V setValue(final V value) {
+                                super.setValue(value);
+                                return entry.setValue(value);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public void remove() {
+                        entries.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return CaseInsensitiveBufferMap.this.map.size();
+            }
+        };
+    }
+
+    /**
+     * The key is never changed once created so we only have to calculate
+     * the hash code of the buffer once.
+     */
+    private static final class Key {
+
+        private final Buffer buffer;
+
+        private final int hash;
+
+        private Key(final Buffer buffer) {
+            this.buffer = buffer;
+            this.hash = buffer.hashCodeIgnoreCase();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return this.hash == key.hash && this.buffer.equalsIgnoreCase(key.buffer);
+        }
+    }
+
+}
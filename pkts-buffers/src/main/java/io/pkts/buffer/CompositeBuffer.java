@@ -0,0 +1,554 @@
+/**
+ *
+ */
+package io.pkts.buffer;
+
+import com.google.polo.pairing.HexDump;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A buffer presenting a number of other buffers as one single buffer
+ * without copying any of them, which is what you want when e.g. stitching
+ * together fragments of an IP packet or a SIP message spread over several
+ * TCP segments.
+ *
+ * The composite is built out of slices of the readable bytes of the buffers
+ * it was created from so reading from the composite doesn't affect the
+ * indices of those buffers, but it does share the underlying storage with
+ * them. Hence, just as with any other slice, any change to the bytes is
+ * visible through both.
+ *
+ * Slicing a composite is also free. If the slice happens to fall within one
+ * of the components, that component's own slice is returned. Otherwise the
+ * result is a new composite over the components that were covered.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class CompositeBuffer extends AbstractBuffer {
+
+    private static final String CANNOT_WRITE = "One or more of the underlying buffers doesn't support writing";
+
+    private final Buffer[] components;
+
+    /**
+     * The index, within this composite, of where each component starts. The
+     * last element is the capacity of the composite, i.e., component
+     * <code>i</code> ranges from <code>offsets[i]</code> (inclusive) to
+     * <code>offsets[i + 1]</code> (exclusive).
+     */
+    private final int[] offsets;
+
+    /**
+     * The component we found last time. Most access is sequential so
+     * chances are that we'll find the next index within the same one.
+     */
+    private int current;
+
+    private CompositeBuffer(final Buffer[] components, final int[] offsets) {
+        super(0, 0, offsets[components.length], offsets[components.length]);
+        this.components = components;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Create a new composite out of the readable bytes of the given buffers.
+     * Any null or empty buffer is simply ignored and any composite buffer is
+     * flattened into its components.
+     *
+     * Use {@link Buffers#wrap(Buffer...)}, which will avoid creating a
+     * composite when there is only a single buffer to wrap.
+     */
+    static CompositeBuffer create(final Buffer... buffers) {
+        final Buffer[] components = flatten(buffers);
+        return new CompositeBuffer(components, calculateOffsets(components));
+    }
+
+    private static Buffer[] flatten(final Buffer... buffers) {
+        final List<Buffer> components = new ArrayList<>(buffers.length);
+        for (final Buffer buffer : buffers) {
+            if (buffer == null || buffer.getReadableBytes() == 0) {
+                continue;
+            }
+
+            final Buffer slice = buffer.slice();
+            if (slice instanceof CompositeBuffer) {
+                components.addAll(Arrays.asList(((CompositeBuffer) slice).components));
+            } else {
+                components.add(slice);
+            }
+        }
+        return components.toArray(new Buffer[components.size()]);
+    }
+
+    private static int[] calculateOffsets(final Buffer[] components) {
+        final int[] offsets = new int[components.length + 1];
+        for (int i = 0; i < components.length; ++i) {
+            offsets[i + 1] = offsets[i] + components[i].capacity();
+        }
+        return offsets;
+    }
+
+    /**
+     * @return the number of buffers this composite is made up of.
+     */
+    public int getNumberOfComponents() {
+        return this.components.length;
+    }
+
+    /**
+     * Find the component containing the given index.
+     */
+    private int getComponentIndex(final int index) {
+        if (index >= this.offsets[this.current] && index < this.offsets[this.current + 1]) {
+            return this.current;
+        }
+
+        final int i = Arrays.binarySearch(this.offsets, 0, this.components.length, index);
+        this.current = i >= 0 ? i : -i - 2;
+        return this.current;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void checkIndex(final int index) throws IndexOutOfBoundsException {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        super.checkIndex(index);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer slice(final int start, final int stop) {
+        if (start == stop) {
+            return Buffers.EMPTY_BUFFER;
+        }
+        checkIndex(start);
+        checkIndex(stop - 1);
+
+        final int first = getComponentIndex(start);
+        final int last = getComponentIndex(stop - 1);
+        if (first == last) {
+            return this.components[first].slice(start - this.offsets[first], stop - this.offsets[first]);
+        }
+
+        final Buffer[] slices = new Buffer[last - first + 1];
+        slices[0] = this.components[first].slice(start - this.offsets[first], this.offsets[first + 1]
+                - this.offsets[first]);
+        for (int i = first + 1; i < last; ++i) {
+            slices[i - first] = this.components[i];
+        }
+        slices[slices.length - 1] = this.components[last].slice(0, stop - this.offsets[last]);
+        return create(slices);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer readBytes(final int length) throws IndexOutOfBoundsException {
+        if (length == 0) {
+            return Buffers.EMPTY_BUFFER;
+        }
+        checkReadableBytes(length);
+        final Buffer buffer = slice(this.readerIndex, this.readerIndex + length);
+        this.readerIndex += length;
+        return buffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasReadableBytes() {
+        return getReadableBytes() > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return getReadableBytes() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getByte(final int index) throws IndexOutOfBoundsException {
+        checkIndex(index);
+        final int i = getComponentIndex(index);
+        try {
+            return this.components[i].getByte(index - this.offsets[i]);
+        } catch (final IOException e) {
+            // the components are all slices and never read from anywhere
+            throw new BufferException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte readByte() throws IndexOutOfBoundsException {
+        return getByte(this.readerIndex++);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte peekByte() throws IndexOutOfBoundsException {
+        return getByte(this.readerIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long readUnsignedInt() throws IndexOutOfBoundsException {
+        checkReadableBytes(4);
+        final long value = getUnsignedInt(this.readerIndex);
+        this.readerIndex += 4;
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int readInt() throws IndexOutOfBoundsException {
+        checkReadableBytes(4);
+        final int value = getInt(this.readerIndex);
+        this.readerIndex += 4;
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short readShort() throws IndexOutOfBoundsException {
+        checkReadableBytes(2);
+        final short value = getShort(this.readerIndex);
+        this.readerIndex += 2;
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int readUnsignedShort() throws IndexOutOfBoundsException {
+        return readShort() & 0xFFFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInt(final int index) throws IndexOutOfBoundsException {
+        checkIndex(index + 3);
+        return (getByte(index) & 0xff) << 24 | (getByte(index + 1) & 0xff) << 16 | (getByte(index + 2) & 0xff) << 8
+                | getByte(index + 3) & 0xff;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short getShort(final int index) throws IndexOutOfBoundsException {
+        checkIndex(index + 1);
+        return (short) (getByte(index) << 8 | getByte(index + 1) & 0xFF);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getUnsignedShort(final int index) throws IndexOutOfBoundsException {
+        return getShort(index) & 0xFFFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getUnsignedInt(final int index) throws IndexOutOfBoundsException {
+        return getInt(index) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short getUnsignedByte(final int index) throws IndexOutOfBoundsException {
+        return (short) (getByte(index) & 0xFF);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] getArray() {
+        final byte[] array = new byte[getReadableBytes()];
+        copy(this.readerIndex, array, 0, array.length);
+        return array;
+    }
+
+    @Override
+    public void getBytes(final Buffer dst) {
+        getBytes(getReaderIndex(), dst);
+    }
+
+    @Override
+    public void getBytes(final int index, final Buffer dst) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Index less than zero");
+        }
+        final int stop = Math.min(index + dst.getWritableBytes(), this.writerIndex);
+        for (int i = index; i < stop; ++i) {
+            dst.write(getByte(i));
+        }
+    }
+
+    @Override
+    public void getBytes(final byte[] dst) throws IndexOutOfBoundsException {
+        copy(this.readerIndex, dst, 0, Math.min(dst.length, getReadableBytes()));
+    }
+
+    /**
+     * Copy the bytes component by component. Components backed by an array
+     * are copied in bulk, any other component one byte at a time.
+     */
+    private void copy(final int index, final byte[] dst, final int offset, final int length) {
+        int i = index;
+        int copied = 0;
+        while (copied < length) {
+            final int c = getComponentIndex(i);
+            final Buffer component = this.components[c];
+            final int local = i - this.offsets[c];
+            final int count = Math.min(length - copied, this.offsets[c + 1] - i);
+            if (component instanceof ByteBuffer) {
+                System.arraycopy(component.getRawArray(), component.getLowerBoundary() + local, dst, offset + copied,
+                        count);
+            } else {
+                for (int j = 0; j < count; ++j) {
+                    dst[offset + copied + j] = getByte(i + j);
+                }
+            }
+            i += count;
+            copied += count;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String dumpAsHex() {
+        final byte[] array = new byte[capacity()];
+        copy(0, array, 0, array.length);
+        return HexDump.dumpHexString(array);
+    }
+
+    /**
+     * A deep clone of a composite is a regular heap based {@link ByteBuffer}
+     * with all the bytes of the composite.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer clone() {
+        final byte[] copy = new byte[capacity()];
+        copy(0, copy, 0, copy.length);
+        return Buffers.wrap(copy);
+    }
+
+    /**
+     * Must produce the same value as {@link ByteBuffer#hashCode()} for the
+     * same content.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = this.readerIndex; i < this.upperBoundary; ++i) {
+            result = 31 * result + getByte(i);
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Buffer)) {
+            return false;
+        }
+        return contentEquals(false, this, (Buffer) other);
+    }
+
+    @Override
+    public boolean equalsIgnoreCase(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Buffer)) {
+            return false;
+        }
+        return contentEquals(true, this, (Buffer) other);
+    }
+
+    @Override
+    public String toString() {
+        return new String(getArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A composite can be written to as long as all of its components can,
+     * in which case the write goes to the underlying storage of the
+     * component(s). Note that the composite never grows, writing can only
+     * overwrite bytes from the current writer index, see
+     * {@link #setWriterIndex(int)}.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasWriteSupport() {
+        for (final Buffer component : this.components) {
+            if (!component.hasWriteSupport()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setByte(final int index, final byte value) throws IndexOutOfBoundsException {
+        checkIndex(index);
+        final int i = getComponentIndex(index);
+        final Buffer component = this.components[i];
+        if (!component.hasWriteSupport()) {
+            throw new WriteNotSupportedException(CANNOT_WRITE);
+        }
+        component.setByte(index - this.offsets[i], value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUnsignedByte(final int index, final short value) throws IndexOutOfBoundsException {
+        setByte(index, (byte) value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUnsignedShort(final int index, final int value) throws IndexOutOfBoundsException {
+        checkIndex(index + 1);
+        setByte(index, (byte) (value >> 8));
+        setByte(index + 1, (byte) value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setInt(final int index, final int value) throws IndexOutOfBoundsException {
+        checkIndex(index + 3);
+        setByte(index, (byte) (value >>> 24));
+        setByte(index + 1, (byte) (value >>> 16));
+        setByte(index + 2, (byte) (value >>> 8));
+        setByte(index + 3, (byte) value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUnsignedInt(final int index, final long value) throws IndexOutOfBoundsException {
+        setInt(index, (int) value);
+    }
+
+    @Override
+    public void write(final byte b) throws IndexOutOfBoundsException {
+        checkWriterIndex(this.writerIndex);
+        setByte(this.writerIndex, b);
+        ++this.writerIndex;
+    }
+
+    @Override
+    public void write(final byte[] bytes) throws IndexOutOfBoundsException {
+        if (!checkWritableBytesSafe(bytes.length)) {
+            throw new IndexOutOfBoundsException("Unable to write the entire array to this buffer. Nothing was written");
+        }
+
+        for (final byte b : bytes) {
+            setByte(this.writerIndex++, b);
+        }
+    }
+
+    @Override
+    public void write(final int value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        if (!checkWritableBytesSafe(4)) {
+            throw new IndexOutOfBoundsException("Unable to write the entire int to this buffer. Nothing was written");
+        }
+        setInt(this.writerIndex, value);
+        this.writerIndex += 4;
+    }
+
+    @Override
+    public void write(final long value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        if (!checkWritableBytesSafe(8)) {
+            throw new IndexOutOfBoundsException("Unable to write the entire long to this buffer. Nothing was written");
+        }
+        setInt(this.writerIndex, (int) (value >>> 32));
+        setInt(this.writerIndex + 4, (int) value);
+        this.writerIndex += 8;
+    }
+
+    @Override
+    public void write(final String s) throws IndexOutOfBoundsException, WriteNotSupportedException,
+    UnsupportedEncodingException {
+        write(s, "UTF-8");
+    }
+
+    @Override
+    public void write(final String s, final String charset) throws IndexOutOfBoundsException,
+    WriteNotSupportedException, UnsupportedEncodingException {
+        write(s.getBytes(charset));
+    }
+
+    @Override
+    public void writeAsString(final int value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        Buffers.writeAsString(this, value);
+    }
+
+    @Override
+    public void writeAsString(final long value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        Buffers.writeAsString(this, value);
+    }
+
+}
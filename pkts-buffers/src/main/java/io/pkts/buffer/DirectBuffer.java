@@ -0,0 +1,500 @@
+/**
+ *
+ */
+package io.pkts.buffer;
+
+import com.google.polo.pairing.HexDump;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A buffer backed by a {@link java.nio.ByteBuffer}, which typically is a
+ * direct or a memory mapped one. Apart from how the bytes are stored, this
+ * buffer behaves exactly like the heap based {@link ByteBuffer}, i.e. slices
+ * and reads share the same underlying storage and no bytes are copied unless
+ * you explicitly ask for them through e.g. {@link #getArray()}.
+ *
+ * If the underlying {@link java.nio.ByteBuffer} is read-only, which is the
+ * case for a memory mapped pcap, this buffer has no write support and any
+ * attempt to modify it will result in a {@link WriteNotSupportedException}.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class DirectBuffer extends AbstractBuffer {
+
+    private static final String READ_ONLY = "The underlying storage is read-only";
+
+    /**
+     * The actual buffer. Note that we only ever use absolute get/put
+     * operations on it so its position and limit is never touched.
+     */
+    private final java.nio.ByteBuffer buffer;
+
+    /**
+     * The pool the storage of this buffer was borrowed from, if any. Only
+     * the buffer handed out by the pool has this set, slices of it don't,
+     * so it is only ever released once.
+     */
+    private BufferPool pool;
+
+    protected DirectBuffer(final java.nio.ByteBuffer buffer) {
+        this(0, 0, buffer.capacity(), buffer);
+    }
+
+    protected DirectBuffer(final int readerIndex, final int lowerBoundary, final int upperBoundary,
+            final java.nio.ByteBuffer buffer) {
+        this(readerIndex, lowerBoundary, upperBoundary, upperBoundary, buffer);
+    }
+
+    protected DirectBuffer(final int readerIndex, final int lowerBoundary, final int upperBoundary,
+            final int writerIndex, final java.nio.ByteBuffer buffer) {
+        super(readerIndex, lowerBoundary, upperBoundary, writerIndex);
+        assert buffer != null;
+        this.buffer = buffer;
+    }
+
+    DirectBuffer(final int readerIndex, final int lowerBoundary, final int upperBoundary, final int writerIndex,
+            final java.nio.ByteBuffer buffer, final BufferPool pool) {
+        this(readerIndex, lowerBoundary, upperBoundary, writerIndex, buffer);
+        this.pool = pool;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void release() {
+        final BufferPool pool = this.pool;
+        if (pool != null) {
+            this.pool = null;
+            pool.release(this.buffer);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer slice(final int start, final int stop) {
+        if (start == stop) {
+            return Buffers.EMPTY_BUFFER;
+        }
+        checkIndex(this.lowerBoundary + start);
+        checkIndex(this.lowerBoundary + stop - 1);
+        final int upperBoundary = this.lowerBoundary + stop;
+        final int writerIndex = upperBoundary;
+        return new DirectBuffer(0, this.lowerBoundary + start, upperBoundary, writerIndex, this.buffer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer readBytes(final int length) throws IndexOutOfBoundsException {
+        if (length == 0) {
+            return Buffers.EMPTY_BUFFER;
+        }
+        checkReadableBytes(length);
+        final int lowerBoundary = this.readerIndex + this.lowerBoundary;
+        this.readerIndex += length;
+        final int upperBoundary = this.readerIndex + this.lowerBoundary;
+        final int writerIndex = upperBoundary;
+        return new DirectBuffer(0, lowerBoundary, upperBoundary, writerIndex, this.buffer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasReadableBytes() {
+        return getReadableBytes() > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return getReadableBytes() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getByte(final int index) throws IndexOutOfBoundsException {
+        checkIndex(this.lowerBoundary + index);
+        return this.buffer.get(this.lowerBoundary + index);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte readByte() throws IndexOutOfBoundsException {
+        return getByte(this.readerIndex++);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte peekByte() throws IndexOutOfBoundsException, IOException {
+        return getByte(this.readerIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long readUnsignedInt() throws IndexOutOfBoundsException {
+        return readInt() & 0xFFFFFFFFL;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int readInt() throws IndexOutOfBoundsException {
+        final int value = getInt(this.readerIndex);
+        this.readerIndex += 4;
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short readShort() throws IndexOutOfBoundsException {
+        final short value = getShort(this.readerIndex);
+        this.readerIndex += 2;
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int readUnsignedShort() {
+        return readShort() & 0xFFFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInt(final int index) {
+        final int i = this.lowerBoundary + index;
+        checkIndex(i);
+        checkIndex(i + 3);
+        return (this.buffer.get(i) & 0xff) << 24 | (this.buffer.get(i + 1) & 0xff) << 16
+                | (this.buffer.get(i + 2) & 0xff) << 8 | this.buffer.get(i + 3) & 0xff;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short getShort(final int index) {
+        final int i = this.lowerBoundary + index;
+        checkIndex(i);
+        checkIndex(i + 1);
+        return (short) (this.buffer.get(i) << 8 | this.buffer.get(i + 1) & 0xFF);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getUnsignedShort(final int index) throws IndexOutOfBoundsException {
+        return getShort(index) & 0xFFFF;
+    }
+
+    @Override
+    public long getUnsignedInt(final int index) throws IndexOutOfBoundsException {
+        final int i = this.lowerBoundary + index;
+        checkIndex(i);
+        checkIndex(i + 3);
+        return Buffer.unsignedInt(this.buffer.get(i), this.buffer.get(i + 1), this.buffer.get(i + 2),
+                this.buffer.get(i + 3));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short getUnsignedByte(final int index) throws IndexOutOfBoundsException {
+        return (short) (getByte(index) & 0xFF);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] getArray() {
+        final int length = getReadableBytes();
+        final byte[] array = new byte[length];
+        this.buffer.get(this.lowerBoundary + this.readerIndex, array, 0, length);
+        return array;
+    }
+
+    @Override
+    public void getBytes(final Buffer dst) {
+        getBytes(getReaderIndex(), dst);
+    }
+
+    @Override
+    public void getBytes(final int index, final Buffer dst) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Index less than zero");
+        }
+        final int max = dst.getWritableBytes();
+        final int stop = Math.min(this.lowerBoundary + index + max, this.writerIndex);
+        for (int i = this.lowerBoundary + index; i < stop; ++i) {
+            dst.write(this.buffer.get(i));
+        }
+    }
+
+    @Override
+    public void getBytes(final byte[] dst) throws IndexOutOfBoundsException {
+        final int length = Math.min(dst.length, getReadableBytes());
+        this.buffer.get(this.lowerBoundary + this.readerIndex, dst, 0, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String dumpAsHex() {
+        final byte[] array = new byte[capacity()];
+        this.buffer.get(this.lowerBoundary, array, 0, array.length);
+        return HexDump.dumpHexString(array);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public java.nio.ByteBuffer toByteBuffer() {
+        final java.nio.ByteBuffer view = this.buffer.duplicate();
+        final int start = this.lowerBoundary + this.readerIndex;
+        view.limit(start + getReadableBytes()).position(start);
+        return view.slice();
+    }
+
+    /**
+     * A deep clone of a {@link DirectBuffer} is always a regular heap based
+     * {@link ByteBuffer}. If you want to keep a copy of e.g. a packet that
+     * was read off of a memory mapped file, then this is what you want since
+     * the copy no longer depends on the mapping.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer clone() {
+        final int size = capacity();
+        final byte[] copy = new byte[size];
+        this.buffer.get(this.lowerBoundary, copy, 0, size);
+        return new ByteBuffer(copy);
+    }
+
+    /**
+     * Must produce the same value as {@link ByteBuffer#hashCode()} for the
+     * same content since the two will be mixed as keys in the same maps.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = this.lowerBoundary + this.readerIndex; i < this.upperBoundary; ++i) {
+            result = 31 * result + this.buffer.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Buffer)) {
+            return false;
+        }
+        return contentEquals(false, this, (Buffer) other);
+    }
+
+    @Override
+    public boolean equalsIgnoreCase(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Buffer)) {
+            return false;
+        }
+        return contentEquals(true, this, (Buffer) other);
+    }
+
+    @Override
+    public String toString() {
+        return new String(getArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean hasWriteSupport() {
+        return !this.buffer.isReadOnly();
+    }
+
+    private void checkWriteSupport() throws WriteNotSupportedException {
+        if (this.buffer.isReadOnly()) {
+            throw new WriteNotSupportedException(READ_ONLY);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setByte(final int index, final byte value) throws IndexOutOfBoundsException {
+        checkWriteSupport();
+        final int i = this.lowerBoundary + index;
+        checkIndex(i);
+        this.buffer.put(i, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUnsignedByte(final int index, final short value) throws IndexOutOfBoundsException {
+        setByte(index, (byte) value);
+    }
+
+    @Override
+    public void setUnsignedShort(final int index, final int value) {
+        checkWriteSupport();
+        final int i = this.lowerBoundary + index;
+        checkIndex(i);
+        checkIndex(i + 1);
+        this.buffer.put(i, (byte) (value >> 8));
+        this.buffer.put(i + 1, (byte) value);
+    }
+
+    @Override
+    public void setInt(final int index, final int value) throws IndexOutOfBoundsException {
+        checkWriteSupport();
+        checkIndex(index);
+        checkIndex(index + 3);
+        final int i = this.lowerBoundary + index;
+        this.buffer.put(i, (byte) (value >>> 24));
+        this.buffer.put(i + 1, (byte) (value >>> 16));
+        this.buffer.put(i + 2, (byte) (value >>> 8));
+        this.buffer.put(i + 3, (byte) value);
+    }
+
+    /**
+     * Note: same as {@link ByteBuffer#setUnsignedInt(int, long)}, the value
+     * is written in little endian.
+     */
+    @Override
+    public void setUnsignedInt(final int index, final long value) throws IndexOutOfBoundsException {
+        checkWriteSupport();
+        checkIndex(index);
+        checkIndex(index + 3);
+        final int i = this.lowerBoundary + index;
+        this.buffer.put(i, (byte) value);
+        this.buffer.put(i + 1, (byte) (value >>> 8));
+        this.buffer.put(i + 2, (byte) (value >>> 16));
+        this.buffer.put(i + 3, (byte) (value >>> 24));
+    }
+
+    @Override
+    public void write(final byte b) throws IndexOutOfBoundsException {
+        checkWriteSupport();
+        checkWriterIndex(this.writerIndex);
+        this.buffer.put(this.lowerBoundary + this.writerIndex, b);
+        ++this.writerIndex;
+    }
+
+    @Override
+    public void write(final byte[] bytes) throws IndexOutOfBoundsException {
+        checkWriteSupport();
+        if (!checkWritableBytesSafe(bytes.length)) {
+            throw new IndexOutOfBoundsException("Unable to write the entire String to this buffer. Nothing was written");
+        }
+
+        this.buffer.put(this.writerIndex, bytes, 0, bytes.length);
+        this.writerIndex += bytes.length;
+    }
+
+    /**
+     * Same as {@link #write(byte[])} but for a region of the array, which is
+     * how the stream based buffers copy their bytes into a buffer from a
+     * {@link BufferPool}.
+     */
+    void write(final byte[] bytes, final int offset, final int length) throws IndexOutOfBoundsException {
+        checkWriteSupport();
+        if (!checkWritableBytesSafe(length)) {
+            throw new IndexOutOfBoundsException("Unable to write the entire array to this buffer. Nothing was written");
+        }
+
+        this.buffer.put(this.writerIndex, bytes, offset, length);
+        this.writerIndex += length;
+    }
+
+    @Override
+    public void write(final String s) throws IndexOutOfBoundsException, WriteNotSupportedException,
+    UnsupportedEncodingException {
+        write(s, "UTF-8");
+    }
+
+    @Override
+    public void write(final String s, final String charset) throws IndexOutOfBoundsException,
+    WriteNotSupportedException, UnsupportedEncodingException {
+        write(s.getBytes(charset));
+    }
+
+    @Override
+    public void write(final int value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        checkWriteSupport();
+        if (!checkWritableBytesSafe(4)) {
+            throw new IndexOutOfBoundsException("Unable to write the entire String to this buffer. Nothing was written");
+        }
+        final int index = this.lowerBoundary + this.writerIndex;
+        this.buffer.put(index, (byte) (value >>> 24));
+        this.buffer.put(index + 1, (byte) (value >>> 16));
+        this.buffer.put(index + 2, (byte) (value >>> 8));
+        this.buffer.put(index + 3, (byte) value);
+        this.writerIndex += 4;
+    }
+
+    @Override
+    public void write(final long value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        checkWriteSupport();
+        if (!checkWritableBytesSafe(8)) {
+            throw new IndexOutOfBoundsException("Unable to write the entire String to this buffer. Nothing was written");
+        }
+        final int index = this.lowerBoundary + this.writerIndex;
+        for (int i = 0; i < 8; ++i) {
+            this.buffer.put(index + i, (byte) (value >>> (56 - 8 * i)));
+        }
+        this.writerIndex += 8;
+    }
+
+    @Override
+    public void writeAsString(final int value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        checkWriteSupport();
+        Buffers.writeAsString(this, value);
+    }
+
+    @Override
+    public void writeAsString(final long value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        checkWriteSupport();
+        Buffers.writeAsString(this, value);
+    }
+}
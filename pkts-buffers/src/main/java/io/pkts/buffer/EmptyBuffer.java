@@ -444,6 +444,31 @@ public class EmptyBuffer implements Buffer {
         throw new NumberFormatException("This buffer is empty and therefore cannot be parsed as an integer");
     }
 
+    @Override
+    public int parseToInt(final int start, final int stop) {
+        throw new NumberFormatException("This buffer is empty and therefore cannot be parsed as an integer");
+    }
+
+    @Override
+    public int parseToUnsignedInt(final int start, final int stop) {
+        throw new NumberFormatException("This buffer is empty and therefore cannot be parsed as an integer");
+    }
+
+    @Override
+    public long parseToLong() {
+        throw new NumberFormatException("This buffer is empty and therefore cannot be parsed as a long");
+    }
+
+    @Override
+    public long parseToLong(final int start, final int stop) {
+        throw new NumberFormatException("This buffer is empty and therefore cannot be parsed as a long");
+    }
+
+    @Override
+    public long parseToUnsignedLong(final int start, final int stop) {
+        throw new NumberFormatException("This buffer is empty and therefore cannot be parsed as a long");
+    }
+
     @Override
     public void setUnsignedInt(final int index, final long value) throws IndexOutOfBoundsException {
         throw new IndexOutOfBoundsException(THIS_BUFFER_IS_EMPTY);
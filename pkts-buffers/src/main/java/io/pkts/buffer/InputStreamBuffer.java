@@ -5,11 +5,32 @@ package io.pkts.buffer;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 /**
+ * A buffer reading its bytes off of an {@link InputStream} on demand. The
+ * bytes are kept in fixed size chunks ("rows") and once the reader index
+ * has moved past a chunk, the chunk is dropped, or re-used for the bytes
+ * still to come off the stream, the next time bytes are read through
+ * {@link #readBytes(int)} or {@link #skipBytes(int)}. As long as you keep
+ * reading, the memory used by this buffer therefore stays the same no matter
+ * how long the stream is.
+ *
+ * The catch is that when chunks are dropped, all indices are moved down by
+ * the same amount so that they are relative to the oldest byte still around,
+ * which means that a reader index you got through
+ * {@link #getReaderIndex()} is only good until the next call to one of the
+ * two methods above. The same is true for a mark set through
+ * {@link #markReaderIndex()}, which is moved to the oldest byte around if it
+ * pointed into a dropped chunk.
+ *
  * @author jonas@jonasborjesson.com
  */
 public final class InputStreamBuffer extends AbstractBuffer {
@@ -25,8 +46,22 @@ public final class InputStreamBuffer extends AbstractBuffer {
      */
     private static final int DEFAULT_CAPACITY = 4096;
 
+    /**
+     * The maximum number of dropped chunks to keep around for re-use.
+     */
+    private static final int MAX_RECYCLED_ROWS = 4;
+
     private final List<java.nio.ByteBuffer> storage;
 
+    /**
+     * Chunks that have been handed out as part of a slice. The slice is
+     * still pointing to them so once dropped, they are left to the garbage
+     * collector rather than being re-used.
+     */
+    private final Set<java.nio.ByteBuffer> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private final Deque<java.nio.ByteBuffer> recycled = new ArrayDeque<>();
+
     /**
      * The "local" capacity of each "sub-array".
      */
@@ -62,12 +97,23 @@ public final class InputStreamBuffer extends AbstractBuffer {
         checkIndex(this.lowerBoundary + start);
         checkIndex(this.lowerBoundary + stop - 1);
 
-        // this has to change now that we can have multiple
-        // rows of byte buffers
-        final java.nio.ByteBuffer buf = getWritingRow();
-        final int upperBoundary = this.lowerBoundary + stop;
-        final int writerIndex = upperBoundary;
-        return new ByteBuffer(0, this.lowerBoundary + start, upperBoundary, writerIndex, buf.array());
+        final int first = this.lowerBoundary + start;
+        final int last = this.lowerBoundary + stop - 1;
+        if (first / this.localCapacity == last / this.localCapacity) {
+            // all within the same row so we can share it
+            final java.nio.ByteBuffer row = this.storage.get(first / this.localCapacity);
+            this.shared.add(row);
+            final int lowerBoundary = first % this.localCapacity;
+            final int upperBoundary = lowerBoundary + stop - start;
+            return new ByteBuffer(0, lowerBoundary, upperBoundary, upperBoundary, row.array());
+        }
+
+        final byte[] copy = new byte[stop - start];
+        for (int i = 0; i < copy.length; ++i) {
+            final int index = first + i;
+            copy[i] = this.storage.get(index / this.localCapacity).get(index % this.localCapacity);
+        }
+        return new ByteBuffer(copy);
     }
 
     /**
@@ -100,19 +146,30 @@ public final class InputStreamBuffer extends AbstractBuffer {
 
     /**
      * {@inheritDoc}
-     * 
+     *
      * @throws IOException
      */
     @Override
     public Buffer readBytes(final int length) throws IndexOutOfBoundsException, IOException {
+        return readBytes(length, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @throws IOException
+     */
+    @Override
+    public Buffer readBytes(final int length, final BufferPool pool) throws IndexOutOfBoundsException,
+            IOException {
+        reclaim();
         if (!checkReadableBytesSafe(length)) {
             final int availableBytes = getReadableBytes();
-            final int read = internalReadBytes(length - availableBytes);
+            final int read = readFromStream(length - availableBytes);
             if (read == -1) {
-                // end-of-file
-                return null;
+                throw new IndexOutOfBoundsException("End of stream reached. Wanted " + length + " but only had "
+                        + availableBytes);
             } else if (read + availableBytes < length) {
-                // do something else?
                 throw new IndexOutOfBoundsException("Not enough bytes left in the stream. Wanted " + length
                         + " but only read " + read);
             }
@@ -121,19 +178,75 @@ public final class InputStreamBuffer extends AbstractBuffer {
         // perhaps we should create a composite buffer instead of this
         // copying???
         int index = 0;
-        final byte[] buf = new byte[length];
+        final byte[] buf = pool == null ? new byte[length] : null;
+        final DirectBuffer pooled = pool == null ? null : pool.allocateDirect(length);
         while (index < length) {
             final int spaceLeft = getAvailableLocalReadingSpace();
             final int readAtMost = Math.min(length - index, spaceLeft);
             final int localIndex = getLocalReaderIndex();
 
             final java.nio.ByteBuffer bb = getReadingRow();
-            System.arraycopy(bb.array(), localIndex, buf, index, readAtMost);
+            if (pooled == null) {
+                System.arraycopy(bb.array(), localIndex, buf, index, readAtMost);
+            } else {
+                pooled.write(bb.array(), localIndex, readAtMost);
+            }
             this.readerIndex += readAtMost;
             index += readAtMost;
         }
-        return Buffers.wrap(buf);
+        reclaim();
+        return pooled == null ? Buffers.wrap(buf) : pooled;
+
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void skipBytes(final int length) throws IndexOutOfBoundsException, IOException {
+        reclaim();
+        if (!checkReadableBytesSafe(length)) {
+            final int availableBytes = getReadableBytes();
+            final int read = readFromStream(length - availableBytes);
+            if (read == -1 || read + availableBytes < length) {
+                throw new IndexOutOfBoundsException("Not enough bytes left in the stream. Wanted " + length
+                        + " but only had " + (availableBytes + Math.max(read, 0)));
+            }
+        }
+        this.readerIndex += length;
+        reclaim();
+    }
+
+    /**
+     * Drop all the rows the reader index has moved past and move all the
+     * indices down accordingly. The dropped rows are kept for re-use, unless
+     * a slice is still pointing to them.
+     */
+    private void reclaim() {
+        final int rows = Math.min(this.readerIndex / this.localCapacity, this.storage.size() - 1);
+        if (rows <= 0) {
+            return;
+        }
 
+        for (int i = 0; i < rows; ++i) {
+            final java.nio.ByteBuffer row = this.storage.remove(0);
+            if (!this.shared.remove(row) && this.recycled.size() < MAX_RECYCLED_ROWS) {
+                this.recycled.push(row);
+            }
+        }
+
+        final int shift = rows * this.localCapacity;
+        this.readerIndex -= shift;
+        this.writerIndex -= shift;
+        this.upperBoundary -= shift;
+        this.markedReaderIndex = Math.max(this.markedReaderIndex - shift, 0);
+    }
+
+    /**
+     * @return the number of rows currently held by this buffer.
+     */
+    int getRowCount() {
+        return this.storage.size();
     }
 
     /**
@@ -206,7 +319,9 @@ public final class InputStreamBuffer extends AbstractBuffer {
     private java.nio.ByteBuffer getWritingRow() {
         final int row = this.writerIndex / this.localCapacity;
         if (row >= this.storage.size()) {
-            final java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(this.localCapacity);
+            final java.nio.ByteBuffer recycled = this.recycled.poll();
+            final java.nio.ByteBuffer buf = recycled != null ? recycled
+                    : java.nio.ByteBuffer.allocate(this.localCapacity);
             this.storage.add(buf);
             return buf;
         }
@@ -230,7 +345,9 @@ public final class InputStreamBuffer extends AbstractBuffer {
      * 
      * @param length
      *            the length we wish to read
-     * @return the actual amount of bytes we read
+     * @return the actual amount of bytes we read, which is only ever less
+     *         than asked for if we hit the end of the stream, or -1 if we
+     *         were already at the end of the stream.
      * @throws IOException
      *             in case anything goes wrong while reading
      */
@@ -253,7 +370,7 @@ public final class InputStreamBuffer extends AbstractBuffer {
                 total += actual;
             }
         }
-        return total;
+        return total == 0 && actual == -1 ? -1 : total;
     }
 
     /**
@@ -291,17 +408,22 @@ public final class InputStreamBuffer extends AbstractBuffer {
      */
     @Override
     public boolean isEmpty() {
-        // TODO Auto-generated method stub
-        return false;
+        return !hasReadableBytes();
     }
 
     /**
      * {@inheritDoc}
+     *
+     * Only the readable bytes that have already been read off of the stream
+     * are returned, nothing more is read in order to produce the array.
      */
     @Override
     public byte[] getArray() {
-        // TODO Auto-generated method stub
-        return null;
+        final byte[] array = new byte[getReadableBytes()];
+        for (int i = 0; i < array.length; ++i) {
+            array[i] = get(this.readerIndex + i);
+        }
+        return array;
     }
 
     /**
@@ -309,10 +431,18 @@ public final class InputStreamBuffer extends AbstractBuffer {
      */
     @Override
     public byte getByte(final int index) throws IndexOutOfBoundsException, IOException {
-        checkIndex(this.lowerBoundary + index);
-        final java.nio.ByteBuffer bb = getWritingRow();
-        // this has to be localized as well
-        return bb.get(this.lowerBoundary + index);
+        return get(index);
+    }
+
+    /**
+     * Same as {@link #getByte(int)} but without the {@link IOException},
+     * which {@link #checkIndex(int)} turns into an
+     * {@link IndexOutOfBoundsException} anyway.
+     */
+    private byte get(final int index) throws IndexOutOfBoundsException {
+        final int i = this.lowerBoundary + index;
+        checkIndex(i);
+        return this.storage.get(i / this.localCapacity).get(i % this.localCapacity);
     }
 
     /**
@@ -352,8 +482,7 @@ public final class InputStreamBuffer extends AbstractBuffer {
      */
     @Override
     public long readUnsignedInt() throws IndexOutOfBoundsException {
-        // TODO Auto-generated method stub
-        return 0;
+        return readInt() & 0xFFFFFFFFL;
     }
 
     /**
@@ -361,8 +490,9 @@ public final class InputStreamBuffer extends AbstractBuffer {
      */
     @Override
     public int readInt() throws IndexOutOfBoundsException {
-        // TODO Auto-generated method stub
-        return 0;
+        final int value = getInt(this.readerIndex);
+        this.readerIndex += 4;
+        return value;
     }
 
     /**
@@ -370,8 +500,10 @@ public final class InputStreamBuffer extends AbstractBuffer {
      */
     @Override
     public int getInt(final int index) throws IndexOutOfBoundsException {
-        // TODO Auto-generated method stub
-        return 0;
+        // make sure all four bytes are off the stream before we start
+        get(index + 3);
+        return (get(index) & 0xff) << 24 | (get(index + 1) & 0xff) << 16 | (get(index + 2) & 0xff) << 8
+                | get(index + 3) & 0xff;
     }
 
     /**
@@ -379,8 +511,8 @@ public final class InputStreamBuffer extends AbstractBuffer {
      */
     @Override
     public short getShort(final int index) throws IndexOutOfBoundsException {
-        // TODO Auto-generated method stub
-        return 0;
+        get(index + 1);
+        return (short) ((get(index) & 0xff) << 8 | get(index + 1) & 0xff);
     }
 
     /**
@@ -388,8 +520,7 @@ public final class InputStreamBuffer extends AbstractBuffer {
      */
     @Override
     public int readUnsignedShort() throws IndexOutOfBoundsException {
-        // TODO Auto-generated method stub
-        return 0;
+        return readShort() & 0xFFFF;
     }
 
     /**
@@ -397,8 +528,7 @@ public final class InputStreamBuffer extends AbstractBuffer {
      */
     @Override
     public int getUnsignedShort(final int index) throws IndexOutOfBoundsException {
-        // TODO Auto-generated method stub
-        return 0;
+        return getShort(index) & 0xFFFF;
     }
 
     /**
@@ -406,8 +536,9 @@ public final class InputStreamBuffer extends AbstractBuffer {
      */
     @Override
     public short readShort() throws IndexOutOfBoundsException {
-        // TODO Auto-generated method stub
-        return 0;
+        final short value = getShort(this.readerIndex);
+        this.readerIndex += 2;
+        return value;
     }
 
     /**
@@ -415,7 +546,7 @@ public final class InputStreamBuffer extends AbstractBuffer {
      */
     @Override
     public long getUnsignedInt(final int index) throws IndexOutOfBoundsException {
-        throw new RuntimeException(NOT_IMPLEMENTED_JUST_YET);
+        return getInt(index) & 0xFFFFFFFFL;
     }
 
     /**
@@ -423,8 +554,7 @@ public final class InputStreamBuffer extends AbstractBuffer {
      */
     @Override
     public short getUnsignedByte(final int index) throws IndexOutOfBoundsException {
-        // TODO Auto-generated method stub
-        return 0;
+        return (short) (get(index) & 0xFF);
     }
 
     /**
@@ -432,8 +562,7 @@ public final class InputStreamBuffer extends AbstractBuffer {
      */
     @Override
     public String dumpAsHex() {
-        // TODO Auto-generated method stub
-        return null;
+        return slice().dumpAsHex();
     }
 
     /**
@@ -441,22 +570,29 @@ public final class InputStreamBuffer extends AbstractBuffer {
      */
     @Override
     public void setByte(final int index, final byte value) throws IndexOutOfBoundsException {
-        // TODO Auto-generated method stub
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_AN_INPUT_STREAM_BUFFER);
     }
 
     @Override
     public void setUnsignedByte(final int index, final short value) throws IndexOutOfBoundsException {
-        // TODO Auto-generated method stub
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_AN_INPUT_STREAM_BUFFER);
     }
 
     @Override
     public void setUnsignedShort(final int index, final int value) throws IndexOutOfBoundsException {
-        // TODO Auto-generated method stub
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_AN_INPUT_STREAM_BUFFER);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The clone is a copy of the readable bytes that have already been read
+     * off of the stream.
+     */
     @Override
     public Buffer clone() {
-        return null;
+        final byte[] array = getArray();
+        return array.length == 0 ? Buffers.EMPTY_BUFFER : Buffers.wrap(array);
     }
 
     /**
@@ -572,8 +708,7 @@ public final class InputStreamBuffer extends AbstractBuffer {
 
     @Override
     public void setUnsignedInt(final int index, final long value) throws IndexOutOfBoundsException {
-        // TODO Auto-generated method stub
-
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_AN_INPUT_STREAM_BUFFER);
     }
 
 }
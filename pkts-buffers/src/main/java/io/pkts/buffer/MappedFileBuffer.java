@@ -0,0 +1,658 @@
+package io.pkts.buffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only buffer over a file that is memory mapped through
+ * {@link FileChannel#map(FileChannel.MapMode, long, long)}.
+ *
+ * Every {@link Buffer} returned by {@link #readBytes(int)} (and the various
+ * slice methods) is a {@link DirectBuffer} pointing straight into the mapped
+ * region so reading e.g. a pcap record is a matter of creating a small view
+ * object, no bytes are copied.
+ *
+ * Since a single mapping can't be larger than 2GB, and since mapping a huge
+ * file all at once is a waste of address space, the file is mapped in windows
+ * of (by default) {@link #DEFAULT_WINDOW_SIZE} bytes. Whenever a read would
+ * cross the end of the current window, a new window is mapped starting at
+ * the current position. Buffers that were handed out earlier keep a
+ * reference to their own window and therefore stay valid until they are
+ * garbage collected.
+ *
+ * Just like the {@link BoundedInputStreamBuffer} this is a "reading" buffer,
+ * i.e. it is meant to be consumed from the start to the end and a lot of the
+ * more exotic operations of the {@link Buffer} interface are not supported.
+ * Since files can be larger than what the int based reader index of the
+ * {@link Buffer} interface can represent, use {@link #getPosition()} and
+ * {@link #setPosition(long)} when you need to know or move the position
+ * within the file.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class MappedFileBuffer extends BaseBuffer implements Closeable {
+
+    private static final String CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER = "Cannot write to a MappedFileBuffer";
+
+    /**
+     * The default size of each mapped window.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+
+    /**
+     * The first byte in the file that is visible to this buffer.
+     */
+    private final long start;
+
+    /**
+     * The end (exclusive) of the region of the file that is visible to this
+     * buffer.
+     */
+    private final long end;
+
+    private final int windowSize;
+
+    /**
+     * Whether or not we own the channel and therefore should close it when
+     * this buffer is closed.
+     */
+    private final boolean ownsChannel;
+
+    /**
+     * The absolute position within the file from where we will continue
+     * reading.
+     */
+    private long readerIndex;
+
+    private long markedReaderIndex;
+
+    /**
+     * The currently mapped window and where in the file it starts.
+     */
+    private java.nio.ByteBuffer window;
+    private long windowStart;
+    private int windowLength;
+
+    /**
+     * Map the entire file. This buffer takes ownership of the channel, i.e.
+     * closing this buffer will close the channel.
+     *
+     * @param channel
+     * @throws IOException
+     */
+    public MappedFileBuffer(final FileChannel channel) throws IOException {
+        this(channel, 0, channel.size(), DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     *
+     * @param channel
+     *            the channel to map. This buffer takes ownership of the
+     *            channel, i.e. closing this buffer will close the channel.
+     * @param start
+     *            the first byte of the file that is visible to this buffer.
+     * @param end
+     *            the end (exclusive) of the visible region.
+     * @param windowSize
+     *            the size of each mapped window. Must be larger than the
+     *            largest single read (for a pcap, the snap length) or the
+     *            window will grow to accommodate that read.
+     */
+    public MappedFileBuffer(final FileChannel channel, final long start, final long end, final int windowSize) {
+        this(channel, start, end, windowSize, true);
+    }
+
+    private MappedFileBuffer(final FileChannel channel, final long start, final long end, final int windowSize,
+            final boolean ownsChannel) {
+        if (channel == null) {
+            throw new IllegalArgumentException("The channel cannot be null");
+        }
+        if (start < 0 || start > end) {
+            throw new IllegalArgumentException("Invalid region [" + start + ", " + end + ")");
+        }
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("The window size must be greater than zero");
+        }
+        this.channel = channel;
+        this.start = start;
+        this.end = end;
+        this.windowSize = windowSize;
+        this.ownsChannel = ownsChannel;
+        this.readerIndex = start;
+        this.markedReaderIndex = start;
+    }
+
+    private static int assertSafeInt(final long value) {
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            throw new IllegalStateException("This operation is only supported on regions less than 2gb. Value=" + value);
+        }
+
+        return (int) value;
+    }
+
+    /**
+     * Make sure that the bytes between <code>position</code> and
+     * <code>position + length</code> are within the current window and if
+     * not, map a new window starting at <code>position</code>.
+     *
+     * @return the offset of <code>position</code> within the current window.
+     */
+    private int ensureMapped(final long position, final int length) {
+        if (position < this.start || position + length > this.end) {
+            throw new IndexOutOfBoundsException("Not enough bytes left in the file. Wanted " + length
+                    + " bytes at position " + position + " but the file ends at " + this.end);
+        }
+
+        if (this.window == null || position < this.windowStart
+                || position + length > this.windowStart + this.windowLength) {
+            final long size = Math.min(Math.max(this.windowSize, length), this.end - position);
+            try {
+                this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            } catch (final IOException e) {
+                throw new BufferException("Unable to map the region starting at " + position, e);
+            }
+            this.windowStart = position;
+            this.windowLength = (int) size;
+        }
+
+        return (int) (position - this.windowStart);
+    }
+
+    /**
+     * The absolute position within the file from where the next byte will be
+     * read.
+     */
+    public long getPosition() {
+        return this.readerIndex;
+    }
+
+    /**
+     * Move to an absolute position within the file. This is how you would
+     * skip e.g. the payload of a pcap record without ever touching it.
+     *
+     * @param position
+     * @throws IndexOutOfBoundsException
+     *             in case the position is outside of the region visible to
+     *             this buffer.
+     */
+    public void setPosition(final long position) throws IndexOutOfBoundsException {
+        if (position < this.start || position > this.end) {
+            throw new IndexOutOfBoundsException("Position " + position + " is outside of [" + this.start + ", "
+                    + this.end + "]");
+        }
+        this.readerIndex = position;
+    }
+
+    /**
+     * The first byte in the file that is visible to this buffer.
+     */
+    public long getStart() {
+        return this.start;
+    }
+
+    /**
+     * The end (exclusive) of the region of the file visible to this buffer.
+     */
+    public long getEnd() {
+        return this.end;
+    }
+
+    /**
+     * Create a new {@link MappedFileBuffer} over the region
+     * <code>[start, end)</code> of the same file. The new buffer has its own
+     * reader index and its own mapped window so it is safe to hand it over to
+     * another thread. It shares the underlying channel with this buffer but
+     * does not own it, i.e. closing the segment will not close the channel.
+     *
+     * @param start
+     *            the absolute position of the first byte of the segment.
+     * @param end
+     *            the absolute end (exclusive) of the segment.
+     * @return
+     */
+    public MappedFileBuffer segment(final long start, final long end) {
+        if (start < this.start || end > this.end) {
+            throw new IndexOutOfBoundsException("Segment [" + start + ", " + end + ") is outside of [" + this.start
+                    + ", " + this.end + ")");
+        }
+        return new MappedFileBuffer(this.channel, start, end, this.windowSize, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer readBytes(final int length) throws IndexOutOfBoundsException {
+        if (length == 0) {
+            return Buffers.EMPTY_BUFFER;
+        }
+
+        final int offset = ensureMapped(this.readerIndex, length);
+        this.readerIndex += length;
+        return new DirectBuffer(0, offset, offset + length, this.window);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Nothing is mapped when skipping so this is as cheap as moving the
+     * position.
+     */
+    @Override
+    public void skipBytes(final int length) throws IndexOutOfBoundsException {
+        setPosition(this.readerIndex + length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte readByte() throws IndexOutOfBoundsException {
+        final byte b = getByte(this.readerIndex);
+        ++this.readerIndex;
+        return b;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short readUnsignedByte() throws IndexOutOfBoundsException {
+        return (short) (readByte() & 0xFF);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte peekByte() throws IndexOutOfBoundsException {
+        return getByte(this.readerIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getByte(final int index) throws IndexOutOfBoundsException {
+        return getByte(this.start + index);
+    }
+
+    private byte getByte(final long position) throws IndexOutOfBoundsException {
+        final int offset = ensureMapped(position, 1);
+        return this.window.get(offset);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer slice(final int start, final int stop) {
+        if (start == stop) {
+            return Buffers.EMPTY_BUFFER;
+        }
+        final int length = stop - start;
+        final int offset = ensureMapped(this.start + start, length);
+        return new DirectBuffer(0, offset, offset + length, this.window);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer slice(final int stop) {
+        return slice(getReaderIndex(), stop);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer slice() {
+        if (!hasReadableBytes()) {
+            return Buffers.EMPTY_BUFFER;
+        }
+        return slice(getReaderIndex(), assertSafeInt(this.end - this.start));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getReadableBytes() {
+        return (int) Math.min(this.end - this.readerIndex, Integer.MAX_VALUE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasReadableBytes() {
+        return this.readerIndex < this.end;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return !hasReadableBytes();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getReaderIndex() {
+        return assertSafeInt(this.readerIndex - this.start);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setReaderIndex(final int index) {
+        setPosition(this.start + index);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void markReaderIndex() {
+        this.markedReaderIndex = this.readerIndex;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetReaderIndex() {
+        this.readerIndex = this.markedReaderIndex;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int capacity() {
+        return assertSafeInt(this.end - this.start);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long readUnsignedInt() throws IndexOutOfBoundsException {
+        return readInt() & 0xFFFFFFFFL;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int readInt() throws IndexOutOfBoundsException {
+        final int offset = ensureMapped(this.readerIndex, 4);
+        this.readerIndex += 4;
+        return this.window.getInt(offset);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short readShort() throws IndexOutOfBoundsException {
+        final int offset = ensureMapped(this.readerIndex, 2);
+        this.readerIndex += 2;
+        return this.window.getShort(offset);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int readUnsignedShort() throws IndexOutOfBoundsException {
+        return readShort() & 0xFFFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInt(final int index) throws IndexOutOfBoundsException {
+        return this.window.getInt(ensureMapped(this.start + index, 4));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short getShort(final int index) throws IndexOutOfBoundsException {
+        return this.window.getShort(ensureMapped(this.start + index, 2));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getUnsignedShort(final int index) throws IndexOutOfBoundsException {
+        return getShort(index) & 0xFFFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getUnsignedInt(final int index) throws IndexOutOfBoundsException {
+        return getInt(index) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short getUnsignedByte(final int index) throws IndexOutOfBoundsException {
+        return (short) (getByte(index) & 0xFF);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] getArray() {
+        final int length = getReadableBytes();
+        final byte[] array = new byte[length];
+        getBytes(array);
+        return array;
+    }
+
+    @Override
+    public void getBytes(final byte[] dst) throws IndexOutOfBoundsException {
+        final int length = Math.min(dst.length, getReadableBytes());
+        if (length > 0) {
+            final int offset = ensureMapped(this.readerIndex, length);
+            this.window.get(offset, dst, 0, length);
+        }
+    }
+
+    @Override
+    public void getBytes(final Buffer dst) {
+        getBytes(getReaderIndex(), dst);
+    }
+
+    @Override
+    public void getBytes(final int index, final Buffer dst) throws IndexOutOfBoundsException {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Index less than zero");
+        }
+        final long stop = Math.min(this.start + index + dst.getWritableBytes(), this.end);
+        for (long i = this.start + index; i < stop; ++i) {
+            dst.write(getByte(i));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String dumpAsHex() {
+        return clone().dumpAsHex();
+    }
+
+    /**
+     * Copies the readable bytes onto the heap so the clone is independent of
+     * both the mapping and the file.
+     */
+    @Override
+    public Buffer clone() {
+        final byte[] array = getArray();
+        return array.length == 0 ? Buffers.EMPTY_BUFFER : Buffers.wrap(array);
+    }
+
+    /**
+     * There is no backing array so the "raw" array is the copy returned by
+     * {@link #getArray()}, which starts at the reader index.
+     */
+    @Override
+    public int getLowerBoundary() {
+        return 0;
+    }
+
+    /**
+     * See {@link #getLowerBoundary()}.
+     */
+    @Override
+    public int getUpperBoundary() {
+        return getReadableBytes();
+    }
+
+    /**
+     * Closes the underlying {@link FileChannel}. Any buffer that has already
+     * been handed out stays valid since a mapping, once established, doesn't
+     * depend on the channel that created it.
+     *
+     * Closing a {@link #segment(long, long)} does not close the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        this.window = null;
+        if (this.ownsChannel) {
+            this.channel.close();
+        }
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        return this == other;
+    }
+
+    @Override
+    public boolean equalsIgnoreCase(final Object other) {
+        return this == other;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    @Override
+    public String toString() {
+        return "MappedFileBuffer[position=" + this.readerIndex + ", start=" + this.start + ", end=" + this.end + "]";
+    }
+
+    @Override
+    public int getWriterIndex() {
+        return capacity();
+    }
+
+    @Override
+    public void setWriterIndex(final int index) {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public int getWritableBytes() {
+        return 0;
+    }
+
+    @Override
+    public boolean hasWritableBytes() {
+        return false;
+    }
+
+    @Override
+    public boolean hasWriteSupport() {
+        return false;
+    }
+
+    @Override
+    public void setByte(final int index, final byte value) throws IndexOutOfBoundsException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void setUnsignedByte(final int index, final short value) throws IndexOutOfBoundsException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void setUnsignedShort(final int index, final int value) throws IndexOutOfBoundsException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void setInt(final int index, final int value) throws IndexOutOfBoundsException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void setUnsignedInt(final int index, final long value) throws IndexOutOfBoundsException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void write(final byte b) throws IndexOutOfBoundsException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void write(final byte[] bytes) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void write(final int value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void write(final long value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void write(final String s) throws IndexOutOfBoundsException, WriteNotSupportedException,
+            UnsupportedEncodingException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void write(final String s, final String charset) throws IndexOutOfBoundsException,
+            WriteNotSupportedException, UnsupportedEncodingException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void writeAsString(final int value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void writeAsString(final long value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+}
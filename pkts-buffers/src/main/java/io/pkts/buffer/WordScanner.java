@@ -0,0 +1,116 @@
+package io.pkts.buffer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Helper for searching through a byte-array eight bytes at a time, using
+ * the "SWAR" (SIMD within a register) trick of loading a long-word and
+ * finding the bytes of interest with a few arithmetic operations instead of
+ * comparing each byte on its own.
+ *
+ * The words are read as little-endian so that the first matching byte in
+ * the array always is the lowest matching byte in the word.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+final class WordScanner {
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    /**
+     * Above this many bytes to look for it is cheaper to just go through
+     * the array one byte at a time.
+     */
+    private static final int MAX_WORD_BYTES = 4;
+
+    private WordScanner() {
+        // left empty intentionally
+    }
+
+    /**
+     * Find the first occurrence of the given byte within the array.
+     *
+     * @param array
+     * @param from the index to start looking at (inclusive)
+     * @param to the index to stop looking at (exclusive)
+     * @param b the byte to look for
+     * @return the index of the byte or -1 if it wasn't found
+     */
+    static int indexOf(final byte[] array, final int from, final int to, final byte b) {
+        final long pattern = repeat(b);
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            final long matches = zeroBytes((long) LONGS.get(array, i) ^ pattern);
+            if (matches != 0) {
+                return i + (Long.numberOfTrailingZeros(matches) >>> 3);
+            }
+        }
+
+        for (; i < to; ++i) {
+            if (array[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first occurrence of either one of the given bytes within the
+     * array.
+     *
+     * @param array
+     * @param from the index to start looking at (inclusive)
+     * @param to the index to stop looking at (exclusive)
+     * @param bytes the bytes to look for
+     * @return the index of the first matching byte or -1 if none was found
+     */
+    static int indexOfAny(final byte[] array, final int from, final int to, final byte... bytes) {
+        if (bytes.length == 1) {
+            return indexOf(array, from, to, bytes[0]);
+        }
+
+        int i = from;
+        if (bytes.length <= MAX_WORD_BYTES) {
+            for (; i + Long.BYTES <= to; i += Long.BYTES) {
+                final long word = (long) LONGS.get(array, i);
+                long matches = 0;
+                for (final byte b : bytes) {
+                    matches |= zeroBytes(word ^ repeat(b));
+                }
+                if (matches != 0) {
+                    return i + (Long.numberOfTrailingZeros(matches) >>> 3);
+                }
+            }
+        }
+
+        for (; i < to; ++i) {
+            if (BaseBuffer.isByteInArray(array[i], bytes)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a word with the given byte in every position
+     */
+    private static long repeat(final byte b) {
+        return (b & 0xFFL) * ONES;
+    }
+
+    /**
+     * Mark every zero byte of the word by setting its high bit. Bytes above
+     * the lowest zero byte may be falsely marked due to the borrow but the
+     * lowest marked byte is always correct, which is all we are after.
+     */
+    private static long zeroBytes(final long word) {
+        return (word - ONES) & ~word & HIGHS;
+    }
+
+}
@@ -173,6 +173,24 @@ public abstract class AbstractBufferTest {
         assertThat(buffer.indexOf((byte) 'o'), is(17));
     }
 
+    @Test
+    public void testSkipBytes() throws Exception {
+        final Buffer buffer = createBuffer("hello world ena goa grejor".getBytes());
+        buffer.skipBytes(0);
+        assertThat(buffer.readBytes(5).toString(), is("hello"));
+        buffer.skipBytes(7);
+        assertThat(buffer.readBytes(3).toString(), is("ena"));
+        buffer.skipBytes(11);
+        assertThat(buffer.hasReadableBytes(), is(false));
+
+        try {
+            buffer.skipBytes(1);
+            fail("Expected an IndexOutOfBoundsException");
+        } catch (final IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
     @Test
     public void testReadUntil2() throws Exception {
         Buffer buffer = createBuffer("this is a somewhat long string".getBytes());
@@ -479,6 +497,70 @@ public abstract class AbstractBufferTest {
         assertThat(b3.getByte(b3.capacity() - 1), is((byte) 69));
     }
 
+    /**
+     * Parsing a range of the buffer must respect the overflow boundaries of
+     * int and long respectively, both signed and unsigned.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testParseRange() throws Exception {
+        final Buffer buffer = createBuffer("cseq:2147483647:-2147483648:4294967295:9223372036854775807:x");
+        assertThat(buffer.parseToInt(5, 15), is(Integer.MAX_VALUE));
+        assertThat(buffer.parseToInt(16, 27), is(Integer.MIN_VALUE));
+        assertThat(buffer.parseToUnsignedInt(28, 38), is(-1));
+        assertThat(buffer.parseToLong(28, 38), is(4294967295L));
+        assertThat(buffer.parseToLong(39, 58), is(Long.MAX_VALUE));
+        assertThat(buffer.parseToUnsignedLong(39, 58), is(Long.MAX_VALUE));
+        assertThat(buffer.parseToInt(5, 6), is(2));
+
+        // the reader index has nothing to do with it
+        buffer.readBytes(5);
+        assertThat(buffer.parseToInt(5, 15), is(Integer.MAX_VALUE));
+
+        assertParseRangeBadInput(buffer, 28, 38, false); // too large for an int
+        assertParseRangeBadInput(buffer, 16, 27, true); // unsigned doesn't accept a sign
+        assertParseRangeBadInput(buffer, 5, 5, false); // empty
+        assertParseRangeBadInput(buffer, 16, 17, false); // only a sign
+        assertParseRangeBadInput(buffer, 4, 15, false); // not a digit
+        assertParseRangeBadInput(buffer, 58, 60, false);
+
+        assertThat(createBuffer("-9223372036854775808").parseToLong(0, 20), is(Long.MIN_VALUE));
+        assertThat(createBuffer("18446744073709551615").parseToUnsignedLong(0, 20), is(-1L));
+        assertParseLongBadInput("9223372036854775808");
+        assertParseLongBadInput("-9223372036854775809");
+
+        try {
+            createBuffer("18446744073709551616").parseToUnsignedLong(0, 20);
+            fail("Expected a NumberFormatException");
+        } catch (final NumberFormatException e) {
+            // expected
+        }
+    }
+
+    private static void assertParseRangeBadInput(final Buffer buffer, final int start, final int stop,
+            final boolean unsigned) throws IOException {
+        try {
+            if (unsigned) {
+                buffer.parseToUnsignedInt(start, stop);
+            } else {
+                buffer.parseToInt(start, stop);
+            }
+            fail("Expected a NumberFormatException");
+        } catch (final NumberFormatException e) {
+            // expected
+        }
+    }
+
+    private void assertParseLongBadInput(final String badNumber) throws IOException {
+        try {
+            createBuffer(badNumber).parseToLong(0, badNumber.length());
+            fail("Expected a NumberFormatException");
+        } catch (final NumberFormatException e) {
+            // expected
+        }
+    }
+
     /**
      * Test to make sure that it is possible to mark the reader index, continue
      * reading and then reset the buffer and as such, continue from where we
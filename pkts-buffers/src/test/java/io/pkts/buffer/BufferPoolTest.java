@@ -0,0 +1,108 @@
+package io.pkts.buffer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class BufferPoolTest {
+
+    @Test
+    public void testAllocate() throws Exception {
+        final BufferPool pool = new BufferPool();
+        final Buffer buffer = pool.allocate(100);
+        assertThat(buffer.capacity(), is(100));
+        assertThat(buffer.getReadableBytes(), is(0));
+        assertThat(buffer.getWritableBytes(), is(100));
+        assertThat(buffer.hasWriteSupport(), is(true));
+
+        buffer.write("hello world");
+        assertThat(buffer.readBytes(5).toString(), is("hello"));
+        assertThat(buffer.toString(), is(" world"));
+    }
+
+    /**
+     * A released buffer should be handed out again for any request within
+     * the same size class, but never twice even if released twice.
+     */
+    @Test
+    public void testRelease() throws Exception {
+        final BufferPool pool = new BufferPool();
+        final Buffer buffer = pool.allocate(100);
+        buffer.write("hello");
+        buffer.readBytes(2).release();
+        assertThat(pool.getIdleCount(), is(0));
+
+        buffer.release();
+        buffer.release();
+        assertThat(pool.getIdleCount(), is(1));
+
+        // a different size class
+        pool.allocate(129).release();
+        assertThat(pool.getIdleCount(), is(2));
+
+        final Buffer again = pool.allocate(65);
+        assertThat(again.capacity(), is(65));
+        assertThat(again.getReadableBytes(), is(0));
+        assertThat(pool.getIdleCount(), is(1));
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        final BufferPool pool = new BufferPool(1000, 2);
+        assertThat(pool.getMaxBufferSize(), is(1024));
+
+        // too large to ever go back into the pool
+        pool.allocate(1025).release();
+        assertThat(pool.getIdleCount(), is(0));
+
+        final Buffer[] buffers = { pool.allocate(1), pool.allocate(2), pool.allocate(3), pool.allocate(0) };
+        for (final Buffer buffer : buffers) {
+            buffer.release();
+        }
+        assertThat(pool.getIdleCount(), is(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooSmallMaxBufferSize() throws Exception {
+        new BufferPool(BufferPool.MIN_BUFFER_SIZE - 1, 10);
+    }
+
+    /**
+     * Buffers reading off of a stream copy the bytes into a buffer from the
+     * pool, everyone else just slices themselves as usual.
+     */
+    @Test
+    public void testReadBytesIntoPool() throws Exception {
+        final BufferPool pool = new BufferPool();
+        final byte[] bytes = "hello world ena goa grejor".getBytes();
+
+        final Buffer[] sources = { new InputStreamBuffer(5, new ByteArrayInputStream(bytes)),
+                new BoundedInputStreamBuffer(16, new ByteArrayInputStream(bytes)), Buffers.wrap(bytes) };
+        for (final Buffer source : sources) {
+            final Buffer hello = source.readBytes(5, pool);
+            source.readBytes(1);
+            final Buffer world = source.readBytes(5, pool);
+            assertThat(hello.toString(), is("hello"));
+            assertThat(world.toString(), is("world"));
+            hello.release();
+            world.release();
+        }
+        assertThat(pool.getIdleCount(), is(2));
+    }
+
+    @Test
+    public void testCreateDirectBuffer() throws Exception {
+        final Buffer buffer = Buffers.createDirectBuffer(10);
+        buffer.write("hello");
+        assertThat(buffer.toString(), is("hello"));
+        assertThat(buffer.getWritableBytes(), is(5));
+        buffer.release();
+    }
+
+}
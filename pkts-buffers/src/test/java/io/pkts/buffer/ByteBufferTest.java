@@ -8,9 +8,14 @@ import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -56,6 +61,23 @@ public class ByteBufferTest extends AbstractBufferTest {
         assertThat(buffer.toString(), is("0 10 100 9712"));
     }
 
+    @Test
+    public void testWriteMinAndMaxValuesAsString() throws Exception {
+        final Buffer buffer = Buffers.createBuffer(100);
+        buffer.writeAsString(Integer.MIN_VALUE);
+        buffer.write((byte) ' ');
+        buffer.writeAsString(Integer.MAX_VALUE);
+        buffer.write((byte) ' ');
+        buffer.writeAsString(Long.MIN_VALUE);
+        buffer.write((byte) ' ');
+        buffer.writeAsString(Long.MAX_VALUE);
+        assertThat(buffer.toString(), is(Integer.MIN_VALUE + " " + Integer.MAX_VALUE + " " + Long.MIN_VALUE + " "
+                + Long.MAX_VALUE));
+        assertThat(Buffers.wrap(Integer.MIN_VALUE).toString(), is(Integer.toString(Integer.MIN_VALUE)));
+        assertThat(Buffers.wrap(Long.MIN_VALUE).toString(), is(Long.toString(Long.MIN_VALUE)));
+        assertThat(Buffers.wrap(Long.MIN_VALUE).parseToLong(), is(Long.MIN_VALUE));
+    }
+
     /**
      * 
      * @throws Exception
@@ -248,6 +270,14 @@ public class ByteBufferTest extends AbstractBufferTest {
         final Buffer bufB = createBuffer(b);
         assertThat(bufA.equalsIgnoreCase(bufB), is(equals));
         assertThat(bufB.equalsIgnoreCase(bufA), is(equals));
+        if (equals) {
+            assertThat(bufA.hashCodeIgnoreCase(), is(bufB.hashCodeIgnoreCase()));
+        }
+
+        // the generic version, which e.g. the composite buffer is using,
+        // must of course give the same hash code.
+        final Buffer composite = Buffers.wrap(Buffers.wrap(a.substring(0, 1)), Buffers.wrap(a.substring(1)));
+        assertThat(composite.hashCodeIgnoreCase(), is(bufA.hashCodeIgnoreCase()));
     }
 
     private void assertBufferEquality(final String a, final String b, final boolean equals) {
@@ -682,6 +712,70 @@ public class ByteBufferTest extends AbstractBufferTest {
 
     }
 
+    /**
+     * The {@link ByteBuffer} scans its array a word at a time while e.g. the
+     * {@link InputStreamBuffer} goes through the generic byte by byte
+     * implementation. Make sure they always agree, which is mainly about
+     * finding all the odd combinations of CR and LF.
+     */
+    @Test
+    public void testScanningSameAsByteByByte() throws Exception {
+        final byte[] alphabet = { 'a', 'b', '\r', '\n', '\r', '\n' };
+        final Random random = new Random(1234);
+        for (int i = 0; i < 2000; ++i) {
+            final byte[] content = new byte[1 + random.nextInt(40)];
+            for (int j = 0; j < content.length; ++j) {
+                content[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+
+            assertThat(readLines(createSlice(content)), is(readLines(createStreamBuffer(content))));
+            assertThat(readCRLFs(createSlice(content), false), is(readCRLFs(createStreamBuffer(content), false)));
+            assertThat(readCRLFs(createSlice(content), true), is(readCRLFs(createStreamBuffer(content), true)));
+
+            final int maxBytes = 1 + random.nextInt(content.length);
+            final Buffer slice = createSlice(content);
+            final Buffer stream = createStreamBuffer(content);
+            assertThat(slice.indexOf(maxBytes, (byte) 'b', (byte) '\n') - slice.getReaderIndex(),
+                    is(stream.indexOf(maxBytes, (byte) 'b', (byte) '\n') - stream.getReaderIndex()));
+        }
+    }
+
+    /**
+     * Slice the content out of a larger array so that neither end of it is
+     * aligned with the underlying array.
+     */
+    private static Buffer createSlice(final byte[] content) {
+        final byte[] array = new byte[content.length + 10];
+        Arrays.fill(array, (byte) '\r');
+        System.arraycopy(content, 0, array, 3, content.length);
+        return Buffers.wrap(array).slice(3, 3 + content.length);
+    }
+
+    private static Buffer createStreamBuffer(final byte[] content) {
+        return new InputStreamBuffer(new ByteArrayInputStream(content));
+    }
+
+    private static List<String> readLines(final Buffer buffer) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        Buffer line = buffer.readLine();
+        while (line != null) {
+            lines.add(new String(line.getArray()));
+            line = buffer.readLine();
+        }
+        return lines;
+    }
+
+    private static List<String> readCRLFs(final Buffer buffer, final boolean isDouble) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        Buffer line = isDouble ? buffer.readUntilDoubleCRLF() : buffer.readUntilSingleCRLF();
+        while (line != null) {
+            lines.add(new String(line.getArray()));
+            line = isDouble ? buffer.readUntilDoubleCRLF() : buffer.readUntilSingleCRLF();
+        }
+        lines.add("remaining " + buffer.getReadableBytes());
+        return lines;
+    }
+
     @Override
     public Buffer createBuffer(final byte[] array) {
         return new ByteBuffer(array);
@@ -0,0 +1,60 @@
+package io.pkts.buffer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class CaseInsensitiveBufferMapTest {
+
+    @Test
+    public void testGet() throws Exception {
+        final Map<Buffer, String> map = new CaseInsensitiveBufferMap<>();
+        map.put(Buffers.wrap("Call-ID"), "call-id");
+        map.put(Buffers.wrap("Via"), "via");
+
+        assertThat(map.get(Buffers.wrap("Call-ID")), is("call-id"));
+        assertThat(map.get(Buffers.wrap("call-id")), is("call-id"));
+        assertThat(map.get(Buffers.wrap("CALL-ID")), is("call-id"));
+        assertThat(map.get(Buffers.wrap("vIA")), is("via"));
+        assertThat(map.containsKey(Buffers.wrap("VIA")), is(true));
+
+        assertThat(map.get(Buffers.wrap("Call-ID ")), nullValue());
+        assertThat(map.get(Buffers.wrap("Call_ID")), nullValue());
+        assertThat(map.get("Via"), nullValue());
+    }
+
+    /**
+     * The same key with a different capitalization replaces the existing
+     * entry.
+     */
+    @Test
+    public void testPutRemove() throws Exception {
+        final Map<Buffer, String> map = new CaseInsensitiveBufferMap<>();
+        map.put(Buffers.wrap("To"), "to");
+        assertThat(map.put(Buffers.wrap("TO"), "TO"), is("to"));
+        assertThat(map.size(), is(1));
+        assertThat(map.get(Buffers.wrap("to")), is("TO"));
+
+        // keys sliced out of a larger buffer work just the same
+        final Buffer header = Buffers.wrap("from: <sip:alice@example.com>");
+        map.put(header.slice(0, 4), "from");
+        assertThat(map.get(Buffers.wrap("From")), is("from"));
+
+        for (final Map.Entry<Buffer, String> entry : map.entrySet()) {
+            entry.setValue(entry.getKey().toString());
+        }
+        assertThat(map.get(Buffers.wrap("FROM")), is("from"));
+        assertThat(map.get(Buffers.wrap("to")), is("To"));
+
+        assertThat(map.remove(Buffers.wrap("tO")), is("To"));
+        assertThat(map.size(), is(1));
+    }
+
+}
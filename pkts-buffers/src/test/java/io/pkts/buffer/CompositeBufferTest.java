@@ -11,7 +11,28 @@ import org.junit.Test;
 /**
  * @author jonas@jonasborjesson.com
  */
-public class CompositeBufferTest {
+public class CompositeBufferTest extends AbstractBufferTest {
+
+    /**
+     * Split the array into three separate arrays so that everything the
+     * {@link AbstractBufferTest} does is done across component boundaries.
+     */
+    @Override
+    public Buffer createBuffer(final byte[] array) {
+        final int first = array.length / 3;
+        final int second = 2 * array.length / 3;
+        return Buffers.wrap(copy(array, 0, first), copy(array, first, second), copy(array, second, array.length));
+    }
+
+    /**
+     * Copy the range into a new, larger, array and slice it back out so that
+     * the component doesn't start at the beginning of its array.
+     */
+    private static Buffer copy(final byte[] array, final int from, final int to) {
+        final byte[] copy = new byte[to - from + 6];
+        System.arraycopy(array, from, copy, 3, to - from);
+        return new ByteBuffer(0, 3, 3 + to - from, copy);
+    }
 
     @Test
     public void testBasicStuff() throws Exception {
@@ -60,4 +81,84 @@ public class CompositeBufferTest {
         assertThat(buffer.isEmpty(), is(true));
     }
 
+    /**
+     * Wrapping is not copying, the composite sees the same bytes as the
+     * buffers it was created from.
+     */
+    @Test
+    public void testNoCopy() throws Exception {
+        final Buffer hello = Buffers.wrap("hello ");
+        final Buffer world = Buffers.wrap("world");
+        final Buffer buffer = Buffers.wrap(hello, world);
+        assertThat(buffer instanceof CompositeBuffer, is(true));
+
+        world.setByte(0, (byte) 'W');
+        assertThat(buffer.toString(), is("hello World"));
+
+        buffer.setByte(0, (byte) 'H');
+        assertThat(hello.toString(), is("Hello "));
+
+        // writing across the boundary ends up in both
+        buffer.setWriterIndex(4);
+        buffer.write("OOOO");
+        assertThat(hello.toString(), is("HellOO"));
+        assertThat(world.toString(), is("OOrld"));
+    }
+
+    /**
+     * Slicing a range within a single component gives you that component's
+     * slice, anything spanning more than one is a new composite. Nested
+     * composites are flattened.
+     */
+    @Test
+    public void testSlice() throws Exception {
+        final Buffer buffer = Buffers.wrap(Buffers.wrap("one"), Buffers.wrap("two"), Buffers.wrap("three"));
+        assertThat(((CompositeBuffer) buffer).getNumberOfComponents(), is(3));
+
+        final Buffer two = buffer.slice(3, 6);
+        assertThat(two instanceof CompositeBuffer, is(false));
+        assertThat(two.toString(), is("two"));
+
+        final Buffer across = buffer.slice(2, 8);
+        assertThat(((CompositeBuffer) across).getNumberOfComponents(), is(3));
+        assertThat(across.toString(), is("etwoth"));
+
+        final Buffer nested = Buffers.wrap(across, Buffers.wrap("!"));
+        assertThat(((CompositeBuffer) nested).getNumberOfComponents(), is(4));
+        assertThat(nested.toString(), is("etwoth!"));
+        assertThat(nested.getInt(1), is(Buffers.wrap("twot").getInt(0)));
+    }
+
+    /**
+     * Lines and headers split over several components, which is what
+     * you get when e.g. a SIP message is spread out over TCP segments.
+     */
+    @Test
+    public void testReadLineAcrossComponents() throws Exception {
+        final Buffer buffer = Buffers.wrap(Buffers.wrap("INVITE sip:a@b SIP/2.0\r"), Buffers.wrap("\nVia: "),
+                Buffers.wrap("SIP/2.0/UDP"), Buffers.wrap(" host\r\n\r"), Buffers.wrap("\nbody"));
+        assertThat(buffer.readLine().toString(), is("INVITE sip:a@b SIP/2.0"));
+        assertThat(buffer.readUntil((byte) ':').toString(), is("Via"));
+        assertThat(buffer.readUntilDoubleCRLF().toString(), is(" SIP/2.0/UDP host"));
+        assertThat(buffer.toString(), is("body"));
+        assertThat(buffer.hashCode(), is(Buffers.wrap("body").hashCode()));
+        assertThat(buffer.slice().equals(Buffers.wrap("body")), is(true));
+        assertThat(Buffers.wrap("body").equals(buffer.slice()), is(true));
+    }
+
+    @Test
+    public void testGetBytes() throws Exception {
+        final Buffer buffer = Buffers.wrap(Buffers.wrap("hello"), Buffers.wrapAndClone(" world".getBytes()));
+        buffer.readBytes(3);
+
+        final byte[] array = new byte[5];
+        buffer.getBytes(array);
+        assertThat(new String(array), is("lo wo"));
+
+        final Buffer dst = Buffers.createBuffer(100);
+        buffer.getBytes(dst);
+        assertThat(dst.toString(), is("lo world"));
+        assertThat(buffer.clone().toString(), is("hello world"));
+    }
+
 }
@@ -0,0 +1,112 @@
+package io.pkts.buffer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Runs all the generic buffer tests against a {@link DirectBuffer} plus
+ * checks that it plays nicely with the heap based {@link ByteBuffer}.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public class DirectBufferTest extends AbstractBufferTest {
+
+    @Override
+    public Buffer createBuffer(final byte[] array) {
+        final java.nio.ByteBuffer direct = java.nio.ByteBuffer.allocateDirect(array.length);
+        direct.put(array);
+        return new DirectBuffer(direct);
+    }
+
+    /**
+     * A direct buffer writes numbers digit by digit so make sure that we
+     * get all of them, including the sign, and that nothing is written if
+     * they don't all fit.
+     */
+    @Test
+    public void testWriteAsString() throws Exception {
+        final Buffer buffer = Buffers.createDirectBuffer(30);
+        buffer.writeAsString(0);
+        buffer.write((byte) ' ');
+        buffer.writeAsString(-5060);
+        buffer.write((byte) ' ');
+        buffer.writeAsString(Long.MIN_VALUE);
+        assertThat(buffer.toString(), is("0 -5060 " + Long.MIN_VALUE));
+
+        try {
+            buffer.writeAsString(Integer.MAX_VALUE);
+            fail("Expected an IndexOutOfBoundsException");
+        } catch (final IndexOutOfBoundsException e) {
+            // expected
+        }
+        assertThat(buffer.getReadableBytes(), is(28));
+    }
+
+    /**
+     * Buffers parsed off of e.g. a memory mapped file will be used to look up
+     * values in maps whose keys are regular heap buffers and vice versa.
+     */
+    @Test
+    public void testEqualsAndHashCodeAcrossTypes() throws Exception {
+        final Buffer direct = createBuffer("Call-ID".getBytes());
+        final Buffer heap = Buffers.wrap("Call-ID");
+        assertThat(direct.equals(heap), is(true));
+        assertThat(heap.equals(direct), is(true));
+        assertThat(direct.hashCode(), is(heap.hashCode()));
+        assertThat(heap.equalsIgnoreCase(createBuffer("call-id".getBytes())), is(true));
+        assertThat(createBuffer("call-id".getBytes()).equalsIgnoreCase(heap), is(true));
+
+        final Map<Buffer, String> map = new HashMap<>();
+        map.put(heap, "hello");
+        assertThat(map.get(direct), is("hello"));
+    }
+
+    @Test
+    public void testCloneIsHeapBased() throws Exception {
+        final Buffer buffer = createBuffer("hello world".getBytes()).slice(6, 11);
+        final Buffer clone = buffer.clone();
+        assertThat(clone instanceof ByteBuffer, is(true));
+        assertThat(clone.toString(), is("world"));
+    }
+
+    @Test
+    public void testReadOnly() throws Exception {
+        final java.nio.ByteBuffer readOnly = java.nio.ByteBuffer.wrap("hello".getBytes()).asReadOnlyBuffer();
+        final Buffer buffer = new DirectBuffer(readOnly);
+        assertThat(buffer.hasWriteSupport(), is(false));
+        assertThat(buffer.readBytes(5).toString(), is("hello"));
+        try {
+            buffer.setByte(0, (byte) 'a');
+            fail("Expected a WriteNotSupportedException");
+        } catch (final WriteNotSupportedException e) {
+            // expected
+        }
+    }
+
+    /**
+     * The view must cover the readable bytes only and must not be affected
+     * by, nor affect, the indices of the buffer.
+     */
+    @Test
+    public void testToByteBuffer() throws Exception {
+        final Buffer buffer = createBuffer("hello world");
+        buffer.readBytes(6);
+        final java.nio.ByteBuffer view = buffer.toByteBuffer();
+        assertThat(view.remaining(), is(5));
+        final byte[] bytes = new byte[5];
+        view.get(bytes);
+        assertThat(new String(bytes), is("world"));
+        assertThat(buffer.getReadableBytes(), is(5));
+
+        final java.nio.ByteBuffer hello = createBuffer("hello world").slice(0, 5).toByteBuffer();
+        assertThat(hello.remaining(), is(5));
+        assertThat(hello.get(4), is((byte) 'o'));
+    }
+
+}
@@ -120,6 +120,125 @@ public class InputStreamBufferTest extends AbstractBufferTest {
 
     }
 
+    /**
+     * Reading through a stream much larger than the rows of the buffer
+     * should not make the buffer hold on to more than a couple of rows.
+     */
+    @Test
+    public void testReclaimRows() throws Exception {
+        final byte[] content = new byte[100000];
+        for (int i = 0; i < content.length; ++i) {
+            content[i] = (byte) (i * 31);
+        }
+
+        final InputStreamBuffer buffer = new InputStreamBuffer(64, new ByteArrayInputStream(content));
+        int offset = 0;
+        int length = 1;
+        while (offset + length <= content.length) {
+            if (length % 3 == 0) {
+                buffer.skipBytes(length);
+            } else {
+                assertContent(buffer.readBytes(length), content, offset);
+            }
+            assertThat(buffer.getRowCount() <= 4, is(true));
+
+            offset += length;
+            length = length % 150 + 1;
+            assertThat(buffer.readByte(), is(content[offset++]));
+        }
+    }
+
+    /**
+     * A slice is pointing to the row it was sliced out of so that row must
+     * not be re-used once the buffer has moved past it.
+     */
+    @Test
+    public void testSliceSurvivesReclaim() throws Exception {
+        final byte[] content = new byte[1000];
+        for (int i = 0; i < content.length; ++i) {
+            content[i] = (byte) i;
+        }
+
+        final InputStreamBuffer buffer = new InputStreamBuffer(16, new ByteArrayInputStream(content));
+        buffer.readBytes(20);
+
+        // note that the indices are relative to the oldest row still around
+        final int reader = buffer.getReaderIndex();
+        assertThat(reader, is(4));
+        final Buffer within = buffer.slice(reader, reader + 10);
+        final Buffer across = buffer.slice(reader + 8, reader + 20);
+
+        buffer.readBytes(500);
+        buffer.skipBytes(400);
+        assertThat(buffer.getRowCount() <= 2, is(true));
+        assertContent(within, content, 20);
+        assertContent(across, content, 28);
+        assertContent(buffer.readBytes(80), content, 920);
+    }
+
+    /**
+     * Peeking ahead with getByte pulls in some bytes off of the stream, a
+     * following read must still fetch the remaining ones.
+     */
+    @Test
+    public void testReadBytesAfterGetByte() throws Exception {
+        final byte[] content = RawData.sipBuffer.getArray();
+        final Buffer buffer = new InputStreamBuffer(64 * 1024, new ByteArrayInputStream(content));
+        assertThat(buffer.getByte(3), is(content[3]));
+        assertContent(buffer.readBytes(8), content, 0);
+        assertContent(buffer.readBytes(4), content, 8);
+    }
+
+    /**
+     * The primitive getters and readers have to work when the bytes are
+     * spread over two rows and haven't been read off of the stream yet.
+     */
+    @Test
+    public void testPrimitivesAcrossRows() throws Exception {
+        final byte[] content = { 0x01, 0x02, (byte) 0x83, 0x04, (byte) 0xF5, 0x06, 0x07, 0x08, 0x09 };
+        final Buffer buffer = new InputStreamBuffer(3, new ByteArrayInputStream(content));
+        assertThat(buffer.getInt(1), is(0x0283_04F5));
+        assertThat(buffer.getUnsignedInt(2), is(0x8304F506L));
+        assertThat(buffer.getShort(2), is((short) 0x8304));
+        assertThat(buffer.getUnsignedShort(2), is(0x8304));
+        assertThat(buffer.getUnsignedByte(4), is((short) 0xF5));
+
+        assertThat(buffer.readShort(), is((short) 0x0102));
+        assertThat(buffer.readUnsignedInt(), is(0x8304F506L));
+        assertThat(buffer.readUnsignedShort(), is(0x0708));
+        // the last byte hasn't been read off of the stream yet
+        assertThat(buffer.getArray(), is(new byte[0]));
+        assertThat(buffer.isEmpty(), is(false));
+        assertThat(buffer.getArray(), is(new byte[] { 0x09 }));
+        buffer.readByte();
+        assertThat(buffer.isEmpty(), is(true));
+
+        try {
+            buffer.readInt();
+            fail("Expected an IndexOutOfBoundsException");
+        } catch (final IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Reading past the end of the stream is signaled the same way regardless
+     * of whether there were a few bytes left or none at all.
+     */
+    @Test
+    public void testReadBytesAtEndOfStream() throws Exception {
+        final Buffer buffer = new InputStreamBuffer(4, new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+        for (final int length : new int[] { 5, 3, 1 }) {
+            try {
+                buffer.readBytes(length);
+                assertThat(length, is(3));
+            } catch (final IndexOutOfBoundsException e) {
+                assertThat(length == 5 || length == 1, is(true));
+            }
+        }
+        assertThat(buffer.hasReadableBytes(), is(false));
+    }
+
     /**
      * After we have been reading etc it is also important that we actually
      * verify that the new read buffers indeed contains the correct content.
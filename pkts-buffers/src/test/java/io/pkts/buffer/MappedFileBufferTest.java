@@ -0,0 +1,76 @@
+package io.pkts.buffer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class MappedFileBufferTest {
+
+    private File file;
+
+    private MappedFileBuffer buffer;
+
+    @Before
+    public void setUp() throws Exception {
+        this.file = File.createTempFile("mapped", ".bin");
+        Files.write(this.file.toPath(), "hello world".getBytes());
+        this.buffer = new MappedFileBuffer(FileChannel.open(this.file.toPath(), StandardOpenOption.READ), 0,
+                this.file.length(), 4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.buffer.close();
+        this.file.delete();
+    }
+
+    /**
+     * A clone is a heap copy of the readable bytes and must outlive the
+     * mapping it was made from.
+     */
+    @Test
+    public void testClone() throws Exception {
+        this.buffer.skipBytes(6);
+        final Buffer clone = this.buffer.clone();
+        this.buffer.close();
+        assertThat(clone.toString(), is("world"));
+        assertThat(this.buffer.getReaderIndex(), is(6));
+    }
+
+    @Test
+    public void testCloneEmpty() throws Exception {
+        this.buffer.skipBytes(11);
+        assertThat(this.buffer.clone().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testDumpAsHex() throws Exception {
+        this.buffer.skipBytes(6);
+        assertThat(this.buffer.dumpAsHex(), is(Buffers.wrap("world").dumpAsHex()));
+    }
+
+    @Test
+    public void testBoundaries() throws Exception {
+        this.buffer.skipBytes(6);
+        assertThat(this.buffer.getLowerBoundary(), is(0));
+        assertThat(this.buffer.getUpperBoundary(), is(5));
+        assertThat(this.buffer.getRawArray().length, is(this.buffer.getUpperBoundary()));
+    }
+
+    @Test(expected = WriteNotSupportedException.class)
+    public void testWrite() throws Exception {
+        this.buffer.setByte(0, (byte) 'H');
+    }
+
+}
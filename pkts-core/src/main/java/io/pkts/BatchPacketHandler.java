@@ -0,0 +1,36 @@
+package io.pkts;
+
+import io.pkts.packet.Packet;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A handler that is given the packets of a pcap in batches rather than one
+ * by one, see {@link Pcap#loopBatched(BatchPacketHandler, int)}. Handy when
+ * the packets are to be handed off to e.g. a pool of workers or when the
+ * results of processing them are written in bulk.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public interface BatchPacketHandler {
+
+    /**
+     * Will be called by the {@link Pcap} class as soon as it has framed a
+     * full batch of {@link Packet}s, or fewer than that once the end of the
+     * pcap has been reached.
+     *
+     * The list is never empty and is not touched by the {@link Pcap} once it
+     * has been handed over so it is safe to keep it around or pass it on to
+     * other threads.
+     *
+     * @param packets
+     *            the packets, in the order they were read off of the pcap
+     *            stream.
+     * @throws IOException
+     * @return true if this instance wants to handle subsequent packets, false
+     *         otherwise.
+     */
+    boolean nextPackets(List<Packet> packets) throws IOException;
+
+}
@@ -0,0 +1,450 @@
+package io.pkts;
+
+import io.pkts.frame.PcapGlobalHeader;
+import io.pkts.frame.PcapRecordHeader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link InputStream} over a classic pcap that is still being written to,
+ * such as the output of <code>tcpdump -w</code>. Instead of signaling end of
+ * file once it has caught up with the writer, the stream waits for more data
+ * to be appended.
+ *
+ * Only complete records are ever handed out. Before any byte of a record is
+ * returned, its header is read straight from the file and the record is only
+ * released once all of its captured bytes are on disk, which means that the
+ * framer never sees a half written record.
+ *
+ * When the writer rotates the capture (<code>tcpdump -C</code> or
+ * <code>-G</code>) the stream moves on to the next file of the rotation set
+ * (see {@link #findNext(Path)}) once the current one has been drained,
+ * skipping the global header of the new file so that the stream as a whole
+ * still looks like a single pcap. A partial record left at the end of a
+ * rotated file, which can only happen if the writer was killed, is dropped.
+ *
+ * Waiting is done through a {@link WatchService} on the directory of the
+ * file, which on most platforms is backed by native file change
+ * notifications, with {@link #MAX_WAIT_MS} as an upper bound in case a
+ * notification is missed (e.g. network file systems). Listing the directory
+ * in search of the next file is only done when the watcher reports a new
+ * file, or every {@link #MAX_SCAN_INTERVAL_MS} as a safety net, and not on
+ * every idle poll since the directory may hold a lot of files.
+ *
+ * The only way to stop following the file is to {@link #close()} the stream,
+ * after which it reports end of file.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+final class FollowInputStream extends InputStream {
+
+    /**
+     * The longest we ever wait for a change notification before checking
+     * the file again.
+     */
+    static final long MAX_WAIT_MS = 100;
+
+    /**
+     * The longest we ever go without looking for the next file of the
+     * rotation set, in case the creation of it was never reported.
+     */
+    static final long MAX_SCAN_INTERVAL_MS = 1000;
+
+    private static final int MAGIC_MICRO = 0xa1b2c3d4;
+    private static final int MAGIC_NANO = 0xa1b23c4d;
+
+    private final WatchService watcher;
+    private final ByteBuffer recordHeader = ByteBuffer.allocate(PcapRecordHeader.SIZE);
+    private final ByteBuffer magic = ByteBuffer.allocate(4);
+
+    private Path file;
+    private FileChannel channel;
+
+    /**
+     * The magic of the first file, which every rotated file must match.
+     */
+    private int fileMagic;
+    private ByteOrder byteOrder;
+
+    /**
+     * Whether we still have to read the global header of the current file.
+     */
+    private boolean headerPending = true;
+
+    /**
+     * The next byte within the current file to hand out.
+     */
+    private long position;
+
+    /**
+     * The end of the complete records found in the current file so far.
+     */
+    private long limit;
+
+    /**
+     * The next file of the rotation set, once found, and whether something
+     * was created in the directory since we last looked for it.
+     */
+    private Path next;
+    private boolean scanPending = true;
+    private long lastScan;
+
+    private volatile boolean closed;
+
+    FollowInputStream(final Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            this.watcher = file.getFileSystem().newWatchService();
+            file.toAbsolutePath().getParent().register(this.watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (final IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the file currently being followed.
+     */
+    Path getFile() {
+        return this.file;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        try {
+            while (this.position == this.limit) {
+                if (!advance()) {
+                    return -1;
+                }
+            }
+
+            final int count = (int) Math.min(len, this.limit - this.position);
+            final int read = this.channel.read(ByteBuffer.wrap(b, off, count), this.position);
+            if (read > 0) {
+                this.position += read;
+            }
+            return read;
+        } catch (final IOException e) {
+            if (this.closed) {
+                return -1;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, this.limit - this.position);
+    }
+
+    /**
+     * Wait until there is at least one more complete record to hand out,
+     * moving on to the next file in the rotation set if need be.
+     *
+     * @return false if the stream was closed while waiting.
+     */
+    private boolean advance() throws IOException {
+        while (!this.closed) {
+            if (extend()) {
+                return true;
+            }
+
+            // the writer may have appended to the current file just before
+            // rotating so check it one last time after finding the next one
+            if (this.next == null && isScanDue()) {
+                this.next = findNext(this.file);
+            }
+            if (this.next != null && !extend()) {
+                switchTo(this.next);
+                continue;
+            }
+
+            if (!await()) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move the limit past all complete records currently in the file.
+     *
+     * @return true if there is anything to hand out.
+     */
+    private boolean extend() throws IOException {
+        final long size = this.channel.size();
+        if (this.headerPending) {
+            if (size < PcapGlobalHeader.SIZE) {
+                return false;
+            }
+            readHeader();
+        }
+
+        while (this.limit + PcapRecordHeader.SIZE <= size) {
+            this.recordHeader.clear();
+            readFully(this.recordHeader, this.limit);
+            final long capturedLength = this.recordHeader.order(this.byteOrder).getInt(8) & 0xFFFFFFFFL;
+            final long end = this.limit + PcapRecordHeader.SIZE + capturedLength;
+            if (end > size) {
+                break;
+            }
+            this.limit = end;
+        }
+        return this.limit > this.position;
+    }
+
+    /**
+     * Read the magic of the global header of the current file. The global
+     * header of the first file is handed out as is while the headers of
+     * rotated files are skipped.
+     */
+    private void readHeader() throws IOException {
+        this.magic.clear();
+        readFully(this.magic, 0);
+        final int value = this.magic.order(ByteOrder.BIG_ENDIAN).getInt(0);
+        final int swapped = Integer.reverseBytes(value);
+
+        if (this.byteOrder == null) {
+            if (value == MAGIC_MICRO || value == MAGIC_NANO) {
+                this.byteOrder = ByteOrder.BIG_ENDIAN;
+            } else if (swapped == MAGIC_MICRO || swapped == MAGIC_NANO) {
+                this.byteOrder = ByteOrder.LITTLE_ENDIAN;
+            } else {
+                throw new IOException("Only classic pcaps can be followed but " + this.file + " is not one");
+            }
+            this.fileMagic = value;
+            this.position = 0;
+        } else if (value != this.fileMagic) {
+            throw new IOException("The rotated file " + this.file + " is not of the same format as the first file");
+        } else {
+            this.position = PcapGlobalHeader.SIZE;
+        }
+
+        this.limit = PcapGlobalHeader.SIZE;
+        this.headerPending = false;
+    }
+
+    /**
+     * @return true if something was created in the directory since we last
+     *         looked for the next file, or if it has been too long since we
+     *         did.
+     */
+    private boolean isScanDue() {
+        final long now = System.nanoTime();
+        if (!this.scanPending && now - this.lastScan < TimeUnit.MILLISECONDS.toNanos(MAX_SCAN_INTERVAL_MS)) {
+            return false;
+        }
+        this.scanPending = false;
+        this.lastScan = now;
+        return true;
+    }
+
+    private void switchTo(final Path next) throws IOException {
+        this.channel.close();
+        this.file = next;
+        this.channel = FileChannel.open(next, StandardOpenOption.READ);
+        this.headerPending = true;
+        this.position = 0;
+        this.limit = 0;
+
+        // the file after this one may already be there
+        this.next = null;
+        this.scanPending = true;
+    }
+
+    /**
+     * Wait for something to change in the directory of the file, or at most
+     * {@link #MAX_WAIT_MS}.
+     *
+     * @return false if the stream was closed while waiting.
+     */
+    private boolean await() throws IOException {
+        try {
+            final WatchKey key = this.watcher.poll(MAX_WAIT_MS, TimeUnit.MILLISECONDS);
+            if (key != null) {
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY) {
+                        // a new file or possibly missed events
+                        this.scanPending = true;
+                    }
+                }
+                key.reset();
+            }
+            return !this.closed;
+        } catch (final ClosedWatchServiceException e) {
+            return false;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the pcap to grow");
+        }
+    }
+
+    private void readFully(final ByteBuffer buffer, final long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            final int read = this.channel.read(buffer, offset);
+            if (read == -1) {
+                throw new IOException("The file " + this.file + " was truncated");
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Stop following the file. Any thread blocked reading from the stream
+     * will see the end of the stream shortly thereafter.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.watcher.close();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Find the file following the given one in its rotation set.
+     *
+     * Both <code>tcpdump -C</code>, which appends a (possibly zero padded)
+     * counter to the name of the file, and <code>tcpdump -G</code>, which
+     * names the files after a time format, produce files whose names only
+     * differ in their numbers. So, the next file is the one in the same
+     * directory whose name has the same shape (i.e. the same name once every
+     * run of digits has been replaced by a single placeholder) and comes
+     * right after the given name when comparing the numbers by value. The
+     * exception is the very first file of <code>-C</code>, which has no
+     * counter at all and is followed by the one with the counter appended.
+     *
+     * @param current
+     * @return the next file or null if there is none (yet).
+     * @throws IOException
+     */
+    static Path findNext(final Path current) throws IOException {
+        final Path directory = current.toAbsolutePath().getParent();
+        final String name = current.getFileName().toString();
+        final String shape = shape(name);
+        final String counted = shape + '#';
+
+        Path next = null;
+        String nextName = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (final Path file : files) {
+                final String candidate = file.getFileName().toString();
+                final String candidateShape = shape(candidate);
+                if (!candidateShape.equals(shape) && !candidateShape.equals(counted)) {
+                    continue;
+                }
+                if (compareNatural(candidate, name) > 0
+                        && (nextName == null || compareNatural(candidate, nextName) < 0)
+                        && Files.isRegularFile(file)) {
+                    next = file;
+                    nextName = candidate;
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * @return the name with every run of digits replaced by a '#'.
+     */
+    private static String shape(final String name) {
+        final StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); ++i) {
+            final char c = name.charAt(i);
+            if (!isDigit(c)) {
+                sb.append(c);
+            } else if (i == 0 || !isDigit(name.charAt(i - 1))) {
+                sb.append('#');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Compare the two names where runs of digits are compared by their
+     * numeric value, e.g. "a9" comes before "a10".
+     */
+    static int compareNatural(final String a, final String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            final char ca = a.charAt(i);
+            final char cb = b.charAt(j);
+            if (isDigit(ca) && isDigit(cb)) {
+                final int startA = i;
+                final int startB = j;
+                while (i < a.length() && isDigit(a.charAt(i))) {
+                    ++i;
+                }
+                while (j < b.length() && isDigit(b.charAt(j))) {
+                    ++j;
+                }
+                final int result = compareNumbers(a.substring(startA, i), b.substring(startB, j));
+                if (result != 0) {
+                    return result;
+                }
+            } else if (ca != cb) {
+                return ca - cb;
+            } else {
+                ++i;
+                ++j;
+            }
+        }
+        return (a.length() - i) - (b.length() - j);
+    }
+
+    private static int compareNumbers(final String a, final String b) {
+        final String strippedA = stripLeadingZeros(a);
+        final String strippedB = stripLeadingZeros(b);
+        if (strippedA.length() != strippedB.length()) {
+            return strippedA.length() - strippedB.length();
+        }
+        return strippedA.compareTo(strippedB);
+    }
+
+    private static String stripLeadingZeros(final String number) {
+        int i = 0;
+        while (i < number.length() - 1 && number.charAt(i) == '0') {
+            ++i;
+        }
+        return number.substring(i);
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+}
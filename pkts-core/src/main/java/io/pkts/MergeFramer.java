@@ -0,0 +1,178 @@
+package io.pkts;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.buffer.Buffers;
+import io.pkts.frame.PcapGlobalHeader;
+import io.pkts.frame.PcapRecordHeader;
+import io.pkts.framer.Framer;
+import io.pkts.framer.ParsePolicy;
+import io.pkts.packet.PCapPacket;
+import io.pkts.packet.Packet;
+import io.pkts.packet.impl.PCapPacketImpl;
+import io.pkts.protocol.Protocol;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Frames the records of several pcaps, handing them out in the order of
+ * their arrival time. Every source keeps its own framer and buffer and the
+ * next record of each source sits in a heap ordered by arrival time, so
+ * picking the next record is <code>O(log N)</code> and only one record per
+ * source is ever buffered.
+ *
+ * Since {@link Packet#getArrivalTime()} is in micro or nano seconds depending
+ * on the pcap, the arrival times are compared in nano seconds. Records with
+ * the same arrival time are handed out in the order the sources were given
+ * in. The records handed out are all of the same resolution, the one of the
+ * merged pcap, so records of any other resolution are handed out as a copy
+ * of the record header, converted to that resolution, pointing to the same
+ * payload.
+ *
+ * The buffer passed to {@link #frame(Packet, Buffer)} is ignored.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+final class MergeFramer implements Framer<Packet, PCapPacket> {
+
+    private final Source[] sources;
+    private final PriorityQueue<Source> heap;
+    private boolean started;
+
+    /**
+     * The timestamp resolution of the merged pcap and, for every global
+     * header of another resolution we've come across, the same header but in
+     * the resolution of the merged pcap.
+     */
+    private final boolean nsTimestamps;
+    private final Map<PcapGlobalHeader, PcapGlobalHeader> convertedHeaders = new IdentityHashMap<>();
+
+    private ParsePolicy parsePolicy = ParsePolicy.ALL;
+
+    /**
+     * @param nsTimestamps
+     *            whether the records handed out should have their timestamps
+     *            in nano seconds rather than micro seconds.
+     */
+    MergeFramer(final List<Framer<Packet, PCapPacket>> framers, final List<Buffer> buffers,
+            final boolean nsTimestamps) {
+        assert framers.size() == buffers.size();
+        this.nsTimestamps = nsTimestamps;
+        this.sources = new Source[framers.size()];
+        for (int i = 0; i < this.sources.length; ++i) {
+            this.sources[i] = new Source(i, framers.get(i), buffers.get(i));
+        }
+        this.heap = new PriorityQueue<>(Math.max(1, this.sources.length), (a, b) -> {
+            final int result = Long.compare(a.arrivalTime, b.arrivalTime);
+            return result != 0 ? result : Integer.compare(a.index, b.index);
+        });
+    }
+
+    @Override
+    public Protocol getProtocol() {
+        return Protocol.PCAP;
+    }
+
+    /**
+     * Have the framers of all the sources follow the given
+     * {@link ParsePolicy}.
+     */
+    void setParsePolicy(final ParsePolicy parsePolicy) {
+        this.parsePolicy = parsePolicy;
+        for (final Source source : this.sources) {
+            Pcap.setParsePolicy(source.framer, parsePolicy);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PCapPacket frame(final Packet parent, final Buffer buffer) throws IOException {
+        // the sources are primed lazily so that nothing is read until we are
+        // asked for the first record.
+        if (!this.started) {
+            this.started = true;
+            for (final Source source : this.sources) {
+                advance(source);
+            }
+        }
+
+        final Source source = this.heap.poll();
+        if (source == null) {
+            return null;
+        }
+
+        final PCapPacket packet = source.next;
+        advance(source);
+        return packet.getGlobalHeader().timestampsInNs() == this.nsTimestamps ? packet : convert(packet);
+    }
+
+    /**
+     * Convert the timestamp of the packet to the resolution of the merged
+     * pcap. Going from nano to micro seconds, which only happens if a pcapng
+     * interface is of a finer resolution than the first one of all the
+     * merged pcaps, truncates the timestamp.
+     */
+    private PCapPacket convert(final PCapPacket packet) throws IOException {
+        final PcapGlobalHeader original = packet.getGlobalHeader();
+        PcapGlobalHeader header = this.convertedHeaders.get(original);
+        if (header == null) {
+            header = PcapGlobalHeader.createHeader(original.getDataLinkType(), original.getSnapLength(),
+                    this.nsTimestamps);
+            this.convertedHeaders.put(original, header);
+        }
+
+        final long unitsPerSecond = original.timestampsInNs() ? 1000000000L : 1000000L;
+        final long arrivalTime = packet.getArrivalTime();
+        final long fraction = arrivalTime % unitsPerSecond;
+
+        // the record header of the converted header is little endian too
+        final Buffer record = Buffers.createBuffer(PcapRecordHeader.SIZE);
+        record.setUnsignedInt(0, arrivalTime / unitsPerSecond);
+        record.setUnsignedInt(4, this.nsTimestamps ? fraction * 1000 : fraction / 1000);
+        record.setUnsignedInt(8, packet.getCapturedLength());
+        record.setUnsignedInt(12, packet.getTotalLength());
+        final PcapRecordHeader recordHeader = new PcapRecordHeader(ByteOrder.LITTLE_ENDIAN, record,
+                this.nsTimestamps);
+        return new PCapPacketImpl(header, recordHeader, packet.getPayload(), false, this.parsePolicy);
+    }
+
+    /**
+     * Frame the next record of the source and put it back in the heap, unless
+     * the source has run dry.
+     */
+    private void advance(final Source source) throws IOException {
+        final PCapPacket next = source.framer.frame(null, source.buffer);
+        source.next = next;
+        if (next != null) {
+            final long arrivalTime = next.getArrivalTime();
+            source.arrivalTime = next.getGlobalHeader().timestampsInNs() ? arrivalTime : arrivalTime * 1000;
+            this.heap.add(source);
+        }
+    }
+
+    @Override
+    public boolean accept(final Buffer data) {
+        return false;
+    }
+
+    private static final class Source {
+        private final int index;
+        private final Framer<Packet, PCapPacket> framer;
+        private final Buffer buffer;
+        private PCapPacket next;
+        private long arrivalTime;
+
+        private Source(final int index, final Framer<Packet, PCapPacket> framer, final Buffer buffer) {
+            this.index = index;
+            this.framer = framer;
+            this.buffer = buffer;
+        }
+    }
+
+}
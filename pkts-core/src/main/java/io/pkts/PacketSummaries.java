@@ -0,0 +1,328 @@
+package io.pkts;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.packet.IPPacket;
+import io.pkts.packet.PCapPacket;
+import io.pkts.packet.Packet;
+import io.pkts.packet.impl.AbstractPacket;
+
+import java.io.IOException;
+
+/**
+ * A batch of packet summaries stored column by column, i.e., one primitive
+ * array per field, where row <code>i</code> of every column belongs to the
+ * same packet. The summaries are extracted straight out of the raw bytes of
+ * the pcap records (see {@link #add(PCapPacket)}) without framing any of the
+ * packets so there are no {@link IPPacket}s, Strings or temporary buffers
+ * involved and aggregating over a batch is a tight loop over primitives.
+ *
+ * The columns are the backing arrays so they are only valid up until
+ * {@link #size()} and are overwritten once the batch is {@link #clear()}ed.
+ * Which columns are valid for a given row depends on
+ * {@link #getIpVersions()}. Packets that aren't IP have an IP version of
+ * zero and only the timestamp and lengths filled in, IPv4 packets have the
+ * IPv4 address columns filled in and IPv6 packets the IPv6 columns, where
+ * each address is split into its high and low 64 bits. The ports are only
+ * filled in for UDP, TCP and SCTP, and are zero for IP fragments other than
+ * the first one. Note that the addresses and ports are the raw bits so treat
+ * them as unsigned.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class PacketSummaries {
+
+    private static final int LINK_TYPE_ETHERNET = 1;
+    private static final int LINK_TYPE_RAW_IP = 101;
+    private static final int LINK_TYPE_SLL = 113;
+
+    private static final int ETHER_TYPE_IPv4 = 0x0800;
+    private static final int ETHER_TYPE_IPv6 = 0x86DD;
+    private static final int ETHER_TYPE_DOT1Q = 0x8100;
+    private static final int ETHER_TYPE_QINQ = 0x88A8;
+
+    private static final int PROTOCOL_TCP = 6;
+    private static final int PROTOCOL_UDP = 17;
+    private static final int PROTOCOL_SCTP = 132;
+
+    private static final int IPv6_HOP_BY_HOP = 0;
+    private static final int IPv6_ROUTING = 43;
+    private static final int IPv6_FRAGMENT = 44;
+    private static final int IPv6_DESTINATION_OPTIONS = 60;
+
+    private final long[] timestamps;
+    private final int[] capturedLengths;
+    private final int[] totalLengths;
+    private final byte[] ipVersions;
+    private final byte[] protocols;
+    private final int[] sourceIPv4;
+    private final int[] destinationIPv4;
+    private final long[] sourceIPv6High;
+    private final long[] sourceIPv6Low;
+    private final long[] destinationIPv6High;
+    private final long[] destinationIPv6Low;
+    private final short[] sourcePorts;
+    private final short[] destinationPorts;
+
+    private int size;
+
+    /**
+     * @param capacity
+     *            the maximum number of packets in this batch.
+     */
+    public PacketSummaries(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least 1");
+        }
+        this.timestamps = new long[capacity];
+        this.capturedLengths = new int[capacity];
+        this.totalLengths = new int[capacity];
+        this.ipVersions = new byte[capacity];
+        this.protocols = new byte[capacity];
+        this.sourceIPv4 = new int[capacity];
+        this.destinationIPv4 = new int[capacity];
+        this.sourceIPv6High = new long[capacity];
+        this.sourceIPv6Low = new long[capacity];
+        this.destinationIPv6High = new long[capacity];
+        this.destinationIPv6Low = new long[capacity];
+        this.sourcePorts = new short[capacity];
+        this.destinationPorts = new short[capacity];
+    }
+
+    /**
+     * Extract the summary of the packet into the next row of this batch.
+     * Only the record itself is looked at, nothing is framed, so this works
+     * just as well for the re-used packets of
+     * {@link Pcap#loopRecycled(PacketHandler)}.
+     *
+     * @param packet
+     * @return false if the batch was already full, in which case nothing was
+     *         added.
+     * @throws IOException
+     */
+    public boolean add(final PCapPacket packet) throws IOException {
+        if (isFull()) {
+            return false;
+        }
+
+        final int row = this.size++;
+        this.timestamps[row] = packet.getArrivalTime();
+        this.capturedLengths[row] = (int) packet.getCapturedLength();
+        this.totalLengths[row] = (int) packet.getTotalLength();
+        this.ipVersions[row] = 0;
+        this.protocols[row] = 0;
+        this.sourceIPv4[row] = 0;
+        this.destinationIPv4[row] = 0;
+        this.sourceIPv6High[row] = 0;
+        this.sourceIPv6Low[row] = 0;
+        this.destinationIPv6High[row] = 0;
+        this.destinationIPv6Low[row] = 0;
+        this.sourcePorts[row] = 0;
+        this.destinationPorts[row] = 0;
+
+        // peek at the payload rather than slicing it, which would allocate
+        final Buffer payload = packet instanceof AbstractPacket ? ((AbstractPacket) packet).peekPayload()
+                : packet.getPayload();
+        if (payload == null) {
+            return true;
+        }
+
+        try {
+            extractIP(row, payload, getIPOffset(packet.getGlobalHeader().getDataLinkType(), payload,
+                    payload.getReaderIndex()));
+        } catch (final IndexOutOfBoundsException e) {
+            // truncated record, keep what we got
+        }
+        return true;
+    }
+
+    /**
+     * @param start
+     *            where in the payload buffer the record starts.
+     * @return the offset of the IP header within the payload buffer or -1 if
+     *         it isn't carrying IP.
+     */
+    private static int getIPOffset(final int linkType, final Buffer payload, final int start) {
+        switch (linkType) {
+        case LINK_TYPE_RAW_IP:
+            return start;
+        case LINK_TYPE_SLL:
+            return isIP(payload.getUnsignedShort(start + 14)) ? start + 16 : -1;
+        case LINK_TYPE_ETHERNET:
+            int offset = start + 12;
+            int etherType = payload.getUnsignedShort(offset);
+            while (etherType == ETHER_TYPE_DOT1Q || etherType == ETHER_TYPE_QINQ) {
+                offset += 4;
+                etherType = payload.getUnsignedShort(offset);
+            }
+            return isIP(etherType) ? offset + 2 : -1;
+        default:
+            // no idea where the IP header is, if there is one at all
+            return -1;
+        }
+    }
+
+    private static boolean isIP(final int etherType) {
+        return etherType == ETHER_TYPE_IPv4 || etherType == ETHER_TYPE_IPv6;
+    }
+
+    private void extractIP(final int row, final Buffer payload, final int offset) throws IOException {
+        if (offset < 0) {
+            return;
+        }
+
+        final int version = (payload.getByte(offset) & 0xF0) >> 4;
+        if (version == 4) {
+            this.ipVersions[row] = 4;
+            final int protocol = payload.getUnsignedByte(offset + 9);
+            this.protocols[row] = (byte) protocol;
+            this.sourceIPv4[row] = payload.getInt(offset + 12);
+            this.destinationIPv4[row] = payload.getInt(offset + 16);
+
+            // only the first fragment carries the transport header
+            final int fragmentOffset = payload.getUnsignedShort(offset + 6) & 0x1FFF;
+            if (fragmentOffset == 0) {
+                extractPorts(row, payload, protocol, offset + (payload.getByte(offset) & 0x0F) * 4);
+            }
+        } else if (version == 6) {
+            this.ipVersions[row] = 6;
+            this.sourceIPv6High[row] = getLong(payload, offset + 8);
+            this.sourceIPv6Low[row] = getLong(payload, offset + 16);
+            this.destinationIPv6High[row] = getLong(payload, offset + 24);
+            this.destinationIPv6Low[row] = getLong(payload, offset + 32);
+
+            int protocol = payload.getUnsignedByte(offset + 6);
+            int next = offset + 40;
+            boolean firstFragment = true;
+            while (protocol == IPv6_HOP_BY_HOP || protocol == IPv6_ROUTING || protocol == IPv6_DESTINATION_OPTIONS
+                    || protocol == IPv6_FRAGMENT) {
+                if (protocol == IPv6_FRAGMENT) {
+                    firstFragment = (payload.getUnsignedShort(next + 2) & 0xFFF8) == 0;
+                    protocol = payload.getUnsignedByte(next);
+                    next += 8;
+                } else {
+                    protocol = payload.getUnsignedByte(next);
+                    next += (payload.getUnsignedByte(next + 1) + 1) * 8;
+                }
+            }
+
+            this.protocols[row] = (byte) protocol;
+            if (firstFragment) {
+                extractPorts(row, payload, protocol, next);
+            }
+        }
+    }
+
+    private void extractPorts(final int row, final Buffer payload, final int protocol, final int offset) {
+        if (protocol == PROTOCOL_UDP || protocol == PROTOCOL_TCP || protocol == PROTOCOL_SCTP) {
+            this.sourcePorts[row] = (short) payload.getUnsignedShort(offset);
+            this.destinationPorts[row] = (short) payload.getUnsignedShort(offset + 2);
+        }
+    }
+
+    private static long getLong(final Buffer buffer, final int index) {
+        return (long) buffer.getInt(index) << 32 | buffer.getInt(index + 4) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * @return the number of packets in this batch.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public int capacity() {
+        return this.timestamps.length;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public boolean isFull() {
+        return this.size == this.timestamps.length;
+    }
+
+    /**
+     * Empty this batch so that it can be filled up again.
+     */
+    public void clear() {
+        this.size = 0;
+    }
+
+    /**
+     * @return the arrival time of each packet, same as
+     *         {@link Packet#getArrivalTime()}.
+     */
+    public long[] getTimestamps() {
+        return this.timestamps;
+    }
+
+    /**
+     * @return the number of bytes of each packet that were captured.
+     */
+    public int[] getCapturedLengths() {
+        return this.capturedLengths;
+    }
+
+    /**
+     * @return the length of each packet as it was on the wire.
+     */
+    public int[] getTotalLengths() {
+        return this.totalLengths;
+    }
+
+    /**
+     * @return 4 or 6 for IPv4 and IPv6 packets respectively, zero for
+     *         anything else.
+     */
+    public byte[] getIpVersions() {
+        return this.ipVersions;
+    }
+
+    /**
+     * @return the IP protocol number of each packet, e.g. 17 for UDP. For
+     *         IPv6 this is the protocol following any extension headers.
+     */
+    public byte[] getProtocols() {
+        return this.protocols;
+    }
+
+    public int[] getSourceIPv4() {
+        return this.sourceIPv4;
+    }
+
+    public int[] getDestinationIPv4() {
+        return this.destinationIPv4;
+    }
+
+    /**
+     * @return the first 64 bits of the IPv6 source address of each packet.
+     */
+    public long[] getSourceIPv6High() {
+        return this.sourceIPv6High;
+    }
+
+    /**
+     * @return the last 64 bits of the IPv6 source address of each packet.
+     */
+    public long[] getSourceIPv6Low() {
+        return this.sourceIPv6Low;
+    }
+
+    public long[] getDestinationIPv6High() {
+        return this.destinationIPv6High;
+    }
+
+    public long[] getDestinationIPv6Low() {
+        return this.destinationIPv6Low;
+    }
+
+    public short[] getSourcePorts() {
+        return this.sourcePorts;
+    }
+
+    public short[] getDestinationPorts() {
+        return this.destinationPorts;
+    }
+
+}
@@ -0,0 +1,34 @@
+package io.pkts;
+
+import java.io.IOException;
+
+/**
+ * A handler that is given the packets of a pcap as columnar
+ * {@link PacketSummaries}, see
+ * {@link Pcap#loopSummaries(PacketSummaryHandler, int)}. Meant for jobs that
+ * only aggregate over addresses, ports and lengths and have no use for the
+ * packets themselves.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public interface PacketSummaryHandler {
+
+    /**
+     * Will be called by the {@link Pcap} class as soon as it has filled up a
+     * full batch of summaries, or fewer than that once the end of the pcap
+     * has been reached.
+     *
+     * The very same {@link PacketSummaries} instance is re-used for every
+     * batch so it is only valid during this call. Copy out whatever you need
+     * to keep around.
+     *
+     * @param summaries
+     *            the summaries, in the order the packets were read off of the
+     *            pcap stream. Never empty.
+     * @throws IOException
+     * @return true if this instance wants to handle subsequent packets, false
+     *         otherwise.
+     */
+    boolean nextSummaries(PacketSummaries summaries) throws IOException;
+
+}
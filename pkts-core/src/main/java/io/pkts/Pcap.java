@@ -2,49 +2,139 @@ package io.pkts;
 
 import io.pkts.buffer.BoundedInputStreamBuffer;
 import io.pkts.buffer.Buffer;
+import io.pkts.buffer.BufferPool;
 import io.pkts.buffer.Buffers;
+import io.pkts.buffer.InputStreamBuffer;
+import io.pkts.buffer.MappedFileBuffer;
 import io.pkts.filters.Filter;
 import io.pkts.filters.FilterException;
 import io.pkts.filters.FilterFactory;
 import io.pkts.filters.FilterParseException;
 import io.pkts.frame.PcapGlobalHeader;
+import io.pkts.frame.PcapRecordHeader;
+import io.pkts.framer.Framer;
 import io.pkts.framer.FramerManager;
+import io.pkts.framer.ParsePolicy;
 import io.pkts.framer.FramingException;
 import io.pkts.framer.PcapFramer;
+import io.pkts.framer.PcapngFramer;
+import io.pkts.packet.PCapPacket;
 import io.pkts.packet.Packet;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.ByteOrder;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
 
 /**
- * 
+ * A pcap (or pcapng) that can be looped over, streamed or processed in
+ * parallel. Make sure to {@link #close()} it, preferably through a
+ * try-with-resources, once you're done with it.
+ *
  * @author jonas@jonasborjesson.com
  * 
  */
-public class Pcap {
+public class Pcap implements AutoCloseable {
+
+    /**
+     * When processing a pcap in parallel, we split it up in a few more
+     * segments than there are threads to even out the load a bit.
+     */
+    private static final int SEGMENTS_PER_THREAD = 4;
+
+    /**
+     * There is no point in splitting up a pcap in segments smaller than this.
+     */
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+    private static final int MAX_INITIAL_BATCH_CAPACITY = 1024;
+
+    /**
+     * When binary searching for the start of a time window, stop bisecting
+     * once the region left is smaller than this and skip through the
+     * remaining record headers one by one instead.
+     */
+    private static final long BISECT_THRESHOLD = 64 * 1024;
+
+    private static final byte[] GZIP_MAGIC = { (byte) 0x1f, (byte) 0x8b };
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private static final int STREAM_CHUNK_SIZE = 64 * 1024;
 
     private final PcapGlobalHeader header;
     private final Buffer buffer;
     private final FramerManager framerManager;
 
+    /**
+     * Only set if the records of this pcap cannot be framed independently of
+     * each other, in which case the same framer must be used throughout. That
+     * is the case for a pcapng, whose blocks depend on what came before them
+     * (the interfaces), and for a {@link #merge(Pcap...) merged} pcap. A
+     * classic pcap gets a new {@link PcapFramer} every time it is looped
+     * over.
+     */
+    private final Framer<Packet, PCapPacket> framer;
+
+    /**
+     * The file backing this pcap, only known if it was opened through
+     * {@link #openMapped(Path)}, which is also the only kind of pcap we can
+     * seek in.
+     */
+    private Path file;
+
+    /**
+     * Lazily loaded the first time we seek.
+     */
+    private PcapIndex index;
+
+    /**
+     * The stream feeding the buffer, if any. Closed along with the pcap.
+     */
+    private Closeable stream;
+
     /**
      * If the filter is set then only frames that are accepted by the filter
      * will be further processed.
      */
     private Filter filter = null;
 
+    /**
+     * Which protocols the packets of this pcap are allowed to frame.
+     */
+    private ParsePolicy parsePolicy = ParsePolicy.ALL;
+
     private final FilterFactory filterFactory = FilterFactory.getInstance();
 
     private Pcap(final PcapGlobalHeader header, final Buffer buffer) {
+        this(header, buffer, null);
+    }
+
+    private Pcap(final PcapGlobalHeader header, final Buffer buffer, final Framer<Packet, PCapPacket> framer) {
         assert header != null;
         assert buffer != null;
         this.header = header;
         this.buffer = buffer;
+        this.framer = framer;
         this.framerManager = FramerManager.getInstance();
     }
 
@@ -69,32 +159,744 @@ public class Pcap {
         }
     }
 
+    /**
+     * Limit which protocols the packets of this pcap will frame, e.g.
+     * {@link ParsePolicy#TRANSPORT} for jobs that only care about addresses
+     * and ports, in which case no time is spent on checking whether the
+     * payloads are SIP or RTP. Only affects packets framed after this call.
+     *
+     * @param parsePolicy
+     */
+    public void setParsePolicy(final ParsePolicy parsePolicy) {
+        if (parsePolicy == null) {
+            throw new IllegalArgumentException("The parse policy cannot be null");
+        }
+        this.parsePolicy = parsePolicy;
+        if (this.framer != null) {
+            setParsePolicy(this.framer, parsePolicy);
+        }
+    }
+
+    public ParsePolicy getParsePolicy() {
+        return this.parsePolicy;
+    }
+
+    private PcapFramer configure(final PcapFramer framer) {
+        framer.setParsePolicy(this.parsePolicy);
+        return framer;
+    }
+
+    /**
+     * Hand the policy to the framers that aren't created on demand, i.e.,
+     * the pcapng framer and the one merging several pcaps.
+     */
+    static void setParsePolicy(final Framer<Packet, PCapPacket> framer, final ParsePolicy parsePolicy) {
+        if (framer instanceof PcapFramer) {
+            ((PcapFramer) framer).setParsePolicy(parsePolicy);
+        } else if (framer instanceof PcapngFramer) {
+            ((PcapngFramer) framer).setParsePolicy(parsePolicy);
+        } else if (framer instanceof MergeFramer) {
+            ((MergeFramer) framer).setParsePolicy(parsePolicy);
+        }
+    }
+
     public void loop(final PacketHandler callback) throws IOException, FramingException {
-        final ByteOrder byteOrder = this.header.getByteOrder();
-        final PcapFramer framer = new PcapFramer(this.header, this.framerManager);
-        int count = 1;
+        loop(this.buffer, callback, true);
+    }
+
+    /**
+     * Same as {@link #loop(PacketHandler)} but only the packets with an
+     * arrival time within <code>[from, to)</code> are handed over to the
+     * handler.
+     *
+     * Records outside of the window are never framed. Only their record
+     * headers are decoded and their payloads are skipped, and the loop ends
+     * at the first record at or after <code>to</code>, which means that the
+     * records are expected to be in time order. If the pcap was opened
+     * through {@link #openMapped(Path)}, the start of the window is found
+     * through a binary search over the file instead of skipping through
+     * every record before it.
+     *
+     * Pcapng files and merged pcaps are framed in full and the window is
+     * only applied once the packets have been framed.
+     *
+     * @param callback
+     * @param from
+     *            the arrival time (inclusive) of the first packet of
+     *            interest, in micro or nano seconds, depending on the pcap,
+     *            since epoch. I.e., the same unit as
+     *            {@link Packet#getArrivalTime()}.
+     * @param to
+     *            the arrival time (exclusive) where the window ends.
+     * @throws IOException
+     * @throws FramingException
+     */
+    public void loop(final PacketHandler callback, final long from, final long to) throws IOException,
+            FramingException {
+        if (this.framer != null) {
+            loop(this.buffer, this.framer, packet -> {
+                final long time = packet.getArrivalTime();
+                if (time >= to) {
+                    return false;
+                }
+                return time < from || callback.nextPacket(packet);
+            }, true);
+            return;
+        }
+
+        if (this.file != null) {
+            bisect((MappedFileBuffer) this.buffer, from);
+        }
+        loop(this.buffer, configure(new PcapFramer(this.header, this.framerManager, false, from, to)), callback,
+                true);
+    }
+
+    /**
+     * Same as {@link #loop(PacketHandler)} but instead of allocating a new
+     * {@link PCapPacket} for every record, the very same instance is
+     * re-pointed at every record, which takes a good chunk of pressure off of
+     * the garbage collector when scanning through large captures.
+     *
+     * The catch is that the packet handed over to the handler, as well as
+     * every packet framed out of it, is only valid during the call to
+     * {@link PacketHandler#nextPacket(Packet)}. If you need to hang on to a
+     * packet, call {@link Packet#retain()} and keep the returned packet
+     * instead. Use {@link Packet#clone()} if you need a deep copy.
+     *
+     * Note that only the pcap layer is recycled. Per record, that layer
+     * allocates nothing but the view of the payload (a single small object
+     * for a mapped pcap, plus the payload bytes themselves for a pcap read
+     * off of a stream, unless a pool is used). Every layer further up the
+     * stack (Ethernet, IP, UDP etc) is still framed, and hence allocated, for
+     * every record as soon as it is asked for: the packet itself along with
+     * the views of its headers and payload. E.g. getting to the UDP packet
+     * costs roughly an order of magnitude more than the pcap layer alone.
+     * Also, pcapng files and merged pcaps are always looped over without
+     * recycling.
+     *
+     * @param callback
+     * @throws IOException
+     * @throws FramingException
+     */
+    public void loopRecycled(final PacketHandler callback) throws IOException, FramingException {
+        final Framer<Packet, PCapPacket> framer = this.framer != null ? this.framer
+                : configure(new PcapFramer(this.header, this.framerManager, true));
+        loop(this.buffer, framer, callback, true);
+    }
+
+    /**
+     * Same as {@link #loopRecycled(PacketHandler)} but the payloads of the
+     * records are copied off-heap into buffers from the pool, and released
+     * again as soon as the handler is done with them, rather than onto the
+     * heap. This only makes a difference for pcaps read off of a stream,
+     * i.e. opened through one of the <code>openStream</code> methods, since
+     * the payloads of a mapped pcap are already read straight out of the
+     * (off-heap) mapping without being copied.
+     *
+     * Since the payload goes back into the pool, {@link Packet#retain()}
+     * will copy it onto the heap.
+     *
+     * @param callback
+     * @param pool
+     * @throws IOException
+     * @throws FramingException
+     */
+    public void loopRecycled(final PacketHandler callback, final BufferPool pool) throws IOException,
+            FramingException {
+        final Framer<Packet, PCapPacket> framer = this.framer != null ? this.framer
+                : configure(new PcapFramer(this.header, this.framerManager, pool));
+        loop(this.buffer, framer, callback, true);
+    }
+
+    /**
+     * Same as {@link #loop(PacketHandler)} but the packets are handed over to
+     * the handler in batches of (up to) <code>batchSize</code> packets.
+     *
+     * @param handler
+     * @param batchSize
+     *            the maximum number of packets in each batch. Only the last
+     *            batch may contain fewer packets than this.
+     * @throws IOException
+     * @throws FramingException
+     */
+    public void loopBatched(final BatchPacketHandler handler, final int batchSize) throws IOException,
+            FramingException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1");
+        }
+
+        final Batcher batcher = new Batcher(handler, batchSize);
+        loop(this.buffer, batcher, true);
+        batcher.flush();
+    }
+
+    /**
+     * Collects the packets into batches on behalf of a
+     * {@link BatchPacketHandler}.
+     */
+    private static final class Batcher implements PacketHandler {
+
+        private final BatchPacketHandler handler;
+        private final int batchSize;
+        private List<Packet> batch;
+        private boolean processNext = true;
+
+        private Batcher(final BatchPacketHandler handler, final int batchSize) {
+            this.handler = handler;
+            this.batchSize = batchSize;
+            this.batch = newBatch();
+        }
+
+        @Override
+        public boolean nextPacket(final Packet packet) throws IOException {
+            this.batch.add(packet);
+            if (this.batch.size() == this.batchSize) {
+                flush();
+            }
+            return this.processNext;
+        }
+
+        private List<Packet> newBatch() {
+            // don't trust the batch size to be reasonable
+            return new ArrayList<Packet>(Math.min(this.batchSize, MAX_INITIAL_BATCH_CAPACITY));
+        }
+
+        /**
+         * Hand over the current batch, if any, to the handler.
+         */
+        private void flush() throws IOException {
+            if (this.batch.isEmpty() || !this.processNext) {
+                return;
+            }
+
+            // the handler is allowed to hang on to the batch so always
+            // start a new one
+            final List<Packet> packets = this.batch;
+            this.batch = newBatch();
+            this.processNext = this.handler.nextPackets(packets);
+        }
+    }
+
+    /**
+     * Same as {@link #loopRecycled(PacketHandler)} but rather than handing
+     * over the packets, the addresses, ports, lengths etc of the packets are
+     * extracted straight out of the raw records into the primitive columns of
+     * a {@link PacketSummaries}, which is handed over to the handler every
+     * <code>batchSize</code> packets. No packet is ever framed beyond the pcap
+     * layer so this is by far the cheapest way of scanning through a capture
+     * when that is all you need.
+     *
+     * @param handler
+     * @param batchSize
+     *            the maximum number of packets in each batch. Only the last
+     *            batch may contain fewer packets than this.
+     * @throws IOException
+     * @throws FramingException
+     */
+    public void loopSummaries(final PacketSummaryHandler handler, final int batchSize) throws IOException,
+            FramingException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1");
+        }
+
+        final Summarizer summarizer = new Summarizer(handler, new PacketSummaries(batchSize));
+        loopRecycled(summarizer);
+        summarizer.flush();
+    }
+
+    /**
+     * Collects the summaries of the packets on behalf of a
+     * {@link PacketSummaryHandler}.
+     */
+    private static final class Summarizer implements PacketHandler {
+
+        private final PacketSummaryHandler handler;
+        private final PacketSummaries summaries;
+        private boolean processNext = true;
+
+        private Summarizer(final PacketSummaryHandler handler, final PacketSummaries summaries) {
+            this.handler = handler;
+            this.summaries = summaries;
+        }
+
+        @Override
+        public boolean nextPacket(final Packet packet) throws IOException {
+            this.summaries.add((PCapPacket) packet);
+            if (this.summaries.isFull()) {
+                flush();
+            }
+            return this.processNext;
+        }
+
+        private void flush() throws IOException {
+            if (this.summaries.isEmpty() || !this.processNext) {
+                return;
+            }
+
+            this.processNext = this.handler.nextSummaries(this.summaries);
+            this.summaries.clear();
+        }
+    }
 
+    /**
+     * Frame all the records in the buffer and hand them over to the callback.
+     *
+     * @param buffer
+     *            the buffer to frame the records from.
+     * @param callback
+     * @param tick
+     *            whether or not to move the {@link Clock} of the
+     *            {@link FramerManager}. When processing segments in parallel
+     *            time isn't moving forward in a predictable manner so there
+     *            is no point in ticking the clock.
+     */
+    private void loop(final Buffer buffer, final PacketHandler callback, final boolean tick) throws IOException,
+            FramingException {
+        final Framer<Packet, PCapPacket> framer = this.framer != null ? this.framer
+                : configure(new PcapFramer(this.header, this.framerManager));
+        loop(buffer, framer, callback, tick);
+    }
+
+    private void loop(final Buffer buffer, final Framer<Packet, PCapPacket> framer, final PacketHandler callback,
+            final boolean tick) throws IOException, FramingException {
         Packet packet = null;
         boolean processNext = true;
-        while ((packet = framer.frame(null, this.buffer)) != null && processNext) {
-            try {
-                // System.out.println(" - " + (count++));
+        while (processNext && (packet = framer.frame(null, buffer)) != null) {
+            if (tick) {
                 final long time = packet.getArrivalTime();
                 this.framerManager.tick(time);
-                if (this.filter == null) {
-                    processNext = callback.nextPacket(packet);
-                } else if (this.filter != null && this.filter.accept(packet)) {
-                    processNext = callback.nextPacket(packet);
+            }
+            if (passesFilter(packet)) {
+                processNext = callback.nextPacket(packet);
+            }
+        }
+    }
+
+    /**
+     * Run the packet through the filter, if any. Used by both the loops and
+     * the streams so that a filter complaining about a frame is dealt with
+     * the same way regardless of how the pcap is consumed.
+     *
+     * @param packet
+     * @return true if there is no filter or if the filter accepted the
+     *         packet, false if it rejected or complained about it.
+     */
+    private boolean passesFilter(final Packet packet) {
+        if (this.filter == null) {
+            return true;
+        }
+        try {
+            return this.filter.accept(packet);
+        } catch (final FilterException e) {
+            // TODO: use the callback instead to signal
+            // exceptions
+            System.err.println("WARN: the filter complained about the last frame. Msg (if any) - " +
+                    e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Process the pcap in parallel on the common {@link ForkJoinPool}.
+     *
+     * The file is split into byte ranges, each of which starts on a record
+     * boundary, and every range is framed on its own worker thread by a
+     * {@link SegmentHandler} of its own. Once all segments have been
+     * processed, their results are merged in file order, i.e. the merger is
+     * always called with the result of an earlier segment as its first
+     * argument and the result of the immediately following segment(s) as its
+     * second.
+     *
+     * This is only worth it for handlers that don't care about state across
+     * packets, such as counting or filtering, since every segment starts from
+     * scratch. Also note that the {@link Clock} is not driven when processing
+     * a pcap in parallel.
+     *
+     * Only classic pcaps opened through {@link #openMapped(Path)} can be split
+     * up. For any other pcap, including pcapng and merged pcaps, a single handler will process the entire pcap on the
+     * calling thread.
+     *
+     * @param handlers
+     *            factory for creating a new handler for each segment.
+     * @param merger
+     *            merges the results of two adjacent segments.
+     * @return the merged result of all segments.
+     * @throws IOException
+     */
+    public <R> R parallelLoop(final Supplier<? extends SegmentHandler<R>> handlers, final BinaryOperator<R> merger)
+            throws IOException, FramingException {
+        final ForkJoinPool pool = ForkJoinPool.commonPool();
+        int segments = pool.getParallelism() * SEGMENTS_PER_THREAD;
+        if (this.buffer instanceof MappedFileBuffer) {
+            final MappedFileBuffer mapped = (MappedFileBuffer) this.buffer;
+            final long size = mapped.getEnd() - mapped.getPosition();
+            segments = (int) Math.min(segments, size / MIN_SEGMENT_SIZE);
+        }
+        return parallelLoop(handlers, merger, pool, segments);
+    }
+
+    /**
+     * Same as {@link #parallelLoop(Supplier, BinaryOperator)} but with an
+     * explicit pool and number of segments to split the pcap into.
+     */
+    <R> R parallelLoop(final Supplier<? extends SegmentHandler<R>> handlers, final BinaryOperator<R> merger,
+            final ForkJoinPool pool, final int segments) throws IOException, FramingException {
+        if (!(this.buffer instanceof MappedFileBuffer) || this.framer != null) {
+            final SegmentHandler<R> handler = handlers.get();
+            loop(handler);
+            return handler.getResult();
+        }
+
+        final MappedFileBuffer mapped = (MappedFileBuffer) this.buffer;
+        final long from = mapped.getPosition();
+        final long to = mapped.getEnd();
+        final long[] boundaries = new PcapSegmenter(mapped, this.header).split(from, to, Math.max(1, segments));
+
+        try {
+            final R result = pool.invoke(new SegmentTask<>(mapped, boundaries, 0, boundaries.length - 1, handlers,
+                    merger));
+            mapped.setPosition(to);
+            return result;
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Processes the segments <code>[from, to)</code>, splitting the work in
+     * half until there is only a single segment left.
+     */
+    private final class SegmentTask<R> extends RecursiveTask<R> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final MappedFileBuffer buffer;
+        private final long[] boundaries;
+        private final int from;
+        private final int to;
+        private final Supplier<? extends SegmentHandler<R>> handlers;
+        private final BinaryOperator<R> merger;
+
+        private SegmentTask(final MappedFileBuffer buffer, final long[] boundaries, final int from, final int to,
+                final Supplier<? extends SegmentHandler<R>> handlers, final BinaryOperator<R> merger) {
+            this.buffer = buffer;
+            this.boundaries = boundaries;
+            this.from = from;
+            this.to = to;
+            this.handlers = handlers;
+            this.merger = merger;
+        }
+
+        @Override
+        protected R compute() {
+            if (this.to - this.from == 1) {
+                final SegmentHandler<R> handler = this.handlers.get();
+                try (MappedFileBuffer segment = this.buffer.segment(this.boundaries[this.from],
+                        this.boundaries[this.to])) {
+                    loop(segment, handler, false);
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-            } catch (final FilterException e) {
-                // TODO: use the callback instead to signal
-                // exceptions
-                System.err.println("WARN: the filter complained about the last frame. Msg (if any) - " +
-                        e.getMessage());
+                return handler.getResult();
             }
+
+            final int middle = (this.from + this.to) >>> 1;
+            final SegmentTask<R> left = new SegmentTask<>(this.buffer, this.boundaries, this.from, middle,
+                    this.handlers, this.merger);
+            final SegmentTask<R> right = new SegmentTask<>(this.buffer, this.boundaries, middle, this.to,
+                    this.handlers, this.merger);
+            left.fork();
+            final R rightResult = right.compute();
+            return this.merger.apply(left.join(), rightResult);
         }
     }
 
+    /**
+     * Get all the packets of this pcap as a {@link Stream}. The packets are
+     * framed lazily as the stream is consumed and any filter set through
+     * {@link #setFilter(String)} is honored. Closing the stream closes this
+     * pcap.
+     *
+     * For classic pcaps opened through {@link #openMapped(Path)} the stream
+     * can be split up so that a parallel stream, e.g.
+     * <code>pcap.stream().parallel().filter(...).collect(...)</code>, really
+     * does fan the framing out across the cores. The same caveats as for
+     * {@link #parallelLoop(Supplier, BinaryOperator)} apply, i.e. the
+     * {@link Clock} is only driven as long as the stream hasn't been split.
+     * Any other pcap is always streamed sequentially.
+     *
+     * Any {@link IOException} while framing the packets is re-thrown as an
+     * {@link UncheckedIOException}.
+     *
+     * @return a new stream of the (remaining) packets of this pcap.
+     */
+    public Stream<Packet> stream() {
+        return stream(MIN_SEGMENT_SIZE);
+    }
+
+    /**
+     * Same as {@link #stream()} but with an explicit lower limit on the size,
+     * in bytes, of the ranges the pcap is split up in.
+     */
+    Stream<Packet> stream(final long minSplitSize) {
+        final Framer<Packet, PCapPacket> framer = this.framer != null ? this.framer
+                : configure(new PcapFramer(this.header, this.framerManager));
+        return StreamSupport.stream(new PacketSpliterator(this.buffer, framer, false, minSplitSize), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * Frames the packets on behalf of a {@link Stream}. Only a spliterator
+     * over a (classic) {@link MappedFileBuffer} can be split, in which case
+     * both halves get a segment of their own, see
+     * {@link MappedFileBuffer#segment(long, long)}.
+     */
+    private final class PacketSpliterator implements Spliterator<Packet> {
+
+        private Buffer buffer;
+        private final Framer<Packet, PCapPacket> framer;
+
+        /**
+         * Whether the buffer is a segment of our own, as opposed to the
+         * buffer of the pcap itself.
+         */
+        private boolean segment;
+        private final long minSplitSize;
+
+        private PacketSpliterator(final Buffer buffer, final Framer<Packet, PCapPacket> framer,
+                final boolean segment, final long minSplitSize) {
+            this.buffer = buffer;
+            this.framer = framer;
+            this.segment = segment;
+            this.minSplitSize = minSplitSize;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super Packet> action) {
+            try {
+                Packet packet;
+                while ((packet = this.framer.frame(null, this.buffer)) != null) {
+                    if (!this.segment) {
+                        Pcap.this.framerManager.tick(packet.getArrivalTime());
+                    }
+                    if (passesFilter(packet)) {
+                        action.accept(packet);
+                        return true;
+                    }
+                }
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            if (this.segment) {
+                closeSegment();
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<Packet> trySplit() {
+            if (!(this.buffer instanceof MappedFileBuffer) || Pcap.this.framer != null) {
+                return null;
+            }
+
+            final MappedFileBuffer mapped = (MappedFileBuffer) this.buffer;
+            final long from = mapped.getPosition();
+            final long to = mapped.getEnd();
+            if (to - from < 2 * this.minSplitSize) {
+                return null;
+            }
+
+            final long[] boundaries = new PcapSegmenter(mapped, Pcap.this.header).split(from, to, 2);
+            if (boundaries.length < 3) {
+                return null;
+            }
+
+            final long middle = boundaries[1];
+            final MappedFileBuffer first = mapped.segment(from, middle);
+            final MappedFileBuffer second = mapped.segment(middle, to);
+            if (this.segment) {
+                closeSegment();
+            } else {
+                // the pcap itself has now been handed over to the segments
+                mapped.setPosition(to);
+            }
+            // an ordered spliterator must hand out the prefix and keep the
+            // rest to itself
+            this.buffer = second;
+            this.segment = true;
+            return new PacketSpliterator(first, configure(new PcapFramer(Pcap.this.header, Pcap.this.framerManager)),
+                    true, this.minSplitSize);
+        }
+
+        private void closeSegment() {
+            try {
+                ((Closeable) this.buffer).close();
+            } catch (final IOException e) {
+                // a segment doesn't own the channel so there is nothing that
+                // can go wrong here
+            }
+        }
+
+        /**
+         * The number of bytes left for a mapped pcap, which is as good of an
+         * estimate as any since the records are more or less of the same
+         * size throughout a pcap.
+         */
+        @Override
+        public long estimateSize() {
+            if (this.buffer instanceof MappedFileBuffer) {
+                final MappedFileBuffer mapped = (MappedFileBuffer) this.buffer;
+                return mapped.getEnd() - mapped.getPosition();
+            }
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+
+    /**
+     * Position this pcap at the first record with a timestamp equal to or
+     * later than the given one so that the next call to
+     * {@link #loop(PacketHandler)} resumes from there.
+     *
+     * The {@link PcapIndex} of the pcap is used to get close to the record
+     * and then the remaining record headers are skipped through one by one.
+     * The index is loaded from its sidecar file, or built and saved if there
+     * is no such file, the first time this pcap is seeked in.
+     *
+     * @param timestamp
+     *            in micro or nano seconds, depending on the pcap, since epoch.
+     *            I.e., the same unit as {@link Packet#getArrivalTime()}.
+     * @return true if such a record was found, false if all records are
+     *         earlier than the timestamp, in which case the pcap is
+     *         positioned at the end.
+     * @throws IOException
+     * @throws IllegalStateException
+     *             in case this pcap wasn't opened through
+     *             {@link #openMapped(Path)} or is a pcapng.
+     */
+    public boolean seek(final long timestamp) throws IOException {
+        final MappedFileBuffer mapped = getSeekableBuffer();
+        final PcapIndex index = getIndex();
+        final int entry = index.findEntry(timestamp);
+        if (entry == -1) {
+            mapped.setPosition(mapped.getEnd());
+            return false;
+        }
+
+        long position = index.getOffset(entry);
+        while (position + PcapRecordHeader.SIZE <= mapped.getEnd()) {
+            final PcapRecordHeader record = readRecordHeader(mapped, position);
+            if (record.getTimeStamp() >= timestamp) {
+                mapped.setPosition(position);
+                return true;
+            }
+            position += PcapRecordHeader.SIZE + record.getCapturedLength();
+        }
+
+        mapped.setPosition(mapped.getEnd());
+        return false;
+    }
+
+    /**
+     * Position this pcap at the given record so that the next call to
+     * {@link #loop(PacketHandler)} resumes from there. See
+     * {@link #seek(long)}.
+     *
+     * @param record
+     *            the record number, where the first record in the pcap is
+     *            record zero.
+     * @return true if there is such a record, false if not, in which case
+     *         the pcap is positioned at the end.
+     * @throws IOException
+     * @throws IllegalStateException
+     *             in case this pcap wasn't opened through
+     *             {@link #openMapped(Path)} or is a pcapng.
+     */
+    public boolean seekToRecord(final long record) throws IOException {
+        final MappedFileBuffer mapped = getSeekableBuffer();
+        final PcapIndex index = getIndex();
+        final int entry = index.findEntryForRecord(record);
+        if (entry == -1) {
+            mapped.setPosition(mapped.getEnd());
+            return false;
+        }
+
+        long position = index.getOffset(entry);
+        for (long i = index.getRecordNumber(entry); i < record; ++i) {
+            position += PcapRecordHeader.SIZE + readRecordHeader(mapped, position).getCapturedLength();
+        }
+        mapped.setPosition(position);
+        return true;
+    }
+
+    /**
+     * Get the index of this pcap, loading (or building) it if it hasn't
+     * been already.
+     *
+     * @return
+     * @throws IOException
+     * @throws IllegalStateException
+     *             in case this pcap wasn't opened through
+     *             {@link #openMapped(Path)} or is a pcapng.
+     */
+    public PcapIndex getIndex() throws IOException {
+        getSeekableBuffer();
+        if (this.index == null) {
+            this.index = PcapIndex.open(this.file);
+        }
+        return this.index;
+    }
+
+    /**
+     * Move the mapped pcap forward to a record boundary close to, but
+     * before, the first record with a timestamp equal to or later than the
+     * given one. Record boundaries in the middle of the file are found the
+     * same way as when splitting it for parallel processing, see
+     * {@link PcapSegmenter}.
+     *
+     * Note that the pcap is never moved backwards and, as long as the
+     * records are in time order, never past a record at or after the
+     * timestamp, so the records it is moved past are ones that would have
+     * been skipped anyway.
+     */
+    private void bisect(final MappedFileBuffer mapped, final long timestamp) throws IOException {
+        final PcapSegmenter segmenter = new PcapSegmenter(mapped, this.header);
+        long low = mapped.getPosition();
+        long high = mapped.getEnd();
+        while (high - low > BISECT_THRESHOLD) {
+            final long middle = low + (high - low) / 2;
+            final long boundary = segmenter.findBoundary(middle, high);
+            if (boundary != -1 && readRecordHeader(mapped, boundary).getTimeStamp() < timestamp) {
+                low = boundary;
+            } else {
+                // high is only a hint on where to look next, a record
+                // boundary we failed to recognize is simply skipped
+                // through later on.
+                high = middle;
+            }
+        }
+        mapped.setPosition(low);
+    }
+
+    private MappedFileBuffer getSeekableBuffer() {
+        if (this.file == null || this.framer != null) {
+            throw new IllegalStateException("Can only seek in classic pcaps opened through Pcap.openMapped");
+        }
+        return (MappedFileBuffer) this.buffer;
+    }
+
+    private PcapRecordHeader readRecordHeader(final MappedFileBuffer mapped, final long position)
+            throws IOException {
+        mapped.setPosition(position);
+        return new PcapRecordHeader(this.header.getByteOrder(), mapped.readBytes(PcapRecordHeader.SIZE),
+                this.header.timestampsInNs());
+    }
+
     /**
      * Create an {@link PcapOutputStream} based on this {@link Pcap}. The new
      * {@link PcapOutputStream} is configured to use the same
@@ -112,16 +914,20 @@ public class Pcap {
     }
 
     /**
-     * Capture packets from the input stream
+     * Capture packets from the input stream. The stream is read in chunks
+     * that are re-used once all the packets in them have been framed, so
+     * there is no limit on how large the records may be nor on how much
+     * can be read off of the stream, e.g. when reading a never ending
+     * capture from stdin.
      * 
      * @param is
      * @return
      * @throws IOException
      */
     public static Pcap openStream(final InputStream is) throws IOException {
-        final Buffer stream = Buffers.wrap(is);
-        final PcapGlobalHeader header = PcapGlobalHeader.parse(stream);
-        return new Pcap(header, stream);
+        final Pcap pcap = open(new InputStreamBuffer(STREAM_CHUNK_SIZE, is));
+        pcap.stream = is;
+        return pcap;
     }
 
     /**
@@ -133,13 +939,34 @@ public class Pcap {
      * @throws IOException
      */
     public static Pcap openStream(final InputStream is, final int bufferCapacity) throws IOException {
-        final Buffer stream = new BoundedInputStreamBuffer(bufferCapacity, is);
-        final PcapGlobalHeader header = PcapGlobalHeader.parse(stream);
-        return new Pcap(header, stream);
+        final Pcap pcap = open(new BoundedInputStreamBuffer(bufferCapacity, is));
+        pcap.stream = is;
+        return pcap;
     }
 
     /**
-     * 
+     * Figure out whether the buffer contains a classic pcap or a pcapng and
+     * read the header(s) accordingly.
+     */
+    private static Pcap open(final Buffer buffer) throws IOException {
+        final PcapngFramer pcapngFramer = new PcapngFramer();
+        if (!pcapngFramer.accept(buffer)) {
+            return new Pcap(PcapGlobalHeader.parse(buffer), buffer);
+        }
+
+        try {
+            return new Pcap(pcapngFramer.readHeader(buffer), buffer, pcapngFramer);
+        } catch (final FramingException e) {
+            throw new IllegalArgumentException("Unable to parse pcapng header: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Open the pcap file, which may be gzipped (e.g. a .pcap.gz) in which case
+     * the file is read and inflated ahead of the framing on a separate thread.
+     * Make sure to {@link #close()} the {@link Pcap} if you don't loop
+     * through all of it.
+     *
      * @param file
      *            the pcap file
      * @return a new {@link Pcap}
@@ -148,8 +975,30 @@ public class Pcap {
      * @throws IOException
      */
     public static Pcap openStream(final File file) throws FileNotFoundException, IOException {
-        final InputStream is = new FileInputStream(file);
-        return openStream(is);
+        final PushbackInputStream is = new PushbackInputStream(new FileInputStream(file), GZIP_MAGIC.length);
+        InputStream stream = is;
+        try {
+            if (isGzipped(is)) {
+                // inflating is typically more expensive than the framing
+                // itself so do that on a separate thread
+                stream = new ReadAheadInputStream(new GZIPInputStream(is, GZIP_BUFFER_SIZE));
+            }
+            return openStream(stream);
+        } catch (final IOException | RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    private static boolean isGzipped(final PushbackInputStream is) throws IOException {
+        final byte[] magic = new byte[GZIP_MAGIC.length];
+        int length = 0;
+        int read = 0;
+        while (length < magic.length && (read = is.read(magic, length, magic.length - length)) != -1) {
+            length += read;
+        }
+        is.unread(magic, 0, length);
+        return length == magic.length && magic[0] == GZIP_MAGIC[0] && magic[1] == GZIP_MAGIC[1];
     }
 
     /**
@@ -163,12 +1012,173 @@ public class Pcap {
         return openStream(new File(file));
     }
 
-    public void close() {
-        // TODO
+    /**
+     * Follow a pcap that is still being written to, e.g. by
+     * <code>tcpdump -w</code>, much like <code>tail -f</code> would. Instead
+     * of ending once all the packets currently in the file have been
+     * processed, {@link #loop(PacketHandler)} keeps on waiting for new
+     * packets to be written and hands them over to the handler as soon as
+     * they are complete. If the capture is rotated (<code>tcpdump -C</code>
+     * or <code>-G</code>), the next file is followed once the current one
+     * has been drained.
+     *
+     * Looping only stops once the handler returns false or the pcap is
+     * closed, typically from another thread.
+     *
+     * Only classic pcaps can be followed.
+     *
+     * @param file
+     *            the pcap file, which must exist although it may still be
+     *            empty.
+     * @return a new {@link Pcap}
+     * @throws IOException
+     *             in case the file cannot be opened or isn't a classic pcap.
+     */
+    public static Pcap follow(final Path file) throws IOException {
+        final FollowInputStream stream = new FollowInputStream(file);
+        try {
+            return openStream(stream);
+        } catch (final IOException | RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Merge the given pcaps into a single pcap whose packets are handed out
+     * in the order of their arrival time, much like <code>mergecap</code>
+     * does but without writing anything to disk. The pcaps don't have to be
+     * of the same link type, byte order or timestamp resolution (see
+     * {@link MergeFramer}) and may be any mix of classic pcaps, pcapngs and
+     * even {@link #follow(Path) followed} pcaps.
+     *
+     * If any of the pcaps has nano second timestamps, so does the merged one,
+     * and every packet is handed out with its arrival time in that resolution
+     * regardless of which pcap it came from, i.e.
+     * {@link Packet#getArrivalTime()} is in the unit given by the header of
+     * the merged pcap.
+     *
+     * Only one record per source is held in memory at any given time so
+     * merging is just as cheap regardless of how large the pcaps are.
+     *
+     * Note that filters set on the individual pcaps are ignored, set the
+     * filter on the merged pcap instead. Closing the merged pcap closes all
+     * of the sources.
+     *
+     * @param pcaps
+     *            the pcaps to merge, which should not be looped over by
+     *            anyone else.
+     * @return a new {@link Pcap}
+     */
+    public static Pcap merge(final Pcap... pcaps) {
+        if (pcaps == null || pcaps.length == 0) {
+            throw new IllegalArgumentException("There must be at least one pcap to merge");
+        }
+
+        final List<Framer<Packet, PCapPacket>> framers = new ArrayList<>(pcaps.length);
+        final List<Buffer> buffers = new ArrayList<>(pcaps.length);
+        for (final Pcap pcap : pcaps) {
+            framers.add(pcap.framer != null ? pcap.framer
+                    : pcap.configure(new PcapFramer(pcap.header, pcap.framerManager)));
+            buffers.add(pcap.buffer);
+        }
+
+        boolean nsTimestamps = false;
+        for (final Pcap pcap : pcaps) {
+            nsTimestamps |= pcap.header.timestampsInNs();
+        }
+        final PcapGlobalHeader first = pcaps[0].header;
+        final PcapGlobalHeader header = first.timestampsInNs() == nsTimestamps ? first
+                : PcapGlobalHeader.createHeader(first.getDataLinkType(), first.getSnapLength(), nsTimestamps);
+
+        final Pcap merged = new Pcap(header, Buffers.EMPTY_BUFFER, new MergeFramer(framers, buffers,
+                nsTimestamps));
+        merged.stream = () -> {
+            for (final Pcap pcap : pcaps) {
+                pcap.close();
+            }
+        };
+        return merged;
+    }
+
+    /**
+     * Memory map the pcap file and read the packets straight out of the
+     * mapping. Compared to {@link #openStream(File)} no bytes are copied when
+     * framing the records, the payload of each {@link Packet} is simply a
+     * view into the mapped file, which drastically cuts down on the
+     * allocation rate when processing large captures.
+     *
+     * The file is mapped in windows (see
+     * {@link MappedFileBuffer#DEFAULT_WINDOW_SIZE}) so files larger than 2GB
+     * are fine.
+     *
+     * Note that the packets are read-only views of the file. You can still
+     * write the {@link Packet}s back out to a {@link PcapOutputStream} but if
+     * you need to modify a packet in place (e.g. changing the IP addresses)
+     * you need to use {@link #openStream(File)} instead.
+     *
+     * @param file
+     *            the pcap file
+     * @return a new {@link Pcap}
+     * @throws IOException
+     *             in case the file cannot be opened or mapped.
+     */
+    public static Pcap openMapped(final Path file) throws IOException {
+        return openMapped(file, MappedFileBuffer.DEFAULT_WINDOW_SIZE);
     }
 
     /**
+     * Same as {@link #openMapped(Path)} but allows you to specify how large
+     * each mapped window should be.
      *
+     * @param file
+     *            the pcap file
+     * @param windowSize
+     *            the size of each mapped window in bytes. Should be larger
+     *            than the snap length of the capture.
+     * @return a new {@link Pcap}
+     * @throws IOException
+     */
+    public static Pcap openMapped(final Path file, final int windowSize) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final Pcap pcap = open(new MappedFileBuffer(channel, 0, channel.size(), windowSize));
+            pcap.file = file;
+            return pcap;
+        } catch (final IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Close the stream or file this pcap is reading from. Any packet that
+     * has already been framed stays valid.
+     */
+    @Override
+    public void close() {
+        if (this.stream != null) {
+            try {
+                this.stream.close();
+            } catch (final IOException e) {
+                // nothing we can do about it at this point
+            }
+        }
+        if (this.buffer instanceof Closeable) {
+            try {
+                ((Closeable) this.buffer).close();
+            } catch (final IOException e) {
+                // nothing we can do about it at this point
+            }
+        }
+    }
+
+    /**
+     * Get the global header of this pcap. For a pcapng, which doesn't have a
+     * global header as such, this is a header describing the first interface
+     * of the capture. For a merged pcap, it is the header of the first
+     * source. Every {@link PCapPacket} carries the header of the pcap, or the
+     * interface, it was captured on (see {@link PCapPacket#getGlobalHeader()}).
      */
     public PcapGlobalHeader getPcapHeader() {
         return this.header;
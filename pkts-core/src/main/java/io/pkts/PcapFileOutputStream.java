@@ -0,0 +1,524 @@
+package io.pkts;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.frame.PcapGlobalHeader;
+import io.pkts.frame.PcapRecordHeader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A {@link PcapOutputStream} that writes to a file through a
+ * {@link FileChannel}, buffering the records so that the number of system
+ * calls is kept to a minimum.
+ *
+ * The records are collected into batches that are written to the channel
+ * using a single gathering write. The record headers, as well as any payload
+ * that may change once it has been handed over to us, are copied into a
+ * direct staging buffer. Read-only payloads, such as the payloads of the
+ * packets of a memory mapped pcap (see {@link Pcap#openMapped(Path)}), can't
+ * change so they are added to the batch as is, meaning that splitting up a
+ * mapped pcap copies the payloads straight from the mapping to the file.
+ *
+ * The output can be rotated, much like <code>tcpdump -C</code> and
+ * <code>-G</code>, once the file reaches a certain size or spans a certain
+ * amount of time (based on the timestamps of the records, not the wall
+ * clock). The first file is the one given and the following ones get a
+ * counter appended to the name, i.e. <code>out.pcap</code>,
+ * <code>out.pcap1</code>, <code>out.pcap2</code> etc, which is the naming
+ * that {@link Pcap#follow(Path)} knows how to follow.
+ *
+ * Optionally, the batches can be written by a dedicated writer thread so
+ * that the caller never waits for the disk unless it is falling behind.
+ * Any error on the writer thread is re-thrown on the next call to this
+ * stream.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class PcapFileOutputStream extends PcapOutputStream {
+
+    /**
+     * The default number of bytes collected before a batch is written.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * The maximum number of buffers in a single gathering write, which is
+     * what Linux allows (IOV_MAX).
+     */
+    private static final int MAX_SLICES = 1024;
+
+    /**
+     * The number of staging buffers when writing on a separate thread, i.e.
+     * the writer thread can be this many batches, minus the one being
+     * filled, behind.
+     */
+    private static final int ASYNC_STAGING_BUFFERS = 3;
+
+    private final PcapGlobalHeader header;
+    private final Path file;
+    private final int bufferSize;
+    private final long maxFileSize;
+    private final long rotationSeconds;
+
+    /**
+     * Only set when the batches are written on a separate thread.
+     */
+    private final Writer writer;
+
+    private FileChannel channel;
+    private Path currentFile;
+    private int fileCount;
+    private long fileSize;
+    private long fileStartSeconds;
+
+    private ByteBuffer staging;
+
+    /**
+     * The start of the bytes in the staging buffer not yet part of a slice.
+     */
+    private int stagingMark;
+    private final List<ByteBuffer> slices = new ArrayList<>();
+    private long pendingBytes;
+
+    private boolean closed;
+
+    private PcapFileOutputStream(final PcapGlobalHeader header, final Path file, final int bufferSize,
+            final long maxFileSize, final long rotationSeconds, final boolean async) {
+        // we do all the writing ourselves
+        super(header, OutputStream.nullOutputStream());
+        this.header = header;
+        this.file = file;
+        this.bufferSize = bufferSize;
+        this.maxFileSize = maxFileSize;
+        this.rotationSeconds = rotationSeconds;
+        if (async) {
+            this.writer = new Writer(bufferSize);
+            this.staging = this.writer.takeFree();
+        } else {
+            this.writer = null;
+            this.staging = ByteBuffer.allocateDirect(bufferSize);
+        }
+    }
+
+    /**
+     * Create a new stream writing to a single file, which is written to
+     * synchronously.
+     *
+     * @param header
+     *            the global header of the pcap.
+     * @param file
+     *            the file to write to, which is truncated if it exists.
+     * @return
+     * @throws IOException
+     */
+    public static PcapFileOutputStream create(final PcapGlobalHeader header, final Path file) throws IOException {
+        return create(header, file, 0, 0, false);
+    }
+
+    /**
+     * Create a new stream, potentially rotating the file.
+     *
+     * @param header
+     *            the global header of every file.
+     * @param file
+     *            the first file to write to. Any file that is written to is
+     *            truncated if it exists.
+     * @param maxFileSize
+     *            start a new file rather than letting the current file grow
+     *            larger than this many bytes. Zero, or less, to not rotate on
+     *            size. Note that a file always contains at least one record
+     *            no matter how large it is.
+     * @param rotationSeconds
+     *            start a new file when a record is this many seconds later
+     *            than the first record of the current file. Zero, or less, to
+     *            not rotate on time.
+     * @param async
+     *            whether to write to the files on a separate thread.
+     * @return
+     * @throws IOException
+     */
+    public static PcapFileOutputStream create(final PcapGlobalHeader header, final Path file, final long maxFileSize,
+            final long rotationSeconds, final boolean async) throws IOException {
+        if (header == null) {
+            throw new IllegalArgumentException("The PcapGlobalHeader cannot be null");
+        }
+        if (file == null) {
+            throw new IllegalArgumentException("The file cannot be null");
+        }
+
+        final PcapFileOutputStream out = new PcapFileOutputStream(header, file, DEFAULT_BUFFER_SIZE, maxFileSize,
+                rotationSeconds, async);
+        try {
+            out.openNextFile();
+        } catch (final IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+        return out;
+    }
+
+    /**
+     * @return the file currently being written to.
+     */
+    public Path getFile() {
+        return this.currentFile;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeRecord(final PcapRecordHeader header, final Buffer payload) throws IOException {
+        final int length = payload.getReadableBytes();
+        final long seconds = header.getTimeStampSeconds();
+        if (shouldRotate(PcapRecordHeader.SIZE + length, seconds)) {
+            rotate();
+        }
+        if (this.fileSize == PcapGlobalHeader.SIZE) {
+            this.fileStartSeconds = seconds;
+        }
+
+        header.write(this);
+        final ByteBuffer view = payload.toByteBuffer();
+        if (!payload.hasWriteSupport() && view.isDirect()) {
+            addSlice(view);
+        } else {
+            stage(view);
+        }
+
+        if (this.pendingBytes >= this.bufferSize) {
+            submit();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final int b) throws IOException {
+        ensureStagingRoom(1);
+        this.staging.put((byte) b);
+        this.pendingBytes += 1;
+        this.fileSize += 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        stage(ByteBuffer.wrap(b, off, len));
+    }
+
+    /**
+     * Hand over everything buffered so far to the operating system, waiting
+     * for the writer thread if need be.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+        submit();
+        if (this.writer != null) {
+            this.writer.await();
+        }
+    }
+
+    /**
+     * Flush and close the current file, as well as stopping the writer thread
+     * if there is one.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        try {
+            if (this.channel != null) {
+                flush();
+            }
+        } finally {
+            this.closed = true;
+            if (this.writer != null) {
+                this.writer.stop();
+            }
+            if (this.channel != null) {
+                this.channel.close();
+            }
+        }
+    }
+
+    private boolean shouldRotate(final int recordSize, final long seconds) {
+        if (this.fileSize <= PcapGlobalHeader.SIZE) {
+            return false;
+        }
+        if (this.maxFileSize > 0 && this.fileSize + recordSize > this.maxFileSize) {
+            return true;
+        }
+        return this.rotationSeconds > 0 && seconds - this.fileStartSeconds >= this.rotationSeconds;
+    }
+
+    private void rotate() throws IOException {
+        submit();
+        if (this.writer != null) {
+            this.writer.submit(new Batch(this.channel, null, null, true, null));
+        } else {
+            this.channel.close();
+        }
+        this.channel = null;
+        openNextFile();
+    }
+
+    private void openNextFile() throws IOException {
+        this.currentFile = this.fileCount == 0 ? this.file : this.file.resolveSibling(this.file.getFileName()
+                .toString() + this.fileCount);
+        ++this.fileCount;
+        this.channel = FileChannel.open(this.currentFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.fileSize = 0;
+        this.header.write(this);
+    }
+
+    /**
+     * Copy the bytes into the staging buffer.
+     */
+    private void stage(final ByteBuffer bytes) throws IOException {
+        final int length = bytes.remaining();
+        if (length > this.staging.capacity()) {
+            // won't ever fit so give it a buffer of its own
+            final ByteBuffer copy = ByteBuffer.allocateDirect(length);
+            copy.put(bytes).flip();
+            addSlice(copy);
+            return;
+        }
+
+        ensureStagingRoom(length);
+        this.staging.put(bytes);
+        this.pendingBytes += length;
+        this.fileSize += length;
+    }
+
+    /**
+     * Add a buffer that won't change to the batch as is.
+     */
+    private void addSlice(final ByteBuffer slice) throws IOException {
+        checkOpen();
+        sealStaging();
+        this.slices.add(slice);
+        this.pendingBytes += slice.remaining();
+        this.fileSize += slice.remaining();
+        if (this.slices.size() >= MAX_SLICES - 1) {
+            submit();
+        }
+    }
+
+    private void ensureStagingRoom(final int length) throws IOException {
+        checkOpen();
+        if (this.staging.remaining() < length) {
+            submit();
+        }
+    }
+
+    /**
+     * Turn whatever has been staged since the last slice into a slice of its
+     * own.
+     */
+    private void sealStaging() {
+        final int position = this.staging.position();
+        if (position > this.stagingMark) {
+            final ByteBuffer slice = this.staging.duplicate();
+            slice.limit(position).position(this.stagingMark);
+            this.slices.add(slice);
+            this.stagingMark = position;
+        }
+    }
+
+    /**
+     * Write the current batch, or hand it over to the writer thread, and
+     * start on a new one.
+     */
+    private void submit() throws IOException {
+        sealStaging();
+        if (this.slices.isEmpty()) {
+            return;
+        }
+
+        final ByteBuffer[] buffers = this.slices.toArray(new ByteBuffer[0]);
+        this.slices.clear();
+        this.pendingBytes = 0;
+        this.stagingMark = 0;
+
+        if (this.writer == null) {
+            writeFully(this.channel, buffers);
+            this.staging.clear();
+        } else {
+            this.writer.submit(new Batch(this.channel, buffers, this.staging, false, null));
+            this.staging = this.writer.takeFree();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (this.closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer[] buffers) throws IOException {
+        int first = 0;
+        while (first < buffers.length) {
+            channel.write(buffers, first, buffers.length - first);
+            while (first < buffers.length && !buffers[first].hasRemaining()) {
+                ++first;
+            }
+        }
+    }
+
+    /**
+     * A batch of buffers to write to a channel, or simply a request to close
+     * the channel or to signal once everything before it has been written.
+     */
+    private static final class Batch {
+
+        private static final Batch STOP = new Batch(null, null, null, false, null);
+
+        private final FileChannel channel;
+        private final ByteBuffer[] buffers;
+        private final ByteBuffer staging;
+        private final boolean close;
+        private final CountDownLatch done;
+
+        private Batch(final FileChannel channel, final ByteBuffer[] buffers, final ByteBuffer staging,
+                final boolean close, final CountDownLatch done) {
+            this.channel = channel;
+            this.buffers = buffers;
+            this.staging = staging;
+            this.close = close;
+            this.done = done;
+        }
+    }
+
+    /**
+     * Writes the batches on a dedicated thread. The number of staging buffers
+     * is bounded so a producer that is faster than the disk will eventually
+     * block waiting for a free one.
+     *
+     * The thread keeps going until stopped, no matter what goes wrong, since
+     * the producer depends on it to hand back the staging buffers and to
+     * signal once a batch is done. The first error is kept and reported to
+     * the producer and every batch after it is dropped rather than written.
+     */
+    private static final class Writer {
+
+        private final BlockingQueue<ByteBuffer> free;
+        private final BlockingQueue<Batch> batches = new LinkedBlockingQueue<>();
+        private final Thread thread;
+        private volatile Throwable error;
+
+        private Writer(final int bufferSize) {
+            this.free = new ArrayBlockingQueue<>(ASYNC_STAGING_BUFFERS);
+            for (int i = 0; i < ASYNC_STAGING_BUFFERS; ++i) {
+                this.free.add(ByteBuffer.allocateDirect(bufferSize));
+            }
+            this.thread = new Thread(this::run, "pkts-pcap-writer");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        private void run() {
+            while (true) {
+                final Batch batch;
+                try {
+                    batch = this.batches.take();
+                } catch (final InterruptedException e) {
+                    fail(e);
+                    continue;
+                }
+                if (batch == Batch.STOP) {
+                    return;
+                }
+
+                try {
+                    if (this.error == null && batch.buffers != null) {
+                        writeFully(batch.channel, batch.buffers);
+                    }
+                    if (batch.close) {
+                        batch.channel.close();
+                    }
+                } catch (final Throwable t) {
+                    fail(t);
+                } finally {
+                    if (batch.staging != null) {
+                        batch.staging.clear();
+                        this.free.add(batch.staging);
+                    }
+                    if (batch.done != null) {
+                        batch.done.countDown();
+                    }
+                }
+            }
+        }
+
+        private void fail(final Throwable t) {
+            if (this.error == null) {
+                this.error = t;
+            }
+        }
+
+        private void submit(final Batch batch) throws IOException {
+            checkError();
+            this.batches.add(batch);
+        }
+
+        private ByteBuffer takeFree() {
+            try {
+                return this.free.take();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the pcap writer", e);
+            }
+        }
+
+        /**
+         * Wait until everything submitted so far has been written.
+         */
+        private void await() throws IOException {
+            final CountDownLatch done = new CountDownLatch(1);
+            submit(new Batch(null, null, null, false, done));
+            try {
+                done.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the pcap writer");
+            }
+            checkError();
+        }
+
+        private void stop() {
+            this.batches.add(Batch.STOP);
+            try {
+                this.thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void checkError() throws IOException {
+            if (this.error != null) {
+                throw new IOException("Unable to write the pcap", this.error);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,377 @@
+package io.pkts;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.buffer.Buffers;
+import io.pkts.frame.PcapGlobalHeader;
+import io.pkts.frame.PcapRecordHeader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An index over the records of a (classic) pcap, keeping track of the file
+ * offset, timestamp and captured length of every Nth record. This is what
+ * allows {@link Pcap#seek(long)} and {@link Pcap#seekToRecord(long)} to jump
+ * straight to the vicinity of a record instead of framing everything that
+ * comes before it.
+ *
+ * The index is built in a single pass over the file that only reads the
+ * record headers, the payloads are skipped over, and can be saved to a small
+ * sidecar file next to the pcap (see {@link #open(Path)}) so that it only has
+ * to be built once. Each entry is 20 bytes so indexing every 1000th record of
+ * a capture with 100 million packets results in a 2MB index.
+ *
+ * Note that the binary search over the timestamps assumes that they are (at
+ * least roughly) increasing throughout the pcap, which is the case for
+ * pretty much every capture out there.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class PcapIndex {
+
+    /**
+     * By default every 1000th record is indexed.
+     */
+    public static final int DEFAULT_INTERVAL = 1000;
+
+    /**
+     * The suffix of the sidecar file, which is placed next to the pcap.
+     */
+    public static final String SIDECAR_SUFFIX = ".pktsidx";
+
+    /**
+     * "PKTI"
+     */
+    private static final int MAGIC = 0x504B5449;
+
+    private static final int VERSION = 2;
+
+    private final long pcapSize;
+
+    /**
+     * The last modified time, in milliseconds, of the pcap when it was
+     * indexed. Together with the size this tells us whether the pcap has
+     * been rewritten since.
+     */
+    private final long pcapLastModified;
+    private final int interval;
+    private final long recordCount;
+    private final int size;
+    private final long[] offsets;
+    private final long[] timestamps;
+    private final int[] capturedLengths;
+
+    private PcapIndex(final long pcapSize, final long pcapLastModified, final int interval, final long recordCount,
+            final int size, final long[] offsets, final long[] timestamps, final int[] capturedLengths) {
+        this.pcapSize = pcapSize;
+        this.pcapLastModified = pcapLastModified;
+        this.interval = interval;
+        this.recordCount = recordCount;
+        this.size = size;
+        this.offsets = offsets;
+        this.timestamps = timestamps;
+        this.capturedLengths = capturedLengths;
+    }
+
+    /**
+     * Load the index of the pcap from its sidecar file. If there is no such
+     * file, or it is out of date, i.e. the size or the last modified time of
+     * the pcap doesn't match what it was when it was indexed, the index is built (using the
+     * {@link #DEFAULT_INTERVAL}) and saved to the sidecar file. If the
+     * sidecar file cannot be written, e.g. since the pcap is on a read-only
+     * file system, the index is simply kept in memory.
+     *
+     * @param pcap
+     *            the pcap file
+     * @return the index of the pcap
+     * @throws IOException
+     */
+    public static PcapIndex open(final Path pcap) throws IOException {
+        final Path sidecar = getSidecar(pcap);
+        if (Files.exists(sidecar)) {
+            try {
+                final PcapIndex index = read(sidecar);
+                if (index.pcapSize == Files.size(pcap)
+                        && index.pcapLastModified == Files.getLastModifiedTime(pcap).toMillis()) {
+                    return index;
+                }
+            } catch (final IOException | IllegalArgumentException e) {
+                // corrupt or from an older version, simply rebuild it
+            }
+        }
+
+        final PcapIndex index = build(pcap, DEFAULT_INTERVAL);
+        try {
+            index.write(sidecar);
+        } catch (final IOException e) {
+            // the index is still perfectly usable
+        }
+        return index;
+    }
+
+    /**
+     * @param pcap
+     * @return the path of the sidecar file of the given pcap.
+     */
+    public static Path getSidecar(final Path pcap) {
+        return pcap.resolveSibling(pcap.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * Build the index by walking through all the record headers of the pcap.
+     *
+     * @param pcap
+     *            the pcap file
+     * @param interval
+     *            index every Nth record.
+     * @return the index
+     * @throws IOException
+     * @throws IllegalArgumentException
+     *             in case the file isn't a classic pcap.
+     */
+    public static PcapIndex build(final Path pcap, final int interval) throws IOException {
+        if (interval < 1) {
+            throw new IllegalArgumentException("The interval must be at least 1");
+        }
+
+        // read before we start so that a pcap modified while we are indexing
+        // it isn't considered up to date next time around.
+        final long lastModified = Files.getLastModifiedTime(pcap).toMillis();
+        try (FileChannel channel = FileChannel.open(pcap, StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            final ByteBuffer globalHeader = ByteBuffer.allocate(PcapGlobalHeader.SIZE);
+            if (!readFully(channel, globalHeader)) {
+                throw new IllegalArgumentException("Not enough data to contain a pcap header");
+            }
+            final PcapGlobalHeader header = PcapGlobalHeader.parse(Buffers.wrap(globalHeader.array()));
+
+            // the record header is re-used for every record since it simply
+            // reads whatever is in the underlying array
+            final ByteBuffer bytes = ByteBuffer.allocate(PcapRecordHeader.SIZE);
+            final Buffer body = Buffers.wrap(bytes.array());
+            final PcapRecordHeader record = new PcapRecordHeader(header.getByteOrder(), body,
+                    header.timestampsInNs());
+
+            int size = 0;
+            long[] offsets = new long[16];
+            long[] timestamps = new long[16];
+            int[] capturedLengths = new int[16];
+
+            long count = 0;
+            long position = PcapGlobalHeader.SIZE;
+            while (position + PcapRecordHeader.SIZE <= fileSize) {
+                bytes.clear();
+                if (!readFully(channel, bytes)) {
+                    break;
+                }
+
+                final long capturedLength = record.getCapturedLength();
+                final long next = position + PcapRecordHeader.SIZE + capturedLength;
+                if (capturedLength < 0 || next > fileSize) {
+                    // truncated, the framer wouldn't make it past this point
+                    // either.
+                    break;
+                }
+
+                if (count % interval == 0) {
+                    if (size == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, size * 2);
+                        timestamps = Arrays.copyOf(timestamps, size * 2);
+                        capturedLengths = Arrays.copyOf(capturedLengths, size * 2);
+                    }
+                    offsets[size] = position;
+                    timestamps[size] = record.getTimeStamp();
+                    capturedLengths[size] = (int) capturedLength;
+                    ++size;
+                }
+
+                ++count;
+                position = next;
+                channel.position(position);
+            }
+
+            return new PcapIndex(fileSize, lastModified, interval, count, size, offsets, timestamps,
+                    capturedLengths);
+        }
+    }
+
+    /**
+     * Read an index previously saved through {@link #write(Path)}.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     * @throws IllegalArgumentException
+     *             in case the file isn't an index or is of an unknown
+     *             version.
+     */
+    public static PcapIndex read(final Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a pcap index");
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unknown pcap index version " + version);
+            }
+
+            final long pcapSize = in.readLong();
+            final long pcapLastModified = in.readLong();
+            final int interval = in.readInt();
+            final long recordCount = in.readLong();
+            final int size = in.readInt();
+            final long[] offsets = new long[size];
+            final long[] timestamps = new long[size];
+            final int[] capturedLengths = new int[size];
+            for (int i = 0; i < size; ++i) {
+                offsets[i] = in.readLong();
+                timestamps[i] = in.readLong();
+                capturedLengths[i] = in.readInt();
+            }
+            return new PcapIndex(pcapSize, pcapLastModified, interval, recordCount, size, offsets, timestamps,
+                    capturedLengths);
+        }
+    }
+
+    /**
+     * Save the index to the given file.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void write(final Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(this.pcapSize);
+            out.writeLong(this.pcapLastModified);
+            out.writeInt(this.interval);
+            out.writeLong(this.recordCount);
+            out.writeInt(this.size);
+            for (int i = 0; i < this.size; ++i) {
+                out.writeLong(this.offsets[i]);
+                out.writeLong(this.timestamps[i]);
+                out.writeInt(this.capturedLengths[i]);
+            }
+        }
+    }
+
+    /**
+     * @return every Nth record is indexed.
+     */
+    public int getInterval() {
+        return this.interval;
+    }
+
+    /**
+     * @return the total number of records in the pcap.
+     */
+    public long getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+     * @return the number of entries in the index.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the file offset of the record header of the given entry.
+     */
+    public long getOffset(final int entry) {
+        checkEntry(entry);
+        return this.offsets[entry];
+    }
+
+    /**
+     * @return the timestamp, in micro or nano seconds depending on the pcap,
+     *         of the record of the given entry.
+     */
+    public long getTimeStamp(final int entry) {
+        checkEntry(entry);
+        return this.timestamps[entry];
+    }
+
+    /**
+     * @return the captured length of the record of the given entry.
+     */
+    public int getCapturedLength(final int entry) {
+        checkEntry(entry);
+        return this.capturedLengths[entry];
+    }
+
+    /**
+     * @return the record number of the record of the given entry.
+     */
+    public long getRecordNumber(final int entry) {
+        checkEntry(entry);
+        return (long) entry * this.interval;
+    }
+
+    /**
+     * Find the entry to start from when looking for the first record with a
+     * timestamp equal to or later than the given one, i.e. the last entry
+     * with an earlier timestamp or the first entry if there is no such
+     * entry.
+     *
+     * @param timestamp
+     *            in micro or nano seconds depending on the pcap.
+     * @return the entry or -1 if the index is empty.
+     */
+    public int findEntry(final long timestamp) {
+        int low = 0;
+        int high = this.size - 1;
+        int found = this.size == 0 ? -1 : 0;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (this.timestamps[middle] < timestamp) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Find the entry to start from when looking for the given record.
+     *
+     * @param record
+     *            the record number, starting at zero.
+     * @return the entry or -1 if there is no such record.
+     */
+    public int findEntryForRecord(final long record) {
+        if (record < 0 || record >= this.recordCount) {
+            return -1;
+        }
+        return (int) (record / this.interval);
+    }
+
+    private void checkEntry(final int entry) {
+        if (entry < 0 || entry >= this.size) {
+            throw new IndexOutOfBoundsException("Entry " + entry + " is outside of the index [0, " + this.size + ")");
+        }
+    }
+
+    private static boolean readFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -3,8 +3,10 @@
  */
 package io.pkts;
 
+import io.pkts.buffer.Buffer;
 import io.pkts.frame.Frame;
 import io.pkts.frame.PcapGlobalHeader;
+import io.pkts.frame.PcapRecordHeader;
 import io.pkts.packet.Packet;
 
 import java.io.IOException;
@@ -50,7 +52,7 @@ public class PcapOutputStream extends OutputStream {
     /**
      * 
      */
-    private PcapOutputStream(final PcapGlobalHeader pcapHeader, final OutputStream out) {
+    PcapOutputStream(final PcapGlobalHeader pcapHeader, final OutputStream out) {
         this.out = out;
         this.pcapHeader = pcapHeader;
     }
@@ -84,6 +86,22 @@ public class PcapOutputStream extends OutputStream {
         packet.write(this);
     }
 
+    /**
+     * Write a single pcap record, i.e. the record header followed by the
+     * payload. This is what a {@link Packet} ends up calling when it is
+     * written to this stream.
+     *
+     * @param header
+     *            the record header, whose lengths must already match the
+     *            payload.
+     * @param payload
+     *            the captured bytes of the record.
+     */
+    public void writeRecord(final PcapRecordHeader header, final Buffer payload) throws IOException {
+        header.write(this.out);
+        this.out.write(payload.getArray());
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -93,6 +111,14 @@ public class PcapOutputStream extends OutputStream {
         this.out.write(b);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        this.out.write(b, off, len);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,147 @@
+package io.pkts;
+
+import io.pkts.buffer.MappedFileBuffer;
+import io.pkts.frame.PcapGlobalHeader;
+import io.pkts.frame.PcapRecordHeader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a memory mapped pcap into byte ranges that each start on a record
+ * boundary so that they can be framed independently of each other.
+ *
+ * Since the pcap format has no sync markers, the only way to find where a
+ * record begins when jumping into the middle of a file is to guess. A guess
+ * is accepted when the header at that position, as well as the headers of
+ * the next {@link #CHAIN_LENGTH} records it points to, all look sane (see
+ * {@link PcapRecordHeader#isPlausible(PcapGlobalHeader)}) and their
+ * timestamps are moving forward.
+ *
+ * Note that rejecting a real record boundary is harmless, the previous
+ * segment will simply keep on framing until it reaches the next accepted
+ * boundary. Accepting a false one is not, which is why every candidate is
+ * verified against a chain of records.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+final class PcapSegmenter {
+
+    /**
+     * The number of records following a candidate boundary that also must
+     * look sane for the candidate to be accepted.
+     */
+    private static final int CHAIN_LENGTH = 8;
+
+    /**
+     * Timestamps within a pcap are typically increasing but captures from
+     * multi-queue nics are known to be slightly out of order so allow for
+     * a little bit of slack.
+     */
+    private static final long MAX_BACKWARDS_SECONDS = 1;
+
+    /**
+     * Two consecutive records more than a day apart is not something we
+     * expect to see.
+     */
+    private static final long MAX_FORWARD_SECONDS = 24 * 60 * 60;
+
+    private final MappedFileBuffer buffer;
+    private final PcapGlobalHeader header;
+
+    PcapSegmenter(final MappedFileBuffer buffer, final PcapGlobalHeader header) {
+        this.buffer = buffer;
+        this.header = header;
+    }
+
+    /**
+     * Split the region <code>[from, to)</code>, where <code>from</code> must
+     * be the start of a record, into at most <code>count</code> segments.
+     *
+     * @return the boundaries of the segments, i.e. segment <code>i</code> is
+     *         <code>[boundaries[i], boundaries[i + 1])</code>. There will be
+     *         fewer segments than asked for if no record boundary could be
+     *         found within a segment.
+     */
+    long[] split(final long from, final long to, final int count) {
+        final long position = this.buffer.getPosition();
+        try {
+            final List<Long> boundaries = new ArrayList<>(count + 1);
+            boundaries.add(from);
+            final long size = (to - from) / count;
+            for (int i = 1; i < count; ++i) {
+                final long previous = boundaries.get(boundaries.size() - 1);
+                final long boundary = findBoundary(Math.max(from + i * size, previous + 1), to);
+                if (boundary != -1 && boundary < to) {
+                    boundaries.add(boundary);
+                }
+            }
+            boundaries.add(to);
+
+            final long[] result = new long[boundaries.size()];
+            for (int i = 0; i < result.length; ++i) {
+                result[i] = boundaries.get(i);
+            }
+            return result;
+        } finally {
+            this.buffer.setPosition(position);
+        }
+    }
+
+    /**
+     * Find the first record boundary at or after <code>from</code>.
+     *
+     * @return the position of the boundary or -1 if none could be found
+     *         before <code>to</code>.
+     */
+    long findBoundary(final long from, final long to) {
+        for (long candidate = from; candidate + PcapRecordHeader.SIZE <= to; ++candidate) {
+            if (isBoundary(candidate)) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isBoundary(final long candidate) {
+        final long end = this.buffer.getEnd();
+        long position = candidate;
+        long previousSeconds = -1;
+        for (int i = 0; i <= CHAIN_LENGTH; ++i) {
+            if (position == end) {
+                // we walked the chain all the way to the end of the file,
+                // which is as good as it gets.
+                return i > 0;
+            }
+
+            if (position + PcapRecordHeader.SIZE > end) {
+                return false;
+            }
+
+            // an empty record is legal but so rare that we'd rather treat
+            // it as a sign that we are looking at e.g. zero padding.
+            final PcapRecordHeader record = readHeader(position);
+            if (!record.isPlausible(this.header) || record.getCapturedLength() == 0) {
+                return false;
+            }
+
+            final long seconds = record.getTimeStampSeconds();
+            if (previousSeconds != -1 && (seconds < previousSeconds - MAX_BACKWARDS_SECONDS
+                    || seconds > previousSeconds + MAX_FORWARD_SECONDS)) {
+                return false;
+            }
+
+            previousSeconds = seconds;
+            position += PcapRecordHeader.SIZE + record.getCapturedLength();
+        }
+
+        return true;
+    }
+
+    private PcapRecordHeader readHeader(final long position) {
+        this.buffer.setPosition(position);
+        return new PcapRecordHeader(this.header.getByteOrder(), this.buffer.readBytes(PcapRecordHeader.SIZE),
+                this.header.timestampsInNs());
+    }
+
+}
@@ -0,0 +1,215 @@
+package io.pkts;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An {@link InputStream} that reads ahead of its consumer on a dedicated
+ * thread. The reader thread fills a bounded ring of large buffers from the
+ * underlying stream while the consumer drains them, meaning that any
+ * expensive work done by the underlying stream, such as inflating a gzipped
+ * pcap, happens on another core than the framing of the packets.
+ *
+ * The ring is bounded so the reader thread will never be more than
+ * <code>chunks</code> buffers ahead of the consumer.
+ *
+ * Note that this stream must be closed or read until the end, or else the
+ * reader thread will be left waiting for a buffer to be released. The
+ * underlying stream is owned by the reader thread, which closes it once it
+ * is done with it, so it is never closed while in the middle of a read.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+final class ReadAheadInputStream extends InputStream {
+
+    /**
+     * The default size of each buffer in the ring.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * The default number of buffers in the ring.
+     */
+    public static final int DEFAULT_CHUNKS = 4;
+
+    private final InputStream source;
+
+    /**
+     * Buffers that are ready to be filled by the reader thread.
+     */
+    private final BlockingQueue<byte[]> free;
+
+    /**
+     * Chunks that have been filled by the reader thread but not yet consumed.
+     * Has one extra slot for the chunk signaling the end of the stream.
+     */
+    private final BlockingQueue<Chunk> filled;
+
+    private final Thread reader;
+
+    private Chunk current;
+    private int position;
+
+    private volatile boolean closed;
+
+    ReadAheadInputStream(final InputStream source) {
+        this(source, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS);
+    }
+
+    ReadAheadInputStream(final InputStream source, final int chunkSize, final int chunks) {
+        if (chunkSize < 1 || chunks < 1) {
+            throw new IllegalArgumentException("The chunk size and the number of chunks must be at least 1");
+        }
+        this.source = source;
+        this.free = new ArrayBlockingQueue<byte[]>(chunks);
+        this.filled = new ArrayBlockingQueue<Chunk>(chunks + 1);
+        for (int i = 0; i < chunks; ++i) {
+            this.free.add(new byte[chunkSize]);
+        }
+
+        this.reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readAhead();
+            }
+        }, "pkts-read-ahead");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Runs on the reader thread until the end of the underlying stream is
+     * reached, it fails or this stream is closed. Whatever the reason, the
+     * consumer is always handed either the end of the stream or the error
+     * so that it never waits for a chunk that won't come.
+     */
+    private void readAhead() {
+        try {
+            while (!this.closed) {
+                final byte[] buffer = this.free.take();
+                int length = 0;
+                int read = 0;
+                while (length < buffer.length) {
+                    read = this.source.read(buffer, length, buffer.length - length);
+                    if (read == -1) {
+                        break;
+                    }
+                    length += read;
+                }
+
+                if (length > 0) {
+                    this.filled.put(new Chunk(buffer, length, null));
+                }
+                if (read == -1) {
+                    this.filled.put(Chunk.END_OF_STREAM);
+                    return;
+                }
+            }
+        } catch (final Throwable t) {
+            // there is always room for one more chunk since the reader
+            // thread never has more chunks out than there are buffers.
+            if (!this.closed) {
+                this.filled.offer(new Chunk(null, 0, t));
+            }
+        } finally {
+            try {
+                this.source.close();
+            } catch (final IOException e) {
+                // nothing we can do about it and nobody to tell
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return this.current.buffer[this.position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+
+        final int count = Math.min(len, this.current.length - this.position);
+        System.arraycopy(this.current.buffer, this.position, b, off, count);
+        this.position += count;
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (this.current == null || this.current.buffer == null) {
+            return 0;
+        }
+        return this.current.length - this.position;
+    }
+
+    /**
+     * Make sure there is at least one byte to read in the current chunk,
+     * waiting for the reader thread if necessary.
+     *
+     * @return false if the end of the stream has been reached.
+     */
+    private boolean ensureAvailable() throws IOException {
+        if (this.closed) {
+            throw new IOException("Stream closed");
+        }
+
+        while (this.current == null || this.current.buffer != null && this.position == this.current.length) {
+            if (this.current != null) {
+                this.free.offer(this.current.buffer);
+            }
+
+            try {
+                this.current = this.filled.take();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the read ahead thread");
+            }
+            this.position = 0;
+        }
+
+        if (this.current.error != null) {
+            throw new IOException("Unable to read ahead", this.current.error);
+        }
+        return this.current != Chunk.END_OF_STREAM;
+    }
+
+    /**
+     * Stops the reader thread, which in turn closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.reader.interrupt();
+    }
+
+    private static final class Chunk {
+
+        private static final Chunk END_OF_STREAM = new Chunk(null, 0, null);
+
+        private final byte[] buffer;
+        private final int length;
+        private final Throwable error;
+
+        private Chunk(final byte[] buffer, final int length, final Throwable error) {
+            this.buffer = buffer;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+}
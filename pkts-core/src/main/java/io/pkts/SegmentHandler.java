@@ -0,0 +1,26 @@
+package io.pkts;
+
+/**
+ * A {@link PacketHandler} that processes one segment of a pcap when the pcap
+ * is processed in parallel through
+ * {@link Pcap#parallelLoop(java.util.function.Supplier, java.util.function.BinaryOperator)}.
+ *
+ * Every segment gets its own handler, which is only ever called from a
+ * single thread, so the handler does not need to be thread safe. Once the
+ * segment has been processed, the result of the handler is collected and
+ * merged with the results of the other segments.
+ *
+ * Note that returning false from {@link #nextPacket(io.pkts.packet.Packet)}
+ * only stops the processing of the current segment.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public interface SegmentHandler<R> extends PacketHandler {
+
+    /**
+     * Get the result of processing the segment.
+     *
+     * @return
+     */
+    R getResult();
+}
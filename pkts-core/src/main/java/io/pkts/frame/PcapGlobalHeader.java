@@ -102,6 +102,29 @@ public final class PcapGlobalHeader {
         return new PcapGlobalHeader(ByteOrder.LITTLE_ENDIAN, body.getRawArray());
     }
 
+    /**
+     * Create a (little endian) header for the given data link type. Used when
+     * we need a {@link PcapGlobalHeader} for something that isn't a classic
+     * pcap, such as an interface within a pcapng file.
+     *
+     * @param dataLinkType
+     *            the data link type, see http://www.tcpdump.org/linktypes.html
+     * @param snapLength
+     * @param nsTimestamps
+     *            whether the timestamps of the records are in nanoseconds
+     *            rather than microseconds.
+     * @return
+     */
+    public static PcapGlobalHeader createHeader(final int dataLinkType, final long snapLength,
+            final boolean nsTimestamps) {
+        final Buffer body = Buffers.createBuffer(20);
+        body.setUnsignedByte(0, (short) 2);
+        body.setUnsignedByte(2, (short) 4);
+        body.setUnsignedInt(12, snapLength);
+        body.setUnsignedInt(16, dataLinkType);
+        return new PcapGlobalHeader(ByteOrder.LITTLE_ENDIAN, body.getRawArray(), nsTimestamps);
+    }
+
     public PcapGlobalHeader(final ByteOrder byteOrder, final byte[] body) {
         this(byteOrder,body,false);
     }
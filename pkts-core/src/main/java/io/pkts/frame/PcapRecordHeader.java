@@ -20,6 +20,12 @@ public final class PcapRecordHeader {
      */
     public static final int SIZE = 16;
 
+    /**
+     * The largest snap length used by libpcap and friends. Used whenever the
+     * global header doesn't specify one.
+     */
+    private static final long MAX_SNAP_LENGTH = 262144;
+
     private final ByteOrder byteOrder;
 
     private final Buffer body;
@@ -86,19 +92,39 @@ public final class PcapRecordHeader {
         return new PcapRecordHeader(ByteOrder.LITTLE_ENDIAN, buffer);
     }
 
-    // private static void setUnsignedInt(int index, )
+    /**
+     * Read the field straight out of the body, as opposed to going through
+     * {@link Buffer#getArray()}, which would copy the entire header every time
+     * a field is accessed.
+     */
+    private long getUnsignedInt(final int index) {
+        final int value = this.body.getInt(index);
+        return (this.byteOrder == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value)) & 0xFFFFFFFFL;
+    }
 
     public long getTimeStampSeconds() {
-        return PcapGlobalHeader.getUnsignedInt(0, this.body.getArray(), this.byteOrder);
+        return getUnsignedInt(0);
     }
 
     @Deprecated
     public long getTimeStampMicroSeconds() {
-        return PcapGlobalHeader.getUnsignedInt(4, this.body.getArray(), this.byteOrder);
+        return getUnsignedInt(4);
     }
 
     public long getTimeStampMicroOrNanoSeconds() {
-        return PcapGlobalHeader.getUnsignedInt(4, this.body.getArray(), this.byteOrder);
+        return getUnsignedInt(4);
+    }
+
+    /**
+     * Get the timestamp of this record in micro or nano seconds (depending
+     * on the resolution of the pcap) since epoch. This is the same as the
+     * arrival time of the packet the record contains.
+     *
+     * @return
+     */
+    public long getTimeStamp() {
+        final long multiplier = this.nsTimestamps ? 1000000000 : 1000000;
+        return getTimeStampSeconds() * multiplier + getTimeStampMicroOrNanoSeconds();
     }
 
     /**
@@ -109,7 +135,7 @@ public final class PcapRecordHeader {
      * @return
      */
     public long getTotalLength() {
-        return PcapGlobalHeader.getUnsignedInt(12, this.body.getArray(), this.byteOrder);
+        return getUnsignedInt(12);
     }
 
     public void setTotalLength(final long length) {
@@ -122,13 +148,44 @@ public final class PcapRecordHeader {
      * @return the length in bytes
      */
     public long getCapturedLength() {
-        return PcapGlobalHeader.getUnsignedInt(8, this.body.getArray(), this.byteOrder);
+        return getUnsignedInt(8);
     }
 
     public void setCapturedLength(final long length) {
         this.body.setUnsignedInt(8, length);
     }
 
+    /**
+     * Sanity check this header against the global header of the pcap it
+     * supposedly belongs to. This is what is used when trying to find where a
+     * record begins when jumping into the middle of a pcap, e.g. when
+     * splitting up a file for parallel processing, so it is not a guarantee
+     * that the header is indeed a real one but if this returns false it
+     * definitely isn't.
+     *
+     * @param globalHeader
+     * @return true if all the fields of this header are within the limits
+     *         imposed by the global header.
+     */
+    public boolean isPlausible(final PcapGlobalHeader globalHeader) {
+        final long snapLength = globalHeader.getSnapLength() > 0 ? globalHeader.getSnapLength() : MAX_SNAP_LENGTH;
+        final long captured = getCapturedLength();
+        if (captured < 0 || captured > snapLength || captured > getTotalLength()) {
+            return false;
+        }
+
+        final long maxFraction = globalHeader.timestampsInNs() ? 1000000000L : 1000000L;
+        final long fraction = getTimeStampMicroOrNanoSeconds();
+        return fraction >= 0 && fraction < maxFraction;
+    }
+
+    /**
+     * @return a copy of this header that doesn't share any data with it.
+     */
+    public PcapRecordHeader copy() {
+        return new PcapRecordHeader(this.byteOrder, Buffers.wrap(this.body.getArray()), this.nsTimestamps);
+    }
+
     public void write(final OutputStream out) throws IOException {
         out.write(this.body.getArray());
     }
@@ -5,11 +5,30 @@ package io.pkts.framer;
 
 import io.pkts.Clock;
 import io.pkts.Pcap;
+import io.pkts.packet.IPPacket;
+import io.pkts.packet.MACPacket;
+import io.pkts.packet.Packet;
+import io.pkts.packet.TransportPacket;
 
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * FramerFactory
+ * The {@link FramerManager} keeps track of which {@link Framer} to use for the
+ * payload of a packet. The link layer dispatches on the EtherType, the IP
+ * layer on the protocol number and the transport layer on the UDP/TCP port,
+ * each of which is a plain array lookup so traffic that nobody has registered
+ * a {@link Framer} for is rejected without looking at the payload.
+ * 
+ * Out of the box IPv4 and IPv6 are registered on the link layer, UDP, TCP and
+ * SCTP on the IP layer and SIP on port 5060. Payloads on ports without a
+ * {@link Framer} are, unless {@link #setSniffUnregisteredPorts(boolean)} says
+ * otherwise, checked to see whether they look like SIP or RTP. Registering
+ * a port, e.g. the RTP ports advertised in SDP, means that only that
+ * {@link Framer} is tried for the port.
+ * 
+ * Note that all packets consult the same {@link FramerManager} so any
+ * registration affects every {@link Pcap} in the JVM.
  * 
  * @author jonas@jonasborjesson.com
  */
@@ -17,6 +36,23 @@ public final class FramerManager {
 
     private static final FramerManager instance = new FramerManager();
 
+    private static final int MAX_ETHER_TYPE = 0xFFFF;
+
+    private static final int MAX_IP_PROTOCOL = 0xFF;
+
+    private static final int MAX_PORT = 0xFFFF;
+
+    private final AtomicReferenceArray<Framer<? super MACPacket, ? extends IPPacket>> etherTypes = new AtomicReferenceArray<>(
+            MAX_ETHER_TYPE + 1);
+
+    private final AtomicReferenceArray<Framer<? super IPPacket, ? extends Packet>> ipProtocols = new AtomicReferenceArray<>(
+            MAX_IP_PROTOCOL + 1);
+
+    private final AtomicReferenceArray<Framer<? super TransportPacket, ? extends Packet>> ports = new AtomicReferenceArray<>(
+            MAX_PORT + 1);
+
+    private volatile boolean sniffUnregisteredPorts = true;
+
     /**
      * The current time in the system, which is driven by
      * {@link Pcap#loop(io.pkts.FrameHandler)}.
@@ -31,7 +67,133 @@ public final class FramerManager {
      * 
      */
     private FramerManager() {
-        // left empty intentionally
+        registerEtherTypeFramer(0x0800, new IPv4Framer());
+        registerEtherTypeFramer(0x86DD, new IPv6Framer());
+
+        registerIpProtocolFramer(0x06, new TCPFramer());
+        registerIpProtocolFramer(0x11, new UDPFramer());
+        registerIpProtocolFramer(0x84, new SctpFramer());
+
+        registerPortFramer(5060, new SIPFramer());
+    }
+
+    /**
+     * Register the {@link Framer} to use for the payload of ethernet frames
+     * of the given EtherType, replacing any existing one. Registering null
+     * removes the {@link Framer}.
+     * 
+     * @param etherType
+     *            the EtherType, e.g. 0x0800 for IPv4.
+     * @param framer
+     */
+    public void registerEtherTypeFramer(final int etherType, final Framer<? super MACPacket, ? extends IPPacket> framer) {
+        this.etherTypes.set(checkRange(etherType, MAX_ETHER_TYPE, "EtherType"), framer);
+    }
+
+    /**
+     * @param etherType
+     * @return the {@link Framer} registered for the EtherType or null if
+     *         there is none.
+     */
+    public Framer<? super MACPacket, ? extends IPPacket> getEtherTypeFramer(final int etherType) {
+        if (etherType < 0 || etherType > MAX_ETHER_TYPE) {
+            return null;
+        }
+        return this.etherTypes.get(etherType);
+    }
+
+    /**
+     * Register the {@link Framer} to use for the payload of IPv4 and IPv6
+     * packets carrying the given protocol, replacing any existing one.
+     * Registering null removes the {@link Framer}.
+     * 
+     * @param protocol
+     *            the IP protocol number, e.g. 17 for UDP.
+     * @param framer
+     */
+    public void registerIpProtocolFramer(final int protocol, final Framer<? super IPPacket, ? extends Packet> framer) {
+        this.ipProtocols.set(checkRange(protocol, MAX_IP_PROTOCOL, "IP protocol"), framer);
+    }
+
+    /**
+     * @param protocol
+     * @return the {@link Framer} registered for the IP protocol number or
+     *         null if there is none.
+     */
+    public Framer<? super IPPacket, ? extends Packet> getIpProtocolFramer(final int protocol) {
+        if (protocol < 0 || protocol > MAX_IP_PROTOCOL) {
+            return null;
+        }
+        return this.ipProtocols.get(protocol);
+    }
+
+    /**
+     * Register the {@link Framer} to use for UDP and TCP payloads sent to or
+     * from the given port, replacing any existing one. Registering null
+     * removes the {@link Framer}.
+     * 
+     * @param port
+     * @param framer
+     */
+    public void registerPortFramer(final int port, final Framer<? super TransportPacket, ? extends Packet> framer) {
+        this.ports.set(checkRange(port, MAX_PORT, "Port"), framer);
+    }
+
+    /**
+     * Same as {@link #registerPortFramer(int, Framer)} but for all ports
+     * between <code>from</code> and <code>to</code>, both inclusive, which is
+     * handy for e.g. the port range a media server uses for RTP.
+     * 
+     * @param from
+     * @param to
+     * @param framer
+     */
+    public void registerPortFramer(final int from, final int to,
+            final Framer<? super TransportPacket, ? extends Packet> framer) {
+        checkRange(from, MAX_PORT, "Port");
+        checkRange(to, MAX_PORT, "Port");
+        if (to < from) {
+            throw new IllegalArgumentException("Invalid port range " + from + "-" + to);
+        }
+        for (int port = from; port <= to; ++port) {
+            this.ports.set(port, framer);
+        }
+    }
+
+    /**
+     * @param port
+     * @return the {@link Framer} registered for the port or null if there is
+     *         none.
+     */
+    public Framer<? super TransportPacket, ? extends Packet> getPortFramer(final int port) {
+        if (port < 0 || port > MAX_PORT) {
+            return null;
+        }
+        return this.ports.get(port);
+    }
+
+    /**
+     * Whether the payload of UDP and TCP packets where neither port has a
+     * {@link Framer} registered should be checked to see if it looks like
+     * SIP or RTP. Turn this off if you know exactly which ports carry the
+     * traffic you are interested in, in which case everything else will be
+     * treated as unknown application data without being looked at.
+     * 
+     * @param sniff
+     */
+    public void setSniffUnregisteredPorts(final boolean sniff) {
+        this.sniffUnregisteredPorts = sniff;
+    }
+
+    public boolean isSniffingUnregisteredPorts() {
+        return this.sniffUnregisteredPorts;
+    }
+
+    private static int checkRange(final int value, final int max, final String name) {
+        if (value < 0 || value > max) {
+            throw new IllegalArgumentException(name + " must be between 0 and " + max + " but was " + value);
+        }
+        return value;
     }
 
     /**
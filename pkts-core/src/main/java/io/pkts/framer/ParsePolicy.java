@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package io.pkts.framer;
+
+import io.pkts.Pcap;
+import io.pkts.packet.Packet;
+import io.pkts.protocol.Protocol;
+import io.pkts.protocol.Protocol.Layer;
+
+/**
+ * A {@link ParsePolicy} tells the packets of a {@link Pcap} which protocols
+ * they are allowed to frame out of their payloads. A job that only cares
+ * about e.g. IP addresses and ports has no use for SIP and RTP so by not
+ * allowing those, no time is spent checking whether the UDP/TCP payloads
+ * could be SIP or RTP, let alone framing them.
+ *
+ * A protocol that isn't allowed is treated just like a protocol nobody has
+ * registered a {@link Framer} for, i.e., the payload becomes an unknown
+ * packet, or no packet at all, depending on the layer. The pcap and link
+ * layers are always framed.
+ *
+ * E.g., <code>ParsePolicy.upTo(Layer.LAYER_4)</code> frames everything up
+ * to and including UDP, TCP and SCTP and
+ * <code>ParsePolicy.ALL.without(Protocol.RTP, Protocol.RTCP)</code> will
+ * frame SIP but never try RTP.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class ParsePolicy {
+
+    /**
+     * Frame everything we know how to frame, which is the default.
+     */
+    public static final ParsePolicy ALL = new ParsePolicy(-1L);
+
+    /**
+     * Frame up to and including the transport layer but never look at the
+     * application payloads.
+     */
+    public static final ParsePolicy TRANSPORT = upTo(Layer.LAYER_4);
+
+    /**
+     * A bitmask of the allowed protocols where each protocol is represented
+     * by the bit of its ordinal.
+     */
+    private final long allowed;
+
+    private ParsePolicy(final long allowed) {
+        this.allowed = allowed;
+    }
+
+    /**
+     * Allow all protocols of the given layer and all layers below it.
+     *
+     * @param layer
+     * @return
+     */
+    public static ParsePolicy upTo(final Layer layer) {
+        long allowed = bit(Protocol.UNKNOWN);
+        for (final Protocol protocol : Protocol.values()) {
+            final Layer l = protocol.getProtocolLayer();
+            if (l != null && l.ordinal() <= layer.ordinal()) {
+                allowed |= bit(protocol);
+            }
+        }
+        return new ParsePolicy(allowed);
+    }
+
+    /**
+     * @param protocols
+     * @return a new {@link ParsePolicy} that allows the same protocols as
+     *         this one, except for the given ones.
+     */
+    public ParsePolicy without(final Protocol... protocols) {
+        long allowed = this.allowed;
+        for (final Protocol protocol : protocols) {
+            allowed &= ~bit(protocol);
+        }
+        return new ParsePolicy(allowed);
+    }
+
+    /**
+     * @param protocol
+     * @return true if a {@link Packet} of the given protocol may be framed.
+     */
+    public boolean allows(final Protocol protocol) {
+        return (this.allowed & bit(protocol)) != 0;
+    }
+
+    private static long bit(final Protocol protocol) {
+        return 1L << protocol.ordinal();
+    }
+
+}
@@ -4,6 +4,8 @@
 package io.pkts.framer;
 
 import io.pkts.buffer.Buffer;
+import io.pkts.buffer.BufferPool;
+import io.pkts.buffer.Buffers;
 import io.pkts.frame.PcapGlobalHeader;
 import io.pkts.frame.PcapRecordHeader;
 import io.pkts.packet.PCapPacket;
@@ -23,16 +25,107 @@ public final class PcapFramer implements Framer<Packet, PCapPacket> {
     private final FramerManager framerManager;
     private final ByteOrder byteOrder;
 
+    /**
+     * The raw bytes of the record header, which are overwritten for every
+     * record when recycling or when only looking at records within a time
+     * window.
+     */
+    private final byte[] recordBytes;
+    private final PcapRecordHeader recordHeader;
+
+    /**
+     * When recycling, the one and only packet this framer ever returns.
+     */
+    private PCapPacketImpl recycledPacket;
+
+    /**
+     * The {@link ParsePolicy} of every packet we frame.
+     */
+    private ParsePolicy parsePolicy = ParsePolicy.ALL;
+
+    /**
+     * Only records with a timestamp within <code>[from, to)</code> are
+     * framed.
+     */
+    private final long from;
+    private final long to;
+    private boolean pastWindow;
+
+    /**
+     * When recycling, the pool to copy the payloads into if they can't be
+     * sliced straight out of the underlying buffer, and the payload that is
+     * to be released when moving on to the next record.
+     */
+    private final BufferPool pool;
+    private Buffer pooledPayload;
+
     /**
      * 
      */
     public PcapFramer(final PcapGlobalHeader globalHeader, final FramerManager framerManager) {
+        this(globalHeader, framerManager, false);
+    }
+
+    /**
+     * @param recycle
+     *            if true, the same {@link PCapPacket} instance will be
+     *            returned for every record, meaning that it (and every packet
+     *            framed out of it) is only valid until the next call to
+     *            {@link #frame(Packet, Buffer)}. See {@link Packet#retain()}.
+     */
+    public PcapFramer(final PcapGlobalHeader globalHeader, final FramerManager framerManager, final boolean recycle) {
+        this(globalHeader, framerManager, recycle, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Frame only the records with a timestamp within <code>[from, to)</code>.
+     * For every record before the window nothing but the record header is
+     * decoded and its payload is skipped without ever being looked at. The
+     * first record at or after <code>to</code> ends the framing, i.e.
+     * {@link #frame(Packet, Buffer)} will return null from there on, which
+     * means that the records are expected to be in time order.
+     *
+     * @param from
+     *            the timestamp (inclusive) of the first record of interest,
+     *            in the same unit as {@link Packet#getArrivalTime()}.
+     * @param to
+     *            the timestamp (exclusive) where the window ends.
+     */
+    public PcapFramer(final PcapGlobalHeader globalHeader, final FramerManager framerManager, final boolean recycle,
+            final long from, final long to) {
+        this(globalHeader, framerManager, recycle, null, from, to);
+    }
+
+    /**
+     * Create a recycling framer that copies the payloads of the records into
+     * buffers from the pool, whenever they have to be copied at all, and
+     * releases them again when moving on to the next record. See
+     * {@link Buffer#readBytes(int, BufferPool)}.
+     */
+    public PcapFramer(final PcapGlobalHeader globalHeader, final FramerManager framerManager, final BufferPool pool) {
+        this(globalHeader, framerManager, true, pool, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    private PcapFramer(final PcapGlobalHeader globalHeader, final FramerManager framerManager, final boolean recycle,
+            final BufferPool pool, final long from, final long to) {
         assert globalHeader != null;
         assert framerManager != null;
 
         this.globalHeader = globalHeader;
         this.byteOrder = this.globalHeader.getByteOrder();
         this.framerManager = framerManager;
+        this.from = from;
+        this.to = to;
+        this.pool = pool;
+        if (recycle || from != Long.MIN_VALUE || to != Long.MAX_VALUE) {
+            this.recordBytes = new byte[PcapRecordHeader.SIZE];
+            this.recordHeader = new PcapRecordHeader(this.byteOrder, Buffers.wrap(this.recordBytes),
+                    globalHeader.timestampsInNs());
+        } else {
+            this.recordBytes = null;
+            this.recordHeader = null;
+        }
+        this.recycledPacket = recycle ? new PCapPacketImpl(globalHeader, this.recordHeader, null, true) : null;
     }
 
     @Override
@@ -40,12 +133,30 @@ public final class PcapFramer implements Framer<Packet, PCapPacket> {
         return Protocol.PCAP;
     }
 
+    /**
+     * Have all the packets framed from here on follow the given
+     * {@link ParsePolicy}.
+     *
+     * @param parsePolicy
+     */
+    public void setParsePolicy(final ParsePolicy parsePolicy) {
+        assert parsePolicy != null;
+        this.parsePolicy = parsePolicy;
+        if (this.recycledPacket != null) {
+            this.recycledPacket = new PCapPacketImpl(this.globalHeader, this.recordHeader, null, true, parsePolicy);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public PCapPacket frame(final Packet parent, final Buffer buffer) throws IOException {
 
+        if (this.recordBytes != null) {
+            return frameWithinWindow(buffer);
+        }
+
         // note that for the PcapPacket the parent will always be null
         // so we are simply ignoring it.
         Buffer record = null;
@@ -57,6 +168,13 @@ public final class PcapFramer implements Framer<Packet, PCapPacket> {
             return null;
         }
 
+        // the record header is tiny and is written to when the packet is
+        // written back out (see PCapPacketImpl#write) so if the underlying
+        // storage is read-only, e.g. a memory mapped file, take a copy of it.
+        if (!record.hasWriteSupport()) {
+            record = record.clone();
+        }
+
         final PcapRecordHeader header = new PcapRecordHeader(this.byteOrder, record, this.globalHeader.timestampsInNs());
         final int length = (int) header.getCapturedLength();
         if (length < 0) {
@@ -64,7 +182,67 @@ public final class PcapFramer implements Framer<Packet, PCapPacket> {
         }
         final int total = (int) header.getTotalLength();
         final Buffer payload = buffer.readBytes(Math.min(length, total));
-        return new PCapPacketImpl(globalHeader, header, payload);
+        return new PCapPacketImpl(this.globalHeader, header, payload, false, this.parsePolicy);
+    }
+
+    /**
+     * Same as {@link #frame(Packet, Buffer)} but the record header is read
+     * straight into our own bytes, and its fields are decoded in place, which
+     * means that records outside of the window can be skipped without
+     * allocating anything at all. When recycling, the recycled packet is
+     * re-pointed at the new record, leaving the view of the payload as the
+     * only thing allocated per record by this framer. With a pool, the
+     * payload bytes never end up on the heap either. The packets framed out
+     * of the recycled packet, however, are new for every record, see
+     * {@link io.pkts.Pcap#loopRecycled(io.pkts.PacketHandler)}.
+     */
+    private PCapPacket frameWithinWindow(final Buffer buffer) throws IOException {
+        if (this.pooledPayload != null) {
+            this.pooledPayload.release();
+            this.pooledPayload = null;
+        }
+
+        final PcapRecordHeader header = this.recordHeader;
+        while (!this.pastWindow) {
+            try {
+                for (int i = 0; i < this.recordBytes.length; ++i) {
+                    this.recordBytes[i] = buffer.readByte();
+                }
+            } catch (final IndexOutOfBoundsException e) {
+                return null;
+            }
+
+            final int length = (int) header.getCapturedLength();
+            if (length < 0) {
+                throw new FramingException(String.format("Invalid PCAP captured length of %d", length),
+                        Protocol.PCAP);
+            }
+            final int payloadLength = Math.min(length, (int) header.getTotalLength());
+
+            final long timestamp = header.getTimeStamp();
+            if (timestamp >= this.to) {
+                this.pastWindow = true;
+                return null;
+            }
+
+            if (timestamp < this.from) {
+                buffer.skipBytes(payloadLength);
+                continue;
+            }
+
+            if (this.recycledPacket != null) {
+                final Buffer payload = buffer.readBytes(payloadLength, this.pool);
+                this.pooledPayload = this.pool != null ? payload : null;
+                this.recycledPacket.recycle(payload, this.pool != null);
+                return this.recycledPacket;
+            }
+
+            final PcapRecordHeader copy = new PcapRecordHeader(this.byteOrder,
+                    Buffers.wrap(this.recordBytes.clone()), this.globalHeader.timestampsInNs());
+            return new PCapPacketImpl(this.globalHeader, copy, buffer.readBytes(payloadLength), false,
+                    this.parsePolicy);
+        }
+        return null;
     }
 
     @Override
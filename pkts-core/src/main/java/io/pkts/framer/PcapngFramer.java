@@ -0,0 +1,414 @@
+/**
+ *
+ */
+package io.pkts.framer;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.buffer.Buffers;
+import io.pkts.frame.PcapGlobalHeader;
+import io.pkts.frame.PcapRecordHeader;
+import io.pkts.packet.PCapPacket;
+import io.pkts.packet.Packet;
+import io.pkts.packet.impl.PCapPacketImpl;
+import io.pkts.protocol.Protocol;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Frames the packets out of a pcapng stream. See
+ * https://www.ietf.org/archive/id/draft-tuexen-opsawg-pcapng-05.html for the
+ * format.
+ *
+ * A pcapng file is a sequence of blocks, each of which carries its own type
+ * and length, and the packets found within them are turned into regular
+ * {@link PCapPacket}s so that the rest of the framers (ethernet, sll etc)
+ * don't have to know which format the packets came from. Every interface
+ * within a section gets its own {@link PcapGlobalHeader}, carrying the link
+ * type and snap length of that interface, and every packet a synthesized
+ * (little endian) {@link PcapRecordHeader}. The timestamps are converted into
+ * micro seconds or, if the first interface has a finer resolution than that,
+ * nano seconds. All interfaces share that resolution, no matter their own
+ * if_tsresol, since the arrival times of the packets are compared with each
+ * other (and with the header of the {@link io.pkts.Pcap}) without looking at
+ * which interface they came from.
+ *
+ * The following blocks are understood:
+ * <ul>
+ * <li>Section Header Block - resets the byte order and interfaces</li>
+ * <li>Interface Description Block - link type, snap length as well as the
+ * if_tsresol and if_tsoffset options</li>
+ * <li>Enhanced Packet Block</li>
+ * <li>Simple Packet Block - always belongs to the first interface</li>
+ * <li>Packet Block - obsolete but still written by some tools</li>
+ * <li>Interface Statistics Block - skipped, the statistics are of no
+ * interest to us</li>
+ * </ul>
+ * Any other block is silently skipped.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class PcapngFramer implements Framer<Packet, PCapPacket> {
+
+    public static final int SECTION_HEADER_BLOCK = 0x0A0D0D0A;
+    public static final int INTERFACE_DESCRIPTION_BLOCK = 0x00000001;
+    public static final int PACKET_BLOCK = 0x00000002;
+    public static final int SIMPLE_PACKET_BLOCK = 0x00000003;
+    public static final int INTERFACE_STATISTICS_BLOCK = 0x00000005;
+    public static final int ENHANCED_PACKET_BLOCK = 0x00000006;
+
+    private static final int BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+
+    private static final int OPTION_END = 0;
+    private static final int OPTION_IF_TSRESOL = 9;
+    private static final int OPTION_IF_TSOFFSET = 14;
+
+    /**
+     * The default resolution of the timestamps is micro seconds.
+     */
+    private static final long DEFAULT_UNITS_PER_SECOND = 1000000L;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final List<Interface> interfaces = new ArrayList<Interface>();
+
+    private ByteOrder byteOrder;
+
+    /**
+     * Whether the timestamps are converted into nano or micro seconds. Null
+     * until the first interface has been described.
+     */
+    private Boolean nsTimestamps;
+
+    private ParsePolicy parsePolicy = ParsePolicy.ALL;
+
+    public PcapngFramer() {
+        // left empty intentionally
+    }
+
+    @Override
+    public Protocol getProtocol() {
+        return Protocol.PCAP;
+    }
+
+    /**
+     * Have all the packets framed from here on follow the given
+     * {@link ParsePolicy}.
+     *
+     * @param parsePolicy
+     */
+    public void setParsePolicy(final ParsePolicy parsePolicy) {
+        assert parsePolicy != null;
+        this.parsePolicy = parsePolicy;
+    }
+
+    /**
+     * Read the section header block, which must be the first thing in the
+     * buffer, as well as all blocks up until the first interface description
+     * block.
+     *
+     * @param buffer
+     * @return the {@link PcapGlobalHeader} of the first interface or a default
+     *         header if the stream ended before any interface was described.
+     * @throws IOException
+     * @throws FramingException
+     *             in case the buffer doesn't start with a section header
+     *             block.
+     */
+    public PcapGlobalHeader readHeader(final Buffer buffer) throws IOException, FramingException {
+        final Buffer start;
+        try {
+            start = buffer.readBytes(8);
+        } catch (final IndexOutOfBoundsException e) {
+            throw new FramingException("Not enough data to contain a pcapng section header", Protocol.PCAP);
+        }
+
+        if (start.getInt(0) != SECTION_HEADER_BLOCK) {
+            throw new FramingException("Expected a pcapng section header block", Protocol.PCAP);
+        }
+        readSectionHeader(start, buffer);
+
+        try {
+            while (this.interfaces.isEmpty()) {
+                final Buffer blockHeader = buffer.readBytes(8);
+                readBlock(blockHeader, buffer);
+            }
+        } catch (final IndexOutOfBoundsException e) {
+            this.nsTimestamps = Boolean.FALSE;
+            return PcapGlobalHeader.createDefaultHeader();
+        }
+
+        return this.interfaces.get(0).header;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PCapPacket frame(final Packet parent, final Buffer buffer) throws IOException {
+        // same as with the PcapFramer, the parent is always null
+        try {
+            PCapPacket packet = null;
+            while (packet == null) {
+                final Buffer blockHeader = buffer.readBytes(8);
+                packet = readBlock(blockHeader, buffer);
+            }
+            return packet;
+        } catch (final IndexOutOfBoundsException e) {
+            // end of stream, or a truncated block at the end of it.
+            return null;
+        }
+    }
+
+    /**
+     * Read the rest of the block whose first 8 bytes (type and total length)
+     * is the given block header.
+     *
+     * @return a packet if the block contained one, null otherwise.
+     */
+    private PCapPacket readBlock(final Buffer blockHeader, final Buffer buffer) throws IOException {
+        final int type = blockHeader.getInt(0);
+        if (type == SECTION_HEADER_BLOCK) {
+            readSectionHeader(blockHeader, buffer);
+            return null;
+        }
+
+        if (this.byteOrder == null) {
+            throw new FramingException("Expected a pcapng section header block", Protocol.PCAP);
+        }
+
+        final int blockType = getInt(blockHeader, 0);
+        final int length = getInt(blockHeader, 4);
+        if (length < 12 || length % 4 != 0) {
+            throw new FramingException(String.format("Invalid pcapng block length of %d", length), Protocol.PCAP);
+        }
+
+        // note: the body includes the trailing copy of the block length
+        final Buffer body = buffer.readBytes(length - 8);
+        switch (blockType) {
+            case INTERFACE_DESCRIPTION_BLOCK:
+                readInterfaceDescription(body);
+                return null;
+            case ENHANCED_PACKET_BLOCK:
+                return readEnhancedPacket(body);
+            case SIMPLE_PACKET_BLOCK:
+                return readSimplePacket(body);
+            case PACKET_BLOCK:
+                return readPacket(body);
+            case INTERFACE_STATISTICS_BLOCK:
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * The section header is special since we cannot make sense of the block
+     * length until we have read the byte order magic.
+     */
+    private void readSectionHeader(final Buffer blockHeader, final Buffer buffer) throws IOException {
+        final Buffer magic = buffer.readBytes(4);
+        final int bom = magic.getInt(0);
+        if (bom == BYTE_ORDER_MAGIC) {
+            this.byteOrder = ByteOrder.BIG_ENDIAN;
+        } else if (bom == Integer.reverseBytes(BYTE_ORDER_MAGIC)) {
+            this.byteOrder = ByteOrder.LITTLE_ENDIAN;
+        } else {
+            throw new FramingException("Unknown pcapng byte order magic", Protocol.PCAP);
+        }
+
+        final int length = getInt(blockHeader, 4);
+        if (length < 28 || length % 4 != 0) {
+            throw new FramingException(String.format("Invalid pcapng section header length of %d", length),
+                    Protocol.PCAP);
+        }
+
+        // version, section length and options are of no interest
+        buffer.readBytes(length - 12);
+        this.interfaces.clear();
+    }
+
+    private void readInterfaceDescription(final Buffer body) throws IOException {
+        final int linkType = getUnsignedShort(body, 0);
+        final long snapLength = getInt(body, 4) & 0xFFFFFFFFL;
+
+        long unitsPerSecond = DEFAULT_UNITS_PER_SECOND;
+        long offset = 0;
+
+        // the options runs until the trailing block length
+        int index = 8;
+        final int end = body.capacity() - 4;
+        while (index + 4 <= end) {
+            final int code = getUnsignedShort(body, index);
+            final int optionLength = getUnsignedShort(body, index + 2);
+            if (code == OPTION_END) {
+                break;
+            }
+
+            final int value = index + 4;
+            if (code == OPTION_IF_TSRESOL && optionLength >= 1) {
+                unitsPerSecond = toUnitsPerSecond(body.getByte(value));
+            } else if (code == OPTION_IF_TSOFFSET && optionLength >= 8) {
+                offset = getLong(body, value);
+            }
+
+            // options are padded to 32 bits
+            index = value + (optionLength + 3 & ~3);
+        }
+
+        if (this.nsTimestamps == null) {
+            this.nsTimestamps = unitsPerSecond > DEFAULT_UNITS_PER_SECOND;
+        }
+        final PcapGlobalHeader header = PcapGlobalHeader.createHeader(linkType, snapLength, this.nsTimestamps);
+        this.interfaces.add(new Interface(header, unitsPerSecond, offset));
+    }
+
+    private PCapPacket readEnhancedPacket(final Buffer body) throws IOException {
+        final Interface iface = getInterface(getInt(body, 0));
+        final long timestamp = (getInt(body, 4) & 0xFFFFFFFFL) << 32 | getInt(body, 8) & 0xFFFFFFFFL;
+        final long captured = getInt(body, 12) & 0xFFFFFFFFL;
+        final long total = getInt(body, 16) & 0xFFFFFFFFL;
+        return createPacket(iface, timestamp, captured, total, body, 20);
+    }
+
+    private PCapPacket readSimplePacket(final Buffer body) throws IOException {
+        final Interface iface = getInterface(0);
+        final long total = getInt(body, 0) & 0xFFFFFFFFL;
+
+        // the simple packet block doesn't say how much was captured so it is
+        // either the entire packet or the snap length of the interface
+        long captured = Math.min(total, body.capacity() - 8);
+        final long snapLength = iface.header.getSnapLength();
+        if (snapLength > 0) {
+            captured = Math.min(captured, snapLength);
+        }
+        return createPacket(iface, 0, captured, total, body, 4);
+    }
+
+    private PCapPacket readPacket(final Buffer body) throws IOException {
+        final Interface iface = getInterface(getUnsignedShort(body, 0));
+        final long timestamp = (getInt(body, 4) & 0xFFFFFFFFL) << 32 | getInt(body, 8) & 0xFFFFFFFFL;
+        final long captured = getInt(body, 12) & 0xFFFFFFFFL;
+        final long total = getInt(body, 16) & 0xFFFFFFFFL;
+        return createPacket(iface, timestamp, captured, total, body, 20);
+    }
+
+    private PCapPacket createPacket(final Interface iface, final long timestamp, final long captured,
+            final long total, final Buffer body, final int dataOffset) throws IOException {
+        if (captured > body.capacity() - dataOffset - 4) {
+            throw new FramingException(String.format("Invalid pcapng captured length of %d", captured),
+                    Protocol.PCAP);
+        }
+
+        final boolean nsTimestamps = iface.header.timestampsInNs();
+        final long unitsPerSecond = iface.unitsPerSecond;
+        final long seconds = Long.divideUnsigned(timestamp, unitsPerSecond) + iface.offset;
+        final long fraction = toFraction(Long.remainderUnsigned(timestamp, unitsPerSecond), unitsPerSecond,
+                nsTimestamps ? NANOS_PER_SECOND : DEFAULT_UNITS_PER_SECOND);
+
+        final Buffer record = Buffers.wrap(new byte[PcapRecordHeader.SIZE]);
+        record.setUnsignedInt(0, seconds);
+        record.setUnsignedInt(4, fraction);
+        record.setUnsignedInt(8, captured);
+        record.setUnsignedInt(12, total);
+        final PcapRecordHeader header = new PcapRecordHeader(ByteOrder.LITTLE_ENDIAN, record, nsTimestamps);
+
+        final Buffer payload = body.slice(dataOffset, dataOffset + (int) captured);
+        return new PCapPacketImpl(iface.header, header, payload, false, this.parsePolicy);
+    }
+
+    private Interface getInterface(final int id) {
+        if (id < 0 || id >= this.interfaces.size()) {
+            throw new FramingException(String.format("Reference to unknown pcapng interface %d", id),
+                    Protocol.PCAP);
+        }
+        return this.interfaces.get(id);
+    }
+
+    /**
+     * Convert the if_tsresol option into the number of units per second. If
+     * the most significant bit is zero the remaining bits is a negative power
+     * of 10, otherwise a negative power of 2.
+     */
+    private static long toUnitsPerSecond(final byte resolution) {
+        final int exponent = resolution & 0x7F;
+        if ((resolution & 0x80) == 0) {
+            if (exponent > 18) {
+                throw new FramingException("Unsupported pcapng timestamp resolution", Protocol.PCAP);
+            }
+            long units = 1;
+            for (int i = 0; i < exponent; ++i) {
+                units *= 10;
+            }
+            return units;
+        }
+
+        if (exponent > 62) {
+            throw new FramingException("Unsupported pcapng timestamp resolution", Protocol.PCAP);
+        }
+        return 1L << exponent;
+    }
+
+    /**
+     * Convert the fraction of a second from one resolution to another.
+     */
+    private static long toFraction(final long value, final long fromUnits, final long toUnits) {
+        if (fromUnits == toUnits) {
+            return value;
+        }
+        if (toUnits % fromUnits == 0) {
+            return value * (toUnits / fromUnits);
+        }
+        if (fromUnits % toUnits == 0) {
+            return value / (fromUnits / toUnits);
+        }
+        return BigInteger.valueOf(value).multiply(BigInteger.valueOf(toUnits))
+                .divide(BigInteger.valueOf(fromUnits)).longValue();
+    }
+
+    private int getInt(final Buffer buffer, final int index) throws IOException {
+        final int value = buffer.getInt(index);
+        return this.byteOrder == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value);
+    }
+
+    private int getUnsignedShort(final Buffer buffer, final int index) throws IOException {
+        final short value = buffer.getShort(index);
+        return (this.byteOrder == ByteOrder.BIG_ENDIAN ? value : Short.reverseBytes(value)) & 0xFFFF;
+    }
+
+    private long getLong(final Buffer buffer, final int index) throws IOException {
+        final long high = getInt(buffer, index) & 0xFFFFFFFFL;
+        final long low = getInt(buffer, index + 4) & 0xFFFFFFFFL;
+        return this.byteOrder == ByteOrder.BIG_ENDIAN ? high << 32 | low : low << 32 | high;
+    }
+
+    @Override
+    public boolean accept(final Buffer data) throws IOException {
+        final byte[] magic = PcapGlobalHeader.MAGIC_NGPCAP;
+        try {
+            return data.getByte(0) == magic[0] && data.getByte(1) == magic[1] && data.getByte(2) == magic[2]
+                    && data.getByte(3) == magic[3];
+        } catch (final IndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Everything we need to know about an interface in order to frame its
+     * packets.
+     */
+    private static final class Interface {
+        private final PcapGlobalHeader header;
+        private final long unitsPerSecond;
+        private final long offset;
+
+        private Interface(final PcapGlobalHeader header, final long unitsPerSecond, final long offset) {
+            this.header = header;
+            this.unitsPerSecond = unitsPerSecond;
+            this.offset = offset;
+        }
+    }
+
+}
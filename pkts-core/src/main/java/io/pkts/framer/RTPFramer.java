@@ -82,39 +82,64 @@ public final class RTPFramer implements Framer<TransportPacket, RtpPacket> {
         return true;
     }
 
+    /**
+     * Frame the RTP packet. Since RTP is hard to detect (see
+     * {@link #accept(Buffer)}) it is not uncommon that data that was accepted
+     * turns out not to be RTP after all, which is why null is returned
+     * (instead of an exception being thrown) if there isn't enough data for
+     * the headers the packet claims to have.
+     * 
+     * {@inheritDoc}
+     * 
+     * @return the RTP packet or null if the data turned out not to be RTP.
+     */
     @Override
     public RtpPacket frame(final TransportPacket parent, final Buffer buffer) throws IOException {
         if (parent == null) {
             throw new IllegalArgumentException("The parent frame cannot be null");
         }
 
-        final int index = buffer.getReaderIndex();
-
-        try {
-
-            // An RTP packet has a least 12 bytes but can contain more depending on
-            // extensions, padding etc. Figure that out.
-            final Buffer headers = buffer.readBytes(12);
-            final Byte b = headers.getByte(0);
-            final boolean hasPadding = (b & 0x20) == 0x020;
-            final boolean hasExtension = (b & 0x10) == 0x010;
-            final int csrcCount = b & 0x0F;
+        // An RTP packet has a least 12 bytes but can contain more depending on
+        // extensions, padding etc. Figure that out.
+        if (buffer.getReadableBytes() < 12) {
+            return null;
+        }
 
-            if (hasExtension) {
-                final short extensionHeaders = buffer.readShort();
-                final int length = buffer.readUnsignedShort();
-                final Buffer extensionData = buffer.readBytes(length);
+        final byte b = buffer.getByte(buffer.getReaderIndex());
+        final boolean hasPadding = (b & 0x20) == 0x020;
+        final boolean hasExtension = (b & 0x10) == 0x010;
+        final int csrcCount = b & 0x0F;
+
+        // the fixed 12 bytes are followed by the CSRC identifiers, 4 bytes
+        // each, and then the optional extension header, whose length field
+        // is the number of 32-bit words following its own 4 byte header.
+        int headerLength = 12 + csrcCount * 4;
+        if (hasExtension) {
+            if (buffer.getReadableBytes() < headerLength + 4) {
+                return null;
             }
+            final int words = buffer.getUnsignedShort(buffer.getReaderIndex() + headerLength + 2);
+            headerLength += 4 + words * 4;
+        }
+
+        if (buffer.getReadableBytes() < headerLength) {
+            return null;
+        }
 
-            if (hasPadding || hasExtension || csrcCount > 0) {
-                // throw new RuntimeException("TODO - have not implemented the case of handling padding, extensions etc");
+        // when padded, the last octet is the number of padding octets,
+        // itself included, which are not part of the actual payload.
+        int payloadLength = buffer.getReadableBytes() - headerLength;
+        if (hasPadding) {
+            final int padding = payloadLength > 0 ? buffer.getUnsignedByte(buffer.getReaderIndex()
+                    + headerLength + payloadLength - 1) : 0;
+            if (padding == 0 || padding > payloadLength) {
+                return null;
             }
-            final Buffer payload = buffer.slice();
-            return new RtpPacketImpl(parent, headers, payload);
-        } catch (final IndexOutOfBoundsException e) {
-            buffer.setReaderIndex(index);
-            throw e;
+            payloadLength -= padding;
         }
 
+        final Buffer headers = buffer.readBytes(headerLength);
+        final Buffer payload = buffer.readBytes(payloadLength);
+        return new RtpPacketImpl(parent, headers, payload);
     }
 }
@@ -0,0 +1,278 @@
+/**
+ *
+ */
+package io.pkts.packet;
+
+/**
+ * The classic 5-tuple of protocol, source address and port and destination
+ * address and port, identifying the flow a {@link TransportPacket} belongs
+ * to. Meant to be used as the key of per-flow maps so it is immutable,
+ * cheap to compare and the hash code is computed up front. The addresses are
+ * kept as primitives, where an IPv4 address is stored in the low 32 bits and
+ * an IPv6 address as two longs, so creating a key doesn't allocate anything
+ * but the key itself.
+ *
+ * A {@link FlowKey} is directional, i.e. the packets going from A to B have a
+ * different key than the packets going from B to A. If you want both
+ * directions to end up in the same flow, use {@link #bidirectional()}, which
+ * returns the same key regardless of the direction.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class FlowKey {
+
+    private static final int PROTOCOL_TCP = 6;
+    private static final int PROTOCOL_UDP = 17;
+    private static final int PROTOCOL_SCTP = 132;
+
+    private final int version;
+    private final int protocol;
+    private final long sourceHigh;
+    private final long sourceLow;
+    private final int sourcePort;
+    private final long destinationHigh;
+    private final long destinationLow;
+    private final int destinationPort;
+    private final int hash;
+
+    private FlowKey(final int version, final int protocol, final long sourceHigh, final long sourceLow,
+            final int sourcePort, final long destinationHigh, final long destinationLow, final int destinationPort) {
+        this.version = version;
+        this.protocol = protocol;
+        this.sourceHigh = sourceHigh;
+        this.sourceLow = sourceLow;
+        this.sourcePort = sourcePort;
+        this.destinationHigh = destinationHigh;
+        this.destinationLow = destinationLow;
+        this.destinationPort = destinationPort;
+
+        long h = version << 8 | protocol;
+        h = mix(h, sourceHigh);
+        h = mix(h, sourceLow);
+        h = mix(h, (long) sourcePort << 16 | destinationPort);
+        h = mix(h, destinationHigh);
+        h = mix(h, destinationLow);
+        this.hash = (int) (h ^ h >>> 32);
+    }
+
+    /**
+     * Create the {@link FlowKey} for the given transport packet based on its
+     * ports and the addresses of its parent IP packet.
+     *
+     * @param packet
+     * @return
+     * @throws IllegalArgumentException
+     *             in case the parent packet isn't an IPv4 or IPv6 packet.
+     */
+    public static FlowKey of(final TransportPacket packet) throws IllegalArgumentException {
+        final int protocol = packet.isUDP() ? PROTOCOL_UDP : packet.isTCP() ? PROTOCOL_TCP
+                : packet.isSCTP() ? PROTOCOL_SCTP : 0;
+        final IPPacket ip = packet.getParentPacket();
+        if (ip instanceof IPv4Packet) {
+            final IPv4Packet ipv4 = (IPv4Packet) ip;
+            return ofIPv4(protocol, ipv4.getSourceIPv4AsInt(), packet.getSourcePort(),
+                    ipv4.getDestinationIPv4AsInt(), packet.getDestinationPort());
+        }
+
+        if (ip instanceof IPv6Packet) {
+            final IPv6Packet ipv6 = (IPv6Packet) ip;
+            return ofIPv6(protocol, ipv6.getSourceIPv6High(), ipv6.getSourceIPv6Low(), packet.getSourcePort(),
+                    ipv6.getDestinationIPv6High(), ipv6.getDestinationIPv6Low(), packet.getDestinationPort());
+        }
+
+        throw new IllegalArgumentException("The transport packet is not carried over IPv4 or IPv6");
+    }
+
+    /**
+     * @param protocol
+     *            the IP protocol number, e.g. 17 for UDP.
+     * @param sourceIP
+     *            the raw bits of the source address, as returned by
+     *            {@link IPv4Packet#getSourceIPv4AsInt()}.
+     * @param sourcePort
+     * @param destinationIP
+     * @param destinationPort
+     * @return
+     */
+    public static FlowKey ofIPv4(final int protocol, final int sourceIP, final int sourcePort,
+            final int destinationIP, final int destinationPort) {
+        return new FlowKey(4, protocol & 0xFF, 0, sourceIP & 0xFFFFFFFFL, sourcePort & 0xFFFF, 0,
+                destinationIP & 0xFFFFFFFFL, destinationPort & 0xFFFF);
+    }
+
+    /**
+     * @param protocol
+     *            the IP protocol number, e.g. 17 for UDP.
+     * @param sourceHigh
+     *            the first 64 bits of the source address.
+     * @param sourceLow
+     *            the last 64 bits of the source address.
+     * @param sourcePort
+     * @param destinationHigh
+     * @param destinationLow
+     * @param destinationPort
+     * @return
+     */
+    public static FlowKey ofIPv6(final int protocol, final long sourceHigh, final long sourceLow,
+            final int sourcePort, final long destinationHigh, final long destinationLow, final int destinationPort) {
+        return new FlowKey(6, protocol & 0xFF, sourceHigh, sourceLow, sourcePort & 0xFFFF, destinationHigh,
+                destinationLow, destinationPort & 0xFFFF);
+    }
+
+    /**
+     * @return the same flow but in the other direction, i.e. with the source
+     *         and destination swapped.
+     */
+    public FlowKey reverse() {
+        return new FlowKey(this.version, this.protocol, this.destinationHigh, this.destinationLow,
+                this.destinationPort, this.sourceHigh, this.sourceLow, this.sourcePort);
+    }
+
+    /**
+     * Get the canonical version of this key, which is the same for both
+     * directions of the flow, i.e.
+     * <code>key.bidirectional().equals(key.reverse().bidirectional())</code>
+     * always holds. The canonical key has the lower address (and port, in
+     * case the addresses are the same) as the source.
+     *
+     * @return this key if it already is canonical, otherwise the reversed key.
+     */
+    public FlowKey bidirectional() {
+        return isCanonical() ? this : reverse();
+    }
+
+    /**
+     * @return true if this key is the canonical one for its flow, see
+     *         {@link #bidirectional()}.
+     */
+    public boolean isCanonical() {
+        int c = Long.compareUnsigned(this.sourceHigh, this.destinationHigh);
+        if (c == 0) {
+            c = Long.compareUnsigned(this.sourceLow, this.destinationLow);
+        }
+        if (c == 0) {
+            c = Integer.compare(this.sourcePort, this.destinationPort);
+        }
+        return c <= 0;
+    }
+
+    /**
+     * @return 4 or 6 depending on the IP version of the addresses.
+     */
+    public int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return the IP protocol number, e.g. 17 for UDP.
+     */
+    public int getProtocol() {
+        return this.protocol;
+    }
+
+    public int getSourcePort() {
+        return this.sourcePort;
+    }
+
+    public int getDestinationPort() {
+        return this.destinationPort;
+    }
+
+    /**
+     * @return the raw bits of the IPv4 source address. Only meaningful if the
+     *         version is 4.
+     */
+    public int getSourceIPv4AsInt() {
+        return (int) this.sourceLow;
+    }
+
+    /**
+     * @return the raw bits of the IPv4 destination address. Only meaningful if
+     *         the version is 4.
+     */
+    public int getDestinationIPv4AsInt() {
+        return (int) this.destinationLow;
+    }
+
+    public long getSourceIPv6High() {
+        return this.sourceHigh;
+    }
+
+    public long getSourceIPv6Low() {
+        return this.sourceLow;
+    }
+
+    public long getDestinationIPv6High() {
+        return this.destinationHigh;
+    }
+
+    public long getDestinationIPv6Low() {
+        return this.destinationLow;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof FlowKey)) {
+            return false;
+        }
+        final FlowKey key = (FlowKey) other;
+        return this.hash == key.hash
+                && this.sourceLow == key.sourceLow
+                && this.destinationLow == key.destinationLow
+                && this.sourcePort == key.sourcePort
+                && this.destinationPort == key.destinationPort
+                && this.sourceHigh == key.sourceHigh
+                && this.destinationHigh == key.destinationHigh
+                && this.protocol == key.protocol
+                && this.version == key.version;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(this.protocol).append(' ');
+        appendAddress(sb, this.sourceHigh, this.sourceLow).append(':').append(this.sourcePort);
+        sb.append(" -> ");
+        appendAddress(sb, this.destinationHigh, this.destinationLow).append(':').append(this.destinationPort);
+        return sb.toString();
+    }
+
+    private StringBuilder appendAddress(final StringBuilder sb, final long high, final long low) {
+        if (this.version == 4) {
+            return sb.append(low >>> 24 & 0xFF).append('.').append(low >>> 16 & 0xFF).append('.')
+                    .append(low >>> 8 & 0xFF).append('.').append(low & 0xFF);
+        }
+
+        sb.append('[');
+        for (int i = 0; i < 8; ++i) {
+            if (i > 0) {
+                sb.append(':');
+            }
+            final long word = i < 4 ? high >>> (48 - i * 16) : low >>> (48 - (i - 4) * 16);
+            sb.append(Integer.toHexString((int) word & 0xFFFF));
+        }
+        return sb.append(']');
+    }
+
+    /**
+     * Fold the value into the hash, using the finalizer of MurmurHash3 so
+     * that addresses differing in only a few bits still spread out nicely.
+     */
+    private static long mix(final long hash, final long value) {
+        long h = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ h >>> 33;
+    }
+
+}
@@ -71,6 +71,15 @@ public interface IPPacket extends Packet, Cloneable {
      */
     int getTotalIPLength();
 
+    /**
+     * The protocol number of the payload of this packet, e.g. 17 for UDP.
+     * For IPv4 this is the Protocol field and for IPv6 it is the Next Header
+     * following any extension headers.
+     *
+     * @return
+     */
+    int getNextProtocol();
+
     @Override
     IPPacket clone();
 
@@ -78,6 +78,26 @@ public interface IPv4Packet extends IPPacket {
      */
     void setDestinationIP(String destinationIP);
 
+    /**
+     * Get the source IP as a 32-bit integer, which is much cheaper than
+     * {@link #getSourceIP()} since nothing is allocated. Handy when using the
+     * address as (part of) a key in e.g. a map.
+     *
+     * Note, these are the raw bits and should be treated as such. If you
+     * really want to print it, then you should treat it as unsigned.
+     *
+     * @return
+     */
+    int getSourceIPv4AsInt();
+
+    /**
+     * Get the destination IP as a 32-bit integer. See
+     * {@link #getSourceIPv4AsInt()}.
+     *
+     * @return
+     */
+    int getDestinationIPv4AsInt();
+
     /**
      * The checksum of the IP-packet. The checksum in an IP-packet is a 16 bit
      * checksum of the header bytes (which the checksum set to zero) and is
@@ -12,4 +12,53 @@ public interface IPv6Packet extends IPPacket {
     short getTrafficClass();
     int getFlowLabel();
     int getHopLimit();
+
+    /**
+     * Get the first 64 bits of the source IP. Together with
+     * {@link #getSourceIPv6Low()} this is the full address without having to
+     * allocate anything, which is much cheaper than {@link #getSourceIP()}.
+     *
+     * @return
+     */
+    long getSourceIPv6High();
+
+    /**
+     * Get the last 64 bits of the source IP.
+     *
+     * @return
+     */
+    long getSourceIPv6Low();
+
+    /**
+     * Get the first 64 bits of the destination IP.
+     *
+     * @return
+     */
+    long getDestinationIPv6High();
+
+    /**
+     * Get the last 64 bits of the destination IP.
+     *
+     * @return
+     */
+    long getDestinationIPv6Low();
+
+    /**
+     * The M flag of the Fragment extension header, telling whether there are
+     * more fragments following this one.
+     *
+     * @return false if this packet isn't fragmented or if it is the last
+     *         fragment.
+     */
+    boolean isMoreFragmentsSet();
+
+    /**
+     * The 32-bit Identification of the Fragment extension header, which
+     * together with the source and destination addresses identifies the
+     * fragments of the same original packet. Note, these are the raw bits
+     * so treat them as unsigned.
+     *
+     * @return the identification or zero if this packet isn't fragmented.
+     */
+    int getFragmentIdentification();
 }
@@ -3,6 +3,8 @@
  */
 package io.pkts.packet;
 
+import io.pkts.frame.PcapGlobalHeader;
+
 /**
  * @author jonas@jonasborjesson.com
  */
@@ -26,6 +28,15 @@ public interface PCapPacket extends Packet {
      */
     long getCapturedLength();
 
+    /**
+     * Get the global header of the pcap this packet was captured in. For a
+     * pcapng, this is a header describing the interface the packet was
+     * captured on.
+     *
+     * @return
+     */
+    PcapGlobalHeader getGlobalHeader();
+
     @Override
     PCapPacket clone();
 
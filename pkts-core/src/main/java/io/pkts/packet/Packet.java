@@ -3,6 +3,8 @@
  */
 package io.pkts.packet;
 
+import io.pkts.PacketHandler;
+import io.pkts.Pcap;
 import io.pkts.PcapOutputStream;
 import io.pkts.buffer.Buffer;
 import io.pkts.packet.sip.SipPacket;
@@ -88,6 +90,24 @@ public interface Packet extends Cloneable {
 
     Packet clone();
 
+    /**
+     * Make sure that this packet stays valid after it has been handed over to
+     * a {@link PacketHandler}. Normally packets are never re-used so this
+     * simply returns the packet itself but when looping over a pcap through
+     * {@link Pcap#loopRecycled(PacketHandler)} the very same packet instance
+     * is re-pointed at every record and you must retain any packet you wish
+     * to hang on to past the call to {@link PacketHandler#nextPacket(Packet)}.
+     *
+     * @return a packet that is safe to keep around, which may or may not be
+     *         this packet.
+     * @throws IOException
+     *             in case something goes wrong when framing the retained
+     *             packet.
+     */
+    default Packet retain() throws IOException {
+        return this;
+    }
+
     /**
      * Check whether this packet contains a particular protocol. This will cause
      * the packet to examine all the containing packets to check whether they
@@ -4,6 +4,7 @@
 package io.pkts.packet.impl;
 
 import io.pkts.buffer.Buffer;
+import io.pkts.framer.ParsePolicy;
 import io.pkts.packet.IPPacket;
 import io.pkts.packet.Packet;
 import io.pkts.packet.PacketParseException;
@@ -30,9 +31,11 @@ public abstract class AbstractPacket implements Packet {
 
     /**
      * A packet may contain additional packets, which are carried within the
-     * payload. Note, not all packets have payloads.
+     * payload. Note, not all packets have payloads. Only ever changed when a
+     * recycled packet is re-pointed at the next record, see
+     * {@link #reset(Buffer)}.
      */
-    private final Buffer payload;
+    private Buffer payload;
 
     /**
      * The parent packet.
@@ -40,10 +43,38 @@ public abstract class AbstractPacket implements Packet {
     private final Packet parent;
 
     /**
-     * The next packet.
+     * The next packet, framed out of our payload the first time it is asked
+     * for and then kept around so that we frame every layer at most once no
+     * matter how many times the chain is walked.
      */
     private Packet nextPacket;
 
+    /**
+     * Whether we have attempted to frame the next packet or not. Note that
+     * the next packet may very well be null even after it has been framed.
+     */
+    private boolean nextPacketFramed;
+
+    /**
+     * If framing the next packet failed, this is why. Re-thrown on every
+     * subsequent attempt to get the next packet.
+     */
+    private Exception nextPacketFailure;
+
+    /**
+     * A bitmask of the protocols (see {@link #bit(Protocol)}) of this packet
+     * and all packets below it. Only known once the entire chain below this
+     * packet has been framed, zero until then.
+     */
+    private long chainProtocols;
+
+    /**
+     * Which protocols we are allowed to frame out of our payload. Inherited
+     * from the parent so that the entire chain follows the policy of the
+     * packet at the root.
+     */
+    private final ParsePolicy parsePolicy;
+
     /**
      * 
      * @param p
@@ -59,10 +90,31 @@ public abstract class AbstractPacket implements Packet {
      * 
      */
     public AbstractPacket(final Protocol p, final Packet parent, final Buffer payload) {
+        this(p, parent, payload, parent instanceof AbstractPacket ? ((AbstractPacket) parent).parsePolicy
+                : ParsePolicy.ALL);
+    }
+
+    /**
+     * @param parsePolicy
+     *            the {@link ParsePolicy} for this packet and every packet
+     *            framed out of it.
+     */
+    protected AbstractPacket(final Protocol p, final Packet parent, final Buffer payload,
+            final ParsePolicy parsePolicy) {
         assert p != null;
+        assert parsePolicy != null;
         this.protocol = p;
         this.payload = payload;
         this.parent = parent;
+        this.parsePolicy = parsePolicy;
+    }
+
+    /**
+     * @return the {@link ParsePolicy} that decides which protocols may be
+     *         framed out of the payload of this packet.
+     */
+    protected final ParsePolicy getParsePolicy() {
+        return this.parsePolicy;
     }
 
     /*
@@ -76,20 +128,95 @@ public abstract class AbstractPacket implements Packet {
     }
 
     /**
-     * The write strategy is fairly simple. If we have a "nextPacket" it means
-     * that we have been asked to frame our payload which also means that that
-     * payload may have changed and therefore ask the nextPacket to write itself
-     * back out to the stream. If there is no nextPacket we can just take the
-     * raw payload and write it out as is since it cannot have changed since we
-     * framed this packet.
+     * The write strategy is fairly simple, we take the raw payload and write
+     * it out as is. Note that even though we keep the framed next packet
+     * around, we don't ask it to write itself out since far from all packets
+     * know how to do that (e.g. RTP, SCTP and TCP options). If you have
+     * modified a packet further down the chain, write that packet instead.
      */
     @Override
     public final void write(final OutputStream out) throws IOException {
-        if (this.nextPacket != null) {
-            this.nextPacket.write(out);
-        } else {
-            this.write(out, this.payload);
+        this.write(out, this.payload);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The next packet is only framed once, subsequent calls will return the
+     * same instance (or throw the same exception if the framing failed).
+     */
+    @Override
+    public final Packet getNextPacket() throws IOException, PacketParseException {
+        if (!this.nextPacketFramed) {
+            try {
+                this.nextPacket = frameNextPacket();
+            } catch (final IOException | RuntimeException e) {
+                this.nextPacketFailure = e;
+            }
+            this.nextPacketFramed = true;
         }
+
+        if (this.nextPacketFailure instanceof IOException) {
+            throw (IOException) this.nextPacketFailure;
+        } else if (this.nextPacketFailure != null) {
+            throw (RuntimeException) this.nextPacketFailure;
+        }
+        return this.nextPacket;
+    }
+
+    /**
+     * Frame the next packet out of the payload of this packet.
+     *
+     * @return the next packet or null if there is none.
+     * @throws IOException
+     * @throws PacketParseException
+     * @see #getNextPacket()
+     */
+    protected abstract Packet frameNextPacket() throws IOException, PacketParseException;
+
+    /**
+     * Point this packet at a new payload and forget everything that was
+     * framed out of the old one. Only meant for packets that are recycled by
+     * their framer, see {@link PCapPacketImpl#recycle(Buffer)}.
+     *
+     * @param payload
+     */
+    protected void reset(final Buffer payload) {
+        this.payload = payload;
+        this.nextPacket = null;
+        this.nextPacketFramed = false;
+        this.nextPacketFailure = null;
+        this.chainProtocols = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only the packet at the root of the chain can be recycled so we ask it
+     * to retain itself and, if that resulted in a new chain, walk down to the
+     * packet at the same depth as this one.
+     */
+    @Override
+    public Packet retain() throws IOException {
+        int depth = 0;
+        Packet root = this;
+        while (root.getParentPacket() != null) {
+            root = root.getParentPacket();
+            ++depth;
+        }
+
+        if (root == this) {
+            return this;
+        }
+
+        Packet retained = root.retain();
+        if (retained == root) {
+            return this;
+        }
+        while (depth-- > 0 && retained != null) {
+            retained = retained.getNextPacket();
+        }
+        return retained;
     }
 
     @Override
@@ -140,16 +267,29 @@ public abstract class AbstractPacket implements Packet {
             return this;
         }
 
-        final Packet child = getNextPacket();
-        if (child != null && child.getProtocol() == p) {
-            return child;
+        if (p == null || this.chainProtocols != 0 && (this.chainProtocols & bit(p)) == 0) {
+            return checkParent(p);
         }
 
-        if (child == null) {
-            return checkParent(p);
+        long protocols = bit(this.protocol);
+        Packet current = this;
+        Packet child = null;
+        while ((child = current.getNextPacket()) != null) {
+            if (child.getProtocol() == p) {
+                return child;
+            }
+            protocols |= bit(child.getProtocol());
+            current = child;
         }
 
-        return child.getPacket(p);
+        // we walked the entire chain so next time around we know right
+        // away whether it is worth walking it again.
+        this.chainProtocols = protocols;
+        return checkParent(p);
+    }
+
+    private static long bit(final Protocol p) {
+        return 1L << p.ordinal();
     }
 
     public Packet checkParent(final Protocol p) {
@@ -184,4 +324,16 @@ public abstract class AbstractPacket implements Packet {
         return null;
     }
 
+    /**
+     * Same as {@link #getPayload()} but without allocating a slice. The
+     * readable bytes start at the reader index of the returned buffer, which
+     * must only be read through its absolute getters and never be changed or
+     * held on to.
+     *
+     * @return the payload or null if there is none.
+     */
+    public final Buffer peekPayload() {
+        return this.payload;
+    }
+
 }
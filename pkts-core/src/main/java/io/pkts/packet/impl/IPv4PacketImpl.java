@@ -5,13 +5,12 @@ package io.pkts.packet.impl;
 
 import io.pkts.buffer.Buffer;
 import io.pkts.buffer.Buffers;
-import io.pkts.framer.SctpFramer;
-import io.pkts.framer.TCPFramer;
-import io.pkts.framer.UDPFramer;
+import io.pkts.framer.Framer;
+import io.pkts.framer.FramerManager;
+import io.pkts.packet.IPPacket;
 import io.pkts.packet.IPv4Packet;
 import io.pkts.packet.PCapPacket;
 import io.pkts.packet.Packet;
-import io.pkts.packet.PacketParseException;
 import io.pkts.protocol.Protocol;
 
 import java.io.IOException;
@@ -22,12 +21,6 @@ import java.io.OutputStream;
  */
 public final class IPv4PacketImpl extends AbstractPacket implements IPv4Packet {
 
-    private static final UDPFramer udpFramer = new UDPFramer();
-
-    private static final TCPFramer tcpFramer = new TCPFramer();
-
-    private static final SctpFramer sctpFramer = new SctpFramer();
-
     private final Packet parent;
 
     private final Buffer headers;
@@ -73,9 +66,7 @@ public final class IPv4PacketImpl extends AbstractPacket implements IPv4Packet {
 
     @Override
     public byte[] getRawSourceIP() {
-        Buffer tmp = Buffers.createBuffer(4);
-        this.headers.getBytes(12, tmp);
-        return tmp.getArray();
+        return toBytes(getSourceIPv4AsInt());
     }
 
     /**
@@ -87,6 +78,11 @@ public final class IPv4PacketImpl extends AbstractPacket implements IPv4Packet {
      * @return
      */
     public int getRawSourceIpInt() {
+        return getSourceIPv4AsInt();
+    }
+
+    @Override
+    public int getSourceIPv4AsInt() {
         return this.headers.getInt(12);
     }
 
@@ -105,9 +101,11 @@ public final class IPv4PacketImpl extends AbstractPacket implements IPv4Packet {
 
     @Override
     public byte[] getRawDestinationIP() {
-        Buffer tmp = Buffers.createBuffer(4);
-        this.headers.getBytes(16, tmp);
-        return tmp.getArray();
+        return toBytes(getDestinationIPv4AsInt());
+    }
+
+    private static byte[] toBytes(final int ip) {
+        return new byte[] { (byte) (ip >>> 24), (byte) (ip >>> 16), (byte) (ip >>> 8), (byte) ip };
     }
 
     /**
@@ -119,6 +117,11 @@ public final class IPv4PacketImpl extends AbstractPacket implements IPv4Packet {
      * @return
      */
     public int getRawDestinationIpInt() {
+        return getDestinationIPv4AsInt();
+    }
+
+    @Override
+    public int getDestinationIPv4AsInt() {
         return this.headers.getInt(16);
     }
 
@@ -150,8 +153,9 @@ public final class IPv4PacketImpl extends AbstractPacket implements IPv4Packet {
 
     @Override
     public void write(final OutputStream out, final Buffer payload) throws IOException {
-        // Note, you need to set the total length before you merge the packets since
-        // Buffers.wrap will copy the bytes.
+        // Note, Buffers.wrap doesn't copy anything, the result is a view that aliases
+        // this.headers, so the total length and checksum have to be set before the
+        // view is handed to the parent, which writes it out right away.
         final int size = this.headers.getReadableBytes() + (payload != null ? payload.getReadableBytes() : 0);
         this.setTotalLength(size);
         reCalculateChecksum();
@@ -252,7 +256,7 @@ public final class IPv4PacketImpl extends AbstractPacket implements IPv4Packet {
     }
 
     @Override
-    public Packet getNextPacket() throws IOException {
+    protected Packet frameNextPacket() throws IOException {
         final Buffer payload = getPayload();
         if (payload == null) {
             return null;
@@ -260,21 +264,15 @@ public final class IPv4PacketImpl extends AbstractPacket implements IPv4Packet {
 
         // the protocol is in byte 10
         final byte code = this.headers.getByte(9);
-        final Protocol protocol = Protocol.valueOf(code);
-        if (protocol != null) {
-            switch (protocol) {
-            case UDP:
-                return udpFramer.frame(this, payload);
-            case TCP:
-                return tcpFramer.frame(this, payload);
-            case SCTP:
-                return sctpFramer.frame(this, payload);
-            default:
-                throw new PacketParseException(9, String.format("Unsupported inner protocol %s for IPv4", protocol.getName()));
-            }
-        } else {
-            throw new PacketParseException(9, String.format("Unknown protocol %d inside IPv4 packet", code));
+        final Framer<? super IPPacket, ? extends Packet> framer = FramerManager.getInstance()
+                .getIpProtocolFramer(code & 0xFF);
+        if (framer != null && getParsePolicy().allows(framer.getProtocol())) {
+            return framer.frame(this, payload);
         }
+
+        // unsupported or unknown protocols, such as ICMP, are common enough
+        // that they shouldn't be treated as errors.
+        return new UnknownPacketImpl(Protocol.valueOf(code), this, payload);
     }
 
     /**
@@ -393,6 +391,11 @@ public final class IPv4PacketImpl extends AbstractPacket implements IPv4Packet {
         return this.headers.getUnsignedShort(4);
     }
 
+    @Override
+    public int getNextProtocol() {
+        return this.headers.getUnsignedByte(9);
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("IPv4 ");
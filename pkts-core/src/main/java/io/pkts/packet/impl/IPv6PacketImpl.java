@@ -6,8 +6,9 @@ package io.pkts.packet.impl;
 import io.pkts.buffer.Buffer;
 import io.pkts.buffer.Buffers;
 import io.pkts.framer.FramingException;
-import io.pkts.framer.TCPFramer;
-import io.pkts.framer.UDPFramer;
+import io.pkts.framer.Framer;
+import io.pkts.framer.FramerManager;
+import io.pkts.packet.IPPacket;
 import io.pkts.packet.IPv6Packet;
 import io.pkts.packet.Packet;
 import io.pkts.packet.PacketParseException;
@@ -24,10 +25,6 @@ import java.net.UnknownHostException;
 public final class IPv6PacketImpl extends AbstractPacket implements IPv6Packet {
     public static final int FIXED_HEADER_LENGTH = 40;
 
-    private static final UDPFramer udpFramer = new UDPFramer();
-
-    private static final TCPFramer tcpFramer = new TCPFramer();
-
     private final Buffer headers;
 
     private final int nextProtocol;
@@ -50,9 +47,17 @@ public final class IPv6PacketImpl extends AbstractPacket implements IPv6Packet {
      */
     @Override
     public byte[] getRawSourceIP() {
-        final Buffer tmp = Buffers.createBuffer(128 / 8);
-        this.headers.getBytes(8, tmp);
-        return tmp.getArray();
+        return toBytes(getSourceIPv6High(), getSourceIPv6Low());
+    }
+
+    @Override
+    public long getSourceIPv6High() {
+        return getLong(8);
+    }
+
+    @Override
+    public long getSourceIPv6Low() {
+        return getLong(16);
     }
 
     @Override
@@ -84,9 +89,30 @@ public final class IPv6PacketImpl extends AbstractPacket implements IPv6Packet {
      */
     @Override
     public byte[] getRawDestinationIP() {
-        final Buffer tmp = Buffers.createBuffer(128 / 8);
-        this.headers.getBytes(24, tmp);
-        return tmp.getArray();
+        return toBytes(getDestinationIPv6High(), getDestinationIPv6Low());
+    }
+
+    @Override
+    public long getDestinationIPv6High() {
+        return getLong(24);
+    }
+
+    @Override
+    public long getDestinationIPv6Low() {
+        return getLong(32);
+    }
+
+    private long getLong(final int index) {
+        return (long) this.headers.getInt(index) << 32 | this.headers.getInt(index + 4) & 0xFFFFFFFFL;
+    }
+
+    private static byte[] toBytes(final long high, final long low) {
+        final byte[] ip = new byte[16];
+        for (int i = 0; i < 8; ++i) {
+            ip[i] = (byte) (high >>> (56 - i * 8));
+            ip[i + 8] = (byte) (low >>> (56 - i * 8));
+        }
+        return ip;
     }
 
     @Override
@@ -173,26 +199,23 @@ public final class IPv6PacketImpl extends AbstractPacket implements IPv6Packet {
     }
 
     @Override
-    public Packet getNextPacket() throws IOException {
+    protected Packet frameNextPacket() throws IOException {
         final Buffer payload = getPayload();
         if (payload == null) {
             return null;
         }
 
-        final Protocol protocol = Protocol.valueOf((byte) nextProtocol);
-        if (protocol != null) {
-            switch (protocol) {
-            case UDP:
-                return udpFramer.frame(this, payload);
-            case TCP:
-                return tcpFramer.frame(this, payload);
-            default:
-                throw new PacketParseException(0, "Unsupported inner protocol for IPv6");
-            }
-        } else {
-            throw new PacketParseException(0, String.format("Unknown protocol %d inside IPv6 packet", nextProtocol));
+        final Framer<? super IPPacket, ? extends Packet> framer = FramerManager.getInstance()
+                .getIpProtocolFramer(this.nextProtocol);
+        if (framer != null && getParsePolicy().allows(framer.getProtocol())) {
+            return framer.frame(this, payload);
         }
 
+        // unsupported or unknown protocols, such as ICMPv6 or any of the
+        // extension headers, are common enough that they shouldn't be
+        // treated as errors.
+        return new UnknownPacketImpl(Protocol.valueOf((byte) this.nextProtocol), this, payload);
+
     }
 
     @Override
@@ -224,6 +247,23 @@ public final class IPv6PacketImpl extends AbstractPacket implements IPv6Packet {
         return (getHeader(EXTENSION_FRAGMENT) != null);
     }
 
+    @Override
+    public boolean isMoreFragmentsSet() {
+        final Buffer fragmentHeader = getHeader(EXTENSION_FRAGMENT);
+        return fragmentHeader != null && (fragmentHeader.getUnsignedShort(2) & 0x01) == 0x01;
+    }
+
+    @Override
+    public int getFragmentIdentification() {
+        final Buffer fragmentHeader = getHeader(EXTENSION_FRAGMENT);
+        return fragmentHeader != null ? fragmentHeader.getInt(4) : 0;
+    }
+
+    @Override
+    public int getNextProtocol() {
+        return this.nextProtocol;
+    }
+
     @Override
     public short getFragmentOffset() {
         final Buffer fragmentHeader = getHeader(EXTENSION_FRAGMENT);
@@ -251,12 +291,12 @@ public final class IPv6PacketImpl extends AbstractPacket implements IPv6Packet {
             int headerExtensionLen;
             // advance to next header
             while (startOfHeader < this.headers.capacity()) {
-                switch (extensionNumber) {
+                switch (thisHeaderNumber) {
                     case IPv6Packet.EXTENSION_HOP_BY_HOP:
                     case IPv6Packet.EXTENSION_ROUTING:
                     case IPv6Packet.EXTENSION_DESTINATION_OPTIONS:
                         nextHeaderNumber = this.headers.getByte(startOfHeader);
-                        headerExtensionLen = 8 + this.headers.getByte(startOfHeader + 1) * 8;
+                        headerExtensionLen = 8 + this.headers.getUnsignedByte(startOfHeader + 1) * 8;
                         break;
                     case IPv6Packet.EXTENSION_FRAGMENT:
                         nextHeaderNumber = this.headers.getByte(startOfHeader);
@@ -264,7 +304,7 @@ public final class IPv6PacketImpl extends AbstractPacket implements IPv6Packet {
                         break;
                     case IPv6Packet.EXTENSION_AH:
                         nextHeaderNumber = this.headers.getByte(startOfHeader);
-                        headerExtensionLen = 4 * (this.headers.getByte(startOfHeader + 1) + 2);
+                        headerExtensionLen = 4 * (this.headers.getUnsignedByte(startOfHeader + 1) + 2);
                         break;
                     case IPv6Packet.EXTENSION_ESP:
                         // TODO figure out how length is even parsed...
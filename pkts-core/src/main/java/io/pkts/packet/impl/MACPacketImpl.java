@@ -7,8 +7,8 @@ import io.pkts.buffer.Buffer;
 import io.pkts.buffer.Buffers;
 import io.pkts.frame.UnknownEtherType;
 import io.pkts.framer.EthernetFramer;
-import io.pkts.framer.IPv4Framer;
-import io.pkts.framer.IPv6Framer;
+import io.pkts.framer.Framer;
+import io.pkts.framer.FramerManager;
 import io.pkts.packet.IPPacket;
 import io.pkts.packet.MACPacket;
 import io.pkts.packet.PCapPacket;
@@ -23,9 +23,6 @@ import java.io.OutputStream;
  */
 public final class MACPacketImpl extends AbstractPacket implements MACPacket {
 
-    private static final IPv4Framer ipv4Framer = new IPv4Framer();
-    private static final IPv6Framer ipv6Framer = new IPv6Framer();
-
     private final PCapPacket parent;
     private final String sourceMacAddress;
     private final String destinationMacAddress;
@@ -192,52 +189,74 @@ public final class MACPacketImpl extends AbstractPacket implements MACPacket {
     }
 
     public Protocol getNextProtocol() throws IOException {
-      if (getProtocol() == Protocol.ETHERNET_II) {
-          EthernetFramer.EtherType etherType;
+      // the protocol field of a linux cooked capture is an ether type too
+      final int offset = getProtocol() == Protocol.ETHERNET_II ? 12 : 14;
+      EthernetFramer.EtherType etherType;
+      try {
+          etherType = EthernetFramer.getEtherType(headers.getByte(offset), headers.getByte(offset + 1));
+      } catch (UnknownEtherType e) {
+          throw new PacketParseException(offset, String.format("Unknown Ethernet type 0x%02x%02x", e.getB1(), e.getB2()));
+      }
+      if (getProtocol() == Protocol.ETHERNET_II && etherType == EthernetFramer.EtherType.Dot1Q) {
           try {
-              etherType = EthernetFramer.getEtherType(headers.getByte(12), headers.getByte(13));
+              etherType = EthernetFramer.getEtherType(headers.getByte(16), headers.getByte(17));
           } catch (UnknownEtherType e) {
-              throw new PacketParseException(12, String.format("Unknown Ethernet type 0x%02x%02x", e.getB1(), e.getB2()));
-          }
-          if (etherType == EthernetFramer.EtherType.Dot1Q) {
-              try {
-                  etherType = EthernetFramer.getEtherType(headers.getByte(16), headers.getByte(17));
-              } catch (UnknownEtherType e) {
-                  throw new PacketParseException(16, String.format("Unknown Ethernet type 0x%02x%02x", e.getB1(), e.getB2()));
-              } catch (IndexOutOfBoundsException e) {
-                  throw new PacketParseException(14, "Not enough bytes in this header");
-              }
+              throw new PacketParseException(16, String.format("Unknown Ethernet type 0x%02x%02x", e.getB1(), e.getB2()));
+          } catch (IndexOutOfBoundsException e) {
+              throw new PacketParseException(14, "Not enough bytes in this header");
           }
+      }
 
-          switch (etherType) {
-              case IPv4:
-                  return Protocol.IPv4;
-              case IPv6:
-                  return Protocol.IPv6;
-              case ARP:
-                  return Protocol.ARP;
-              default:
-                  return Protocol.UNKNOWN;
-          }
-      } else {
-          // TODO: figure out how an SLL packet indicates IPv4 vs IPv6
-          return Protocol.IPv4;
+      switch (etherType) {
+          case IPv4:
+              return Protocol.IPv4;
+          case IPv6:
+              return Protocol.IPv6;
+          case ARP:
+              return Protocol.ARP;
+          default:
+              return Protocol.UNKNOWN;
       }
     }
 
     @Override
-    public IPPacket getNextPacket() throws IOException {
+    protected IPPacket frameNextPacket() throws IOException {
         final Buffer payload = getPayload();
         if (payload == null) {
             return null;
         }
-        switch (getNextProtocol()) {
-            case IPv4:
-                return ipv4Framer.frame(this, payload);
-            case IPv6:
-                return ipv6Framer.frame(this, payload);
-            default:
-                return null;
+        final FramerManager framerManager = FramerManager.getInstance();
+        final Framer<? super MACPacket, ? extends IPPacket> framer = framerManager
+                .getEtherTypeFramer(getEtherType());
+        if (framer != null && getParsePolicy().allows(framer.getProtocol())) {
+            return framer.frame(this, payload);
+        }
+
+        // nothing registered for it (or we are not allowed to frame it) but
+        // make sure it is at least an ether type we know of.
+        getNextProtocol();
+        return null;
+    }
+
+    /**
+     * @return the raw EtherType of this frame, skipping past the 802.1Q tag
+     *         if there is one. For a linux cooked capture this is the
+     *         protocol field.
+     */
+    private int getEtherType() throws PacketParseException {
+        if (getProtocol() != Protocol.ETHERNET_II) {
+            return this.headers.getUnsignedShort(14);
+        }
+
+        final int etherType = this.headers.getUnsignedShort(12);
+        if (etherType != 0x8100) {
+            return etherType;
+        }
+
+        try {
+            return this.headers.getUnsignedShort(16);
+        } catch (final IndexOutOfBoundsException e) {
+            throw new PacketParseException(14, "Not enough bytes in this header");
         }
     }
 }
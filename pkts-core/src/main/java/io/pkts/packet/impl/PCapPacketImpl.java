@@ -3,12 +3,15 @@
  */
 package io.pkts.packet.impl;
 
+import io.pkts.PcapOutputStream;
 import io.pkts.buffer.Buffer;
+import io.pkts.buffer.BufferPool;
 import io.pkts.frame.PcapGlobalHeader;
 import io.pkts.frame.PcapRecordHeader;
 import io.pkts.framer.EthernetFramer;
 import io.pkts.framer.FramingException;
 import io.pkts.framer.IPv4Framer;
+import io.pkts.framer.ParsePolicy;
 import io.pkts.framer.SllFramer;
 import io.pkts.packet.PCapPacket;
 import io.pkts.packet.PacketParseException;
@@ -35,6 +38,19 @@ public final class PCapPacketImpl extends AbstractPacket implements PCapPacket {
     private static final IPv4Framer ipFramer = new IPv4Framer();
     private final PcapGlobalHeader pcapGlobalHeader;
 
+    /**
+     * Whether this packet is re-used for every record, see
+     * {@link #recycle(Buffer)}.
+     */
+    private final boolean recycled;
+
+    /**
+     * Whether the payload of this recycled packet is borrowed from a
+     * {@link BufferPool}, in which case it will be released as soon as the
+     * packet is recycled and has to be copied when retained.
+     */
+    private boolean pooledPayload;
+
     /**
      * Constructor which assumes an Ethernet link layer.
      */
@@ -42,15 +58,68 @@ public final class PCapPacketImpl extends AbstractPacket implements PCapPacket {
         super(Protocol.PCAP, null, payload);
         this.pcapGlobalHeader = PcapGlobalHeader.createDefaultHeader();
         this.pcapHeader = header;
+        this.recycled = false;
     }
 
     /**
      * Constructor which uses the PCAP file's global header to support more than just Ethernet link layers
      */
     public PCapPacketImpl(PcapGlobalHeader pcapGlobalHeader, final PcapRecordHeader header, final Buffer payload) {
-        super(Protocol.PCAP, null, payload);
+        this(pcapGlobalHeader, header, payload, false);
+    }
+
+    /**
+     * Constructor for a packet that will be re-used for every record.
+     *
+     * @param recycled
+     *            if true, the framer will keep pointing this packet at new
+     *            records by overwriting the record header and calling
+     *            {@link #recycle(Buffer)}.
+     */
+    public PCapPacketImpl(final PcapGlobalHeader pcapGlobalHeader, final PcapRecordHeader header,
+            final Buffer payload, final boolean recycled) {
+        this(pcapGlobalHeader, header, payload, recycled, ParsePolicy.ALL);
+    }
+
+    /**
+     * @param parsePolicy
+     *            which protocols the packets framed out of this one are
+     *            allowed to frame.
+     */
+    public PCapPacketImpl(final PcapGlobalHeader pcapGlobalHeader, final PcapRecordHeader header,
+            final Buffer payload, final boolean recycled, final ParsePolicy parsePolicy) {
+        super(Protocol.PCAP, null, payload, parsePolicy);
         this.pcapGlobalHeader = pcapGlobalHeader;
         this.pcapHeader = header;
+        this.recycled = recycled;
+    }
+
+    /**
+     * Point this recycled packet at the next record. The framer has already
+     * overwritten the content of the record header so all that is left is the
+     * payload, and to forget about any packets framed out of the previous
+     * one.
+     *
+     * @param payload
+     */
+    public void recycle(final Buffer payload) {
+        recycle(payload, false);
+    }
+
+    /**
+     * Same as {@link #recycle(Buffer)} but for a payload that has been
+     * borrowed from a {@link BufferPool} and that will be released once the
+     * packet moves on to the next record.
+     *
+     * @param payload
+     * @param pooled
+     */
+    public void recycle(final Buffer payload, final boolean pooled) {
+        if (!this.recycled) {
+            throw new IllegalStateException("This packet isn't recycled");
+        }
+        this.pooledPayload = pooled;
+        reset(payload);
     }
 
     /**
@@ -63,6 +132,11 @@ public final class PCapPacketImpl extends AbstractPacket implements PCapPacket {
         return this.pcapHeader.getTimeStampSeconds() * multiplier + this.pcapHeader.getTimeStampMicroOrNanoSeconds();
     }
 
+    @Override
+    public PcapGlobalHeader getGlobalHeader() {
+        return this.pcapGlobalHeader;
+    }
+
     @Override
     public long getTotalLength() {
         return this.pcapHeader.getTotalLength();
@@ -101,17 +175,38 @@ public final class PCapPacketImpl extends AbstractPacket implements PCapPacket {
         final int size = payload.getReadableBytes();
         this.pcapHeader.setCapturedLength(size);
         this.pcapHeader.setTotalLength(size);
+        if (out instanceof PcapOutputStream) {
+            ((PcapOutputStream) out).writeRecord(this.pcapHeader, payload);
+            return;
+        }
         this.pcapHeader.write(out);
         out.write(payload.getArray());
     }
 
     @Override
     public PCapPacket clone() {
-        throw new RuntimeException("not implemented yet");
+        final Buffer payload = getPayload();
+        return new PCapPacketImpl(this.pcapGlobalHeader, this.pcapHeader.copy(), payload != null ? payload.clone()
+                : null, false, getParsePolicy());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The payload of a record is never re-used, only the record header and
+     * the packet itself, so that is all we need to copy.
+     */
+    @Override
+    public PCapPacket retain() {
+        if (!this.recycled) {
+            return this;
+        }
+        final Buffer payload = this.pooledPayload ? getPayload().clone() : getPayload();
+        return new PCapPacketImpl(this.pcapGlobalHeader, this.pcapHeader.copy(), payload, false, getParsePolicy());
     }
 
     @Override
-    public Packet getNextPacket() throws IOException, PacketParseException {
+    protected Packet frameNextPacket() throws IOException, PacketParseException {
         final Buffer payload = getPayload();
         if (payload == null) {
             return null;
@@ -4,6 +4,9 @@
 package io.pkts.packet.impl;
 
 import io.pkts.buffer.Buffer;
+import io.pkts.framer.Framer;
+import io.pkts.framer.FramerManager;
+import io.pkts.framer.ParsePolicy;
 import io.pkts.framer.RTPFramer;
 import io.pkts.framer.SIPFramer;
 import io.pkts.packet.IPPacket;
@@ -101,22 +104,43 @@ public abstract class TransportPacketImpl extends AbstractPacket implements Tran
     /*
      * (non-Javadoc)
      * 
-     * @see io.pkts.packet.Packet#getNextPacket()
+     * @see io.pkts.packet.impl.AbstractPacket#frameNextPacket()
      */
     @Override
-    public Packet getNextPacket() throws IOException {
+    protected Packet frameNextPacket() throws IOException {
         final Buffer payload = getPayload();
         if (payload == null || payload.isEmpty()) {
             return null;
         }
 
-        if (sipFramer.accept(payload)) {
+        final FramerManager framerManager = FramerManager.getInstance();
+        Framer<? super TransportPacket, ? extends Packet> framer = framerManager.getPortFramer(getDestinationPort());
+        if (framer == null) {
+            framer = framerManager.getPortFramer(getSourcePort());
+        }
+
+        // a registered port means we know what to expect so we don't go
+        // guessing, and if we are not allowed to guess then we are done.
+        final ParsePolicy policy = getParsePolicy();
+        if (framer != null) {
+            if (policy.allows(framer.getProtocol()) && framer.accept(payload)) {
+                final Packet pkt = framer.frame(this, payload);
+                if (pkt != null) {
+                    return pkt;
+                }
+            }
+            return new UnknownApplicationPacketImpl(this, payload);
+        } else if (!framerManager.isSniffingUnregisteredPorts()) {
+            return new UnknownApplicationPacketImpl(this, payload);
+        }
+
+        if (policy.allows(Protocol.SIP) && sipFramer.accept(payload)) {
             return sipFramer.frame(this, payload);
-        } else if (rtpFramer.accept(payload)) {
+        } else if (policy.allows(Protocol.RTP) && rtpFramer.accept(payload)) {
             // RTP is tricky to parse so if we return
             // null then it wasn't an RTP packet afterall
             // so fall through...
-            final RtpPacket rtp = frameRtp(payload);
+            final RtpPacket rtp = rtpFramer.frame(this, payload);
             if (rtp != null) {
                 return rtp;
             }
@@ -125,14 +149,6 @@ public abstract class TransportPacketImpl extends AbstractPacket implements Tran
         return new UnknownApplicationPacketImpl(this, payload);
     }
 
-    private RtpPacket frameRtp(final Buffer payload) throws IOException {
-        try {
-            return rtpFramer.frame(this, payload);
-        } catch (final IndexOutOfBoundsException e) {
-            return null;
-        }
-    }
-
     @Override
     public IPPacket getParentPacket() {
         return (IPPacket) super.getParentPacket();
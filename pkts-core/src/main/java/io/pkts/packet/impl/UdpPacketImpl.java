@@ -66,8 +66,9 @@ public final class UdpPacketImpl extends TransportPacketImpl implements UDPPacke
 
     @Override
     public final void write(final OutputStream out, final Buffer payload) throws IOException {
-        // Note: because the Buffers.wrap will copy the bytes we cannot change the length
-        // in this.headers after we have wrapped them. Simply wont work...
+        // Note: Buffers.wrap doesn't copy anything, the result is a view that aliases
+        // this.headers, so the length (and the IPv4 checksum) have to be set before
+        // the view is handed to the parent, which writes it out right away.
         final int size = this.headers.getReadableBytes() + (payload != null ? payload.getReadableBytes() : 0);
         this.setLength(size);
         final IPPacket parent = getParentPacket();
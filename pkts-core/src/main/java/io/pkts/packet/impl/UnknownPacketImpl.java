@@ -0,0 +1,67 @@
+/**
+ * 
+ */
+package io.pkts.packet.impl;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.packet.Packet;
+import io.pkts.protocol.Protocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A packet that we either cannot identify at all or that is of a protocol
+ * we recognize but are not (yet) able to parse, such as ICMP or IGMP inside
+ * an IP packet. Its protocol is the one we recognized, or
+ * {@link Protocol#UNKNOWN}, and its payload is the raw data.
+ * 
+ * This is what the framing returns for data that simply isn't supported,
+ * which is perfectly normal on a busy network, as opposed to throwing an
+ * exception, which is reserved for data that actually is malformed.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public final class UnknownPacketImpl extends AbstractPacket {
+
+    /**
+     * @param p
+     *            the protocol of the packet, if known, or null.
+     * @param parent
+     * @param payload
+     */
+    public UnknownPacketImpl(final Protocol p, final Packet parent, final Buffer payload) {
+        super(p != null ? p : Protocol.UNKNOWN, parent, payload);
+    }
+
+    /**
+     * We don't know what this packet is so there is no telling what its
+     * payload may contain.
+     */
+    @Override
+    protected Packet frameNextPacket() throws IOException {
+        return null;
+    }
+
+    /**
+     * Since we haven't touched the data in any way, the payload is all there
+     * is to write.
+     */
+    @Override
+    public void write(final OutputStream out, final Buffer payload) throws IOException {
+        getParentPacket().write(out, payload);
+    }
+
+    @Override
+    public long getArrivalTime() {
+        return getParentPacket().getArrivalTime();
+    }
+
+    @Override
+    public UnknownPacketImpl clone() {
+        final Buffer payload = getPayload();
+        return new UnknownPacketImpl(getProtocol(), getParentPacket().clone(), payload != null ? payload.clone()
+                : null);
+    }
+
+}
@@ -40,7 +40,7 @@ public class RtcpPacketImpl extends AbstractPacket implements RtcpPacket {
      * {@inheritDoc}
      */
     @Override
-    public Packet getNextPacket() throws IOException {
+    protected Packet frameNextPacket() throws IOException {
         // TODO Auto-generated method stub
         return null;
     }
@@ -175,7 +175,7 @@ public final class RtpPacketImpl extends AbstractPacket implements RtpPacket {
     }
 
     @Override
-    public Packet getNextPacket() throws IOException {
+    protected Packet frameNextPacket() throws IOException {
         // no more packets for RTP
         return null;
     }
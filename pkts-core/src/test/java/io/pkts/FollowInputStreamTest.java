@@ -0,0 +1,183 @@
+package io.pkts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class FollowInputStreamTest {
+
+    private Path directory;
+    private byte[] pcap;
+
+    /**
+     * The offsets of all the records in sipp.pcap, plus the end of the file.
+     */
+    private final List<Integer> records = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("pkts");
+        try (InputStream in = PktsTestBase.class.getResourceAsStream("sipp.pcap")) {
+            this.pcap = in.readAllBytes();
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(this.pcap).order(ByteOrder.LITTLE_ENDIAN);
+        int offset = 24;
+        while (offset < this.pcap.length) {
+            this.records.add(offset);
+            offset += 16 + buffer.getInt(offset + 8);
+        }
+        this.records.add(offset);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(this.directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testFindNextCounter() throws Exception {
+        for (final String name : new String[] { "cap.pcap", "cap.pcap1", "cap.pcap2", "cap.pcap9", "cap.pcap10",
+                "cap.pcap.gz", "cap.pcap1.pktsidx", "other.pcap" }) {
+            Files.createFile(this.directory.resolve(name));
+        }
+
+        assertThat(next("cap.pcap"), is("cap.pcap1"));
+        assertThat(next("cap.pcap1"), is("cap.pcap2"));
+        assertThat(next("cap.pcap2"), is("cap.pcap9"));
+        assertThat(next("cap.pcap9"), is("cap.pcap10"));
+        assertThat(next("cap.pcap10"), is((String) null));
+        assertThat(next("other.pcap"), is((String) null));
+    }
+
+    @Test
+    public void testFindNextTime() throws Exception {
+        for (final String name : new String[] { "trace-20240101-2300.pcap", "trace-20240102-0000.pcap",
+                "trace-20240101-2200.pcap", "trace-2024.pcap" }) {
+            Files.createFile(this.directory.resolve(name));
+        }
+
+        assertThat(next("trace-20240101-2200.pcap"), is("trace-20240101-2300.pcap"));
+        assertThat(next("trace-20240101-2300.pcap"), is("trace-20240102-0000.pcap"));
+        assertThat(next("trace-20240102-0000.pcap"), is((String) null));
+    }
+
+    /**
+     * Write the pcap a few records at a time, leaving half written records at
+     * the end of the file, and rotate it halfway through. Every packet must
+     * come out exactly once and in order.
+     */
+    @Test(timeout = 20000)
+    public void testFollow() throws Exception {
+        final List<Long> expected = new ArrayList<>();
+        final Pcap reference = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+        reference.loop(packet -> expected.add(packet.getArrivalTime()));
+        reference.close();
+
+        final Path first = this.directory.resolve("cap.pcap");
+        final Path second = this.directory.resolve("cap.pcap1");
+        Files.createFile(first);
+
+        final BlockingQueue<Long> times = new LinkedBlockingQueue<>();
+        final Pcap[] pcap = new Pcap[1];
+        final Thread follower = new Thread(() -> {
+            try {
+                final int[] count = new int[1];
+                pcap[0] = Pcap.follow(first);
+                pcap[0].loop(packet -> {
+                    times.add(packet.getArrivalTime());
+                    return ++count[0] < expected.size();
+                });
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        follower.start();
+
+        // the global header and a bit more than 10 records
+        append(first, 0, this.records.get(10) + 5);
+        assertThat(take(times, 10), is(expected.subList(0, 10)));
+        assertThat(times.poll(2 * FollowInputStream.MAX_WAIT_MS, TimeUnit.MILLISECONDS), is((Long) null));
+
+        // the rest of the 11th record and then some, leaving a partial
+        // record behind before rotating.
+        append(first, this.records.get(10) + 5, this.records.get(20) + 7);
+        assertThat(take(times, 10), is(expected.subList(10, 20)));
+
+        final byte[] rotated = new byte[24 + this.pcap.length - this.records.get(20)];
+        System.arraycopy(this.pcap, 0, rotated, 0, 24);
+        System.arraycopy(this.pcap, this.records.get(20), rotated, 24, rotated.length - 24);
+        Files.write(second, rotated);
+        assertThat(take(times, 10), is(expected.subList(20, 30)));
+
+        follower.join();
+        pcap[0].close();
+    }
+
+    /**
+     * Closing the pcap is how you stop following it.
+     */
+    @Test(timeout = 20000)
+    public void testClose() throws Exception {
+        final Path file = this.directory.resolve("cap.pcap");
+        append(file, 0, this.records.get(3));
+
+        final Pcap pcap = Pcap.follow(file);
+        final BlockingQueue<Long> times = new LinkedBlockingQueue<>();
+        final Thread follower = new Thread(() -> {
+            try {
+                pcap.loop(packet -> times.add(packet.getArrivalTime()));
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        follower.start();
+
+        assertThat(take(times, 3).size(), is(3));
+        pcap.close();
+        follower.join();
+    }
+
+    private void append(final Path file, final int from, final int to) throws IOException {
+        Files.write(file, Arrays.copyOfRange(this.pcap, from, to), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    private static List<Long> take(final BlockingQueue<Long> queue, final int count) throws InterruptedException {
+        final List<Long> result = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            result.add(queue.take());
+        }
+        return result;
+    }
+
+    private String next(final String name) throws IOException {
+        final Path next = FollowInputStream.findNext(this.directory.resolve(name));
+        return next == null ? null : next.getFileName().toString();
+    }
+
+}
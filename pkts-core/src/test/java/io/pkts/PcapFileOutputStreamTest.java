@@ -0,0 +1,180 @@
+package io.pkts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import io.pkts.packet.Packet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class PcapFileOutputStreamTest {
+
+    private Path directory;
+    private Path sipp;
+    private byte[] expected;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("pkts");
+        this.sipp = Paths.get(PktsTestBase.class.getResource("sipp.pcap").toURI());
+        this.expected = Files.readAllBytes(this.sipp);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(this.directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        final Path file = this.directory.resolve("out.pcap");
+        try (Pcap pcap = Pcap.openStream(this.sipp.toFile());
+                PcapFileOutputStream out = PcapFileOutputStream.create(pcap.getPcapHeader(), file)) {
+            pcap.loop(packet -> {
+                out.write(packet);
+                return true;
+            });
+        }
+        assertArrayEquals(this.expected, Files.readAllBytes(file));
+    }
+
+    /**
+     * The payloads of a mapped pcap are written straight from the mapping,
+     * and in this case from a separate thread.
+     */
+    @Test
+    public void testWriteMappedAsync() throws Exception {
+        final Path file = this.directory.resolve("out.pcap");
+        try (Pcap pcap = Pcap.openMapped(this.sipp, 1024);
+                PcapFileOutputStream out = PcapFileOutputStream.create(pcap.getPcapHeader(), file, 0, 0, true)) {
+            pcap.loop(packet -> {
+                out.write(packet);
+                return true;
+            });
+            out.flush();
+            assertArrayEquals(this.expected, Files.readAllBytes(file));
+        }
+    }
+
+    /**
+     * No matter what happens to the writer thread, the producer must be told
+     * about it rather than left waiting for the writer forever.
+     */
+    @Test(timeout = 10000)
+    public void testWriterFailure() throws Exception {
+        final Path file = this.directory.resolve("out.pcap");
+        try (Pcap pcap = Pcap.openStream(this.sipp.toFile())) {
+            final PcapFileOutputStream out = PcapFileOutputStream.create(pcap.getPcapHeader(), file, 0, 0, true);
+            for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().equals("pkts-pcap-writer")) {
+                    thread.interrupt();
+                }
+            }
+
+            try {
+                pcap.loop(packet -> {
+                    out.write(packet);
+                    return true;
+                });
+                out.flush();
+                fail("Expected an IOException");
+            } catch (final IOException e) {
+                // expected
+            }
+
+            try {
+                out.close();
+                fail("Expected an IOException");
+            } catch (final IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testRotateOnSize() throws Exception {
+        for (final boolean async : new boolean[] { false, true }) {
+            final Path file = this.directory.resolve(async + ".pcap");
+            Path last;
+            try (Pcap pcap = Pcap.openMapped(this.sipp);
+                    PcapFileOutputStream out = PcapFileOutputStream.create(pcap.getPcapHeader(), file, 4000, 0,
+                            async)) {
+                pcap.loop(packet -> {
+                    out.write(packet);
+                    return true;
+                });
+                last = out.getFile();
+            }
+
+            final List<Path> files = new ArrayList<>();
+            files.add(file);
+            for (int i = 1; Files.exists(this.directory.resolve(async + ".pcap" + i)); ++i) {
+                files.add(this.directory.resolve(async + ".pcap" + i));
+            }
+            assertThat(files.size() > 3, is(true));
+            assertThat(files.get(files.size() - 1), is(last));
+
+            final ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+            for (final Path rotated : files) {
+                final byte[] bytes = Files.readAllBytes(rotated);
+                assertThat(bytes.length <= 4000, is(true));
+                assertThat(Arrays.copyOf(bytes, 24), is(Arrays.copyOf(this.expected, 24)));
+                concatenated.write(bytes, rotated == file ? 0 : 24, bytes.length - (rotated == file ? 0 : 24));
+            }
+            assertArrayEquals(this.expected, concatenated.toByteArray());
+        }
+    }
+
+    /**
+     * The capture spans five seconds so rotating every other second should
+     * give us three files.
+     */
+    @Test
+    public void testRotateOnTime() throws Exception {
+        final Path file = this.directory.resolve("out.pcap");
+        try (Pcap pcap = Pcap.openStream(this.sipp.toFile());
+                PcapFileOutputStream out = PcapFileOutputStream.create(pcap.getPcapHeader(), file, 0, 2, false)) {
+            pcap.loop(packet -> {
+                out.write(packet);
+                return true;
+            });
+        }
+
+        int total = 0;
+        for (final String name : new String[] { "out.pcap", "out.pcap1", "out.pcap2" }) {
+            final List<Long> seconds = seconds(this.directory.resolve(name));
+            assertThat(seconds.get(seconds.size() - 1) - seconds.get(0) < 2, is(true));
+            total += seconds.size();
+        }
+        assertThat(total, is(30));
+        assertThat(Files.exists(this.directory.resolve("out.pcap3")), is(false));
+    }
+
+    private static List<Long> seconds(final Path file) throws IOException {
+        final List<Long> seconds = new ArrayList<>();
+        try (Pcap pcap = Pcap.openStream(file.toFile())) {
+            pcap.loop((final Packet packet) -> seconds.add(packet.getArrivalTime() / 1000000));
+        }
+        return seconds;
+    }
+
+}
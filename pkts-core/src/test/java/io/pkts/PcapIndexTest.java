@@ -0,0 +1,148 @@
+package io.pkts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import io.pkts.packet.Packet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class PcapIndexTest extends PktsTestBase {
+
+    private Path directory;
+    private Path file;
+    private List<Long> expected;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        this.directory = Files.createTempDirectory("pkts");
+        this.file = this.directory.resolve("sipp.pcap");
+        try (InputStream in = PktsTestBase.class.getResourceAsStream("sipp.pcap")) {
+            Files.copy(in, this.file);
+        }
+        this.expected = collect(Pcap.openStream(this.file.toFile()));
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(PcapIndex.getSidecar(this.file));
+        Files.deleteIfExists(this.file);
+        Files.deleteIfExists(this.directory);
+        super.tearDown();
+    }
+
+    @Test
+    public void testBuild() throws Exception {
+        final PcapIndex index = PcapIndex.build(this.file, 4);
+        assertThat(index.getRecordCount(), is(30L));
+        assertThat(index.size(), is(8));
+        assertThat(index.getOffset(0), is(24L));
+        for (int i = 0; i < index.size(); ++i) {
+            assertThat(index.getRecordNumber(i), is(i * 4L));
+            assertThat(index.getTimeStamp(i), is(this.expected.get(i * 4)));
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        final PcapIndex index = PcapIndex.build(this.file, 7);
+        final Path sidecar = PcapIndex.getSidecar(this.file);
+        index.write(sidecar);
+
+        final PcapIndex read = PcapIndex.read(sidecar);
+        assertThat(read.getInterval(), is(7));
+        assertThat(read.getRecordCount(), is(30L));
+        assertThat(read.size(), is(index.size()));
+        for (int i = 0; i < index.size(); ++i) {
+            assertThat(read.getOffset(i), is(index.getOffset(i)));
+            assertThat(read.getTimeStamp(i), is(index.getTimeStamp(i)));
+            assertThat(read.getCapturedLength(i), is(index.getCapturedLength(i)));
+        }
+    }
+
+    /**
+     * A pcap rewritten with the very same size must not re-use the index of
+     * what was there before.
+     */
+    @Test
+    public void testStaleSidecarIsRebuilt() throws Exception {
+        PcapIndex.build(this.file, 7).write(PcapIndex.getSidecar(this.file));
+        assertThat(PcapIndex.open(this.file).getInterval(), is(7));
+
+        final FileTime modified = Files.getLastModifiedTime(this.file);
+        Files.setLastModifiedTime(this.file, FileTime.fromMillis(modified.toMillis() + 60000));
+        assertThat(PcapIndex.open(this.file).getInterval(), is(PcapIndex.DEFAULT_INTERVAL));
+    }
+
+    /**
+     * Seeking should create the sidecar file the first time around.
+     */
+    @Test
+    public void testSeekToRecord() throws Exception {
+        assertThat(Files.exists(PcapIndex.getSidecar(this.file)), is(false));
+        for (int record = 0; record < 30; ++record) {
+            final Pcap pcap = Pcap.openMapped(this.file);
+            assertThat(pcap.seekToRecord(record), is(true));
+            assertThat(collect(pcap), is(this.expected.subList(record, 30)));
+            pcap.close();
+        }
+        assertThat(Files.exists(PcapIndex.getSidecar(this.file)), is(true));
+
+        final Pcap pcap = Pcap.openMapped(this.file);
+        assertThat(pcap.seekToRecord(30), is(false));
+        assertThat(collect(pcap).isEmpty(), is(true));
+        pcap.close();
+    }
+
+    @Test
+    public void testSeek() throws Exception {
+        final Pcap pcap = Pcap.openMapped(this.file);
+        for (int record = 29; record >= 0; --record) {
+            final long timestamp = this.expected.get(record);
+            assertThat(pcap.seek(timestamp), is(true));
+            final List<Long> times = collect(pcap);
+            assertThat(times.get(0), is(timestamp));
+            assertThat(times.size(), is(30 - this.expected.indexOf(timestamp)));
+        }
+
+        assertThat(pcap.seek(this.expected.get(0) - 1), is(true));
+        assertThat(collect(pcap).size(), is(30));
+
+        assertThat(pcap.seek(this.expected.get(29) + 1), is(false));
+        assertThat(collect(pcap).isEmpty(), is(true));
+        pcap.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSeekStream() throws Exception {
+        Pcap.openStream(this.file.toFile()).seek(0);
+    }
+
+    private static List<Long> collect(final Pcap pcap) throws IOException {
+        final List<Long> times = new ArrayList<>();
+        pcap.loop(new PacketHandler() {
+            @Override
+            public boolean nextPacket(final Packet packet) throws IOException {
+                times.add(packet.getArrivalTime());
+                return true;
+            }
+        });
+        return times;
+    }
+
+}
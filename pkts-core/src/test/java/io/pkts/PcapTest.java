@@ -4,14 +4,36 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
+import io.pkts.buffer.BufferPool;
+import io.pkts.framer.ParsePolicy;
+import io.pkts.packet.IPv4Packet;
+import io.pkts.packet.IPv6Packet;
+import io.pkts.packet.PCapPacket;
 import io.pkts.packet.Packet;
+import io.pkts.packet.TransportPacket;
+import io.pkts.packet.UDPPacket;
 import io.pkts.packet.sip.SipPacket;
 import io.pkts.protocol.Protocol;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -40,6 +62,235 @@ public class PcapTest extends PktsTestBase {
         assertThat(handler.count, is(30));
     }
 
+    /**
+     * With a parse policy that stops at the transport layer we still get all
+     * the UDP packets but none of the SIP that they carry.
+     */
+    @Test
+    public void testParsePolicy() throws Exception {
+        assertThat(countProtocols(null, false), is(new int[] { 30, 30, 30, 10 }));
+        assertThat(countProtocols(ParsePolicy.TRANSPORT, false), is(new int[] { 30, 30, 0, 0 }));
+        assertThat(countProtocols(ParsePolicy.TRANSPORT, true), is(new int[] { 30, 30, 0, 0 }));
+        assertThat(countProtocols(ParsePolicy.ALL.without(Protocol.SDP), false), is(new int[] { 30, 30, 30, 0 }));
+    }
+
+    /**
+     * @return the number of packets with IPv4, UDP, SIP and SDP respectively.
+     */
+    private static int[] countProtocols(final ParsePolicy policy, final boolean recycled) throws Exception {
+        final Path file = Paths.get(PktsTestBase.class.getResource("sipp.pcap").toURI());
+        final Pcap pcap = Pcap.openMapped(file);
+        if (policy != null) {
+            pcap.setParsePolicy(policy);
+        }
+
+        final Protocol[] protocols = { Protocol.IPv4, Protocol.UDP, Protocol.SIP, Protocol.SDP };
+        final int[] counts = new int[protocols.length];
+        final PacketHandler handler = packet -> {
+            for (int i = 0; i < protocols.length; ++i) {
+                if (packet.hasProtocol(protocols[i])) {
+                    ++counts[i];
+                }
+            }
+            return true;
+        };
+
+        if (recycled) {
+            pcap.loopRecycled(handler);
+        } else {
+            pcap.loop(handler);
+        }
+        pcap.close();
+        return counts;
+    }
+
+    /**
+     * The summaries are extracted out of the raw records so make sure they
+     * match what we get when actually framing the packets.
+     */
+    @Test
+    public void testLoopSummaries() throws Exception {
+        final List<String> expected = new ArrayList<>();
+        Pcap pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+        pcap.loop(packet -> {
+            final IPv4Packet ip = (IPv4Packet) packet.getPacket(Protocol.IPv4);
+            final UDPPacket udp = (UDPPacket) packet.getPacket(Protocol.UDP);
+            expected.add(packet.getArrivalTime() + " " + ((PCapPacket) packet).getTotalLength() + " "
+                    + ip.getSourceIP() + ":" + udp.getSourcePort() + " " + ip.getDestinationIP() + ":" + udp.getDestinationPort());
+            return true;
+        });
+        pcap.close();
+
+        final List<String> actual = new ArrayList<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+        pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+        pcap.loopSummaries(summaries -> {
+            batchSizes.add(summaries.size());
+            for (int i = 0; i < summaries.size(); ++i) {
+                assertThat(summaries.getIpVersions()[i], is((byte) 4));
+                assertThat(summaries.getProtocols()[i], is((byte) 17));
+                actual.add(summaries.getTimestamps()[i] + " " + summaries.getTotalLengths()[i] + " "
+                        + toIPv4(summaries.getSourceIPv4()[i]) + ":" + (summaries.getSourcePorts()[i] & 0xFFFF) + " "
+                        + toIPv4(summaries.getDestinationIPv4()[i]) + ":"
+                        + (summaries.getDestinationPorts()[i] & 0xFFFF));
+            }
+            return true;
+        }, 8);
+        pcap.close();
+
+        assertThat(batchSizes, is(Arrays.asList(8, 8, 8, 6)));
+        assertThat(actual, is(expected));
+    }
+
+    @Test
+    public void testLoopSummariesIPv6() throws Exception {
+        final byte[] pcap = readResource("ipv6_http.pcap");
+        final List<String> summaries = summarize(pcap);
+        assertThat(summaries.get(0).startsWith("6 6 "), is(true));
+        assertThat(summaries, is(summarizeFramed(pcap)));
+    }
+
+    @Test
+    public void testLoopSummariesSll() throws Exception {
+        final byte[] pcap = readResource("sipp_sll.pcap");
+        final List<String> summaries = summarize(pcap);
+        assertThat(summaries.get(0).startsWith("4 17 "), is(true));
+        assertThat(summaries, is(summarizeFramed(pcap)));
+    }
+
+    /**
+     * Tag every frame of the sipp pcap with an 802.1Q header, which should
+     * be skipped when looking for the IP header.
+     */
+    @Test
+    public void testLoopSummariesVlan() throws Exception {
+        final byte[] original = readResource("sipp.pcap");
+        final ByteBuffer in = ByteBuffer.wrap(original).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer out = ByteBuffer.allocate(original.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        out.put(original, 0, 24);
+        for (int offset = 24; offset < original.length;) {
+            final int length = in.getInt(offset + 8);
+            out.putInt(in.getInt(offset)).putInt(in.getInt(offset + 4)).putInt(length + 4)
+                    .putInt(in.getInt(offset + 12) + 4).put(original, offset + 16, 12)
+                    .put(new byte[] { (byte) 0x81, 0x00, 0x00, 0x0A }).put(original, offset + 28, length - 12);
+            offset += 16 + length;
+        }
+
+        final List<String> summaries = summarize(Arrays.copyOf(out.array(), out.position()));
+        assertThat(summaries.size(), is(30));
+        assertThat(summaries, is(summarizeFramed(original)));
+    }
+
+    /**
+     * A link type we don't know of may not even carry IP so leave the IP
+     * columns alone.
+     */
+    @Test
+    public void testLoopSummariesUnknownLinkType() throws Exception {
+        final byte[] pcap = readResource("sipp.pcap");
+        ByteBuffer.wrap(pcap).order(ByteOrder.LITTLE_ENDIAN).putInt(20, 147);
+        final List<String> summaries = summarize(pcap);
+        assertThat(summaries.size(), is(30));
+        for (final String summary : summaries) {
+            assertThat(summary, is("0 0 0 0 0 0 0 0"));
+        }
+    }
+
+    /**
+     * Summarizing a record peeks at its bytes without slicing out any
+     * buffers, i.e. once warmed up, adding a recycled packet to a batch
+     * doesn't allocate anything at all.
+     */
+    @Test
+    public void testSummariesDoNotAllocate() throws Exception {
+        final java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        final Path file = Paths.get(PktsTestBase.class.getResource("sipp.pcap").toURI());
+        final long thread = Thread.currentThread().getId();
+        final PacketSummaries summaries = new PacketSummaries(30);
+        final long[] allocated = new long[30 * 100];
+        for (int run = 0; run < 200; ++run) {
+            final int offset = (run - 100) * 30;
+            summaries.clear();
+            try (Pcap pcap = Pcap.openMapped(file)) {
+                pcap.loopRecycled(packet -> {
+                    final long before = threads.getThreadAllocatedBytes(thread);
+                    summaries.add((PCapPacket) packet);
+                    final long after = threads.getThreadAllocatedBytes(thread);
+                    if (offset >= 0) {
+                        allocated[offset + summaries.size() - 1] = after - before;
+                    }
+                    return true;
+                });
+            }
+            assertThat(summaries.size(), is(30));
+        }
+        Arrays.sort(allocated);
+        assertThat(allocated[allocated.length / 2], is(0L));
+    }
+
+    private static byte[] readResource(final String name) throws Exception {
+        return Files.readAllBytes(Paths.get(PktsTestBase.class.getResource(name).toURI()));
+    }
+
+    /**
+     * @return the IP version, protocol, addresses and ports of every packet
+     *         as extracted by {@link Pcap#loopSummaries(PacketSummaryHandler, int)}.
+     */
+    private static List<String> summarize(final byte[] bytes) throws Exception {
+        final List<String> result = new ArrayList<>();
+        try (Pcap pcap = Pcap.openStream(new ByteArrayInputStream(bytes))) {
+            pcap.loopSummaries(summaries -> {
+                for (int i = 0; i < summaries.size(); ++i) {
+                    final boolean v6 = summaries.getIpVersions()[i] == 6;
+                    result.add(summaries.getIpVersions()[i] + " " + (summaries.getProtocols()[i] & 0xFF) + " "
+                            + (v6 ? summaries.getSourceIPv6High()[i] : 0) + " "
+                            + (v6 ? summaries.getSourceIPv6Low()[i] : summaries.getSourceIPv4()[i]) + " "
+                            + (v6 ? summaries.getDestinationIPv6High()[i] : 0) + " "
+                            + (v6 ? summaries.getDestinationIPv6Low()[i] : summaries.getDestinationIPv4()[i]) + " "
+                            + (summaries.getSourcePorts()[i] & 0xFFFF) + " "
+                            + (summaries.getDestinationPorts()[i] & 0xFFFF));
+                }
+                return true;
+            }, 8);
+        }
+        return result;
+    }
+
+    /**
+     * @return the same as {@link #summarize(byte[])} but by framing the
+     *         packets all the way up to the transport layer.
+     */
+    private static List<String> summarizeFramed(final byte[] bytes) throws Exception {
+        final List<String> result = new ArrayList<>();
+        try (Pcap pcap = Pcap.openStream(new ByteArrayInputStream(bytes))) {
+            pcap.loop(packet -> {
+                final TransportPacket transport = (TransportPacket) (packet.hasProtocol(Protocol.UDP)
+                        ? packet.getPacket(Protocol.UDP) : packet.getPacket(Protocol.TCP));
+                final String ports = transport.getSourcePort() + " " + transport.getDestinationPort();
+                if (packet.hasProtocol(Protocol.IPv4)) {
+                    final IPv4Packet ip = (IPv4Packet) packet.getPacket(Protocol.IPv4);
+                    result.add("4 " + ip.getNextProtocol() + " 0 " + ip.getSourceIPv4AsInt() + " 0 "
+                            + ip.getDestinationIPv4AsInt() + " " + ports);
+                } else {
+                    final IPv6Packet ip = (IPv6Packet) packet.getPacket(Protocol.IPv6);
+                    result.add("6 " + ip.getNextProtocol() + " " + ip.getSourceIPv6High() + " "
+                            + ip.getSourceIPv6Low() + " " + ip.getDestinationIPv6High() + " "
+                            + ip.getDestinationIPv6Low() + " " + ports);
+                }
+                return true;
+            });
+        }
+        return result;
+    }
+
+    private static String toIPv4(final int ip) {
+        return (ip >>> 24) + "." + (ip >> 16 & 0xFF) + "." + (ip >> 8 & 0xFF) + "." + (ip & 0xFF);
+    }
+
     @Test
     public void testWritesPackets() throws Exception {
         final Pcap pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
@@ -65,6 +316,429 @@ public class PcapTest extends PktsTestBase {
         assertArrayEquals(expectedStream.toByteArray(), outputStream.toByteArray());
     }
 
+    @Test
+    public void testLoopBatched() throws Exception {
+        final List<List<Packet>> batches = new ArrayList<>();
+        final Pcap pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+        pcap.loopBatched(packets -> batches.add(packets), 7);
+        pcap.close();
+
+        assertThat(batches.size(), is(5));
+        assertThat(batches.get(0).size(), is(7));
+        assertThat(batches.get(3).size(), is(7));
+        assertThat(batches.get(4).size(), is(2));
+
+        final List<Long> expected = new ArrayList<>();
+        final Pcap sequential = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+        sequential.loop(packet -> expected.add(packet.getArrivalTime()));
+        final List<Long> actual = new ArrayList<>();
+        for (final List<Packet> batch : batches) {
+            for (final Packet packet : batch) {
+                actual.add(packet.getArrivalTime());
+            }
+        }
+        assertThat(actual, is(expected));
+    }
+
+    @Test
+    public void testLoopBatchedStop() throws Exception {
+        final List<List<Packet>> batches = new ArrayList<>();
+        final Pcap pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+        pcap.loopBatched(packets -> {
+            batches.add(packets);
+            return false;
+        }, 4);
+        pcap.close();
+        assertThat(batches.size(), is(1));
+        assertThat(batches.get(0).size(), is(4));
+    }
+
+    /**
+     * The very same packet should be handed over for every record and
+     * retained packets must stay intact once the loop has moved on.
+     */
+    @Test
+    public void testLoopRecycled() throws Exception {
+        final List<Long> expected = new ArrayList<>();
+        final Pcap sequential = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+        sequential.loop(packet -> expected.add(packet.getArrivalTime()));
+
+        final Path file = Paths.get(PktsTestBase.class.getResource("sipp.pcap").toURI());
+        for (final Pcap pcap : new Pcap[] { Pcap.openStream(file.toFile()), Pcap.openMapped(file, 1024) }) {
+            final List<Packet> seen = new ArrayList<>();
+            final List<Long> times = new ArrayList<>();
+            final List<Packet> retained = new ArrayList<>();
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            final PcapOutputStream pcapOutputStream = pcap.createOutputStream(outputStream);
+            pcap.loopRecycled(packet -> {
+                if (seen.isEmpty()) {
+                    seen.add(packet);
+                }
+                assertThat(packet == seen.get(0), is(true));
+                times.add(packet.getArrivalTime());
+                pcapOutputStream.write(packet);
+                retained.add(packet.getPacket(Protocol.SIP).retain());
+                return true;
+            });
+            pcap.close();
+
+            assertThat(times, is(expected));
+            assertArrayEquals(Files.readAllBytes(file), outputStream.toByteArray());
+            assertThat(retained.size(), is(30));
+            for (int i = 0; i < retained.size(); ++i) {
+                final Packet sip = retained.get(i);
+                assertThat(sip.getProtocol(), is(Protocol.SIP));
+                assertThat(sip.getArrivalTime(), is(expected.get(i)));
+                assertThat(sip.getParentPacket().getParentPacket().getParentPacket().getParentPacket() == seen.get(0),
+                        is(false));
+            }
+        }
+    }
+
+    /**
+     * Measures what is allocated per record, which is what the javadoc of
+     * {@link Pcap#loopRecycled(PacketHandler)} promises: only the view of the
+     * payload as long as nothing but the pcap layer is looked at, but every
+     * layer asked for further up the stack is still allocated per record.
+     */
+    @Test
+    public void testLoopRecycledAllocations() throws Exception {
+        final java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        final long pcapOnly = measureAllocations(threads, true, null);
+        final long plain = measureAllocations(threads, false, null);
+        final long udp = measureAllocations(threads, true, Protocol.UDP);
+
+        // the payload view is a single small object
+        assertThat("Allocated " + pcapOnly + " bytes per record", pcapOnly <= 64, is(true));
+        assertThat("Allocated " + pcapOnly + " vs " + plain + " bytes per record", pcapOnly < plain, is(true));
+        assertThat("Allocated " + pcapOnly + " vs " + udp + " bytes per record", pcapOnly < udp, is(true));
+    }
+
+    /**
+     * @return the median number of bytes allocated between two consecutive
+     *         records, after the loop has been given a chance to warm up.
+     */
+    private static long measureAllocations(final com.sun.management.ThreadMXBean threads, final boolean recycled,
+            final Protocol protocol) throws Exception {
+        final Path file = Paths.get(PktsTestBase.class.getResource("sipp.pcap").toURI());
+        final long thread = Thread.currentThread().getId();
+        final long[] allocated = new long[30];
+        final long[] deltas = new long[29 * 100];
+        for (int run = 0; run < 200; ++run) {
+            final int[] count = new int[1];
+            try (Pcap pcap = Pcap.openMapped(file)) {
+                final PacketHandler handler = packet -> {
+                    if (protocol != null && packet.getPacket(protocol) == null) {
+                        fail("Expected a " + protocol + " packet");
+                    }
+                    allocated[count[0]++] = threads.getThreadAllocatedBytes(thread);
+                    return true;
+                };
+                if (recycled) {
+                    pcap.loopRecycled(handler);
+                } else {
+                    pcap.loop(handler);
+                }
+            }
+            if (run >= 100) {
+                for (int i = 1; i < allocated.length; ++i) {
+                    deltas[(run - 100) * 29 + i - 1] = allocated[i] - allocated[i - 1];
+                }
+            }
+        }
+        Arrays.sort(deltas);
+        return deltas[deltas.length / 2];
+    }
+
+    /**
+     * With a pool, the payloads are copied off-heap and released again once
+     * the loop moves on, which means that retained packets must have been
+     * copied back onto the heap.
+     */
+    @Test
+    public void testLoopRecycledPooled() throws Exception {
+        final List<String> expected = new ArrayList<>();
+        final Pcap sequential = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+        sequential.loop(packet -> expected.add(packet.getPacket(Protocol.SIP).getPayload().toString()));
+
+        final Path file = Paths.get(PktsTestBase.class.getResource("sipp.pcap").toURI());
+        final BufferPool pool = new BufferPool();
+        final List<Packet> retained = new ArrayList<>();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (Pcap pcap = Pcap.openStream(file.toFile())) {
+            final PcapOutputStream pcapOutputStream = pcap.createOutputStream(outputStream);
+            pcap.loopRecycled(packet -> {
+                pcapOutputStream.write(packet);
+                retained.add(packet.getPacket(Protocol.SIP).retain());
+                return true;
+            }, pool);
+        }
+
+        assertArrayEquals(Files.readAllBytes(file), outputStream.toByteArray());
+        assertThat(pool.getIdleCount() > 0, is(true));
+        assertThat(retained.size(), is(30));
+        for (int i = 0; i < retained.size(); ++i) {
+            assertThat(retained.get(i).getPayload().toString(), is(expected.get(i)));
+        }
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        final List<Long> expected = new ArrayList<>();
+        final Pcap sequential = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+        sequential.loop(packet -> expected.add(packet.getArrivalTime()));
+        sequential.close();
+
+        final Path file = Paths.get(PktsTestBase.class.getResource("sipp.pcap").toURI());
+        try (Pcap pcap = Pcap.openStream(file.toFile())) {
+            assertThat(pcap.stream().map(Packet::getArrivalTime).collect(Collectors.toList()), is(expected));
+        }
+
+        try (Pcap pcap = Pcap.openMapped(file)) {
+            pcap.setFilter("sip.Call-ID == 2-16732@127.0.1.1");
+            assertThat(pcap.stream().count(), is(6L));
+        }
+    }
+
+    /**
+     * Split the mapped pcap into tiny ranges and make sure that the parallel
+     * stream still sees every packet exactly once and in the right order.
+     */
+    @Test
+    public void testStreamParallel() throws Exception {
+        final List<Long> expected = new ArrayList<>();
+        final Pcap sequential = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+        sequential.loop(packet -> expected.add(packet.getArrivalTime()));
+        sequential.close();
+
+        final Path file = Paths.get(PktsTestBase.class.getResource("sipp.pcap").toURI());
+        try (Pcap pcap = Pcap.openMapped(file)) {
+            final Spliterator<Packet> spliterator = pcap.stream(1024).spliterator();
+            assertThat(spliterator.trySplit() != null, is(true));
+        }
+
+        try (Pcap pcap = Pcap.openMapped(file)) {
+            final List<Long> actual = pcap.stream(512).parallel().map(Packet::getArrivalTime)
+                    .collect(Collectors.toList());
+            assertThat(actual, is(expected));
+            assertThat(pcap.stream().count(), is(0L));
+        }
+    }
+
+    /**
+     * Merge a little endian micro second pcap, a big endian nano second copy
+     * of it shifted by half a millisecond and a linux cooked capture. Since
+     * one of them is in nano seconds, every merged packet should be too.
+     */
+    @Test
+    public void testMerge() throws Exception {
+        final byte[] original = Files.readAllBytes(Paths.get(PktsTestBase.class.getResource("sipp.pcap").toURI()));
+        final ByteBuffer in = ByteBuffer.wrap(original).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer out = ByteBuffer.allocate(original.length);
+        out.putInt(0xa1b23c4d).putShort(in.getShort(4)).putShort(in.getShort(6)).putInt(in.getInt(8))
+                .putInt(in.getInt(12)).putInt(in.getInt(16)).putInt(in.getInt(20));
+        for (int offset = 24; offset < original.length;) {
+            final long nanos = in.getInt(offset + 4) * 1000L + 500000;
+            final int length = in.getInt(offset + 8);
+            out.putInt(in.getInt(offset) + (int) (nanos / 1000000000)).putInt((int) (nanos % 1000000000))
+                    .putInt(length).putInt(in.getInt(offset + 12)).put(original, offset + 16, length);
+            offset += 16 + length;
+        }
+
+        final List<Long> expected = new ArrayList<>();
+        final List<Pcap> pcaps = new ArrayList<>();
+        for (final String name : new String[] { "sipp.pcap", null, "sipp_sll.pcap" }) {
+            final byte[] bytes = name == null ? out.array()
+                    : Files.readAllBytes(Paths.get(PktsTestBase.class.getResource(name).toURI()));
+            final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(bytes));
+            final long multiplier = pcap.getPcapHeader().timestampsInNs() ? 1 : 1000;
+            pcap.loop(packet -> expected.add(packet.getArrivalTime() * multiplier));
+            pcap.close();
+            pcaps.add(Pcap.openStream(new ByteArrayInputStream(bytes)));
+        }
+        expected.sort(null);
+
+        final List<Long> actual = new ArrayList<>();
+        try (Pcap merged = Pcap.merge(pcaps.toArray(new Pcap[0]))) {
+            assertThat(merged.getPcapHeader().timestampsInNs(), is(true));
+            merged.loop(packet -> {
+                assertThat(((PCapPacket) packet).getGlobalHeader().timestampsInNs(), is(true));
+                actual.add(packet.getArrivalTime());
+                assertThat(packet.getPacket(Protocol.SIP) != null, is(true));
+                return true;
+            });
+        }
+        assertThat(actual, is(expected));
+    }
+
+    /**
+     * Loop over a time window of a pcap made out of many copies of the sipp
+     * one, each one shifted ten seconds into the future, both as a stream,
+     * where the records before the window are skipped, and mapped, where the
+     * start of the window is found through a binary search.
+     */
+    @Test
+    public void testLoopTimeWindow() throws Exception {
+        final byte[] original = Files.readAllBytes(Paths.get(PktsTestBase.class.getResource("sipp.pcap").toURI()));
+        final int copies = 40;
+        final ByteBuffer in = ByteBuffer.wrap(original).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer out = ByteBuffer.allocate(24 + (original.length - 24) * copies).order(ByteOrder.LITTLE_ENDIAN);
+        out.put(original, 0, 24);
+        for (int i = 0; i < copies; ++i) {
+            for (int offset = 24; offset < original.length;) {
+                final int length = in.getInt(offset + 8);
+                out.putInt(in.getInt(offset) + i * 10).put(original, offset + 4, 12 + length);
+                offset += 16 + length;
+            }
+        }
+
+        final Path file = Files.createTempFile("sipp", ".pcap");
+        try {
+            Files.write(file, out.array());
+            final List<Long> all = new ArrayList<>();
+            try (Pcap pcap = Pcap.openStream(file.toFile())) {
+                pcap.loop(packet -> all.add(packet.getArrivalTime()));
+            }
+            assertThat(all.size(), is(30 * copies));
+
+            final long from = all.get(30 * 25 + 7);
+            final long to = all.get(30 * 31 + 3);
+            final List<Long> expected = all.stream().filter(time -> time >= from && time < to)
+                    .collect(Collectors.toList());
+
+            for (final boolean mapped : new boolean[] { false, true }) {
+                final List<Long> actual = new ArrayList<>();
+                try (Pcap pcap = mapped ? Pcap.openMapped(file) : Pcap.openStream(file.toFile())) {
+                    pcap.loop(packet -> {
+                        assertThat(packet.getPacket(Protocol.SIP) != null, is(true));
+                        return actual.add(packet.getArrivalTime());
+                    }, from, to);
+                }
+                assertThat(actual, is(expected));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A gzipped pcap is inflated on a separate thread but other than that it
+     * should look just like the plain one.
+     */
+    @Test
+    public void testLoopGzipped() throws Exception {
+        final Path file = Files.createTempFile("sipp", ".pcap.gz");
+        try {
+            try (InputStream in = PktsTestBase.class.getResourceAsStream("sipp.pcap");
+                    OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+                final byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+
+            final Pcap pcap = Pcap.openStream(file.toFile());
+            final FrameHandlerImpl handler = new FrameHandlerImpl();
+            pcap.loop(handler);
+            pcap.close();
+            assertThat(handler.count, is(30));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testLoopMapped() throws Exception {
+        final Path file = Paths.get(PktsTestBase.class.getResource("sipp.pcap").toURI());
+        final Pcap pcap = Pcap.openMapped(file);
+        final FrameHandlerImpl handler = new FrameHandlerImpl();
+        pcap.loop(handler);
+        pcap.close();
+        assertThat(handler.count, is(30));
+    }
+
+    /**
+     * Use a tiny window so that we have to re-map many times and make sure
+     * that every single byte is still where it is supposed to be by writing
+     * all the packets back out again.
+     */
+    @Test
+    public void testLoopMappedSmallWindow() throws Exception {
+        final Path file = Paths.get(PktsTestBase.class.getResource("sipp.pcap").toURI());
+        final Pcap pcap = Pcap.openMapped(file, 1024);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final PcapOutputStream pcapOutputStream = pcap.createOutputStream(outputStream);
+        final FrameHandlerImpl handler = new FrameHandlerImpl();
+        pcap.loop(packet -> {
+            pcapOutputStream.write(packet);
+            return handler.nextPacket(packet);
+        });
+        pcap.close();
+
+        assertThat(handler.count, is(30));
+        assertArrayEquals(Files.readAllBytes(file), outputStream.toByteArray());
+    }
+
+    /**
+     * Split the pcap up in many more segments than there are packets in it
+     * and make sure that every packet is processed exactly once and that the
+     * merged result is in the same order as if we had processed it
+     * sequentially.
+     */
+    @Test
+    public void testParallelLoop() throws Exception {
+        final Path file = Paths.get(PktsTestBase.class.getResource("sipp.pcap").toURI());
+
+        final List<Long> expected = new ArrayList<>();
+        final Pcap sequential = Pcap.openMapped(file);
+        sequential.loop(packet -> expected.add(packet.getArrivalTime()));
+        sequential.close();
+
+        for (final int segments : new int[] { 1, 2, 7, 50 }) {
+            final Pcap pcap = Pcap.openMapped(file);
+            final List<Long> result = pcap.parallelLoop(ArrivalTimeCollector::new, (a, b) -> {
+                a.addAll(b);
+                return a;
+            }, ForkJoinPool.commonPool(), segments);
+            pcap.close();
+            assertThat(result, is(expected));
+        }
+    }
+
+    /**
+     * A pcap that isn't memory mapped will be processed sequentially.
+     */
+    @Test
+    public void testParallelLoopFallback() throws Exception {
+        final Pcap pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+        final List<Long> result = pcap.parallelLoop(ArrivalTimeCollector::new, (a, b) -> {
+            a.addAll(b);
+            return a;
+        });
+        assertThat(result.size(), is(30));
+    }
+
+    private static class ArrivalTimeCollector implements SegmentHandler<List<Long>> {
+        private final List<Long> times = new ArrayList<>();
+
+        @Override
+        public boolean nextPacket(final Packet packet) {
+            this.times.add(packet.getArrivalTime());
+            return true;
+        }
+
+        @Override
+        public List<Long> getResult() {
+            return this.times;
+        }
+    }
+
     private static class FrameHandlerImpl implements PacketHandler {
         public int count;
 
@@ -0,0 +1,183 @@
+package io.pkts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class ReadAheadInputStreamTest {
+
+    @Test
+    public void testReadAll() throws Exception {
+        final byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+
+        // chunk sizes that do and don't divide the data evenly
+        for (final int chunkSize : new int[] { 1, 7, 1000, 100000, 200000 }) {
+            final ReadAheadInputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), chunkSize, 3);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[333];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            assertThat(out.toByteArray(), is(data));
+            assertThat(in.read(), is(-1));
+            in.close();
+        }
+    }
+
+    @Test
+    public void testReadSingleBytes() throws Exception {
+        final byte[] data = { 1, 2, (byte) 0xFF, 4 };
+        final ReadAheadInputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), 3, 1);
+        assertThat(in.read(), is(1));
+        assertThat(in.read(), is(2));
+        assertThat(in.read(), is(0xFF));
+        assertThat(in.read(), is(4));
+        assertThat(in.read(), is(-1));
+        in.close();
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        final ReadAheadInputStream in = new ReadAheadInputStream(new ByteArrayInputStream(new byte[0]), 10, 2);
+        assertThat(in.read(new byte[10]), is(-1));
+        in.close();
+    }
+
+    /**
+     * Errors on the reader thread must surface on the consumer side once all
+     * the data read before the error has been consumed.
+     */
+    @Test
+    public void testError() throws Exception {
+        final InputStream failing = new InputStream() {
+            private int count;
+
+            @Override
+            public int read() throws IOException {
+                if (this.count++ == 10) {
+                    throw new IOException("boom");
+                }
+                return 1;
+            }
+        };
+
+        final ReadAheadInputStream in = new ReadAheadInputStream(failing, 5, 2);
+        for (int i = 0; i < 10; ++i) {
+            assertThat(in.read(), is(1));
+        }
+        try {
+            in.read();
+            fail("Expected an IOException");
+        } catch (final IOException e) {
+            assertThat(e.getCause().getMessage(), is("boom"));
+        }
+        in.close();
+    }
+
+    /**
+     * Not only an {@link IOException} but anything thrown by the underlying
+     * stream must reach the consumer, or it would wait forever.
+     */
+    @Test(timeout = 5000)
+    public void testRuntimeException() throws Exception {
+        final InputStream failing = new InputStream() {
+            @Override
+            public int read() {
+                throw new IllegalStateException("boom");
+            }
+        };
+
+        final ReadAheadInputStream in = new ReadAheadInputStream(failing, 5, 2);
+        try {
+            in.read();
+            fail("Expected an IOException");
+        } catch (final IOException e) {
+            assertThat(e.getCause().getMessage(), is("boom"));
+        }
+        in.close();
+    }
+
+    /**
+     * The underlying stream is closed by the reader thread once it is done
+     * reading from it, never by the consumer while a read is in progress.
+     */
+    @Test(timeout = 5000)
+    public void testCloseWhileReading() throws Exception {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        final InputStream slow = new InputStream() {
+            private boolean inRead;
+
+            @Override
+            public int read() throws IOException {
+                if (closed.getCount() == 0) {
+                    throw new IOException("Read from a closed stream");
+                }
+                this.inRead = true;
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    // the read itself doesn't care about interrupts
+                }
+                this.inRead = false;
+                return 1;
+            }
+
+            @Override
+            public void close() {
+                assertThat(this.inRead, is(false));
+                closed.countDown();
+            }
+        };
+
+        final ReadAheadInputStream in = new ReadAheadInputStream(slow, 10, 2);
+        reading.await();
+        in.close();
+        assertThat(closed.await(100, TimeUnit.MILLISECONDS), is(false));
+        release.countDown();
+        assertThat(closed.await(5, TimeUnit.SECONDS), is(true));
+    }
+
+    /**
+     * Closing the stream before it has been consumed must stop the reader
+     * thread, which otherwise would be waiting for a free buffer forever.
+     */
+    @Test(timeout = 5000)
+    public void testClose() throws Exception {
+        final InputStream endless = new InputStream() {
+            @Override
+            public int read() {
+                return 1;
+            }
+        };
+
+        final ReadAheadInputStream in = new ReadAheadInputStream(endless, 10, 2);
+        assertThat(in.read(), is(1));
+        in.close();
+
+        try {
+            in.read();
+            fail("Expected an IOException");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+}
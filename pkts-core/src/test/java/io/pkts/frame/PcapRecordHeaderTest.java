@@ -6,6 +6,11 @@ package io.pkts.frame;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
+import io.pkts.buffer.Buffer;
+import io.pkts.buffer.Buffers;
+
+import java.nio.ByteOrder;
+
 import org.junit.Test;
 
 /**
@@ -34,4 +39,31 @@ public class PcapRecordHeaderTest {
         assertThat(header.getCapturedLength(), is(123456L));
     }
 
+    /**
+     * The fields are read straight out of the body so make sure that works
+     * for both byte orders and for a body that is a slice of a larger
+     * buffer, which is what the framer hands us.
+     */
+    @Test
+    public void testReadFieldsInPlace() throws Exception {
+        final byte[] bigEndian = { 0x00, 0x00, 0x00, 0x00, // something in front of the header
+                0x52, 0x29, 0x0D, 0x75, 0x00, 0x05, 0x6F, (byte) 0xE0, 0x00, 0x00, 0x00, 0x3C, (byte) 0x80, 0x00,
+                0x00, 0x00 };
+        final Buffer buffer = Buffers.wrap(bigEndian);
+        buffer.skipBytes(4);
+        PcapRecordHeader header = new PcapRecordHeader(ByteOrder.BIG_ENDIAN, buffer.readBytes(16));
+        assertThat(header.getTimeStampSeconds(), is(1378422133L));
+        assertThat(header.getTimeStampMicroOrNanoSeconds(), is(356320L));
+        assertThat(header.getCapturedLength(), is(60L));
+        assertThat(header.getTotalLength(), is(0x80000000L));
+
+        final byte[] littleEndian = { 0x75, 0x0D, 0x29, 0x52, (byte) 0xE0, 0x6F, 0x05, 0x00, 0x3C, 0x00, 0x00,
+                0x00, 0x00, 0x00, 0x00, (byte) 0x80 };
+        header = new PcapRecordHeader(ByteOrder.LITTLE_ENDIAN, Buffers.wrap(littleEndian));
+        assertThat(header.getTimeStampSeconds(), is(1378422133L));
+        assertThat(header.getTimeStampMicroOrNanoSeconds(), is(356320L));
+        assertThat(header.getCapturedLength(), is(60L));
+        assertThat(header.getTotalLength(), is(0x80000000L));
+    }
+
 }
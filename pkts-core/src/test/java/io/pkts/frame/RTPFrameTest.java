@@ -5,15 +5,18 @@ package io.pkts.frame;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 import io.pkts.PktsTestBase;
 import io.pkts.RawData;
 import io.pkts.buffer.Buffer;
 import io.pkts.buffer.Buffers;
+import io.pkts.framer.RTPFramer;
 import io.pkts.framer.SllFramer;
 import io.pkts.packet.PCapPacket;
 import io.pkts.packet.Packet;
+import io.pkts.packet.UDPPacket;
 import io.pkts.packet.rtp.RtpPacket;
 import io.pkts.protocol.Protocol;
 
@@ -65,6 +68,44 @@ public class RTPFrameTest extends PktsTestBase {
         assertThat(rtp.getTimestamp(), is(8396320L));
     }
 
+    /**
+     * An RTP packet with two CSRCs, a one word extension and three octets of
+     * padding should have all of that stripped off the payload.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testFrameRTPWithCsrcExtensionAndPadding() throws Exception {
+        final byte[] data = {
+                (byte) 0xB2, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x02, 0x00, 0x00, 0x00, 0x03, // fixed
+                0x00, 0x00, 0x00, 0x04, 0x00, 0x00, 0x00, 0x05, // two CSRCs
+                (byte) 0xBE, (byte) 0xDE, 0x00, 0x01, 0x01, 0x02, 0x03, 0x04, // extension of one word
+                'a', 'b', 'c', 0x00, 0x00, 0x03 }; // payload and padding
+        final RtpPacket rtp = new RTPFramer().frame(mock(UDPPacket.class), Buffers.wrap(data));
+        assertThat(rtp.hasPadding(), is(true));
+        assertThat(rtp.hasExtensions(), is(true));
+        assertThat(rtp.getContributingSource(), is(2));
+        assertThat(rtp.getSeqNumber(), is(1));
+        assertThat(rtp.getSyncronizationSource(), is(3L));
+        assertThat(rtp.getPayload().toString(), is("abc"));
+    }
+
+    /**
+     * The headers claim more than there is so this is not RTP after all.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testFrameTruncatedRTP() throws Exception {
+        final byte[] csrcs = { (byte) 0x82, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x02, 0x00, 0x00, 0x00, 0x03,
+                0x00, 0x00, 0x00, 0x04 };
+        assertThat(new RTPFramer().frame(mock(UDPPacket.class), Buffers.wrap(csrcs)), nullValue());
+
+        final byte[] padding = { (byte) 0xA0, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x02, 0x00, 0x00, 0x00, 0x03,
+                'a', 0x05 };
+        assertThat(new RTPFramer().frame(mock(UDPPacket.class), Buffers.wrap(padding)), nullValue());
+    }
+
     /**
      * Test frame an RTCP packet.
      * 
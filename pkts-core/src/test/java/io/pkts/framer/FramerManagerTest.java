@@ -0,0 +1,92 @@
+/**
+ *
+ */
+package io.pkts.framer;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import io.pkts.PktsTestBase;
+import io.pkts.buffer.Buffers;
+import io.pkts.packet.IPPacket;
+import io.pkts.packet.UDPPacket;
+import io.pkts.protocol.Protocol;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class FramerManagerTest extends PktsTestBase {
+
+    /**
+     * The {@link FramerManager} is shared by everyone so make sure we leave
+     * it the way we found it.
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        this.framerManager.registerPortFramer(5000, 5001, null);
+        this.framerManager.setSniffUnregisteredPorts(true);
+        super.tearDown();
+    }
+
+    /**
+     * @return a UDP packet sent from port 5000 to 5001 carrying what looks
+     *         like an RTP packet.
+     */
+    private static UDPPacket createRtpLookingPacket() throws Exception {
+        final byte[] data = new byte[22];
+        final byte[] header = { 0x13, (byte) 0x88, 0x13, (byte) 0x89, 0x00, 0x16, 0x00, 0x00 };
+        System.arraycopy(header, 0, data, 0, header.length);
+        data[8] = (byte) 0x80;
+        return new UDPFramer().frame(mock(IPPacket.class), Buffers.wrap(data));
+    }
+
+    @Test
+    public void testDefaults() throws Exception {
+        assertThat(this.framerManager.getEtherTypeFramer(0x0800), instanceOf(IPv4Framer.class));
+        assertThat(this.framerManager.getEtherTypeFramer(0x86DD), instanceOf(IPv6Framer.class));
+        assertThat(this.framerManager.getEtherTypeFramer(0x0806), nullValue());
+        assertThat(this.framerManager.getIpProtocolFramer(17), instanceOf(UDPFramer.class));
+        assertThat(this.framerManager.getIpProtocolFramer(1), nullValue());
+        assertThat(this.framerManager.getPortFramer(5060), instanceOf(SIPFramer.class));
+        assertThat(this.framerManager.getPortFramer(70000), nullValue());
+
+        // nothing registered for the ports so we sniff our way to RTP
+        assertThat(createRtpLookingPacket().getNextPacket().getProtocol(), is(Protocol.RTP));
+    }
+
+    /**
+     * A port registered for SIP should never be mistaken for RTP and a port
+     * registered for RTP is framed as such.
+     */
+    @Test
+    public void testPortHints() throws Exception {
+        this.framerManager.registerPortFramer(5001, new SIPFramer());
+        assertThat(createRtpLookingPacket().getNextPacket().getProtocol(), is(Protocol.UNKNOWN));
+
+        this.framerManager.registerPortFramer(5000, 5001, new RTPFramer());
+        assertThat(createRtpLookingPacket().getNextPacket().getProtocol(), is(Protocol.RTP));
+    }
+
+    @Test
+    public void testNoSniffing() throws Exception {
+        this.framerManager.setSniffUnregisteredPorts(false);
+        assertThat(createRtpLookingPacket().getNextPacket().getProtocol(), is(Protocol.UNKNOWN));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegisterBadPort() throws Exception {
+        this.framerManager.registerPortFramer(70000, new RTPFramer());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegisterBadPortRange() throws Exception {
+        this.framerManager.registerPortFramer(5001, 5000, new RTPFramer());
+    }
+
+}
@@ -0,0 +1,247 @@
+package io.pkts.framer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import io.pkts.PacketHandler;
+import io.pkts.Pcap;
+import io.pkts.PktsTestBase;
+import io.pkts.buffer.Buffer;
+import io.pkts.buffer.Buffers;
+import io.pkts.packet.PCapPacket;
+import io.pkts.packet.Packet;
+import io.pkts.protocol.Protocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Converts the sipp.pcap into various flavors of pcapng and makes sure that
+ * we get the same packets back out again.
+ */
+public class PcapngFramerTest extends PktsTestBase {
+
+    private List<PCapPacket> expected;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        this.expected = collect(Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap")));
+        assertThat(this.expected.size(), is(30));
+    }
+
+    @Test
+    public void testAccept() throws Exception {
+        final PcapngFramer framer = new PcapngFramer();
+        assertThat(framer.accept(Buffers.wrap(createPcapng(ByteOrder.LITTLE_ENDIAN, false))), is(true));
+        assertThat(framer.accept(this.pcapStream), is(false));
+        assertThat(framer.accept(Buffers.wrap(new byte[] { 0x0A, 0x0D })), is(false));
+    }
+
+    @Test
+    public void testLittleEndianMicroSeconds() throws Exception {
+        final byte[] pcapng = createPcapng(ByteOrder.LITTLE_ENDIAN, false);
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(pcapng));
+        assertThat(pcap.getPcapHeader().getDataLinkType(), is(1));
+        assertThat(pcap.getPcapHeader().timestampsInNs(), is(false));
+        assertPackets(collect(pcap), 1);
+    }
+
+    @Test
+    public void testBigEndianNanoSeconds() throws Exception {
+        final byte[] pcapng = createPcapng(ByteOrder.BIG_ENDIAN, true);
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(pcapng));
+        assertThat(pcap.getPcapHeader().timestampsInNs(), is(true));
+        assertPackets(collect(pcap), 1000);
+    }
+
+    @Test
+    public void testMapped() throws Exception {
+        final Path file = Files.createTempFile("pkts", ".pcapng");
+        try {
+            Files.write(file, createPcapng(ByteOrder.LITTLE_ENDIAN, false));
+            final Pcap pcap = Pcap.openMapped(file, 1024);
+            assertPackets(collect(pcap), 1);
+            pcap.close();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A simple packet block has no timestamp and always belongs to the first
+     * interface.
+     */
+    @Test
+    public void testSimplePacketBlock() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(sectionHeader(ByteOrder.LITTLE_ENDIAN));
+        out.write(interfaceDescription(ByteOrder.LITTLE_ENDIAN, 1, false));
+        final PCapPacket first = this.expected.get(0);
+        final byte[] data = first.getPayload().getArray();
+        final ByteBuffer block = block(ByteOrder.LITTLE_ENDIAN, PcapngFramer.SIMPLE_PACKET_BLOCK, 4 + pad(data.length));
+        block.putInt(data.length).put(data);
+        out.write(finish(block));
+
+        final List<PCapPacket> packets = collect(Pcap.openStream(new ByteArrayInputStream(out.toByteArray())));
+        assertThat(packets.size(), is(1));
+        assertThat(packets.get(0).getArrivalTime(), is(0L));
+        assertThat(packets.get(0).getPayload().getArray(), is(data));
+        assertThat(packets.get(0).hasProtocol(Protocol.SIP), is(true));
+    }
+
+    /**
+     * Every interface has its own resolution but the packets must all end up
+     * in the resolution of the first one, which is what the header of the
+     * pcap says, or they could not be compared with each other.
+     */
+    @Test
+    public void testMixedResolutions() throws Exception {
+        assertMixedResolutions(false);
+        assertMixedResolutions(true);
+    }
+
+    private void assertMixedResolutions(final boolean nanos) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(sectionHeader(ByteOrder.LITTLE_ENDIAN));
+        out.write(interfaceDescription(ByteOrder.LITTLE_ENDIAN, 1, nanos));
+        out.write(interfaceDescription(ByteOrder.LITTLE_ENDIAN, 1, !nanos));
+        for (int i = 0; i < this.expected.size(); ++i) {
+            final PCapPacket packet = this.expected.get(i);
+            final byte[] data = packet.getPayload().getArray();
+            final int id = i % 2;
+            final boolean interfaceNanos = id == 0 ? nanos : !nanos;
+            final long timestamp = packet.getArrivalTime() * (interfaceNanos ? 1000 : 1);
+
+            final ByteBuffer block = block(ByteOrder.LITTLE_ENDIAN, PcapngFramer.ENHANCED_PACKET_BLOCK,
+                    20 + pad(data.length));
+            block.putInt(id);
+            block.putInt((int) (timestamp >>> 32));
+            block.putInt((int) timestamp);
+            block.putInt(data.length);
+            block.putInt((int) packet.getTotalLength());
+            block.put(data);
+            out.write(finish(block));
+        }
+
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(pcap.getPcapHeader().timestampsInNs(), is(nanos));
+        final List<PCapPacket> packets = collect(pcap);
+        for (final PCapPacket packet : packets) {
+            assertThat(packet.getGlobalHeader().timestampsInNs(), is(nanos));
+        }
+        assertPackets(packets, nanos ? 1000 : 1);
+    }
+
+    private void assertPackets(final List<PCapPacket> packets, final long multiplier) throws IOException {
+        assertThat(packets.size(), is(this.expected.size()));
+        for (int i = 0; i < packets.size(); ++i) {
+            final PCapPacket packet = packets.get(i);
+            final PCapPacket expected = this.expected.get(i);
+            assertThat(packet.getArrivalTime(), is(expected.getArrivalTime() * multiplier));
+            assertThat(packet.getCapturedLength(), is(expected.getCapturedLength()));
+            assertThat(packet.getTotalLength(), is(expected.getTotalLength()));
+            assertThat(packet.getPayload().getArray(), is(expected.getPayload().getArray()));
+            assertThat(packet.hasProtocol(Protocol.SIP), is(true));
+        }
+    }
+
+    private static List<PCapPacket> collect(final Pcap pcap) throws IOException {
+        final List<PCapPacket> packets = new ArrayList<PCapPacket>();
+        pcap.loop(new PacketHandler() {
+            @Override
+            public boolean nextPacket(final Packet packet) throws IOException {
+                packets.add((PCapPacket) packet);
+                return true;
+            }
+        });
+        return packets;
+    }
+
+    /**
+     * Convert the expected packets into a pcapng. Sprinkles a few blocks we
+     * are supposed to skip in between the packets as well.
+     */
+    private byte[] createPcapng(final ByteOrder order, final boolean nanos) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(sectionHeader(order));
+        out.write(interfaceDescription(order, 1, nanos));
+        for (int i = 0; i < this.expected.size(); ++i) {
+            final PCapPacket packet = this.expected.get(i);
+            final byte[] data = packet.getPayload().getArray();
+            final long timestamp = packet.getArrivalTime() * (nanos ? 1000 : 1);
+
+            final ByteBuffer block = block(order, PcapngFramer.ENHANCED_PACKET_BLOCK, 20 + pad(data.length));
+            block.putInt(0);
+            block.putInt((int) (timestamp >>> 32));
+            block.putInt((int) timestamp);
+            block.putInt(data.length);
+            block.putInt((int) packet.getTotalLength());
+            block.put(data);
+            out.write(finish(block));
+
+            if (i == 10) {
+                // interface statistics block (without any options)
+                final ByteBuffer stats = block(order, PcapngFramer.INTERFACE_STATISTICS_BLOCK, 12);
+                stats.putInt(0).putInt(0).putInt(0);
+                out.write(finish(stats));
+
+                // some custom block that we don't know anything about
+                final ByteBuffer custom = block(order, 0x00000BAD, 8);
+                custom.putLong(-1L);
+                out.write(finish(custom));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] sectionHeader(final ByteOrder order) {
+        final ByteBuffer block = block(order, PcapngFramer.SECTION_HEADER_BLOCK, 16);
+        block.putInt(0x1A2B3C4D);
+        block.putShort((short) 1).putShort((short) 0);
+        block.putLong(-1L);
+        return finish(block);
+    }
+
+    private static byte[] interfaceDescription(final ByteOrder order, final int linkType, final boolean nanos) {
+        // with the if_tsresol option, which is padded to 4 bytes, and the
+        // end of options
+        final ByteBuffer block = block(order, PcapngFramer.INTERFACE_DESCRIPTION_BLOCK, nanos ? 20 : 8);
+        block.putShort((short) linkType).putShort((short) 0);
+        block.putInt(65535);
+        if (nanos) {
+            block.putShort((short) 9).putShort((short) 1);
+            block.put((byte) 9).put(new byte[3]);
+            block.putInt(0);
+        }
+        return finish(block);
+    }
+
+    private static ByteBuffer block(final ByteOrder order, final int type, final int bodyLength) {
+        final ByteBuffer block = ByteBuffer.allocate(12 + bodyLength).order(order);
+        block.putInt(type);
+        block.putInt(12 + bodyLength);
+        return block;
+    }
+
+    private static byte[] finish(final ByteBuffer block) {
+        block.position(block.capacity() - 4);
+        block.putInt(block.capacity());
+        return block.array();
+    }
+
+    private static int pad(final int length) {
+        return length + 3 & ~3;
+    }
+
+}
@@ -8,9 +8,11 @@ import io.pkts.RawData;
 import io.pkts.PktsTestBase;
 import io.pkts.buffer.Buffer;
 import io.pkts.buffer.Buffers;
+import io.pkts.packet.IPv6Packet;
 import io.pkts.packet.MACPacket;
 import io.pkts.packet.PCapPacket;
 import io.pkts.packet.Packet;
+import io.pkts.packet.UDPPacket;
 import io.pkts.packet.sip.SipPacket;
 import io.pkts.protocol.Protocol;
 
@@ -58,4 +60,31 @@ public class SllFramerTest extends PktsTestBase {
         assertThat(msg.getMethod().toString(), is("INVITE"));
     }
 
+    /**
+     * The protocol field of the SLL header tells us what it is carrying, in
+     * this case IPv6.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFrameIPv6() throws Exception {
+        final byte[] data = new byte[16 + 40 + 8];
+        final byte[] sll = { 0x00, 0x00, 0x00, 0x01, 0x00, 0x06, 0x12, 0x31, 0x38, 0x1B, 0x7B, 0x73, 0x00, 0x00,
+                (byte) 0x86, (byte) 0xDD };
+        System.arraycopy(sll, 0, data, 0, sll.length);
+        data[16] = 0x60; // version 6
+        data[16 + 5] = 8; // payload length
+        data[16 + 6] = 17; // UDP
+        data[16 + 7] = 64; // hop limit
+        data[16 + 23] = 1; // ::1
+        data[16 + 39] = 2; // ::2
+        final byte[] udp = { 0x04, (byte) 0xD2, 0x16, 0x2E, 0x00, 0x08, 0x00, 0x00 };
+        System.arraycopy(udp, 0, data, 56, udp.length);
+
+        final MACPacket pkt = new SllFramer().frame(mock(PCapPacket.class), Buffers.wrap(data));
+        assertThat(pkt.getNextPacket().getProtocol(), is(Protocol.IPv6));
+        assertThat(((IPv6Packet) pkt.getPacket(Protocol.IPv6)).getDestinationIP(), is("0:0:0:0:0:0:0:2"));
+        assertThat(((UDPPacket) pkt.getPacket(Protocol.UDP)).getDestinationPort(), is(5678));
+    }
+
 }
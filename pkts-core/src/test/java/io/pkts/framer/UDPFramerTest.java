@@ -7,8 +7,10 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 import io.pkts.PktsTestBase;
+import io.pkts.buffer.Buffers;
 import io.pkts.packet.IPPacket;
 import io.pkts.packet.UDPPacket;
+import io.pkts.protocol.Protocol;
 
 import org.junit.After;
 import org.junit.Before;
@@ -46,4 +48,27 @@ public class UDPFramerTest extends PktsTestBase {
         assertThat(udp.getDestinationPort(), is(5090));
     }
 
+    /**
+     * Data that looks like RTP but turns out not to be is simply an unknown
+     * application packet.
+     */
+    @Test
+    public void testAlmostRtp() throws Exception {
+        final UDPFramer framer = new UDPFramer();
+        final byte[] header = { 0x13, (byte) 0x88, 0x13, (byte) 0x89, 0x00, 0x16, 0x00, 0x00 };
+
+        // version 2 and the extension bit set but no room for the extension
+        final byte[] almostRtp = new byte[22];
+        System.arraycopy(header, 0, almostRtp, 0, header.length);
+        almostRtp[8] = (byte) 0x90;
+        UDPPacket udp = framer.frame(mock(IPPacket.class), Buffers.wrap(almostRtp));
+        assertThat(udp.getNextPacket().getProtocol(), is(Protocol.UNKNOWN));
+        assertThat(udp.hasProtocol(Protocol.RTP), is(false));
+
+        // without the extension bit it is a perfectly fine RTP packet
+        almostRtp[8] = (byte) 0x80;
+        udp = framer.frame(mock(IPPacket.class), Buffers.wrap(almostRtp));
+        assertThat(udp.getNextPacket().getProtocol(), is(Protocol.RTP));
+    }
+
 }
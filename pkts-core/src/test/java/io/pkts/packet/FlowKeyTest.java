@@ -0,0 +1,81 @@
+/**
+ *
+ */
+package io.pkts.packet;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import io.pkts.PktsTestBase;
+import io.pkts.protocol.Protocol;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class FlowKeyTest extends PktsTestBase {
+
+    @Test
+    public void testBidirectional() throws Exception {
+        final FlowKey key = FlowKey.ofIPv4(17, 0xC0A80064, 5060, 0x0A000001, 5061);
+        final FlowKey reverse = key.reverse();
+
+        assertThat(reverse.getSourceIPv4AsInt(), is(0x0A000001));
+        assertThat(reverse.getSourcePort(), is(5061));
+        assertThat(reverse.getDestinationIPv4AsInt(), is(0xC0A80064));
+        assertThat(reverse.getDestinationPort(), is(5060));
+        assertThat(key.equals(reverse), is(false));
+
+        // 192.168.0.100 is larger than 10.0.0.1 when treated as unsigned
+        assertThat(key.isCanonical(), is(false));
+        assertThat(reverse.isCanonical(), is(true));
+        assertThat(key.bidirectional(), is(reverse));
+        assertThat(reverse.bidirectional(), is(reverse));
+        assertThat(key.bidirectional().hashCode(), is(reverse.bidirectional().hashCode()));
+
+        // same addresses so the ports decide
+        final FlowKey loopback = FlowKey.ofIPv4(17, 0x7F000001, 5061, 0x7F000001, 5060);
+        assertThat(loopback.isCanonical(), is(false));
+        assertThat(loopback.bidirectional().getSourcePort(), is(5060));
+    }
+
+    @Test
+    public void testEquality() throws Exception {
+        final FlowKey key = FlowKey.ofIPv4(17, 0x7F000001, 5060, 0x7F000002, 5060);
+        assertThat(key, is(FlowKey.ofIPv4(17, 0x7F000001, 5060, 0x7F000002, 5060)));
+        assertThat(key.hashCode(), is(FlowKey.ofIPv4(17, 0x7F000001, 5060, 0x7F000002, 5060).hashCode()));
+        assertThat(key, not(FlowKey.ofIPv4(6, 0x7F000001, 5060, 0x7F000002, 5060)));
+        assertThat(key, not(FlowKey.ofIPv6(17, 0, 0x7F000001, 5060, 0, 0x7F000002, 5060)));
+        assertThat(key.toString(), is("17 127.0.0.1:5060 -> 127.0.0.2:5060"));
+
+        final FlowKey ipv6 = FlowKey.ofIPv6(17, 0x20010DB800000000L, 1, 5060, 0x20010DB800000000L, 2, 5060);
+        assertThat(ipv6.toString(), is("17 [2001:db8:0:0:0:0:0:1]:5060 -> [2001:db8:0:0:0:0:0:2]:5060"));
+    }
+
+    /**
+     * The sipp capture is a single call between two UAs, i.e., one flow in
+     * each direction.
+     */
+    @Test
+    public void testFlowsOfPcap() throws Exception {
+        final Set<FlowKey> flows = new HashSet<>();
+        final Set<FlowKey> bidirectional = new HashSet<>();
+        for (final Packet packet : loadStream("sipp.pcap")) {
+            final UDPPacket udp = (UDPPacket) packet.getPacket(Protocol.UDP);
+            final FlowKey key = FlowKey.of(udp);
+            assertThat(key.getVersion(), is(4));
+            assertThat(key.getProtocol(), is(17));
+            assertThat(key.getSourcePort(), is(udp.getSourcePort()));
+            flows.add(key);
+            bidirectional.add(key.bidirectional());
+        }
+
+        assertThat(flows.size(), is(2));
+        assertThat(bidirectional.size(), is(1));
+    }
+
+}
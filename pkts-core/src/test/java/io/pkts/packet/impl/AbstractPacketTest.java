@@ -0,0 +1,62 @@
+package io.pkts.packet.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import io.pkts.PktsTestBase;
+import io.pkts.packet.Packet;
+import io.pkts.protocol.Protocol;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class AbstractPacketTest extends PktsTestBase {
+
+    /**
+     * Walking the chain more than once must not frame the layers again.
+     */
+    @Test
+    public void testNextPacketIsFramedOnce() throws Exception {
+        final Packet pcap = this.defaultPcapPacket;
+        final Packet ethernet = pcap.getNextPacket();
+        assertThat(pcap.getNextPacket(), sameInstance(ethernet));
+
+        final Packet sip = pcap.getPacket(Protocol.SIP);
+        assertThat(pcap.getPacket(Protocol.SIP), sameInstance(sip));
+        assertThat(ethernet.getPacket(Protocol.SIP), sameInstance(sip));
+        assertThat(pcap.getPacket(Protocol.IPv4), sameInstance(sip.getPacket(Protocol.IPv4)));
+        assertThat(pcap.getPacket(Protocol.UDP).getNextPacket(), sameInstance(sip));
+    }
+
+    @Test
+    public void testProtocolNotInChain() throws Exception {
+        final Packet pcap = this.defaultPcapPacket;
+        assertThat(pcap.hasProtocol(Protocol.RTP), is(false));
+        assertThat(pcap.hasProtocol(Protocol.RTP), is(false));
+        assertThat(pcap.getPacket(Protocol.TCP), nullValue());
+        assertThat(pcap.hasProtocol(Protocol.SIP), is(true));
+        assertThat(pcap.hasProtocol(null), is(false));
+
+        // protocols above the packet are still found
+        final Packet udp = pcap.getPacket(Protocol.UDP);
+        assertThat(udp.getPacket(Protocol.ETHERNET_II), sameInstance(pcap.getNextPacket()));
+        assertThat(udp.hasProtocol(Protocol.TCP), is(false));
+        assertThat(udp.hasProtocol(Protocol.PCAP), is(true));
+    }
+
+    @Test
+    public void testAllPackets() throws Exception {
+        final List<Packet> packets = loadStream("sipp.pcap");
+        for (final Packet packet : packets) {
+            assertThat(packet.hasProtocol(Protocol.SIP), is(true));
+            assertThat(packet.getPacket(Protocol.SIP), sameInstance(packet.getPacket(Protocol.SIP)));
+            assertThat(packet.hasProtocol(Protocol.SCTP), is(false));
+        }
+    }
+
+}
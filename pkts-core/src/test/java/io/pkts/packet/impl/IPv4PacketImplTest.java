@@ -5,8 +5,14 @@ package io.pkts.packet.impl;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
 import io.pkts.PktsTestBase;
+import io.pkts.buffer.Buffers;
+import io.pkts.framer.EthernetFramer;
 import io.pkts.packet.IPv4Packet;
+import io.pkts.packet.PCapPacket;
+import io.pkts.packet.Packet;
+import io.pkts.protocol.Protocol;
 
 import java.util.List;
 
@@ -60,6 +66,15 @@ public class IPv4PacketImplTest extends PktsTestBase {
         assertThat(ipPackets.get(17).getTotalIPLength(), is(334));
     }
 
+    @Test
+    public void testAddressesAsInts() throws Exception {
+        final IPv4Packet ip = loadIPPackets("sipp.pcap").get(0);
+        assertThat(ip.getSourceIPv4AsInt(), is(0x7F000001));
+        assertThat(ip.getDestinationIPv4AsInt(), is(0x7F000001));
+        assertThat(ip.getRawSourceIP(), is(new byte[] { 127, 0, 0, 1 }));
+        assertThat(ip.getRawDestinationIP(), is(new byte[] { 127, 0, 0, 1 }));
+    }
+
     @Test
     public void testIpChecksum() throws Exception {
         final List<IPv4Packet> ipPackets = loadIPPackets("sipp.pcap");
@@ -149,4 +164,27 @@ public class IPv4PacketImplTest extends PktsTestBase {
         assertThat(pkt.getHeaderLength(), is(20));
 
     }
+    /**
+     * ICMP, as well as protocols we know nothing about, are not errors and
+     * must be framed into an unknown packet rather than blowing up.
+     */
+    @Test
+    public void testUnsupportedProtocol() throws Exception {
+        final byte[] raw = this.defaultFrame.getArray();
+        raw[23] = 0x01;
+        Packet ip = new EthernetFramer().frame(mock(PCapPacket.class), Buffers.wrap(raw)).getNextPacket();
+        final Packet icmp = ip.getNextPacket();
+        assertThat(icmp instanceof UnknownPacketImpl, is(true));
+        assertThat(icmp.getProtocol(), is(Protocol.ICMP));
+        assertThat(icmp.getPayload().getArray(), is(ip.getPayload().getArray()));
+        assertThat(ip.hasProtocol(Protocol.ICMP), is(true));
+        assertThat(ip.hasProtocol(Protocol.UDP), is(false));
+        assertThat(ip.hasProtocol(Protocol.SIP), is(false));
+
+        raw[23] = (byte) 0xFD;
+        ip = new EthernetFramer().frame(mock(PCapPacket.class), Buffers.wrap(raw)).getNextPacket();
+        assertThat(ip.getNextPacket().getProtocol(), is(Protocol.UNKNOWN));
+        assertThat(ip.getNextPacket().getNextPacket(), is((Packet) null));
+    }
+
 }
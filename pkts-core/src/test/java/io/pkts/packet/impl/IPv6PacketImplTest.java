@@ -36,4 +36,19 @@ public class IPv6PacketImplTest extends PktsTestBase {
         assertEquals(4928, ipPackets.get(4).getFragmentOffset());
     }
 
-}
\ No newline at end of file
+    /**
+     * The first packet is sent from 2002:17fc:32a0:3:b874:223b:205c:af2a to
+     * 2607:f8b0:400a:800::200e.
+     */
+    @Test
+    public void testAddressesAsLongs() throws Exception {
+        final IPv6Packet ip = (IPv6Packet) loadStream("ipv6_frag.pcap").get(0).getPacket(Protocol.IPv6);
+        assertEquals(0x200217FC32A00003L, ip.getSourceIPv6High());
+        assertEquals(0xB874223B205CAF2AL, ip.getSourceIPv6Low());
+        assertEquals(0x2607F8B0400A0800L, ip.getDestinationIPv6High());
+        assertEquals(0x000000000000200EL, ip.getDestinationIPv6Low());
+        assertEquals("2002:17fc:32a0:3:b874:223b:205c:af2a", ip.getSourceIP());
+        assertEquals("2607:f8b0:400a:800:0:0:0:200e", ip.getDestinationIP());
+    }
+
+}
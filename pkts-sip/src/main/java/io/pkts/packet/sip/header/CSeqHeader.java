@@ -53,11 +53,14 @@ public interface CSeqHeader extends SipHeader {
     static CSeqHeader frame(final Buffer value) throws SipParseException {
         try {
             final Buffer valueCopy = value.slice();
-            final Buffer cseq = SipParser.expectDigit(value);
-            final long number = Long.parseLong(cseq.toString());
+            final int start = value.getReaderIndex();
+            SipParser.expectDigit(value);
+            final long number = value.parseToLong(start, value.getReaderIndex());
             SipParser.consumeWS(value);
             final Buffer method = value.readLine();
             return new CSeqHeaderImpl(number, method, valueCopy);
+        } catch (final NumberFormatException e) {
+            throw new SipParseException(value.getReaderIndex(), "The CSeq number is too large");
         } catch (final IOException e) {
             throw new SipParseException(value.getReaderIndex(),
                     "Could not read from the underlying stream while parsing method");
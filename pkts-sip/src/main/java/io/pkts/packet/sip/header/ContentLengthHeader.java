@@ -30,7 +30,7 @@ public interface ContentLengthHeader extends SipHeader {
         try {
             SipParser.consumeWS(buffer);
             final int value = buffer.parseToInt();
-            return new ContentLengthHeaderImpl(value);
+            return new ContentLengthHeaderImpl(value, buffer.slice());
         } catch (final NumberFormatException e) {
             throw new SipParseException(buffer.getReaderIndex(),
                     "Unable to parse the Content-Length header. Value is not an integer");
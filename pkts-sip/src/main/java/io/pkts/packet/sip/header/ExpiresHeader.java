@@ -26,7 +26,7 @@ public interface ExpiresHeader extends SipHeader {
     static ExpiresHeader frame(final Buffer buffer) throws SipParseException {
         try {
             final int value = buffer.parseToInt();
-            return new ExpiresHeaderImpl(value);
+            return new ExpiresHeaderImpl(value, buffer.slice());
         } catch (final NumberFormatException e) {
             throw new SipParseException(buffer.getReaderIndex(),
                     "Unable to parse the Expires header. Value is not an integer");
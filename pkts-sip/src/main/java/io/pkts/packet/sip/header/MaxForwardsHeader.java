@@ -25,7 +25,7 @@ public interface MaxForwardsHeader extends SipHeader {
     static MaxForwardsHeader frame(final Buffer buffer) throws SipParseException {
         try {
             final int value = buffer.parseToInt();
-            return new MaxForwardsHeaderImpl(value);
+            return new MaxForwardsHeaderImpl(value, buffer.slice());
         } catch (final NumberFormatException e) {
             throw new SipParseException(buffer.getReaderIndex(),
                     "Unable to parse the Max-Forwards header. Value is not an integer");
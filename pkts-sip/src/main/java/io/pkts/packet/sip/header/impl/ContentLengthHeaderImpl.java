@@ -1,5 +1,6 @@
 package io.pkts.packet.sip.header.impl;
 
+import io.pkts.buffer.Buffer;
 import io.pkts.buffer.Buffers;
 import io.pkts.packet.sip.header.ContentLengthHeader;
 
@@ -12,6 +13,14 @@ public class ContentLengthHeaderImpl extends SipHeaderImpl implements ContentLen
         this.length = length;
     }
 
+    /**
+     * Keeps the length as it appeared on the wire.
+     */
+    public ContentLengthHeaderImpl(final int length, final Buffer value) {
+        super(ContentLengthHeader.NAME, value);
+        this.length = length;
+    }
+
     @Override
     public int getContentLength() {
         return this.length;
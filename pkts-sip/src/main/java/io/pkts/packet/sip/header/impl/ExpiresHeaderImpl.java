@@ -1,5 +1,6 @@
 package io.pkts.packet.sip.header.impl;
 
+import io.pkts.buffer.Buffer;
 import io.pkts.buffer.Buffers;
 import io.pkts.packet.sip.header.ExpiresHeader;
 
@@ -12,6 +13,14 @@ public class ExpiresHeaderImpl extends SipHeaderImpl implements ExpiresHeader {
         this.expires = expires;
     }
 
+    /**
+     * Keeps the raw value as it was framed.
+     */
+    public ExpiresHeaderImpl(final int expires, final Buffer value) {
+        super(ExpiresHeader.NAME, value);
+        this.expires = expires;
+    }
+
     @Override
     public int getExpires() {
         return this.expires;
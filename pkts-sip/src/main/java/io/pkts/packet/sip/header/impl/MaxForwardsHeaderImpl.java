@@ -3,6 +3,7 @@
  */
 package io.pkts.packet.sip.header.impl;
 
+import io.pkts.buffer.Buffer;
 import io.pkts.buffer.Buffers;
 import io.pkts.packet.sip.header.MaxForwardsHeader;
 
@@ -19,6 +20,14 @@ public class MaxForwardsHeaderImpl extends SipHeaderImpl implements MaxForwardsH
         this.maxForwards = value;
     }
 
+    /**
+     * For framing, where the raw value is already at hand.
+     */
+    public MaxForwardsHeaderImpl(final int value, final Buffer buffer) {
+        super(MaxForwardsHeader.NAME, buffer);
+        this.maxForwards = value;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -5,6 +5,7 @@ package io.pkts.packet.sip.impl;
 
 import io.pkts.buffer.Buffer;
 import io.pkts.buffer.Buffers;
+import io.pkts.buffer.CaseInsensitiveBufferMap;
 import io.pkts.packet.sip.SipMessage;
 import io.pkts.packet.sip.SipParseException;
 import io.pkts.packet.sip.header.CSeqHeader;
@@ -207,7 +208,7 @@ public class SipParser {
 
     public static final Buffer WSS = Buffers.wrap("wss");
 
-    public static final Map<Buffer, Function<SipHeader, ? extends SipHeader>> framers = new HashMap<>();
+    public static final Map<Buffer, Function<SipHeader, ? extends SipHeader>> framers = new CaseInsensitiveBufferMap<>();
 
     static {
         framers.put(CallIdHeader.NAME, header -> CallIdHeader.frame(header.getValue()));
@@ -247,18 +248,8 @@ public class SipParser {
      * into one with the correct subtype.
      */
     public static Function<SipHeader, ? extends SipHeader> getFramer(final Buffer b) {
-        // For headers that have the expected capitalization, do a quick case-sensitive
-        // search. If that fails do a slower case-insensitive search.
-        final Function<SipHeader, ? extends SipHeader> framer = framers.get(b);
-        if (framer != null) {
-            return framer;
-        }
-        for (final Map.Entry<Buffer, Function<SipHeader, ? extends SipHeader>> entry : framers.entrySet()) {
-            if (entry.getKey().equalsIgnoreCase(b)) {
-                return entry.getValue();
-            }
-        }
-        return null;
+        // header names are case-insensitive and so is the map
+        return framers.get(b);
     }
 
     // ----------------------------------------------------------------------
@@ -14,6 +14,12 @@ public class BufferStreamId implements StreamId {
 
     private final Buffer buffer;
 
+    /**
+     * The id never changes so there is no need to hash the bytes of the
+     * buffer more than once. Zero means not calculated yet.
+     */
+    private int hash;
+
     /**
      * 
      */
@@ -39,9 +45,13 @@ public class BufferStreamId implements StreamId {
      */
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = (prime * result) + ((this.buffer == null) ? 0 : this.buffer.hashCode());
+        int result = this.hash;
+        if (result == 0) {
+            final int prime = 31;
+            result = 1;
+            result = (prime * result) + ((this.buffer == null) ? 0 : this.buffer.hashCode());
+            this.hash = result;
+        }
         return result;
     }
 
@@ -60,6 +70,9 @@ public class BufferStreamId implements StreamId {
             return false;
         }
         final BufferStreamId other = (BufferStreamId) obj;
+        if (hashCode() != other.hashCode()) {
+            return false;
+        }
         if (this.buffer == null) {
             if (other.buffer != null) {
                 return false;
@@ -59,8 +59,9 @@ public final class DefaultStreamHandler implements StreamHandler {
 
     /**
      * If any IP fragments are detected, then we will consule this listener.
+     * Unless told otherwise, we reassemble the fragments.
      */
-    private FragmentListener fragmentListener;
+    private FragmentListener fragmentListener = new IPFragmentReassembler();
 
     /**
      * 
@@ -77,13 +78,11 @@ public final class DefaultStreamHandler implements StreamHandler {
     public boolean nextPacket(Packet packet) {
 
         try {
-            if (packet.hasProtocol(Protocol.IPv4)) {
-                final IPPacket ip = (IPPacket) packet.getPacket(Protocol.IPv4);
-                if (ip.isFragmented()) {
-                    packet = handleFragmentation(ip);
-                    if (packet == null) {
-                        return true;
-                    }
+            final IPPacket ip = getIPPacket(packet);
+            if (ip != null && ip.isFragmented()) {
+                packet = handleFragmentation(ip);
+                if (packet == null) {
+                    return true;
                 }
             }
 
@@ -148,6 +147,16 @@ public final class DefaultStreamHandler implements StreamHandler {
         }
     }
 
+    private static IPPacket getIPPacket(final Packet packet) throws IOException {
+        if (packet.hasProtocol(Protocol.IPv4)) {
+            return (IPPacket) packet.getPacket(Protocol.IPv4);
+        }
+        if (packet.hasProtocol(Protocol.IPv6)) {
+            return (IPPacket) packet.getPacket(Protocol.IPv6);
+        }
+        return null;
+    }
+
     /**
      * Helper method to deal with the {@link FragmentListener} since it
      * technically can throw exceptions and stuff so we just want to catch all
@@ -0,0 +1,574 @@
+/**
+ *
+ */
+package io.pkts.streams.impl;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.buffer.Buffers;
+import io.pkts.frame.PcapGlobalHeader;
+import io.pkts.packet.IPPacket;
+import io.pkts.packet.IPv4Packet;
+import io.pkts.packet.IPv6Packet;
+import io.pkts.packet.PCapPacket;
+import io.pkts.packet.Packet;
+import io.pkts.packet.impl.IPv4PacketImpl;
+import io.pkts.packet.impl.IPv6PacketImpl;
+import io.pkts.streams.FragmentListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link FragmentListener} that reassembles fragmented IPv4 and IPv6
+ * packets. The fragments are held on to until all of them have been seen,
+ * at which point a new {@link IPPacket} is returned whose payload is the
+ * payload of all the fragments stitched together. The payload is not
+ * copied, it is a composite of the payloads of the fragments, and the new
+ * packet frames its payload just like any other {@link IPPacket} so e.g. a
+ * large SIP INVITE carried over UDP will show up as UDP and SIP.
+ *
+ * The fragments of a packet are identified by the source and destination
+ * addresses, the identification and, for IPv4, the protocol. Which parts of
+ * the original packet are still missing is tracked through a list of holes,
+ * as described in RFC 815, so fragments may arrive in any order and
+ * overlapping or duplicated fragments are dealt with.
+ *
+ * As explained by the {@link FragmentListener}, it is not uncommon for a
+ * capture to be missing some of the fragments so the fragments can't be
+ * kept around forever. Packets that haven't been completed within the
+ * timeout are dropped, where time is the arrival time of the packets, i.e.
+ * the time of the pcap rather than the wall clock. Since the arrival time is
+ * in micro or nano seconds depending on the pcap the packet came from (see
+ * {@link PcapGlobalHeader#timestampsInNs()}), all times are kept in nano
+ * seconds internally. Also, the number of bytes
+ * held on to for any given source is bounded and once a source exceeds its
+ * limit, the oldest of its incomplete packets are dropped.
+ *
+ * The reassembled packet has a minimal header, built from the header of the
+ * first fragment, but without any IPv4 options or IPv6 extension headers.
+ * Its parent packet, and therefore its arrival time, is that of the fragment
+ * that completed it.
+ *
+ * Note that this class is not thread safe.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class IPFragmentReassembler implements FragmentListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(IPFragmentReassembler.class);
+
+    /**
+     * Same as the default of the Linux kernel.
+     */
+    public static final long DEFAULT_TIMEOUT_MS = 30000;
+
+    public static final int DEFAULT_MAX_BYTES_PER_SOURCE = 1024 * 1024;
+
+    /**
+     * The largest payload an IP packet can have (not counting IPv6
+     * jumbograms).
+     */
+    private static final int MAX_PAYLOAD_LENGTH = 65535;
+
+    private static final int IPv4_HEADER_LENGTH = 20;
+
+    /**
+     * The timeout in nano seconds.
+     */
+    private final long timeout;
+
+    private final int maxBytesPerSource;
+
+    /**
+     * All the incomplete packets, in the order we saw their first fragment,
+     * which is also the order in which they time out.
+     */
+    private final LinkedHashMap<FragmentKey, Datagram> datagrams = new LinkedHashMap<FragmentKey, Datagram>();
+
+    /**
+     * The number of bytes we are holding on to for each source.
+     */
+    private final Map<Address, Integer> bytesPerSource = new HashMap<Address, Integer>();
+
+    public IPFragmentReassembler() {
+        this(DEFAULT_TIMEOUT_MS, DEFAULT_MAX_BYTES_PER_SOURCE);
+    }
+
+    /**
+     * @param timeoutMs
+     *            the number of milliseconds, in pcap time, we'll wait for all
+     *            fragments of a packet to show up.
+     * @param maxBytesPerSource
+     *            the maximum number of bytes of incomplete packets we'll hold
+     *            on to for any given source address.
+     */
+    public IPFragmentReassembler(final long timeoutMs, final int maxBytesPerSource) {
+        if (timeoutMs <= 0) {
+            throw new IllegalArgumentException("The timeout must be greater than zero");
+        }
+        if (maxBytesPerSource <= 0) {
+            throw new IllegalArgumentException("The max bytes per source must be greater than zero");
+        }
+        this.timeout = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.maxBytesPerSource = maxBytesPerSource;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IPPacket handleFragment(final IPPacket ipPacket) {
+        if (!ipPacket.isFragmented()) {
+            return ipPacket;
+        }
+
+        final long now = getArrivalTimeNs(ipPacket);
+        evictExpired(now, TimeUnit.NANOSECONDS);
+
+        final IPPacket fragment;
+        try {
+            // the packet may be recycled once we return but we need to hang
+            // on to its payload.
+            fragment = (IPPacket) ipPacket.retain();
+        } catch (final IOException e) {
+            logger.warn("Unable to retain the IP fragment, dropping it", e);
+            return null;
+        }
+
+        final boolean ipv4 = fragment instanceof IPv4Packet;
+        final FragmentKey key = ipv4 ? FragmentKey.of((IPv4Packet) fragment) : FragmentKey.of((IPv6Packet) fragment);
+        // for IPv6 the offset is already in bytes and doesn't fit in a signed short
+        final int offset = ipv4 ? fragment.getFragmentOffset() * 8 : fragment.getFragmentOffset() & 0xFFFF;
+        final boolean last = ipv4 ? !((IPv4Packet) fragment).isMoreFragmentsSet()
+                : !((IPv6Packet) fragment).isMoreFragmentsSet();
+        final Buffer payload = fragment.getPayload();
+        final int length = payload == null ? 0 : payload.getReadableBytes();
+
+        Datagram datagram = this.datagrams.get(key);
+        if (datagram == null) {
+            datagram = new Datagram(key, now);
+            this.datagrams.put(key, datagram);
+        }
+
+        final int maxLength = ipv4 ? MAX_PAYLOAD_LENGTH - IPv4_HEADER_LENGTH : MAX_PAYLOAD_LENGTH;
+        final int added = offset + length > maxLength ? -1 : datagram.add(fragment, offset, length, last);
+        if (added == -1) {
+            logger.debug("Dropping inconsistent fragments of {}", key);
+            remove(datagram);
+            return null;
+        }
+
+        // may end up dropping this very packet if it is too large
+        account(key.source, added);
+        if (!datagram.isComplete() || !this.datagrams.containsKey(key)) {
+            return null;
+        }
+
+        remove(datagram);
+        return datagram.reassemble(fragment);
+    }
+
+    /**
+     * @return the arrival time of the packet in nano seconds, based on the
+     *         resolution of the pcap it was read from. Packets that aren't
+     *         read from a pcap are assumed to be in micro seconds.
+     */
+    private static long getArrivalTimeNs(final Packet packet) {
+        Packet p = packet;
+        while (p != null && !(p instanceof PCapPacket)) {
+            p = p.getParentPacket();
+        }
+
+        final long arrivalTime = packet.getArrivalTime();
+        if (p != null && ((PCapPacket) p).getGlobalHeader().timestampsInNs()) {
+            return arrivalTime;
+        }
+        return TimeUnit.MICROSECONDS.toNanos(arrivalTime);
+    }
+
+    /**
+     * Drop all the incomplete packets whose first fragment arrived more than
+     * the timeout ago. Happens automatically as new fragments arrive but if
+     * you'd like to free up memory you can call it any time.
+     *
+     * @param now
+     *            the current time, in pcap time, since epoch.
+     * @param unit
+     *            the unit of <code>now</code>, which for
+     *            {@link Packet#getArrivalTime()} is either micro or nano
+     *            seconds depending on the pcap.
+     */
+    public void evictExpired(final long now, final TimeUnit unit) {
+        final long nowNs = unit.toNanos(now);
+        final Iterator<Datagram> it = this.datagrams.values().iterator();
+        while (it.hasNext()) {
+            final Datagram datagram = it.next();
+            if (nowNs - datagram.created < this.timeout) {
+                return;
+            }
+            it.remove();
+            release(datagram);
+        }
+    }
+
+    /**
+     * @return the number of packets we have seen fragments of but not yet
+     *         all of them.
+     */
+    public int getNumberOfIncompletePackets() {
+        return this.datagrams.size();
+    }
+
+    /**
+     * Keep track of the bytes held for the source and, if it has exceeded its
+     * limit, drop its oldest packets until it is back under the limit.
+     */
+    private void account(final Address source, final int length) {
+        int bytes = this.bytesPerSource.merge(source, length, Integer::sum);
+        if (bytes <= this.maxBytesPerSource) {
+            return;
+        }
+
+        final Iterator<Datagram> it = this.datagrams.values().iterator();
+        while (bytes > this.maxBytesPerSource && it.hasNext()) {
+            final Datagram datagram = it.next();
+            if (datagram.key.source.equals(source)) {
+                logger.debug("Too many bytes held for {}, dropping {}", source, datagram.key);
+                it.remove();
+                release(datagram);
+                bytes -= datagram.bytes;
+            }
+        }
+    }
+
+    private void remove(final Datagram datagram) {
+        this.datagrams.remove(datagram.key);
+        release(datagram);
+    }
+
+    private void release(final Datagram datagram) {
+        final Address source = datagram.key.source;
+        final Integer bytes = this.bytesPerSource.get(source);
+        if (bytes == null) {
+            return;
+        }
+
+        final int remaining = bytes - datagram.bytes;
+        if (remaining > 0) {
+            this.bytesPerSource.put(source, remaining);
+        } else {
+            this.bytesPerSource.remove(source);
+        }
+    }
+
+    /**
+     * All the fragments of one original packet.
+     */
+    private static final class Datagram {
+
+        private final FragmentKey key;
+
+        /**
+         * The arrival time, in nano seconds, of the first fragment we saw.
+         */
+        private final long created;
+
+        /**
+         * The fragments, sorted on their offsets.
+         */
+        private final List<Fragment> fragments = new ArrayList<Fragment>(4);
+
+        /**
+         * The parts of the original payload we are still missing, see RFC
+         * 815. We don't know how large the payload is until we've seen the
+         * last fragment so the last hole initially stretches to "infinity".
+         */
+        private final List<Hole> holes = new ArrayList<Hole>(4);
+
+        /**
+         * The length of the original payload, or -1 until we have seen the
+         * last fragment.
+         */
+        private int length = -1;
+
+        /**
+         * The number of bytes held in all the fragments.
+         */
+        private int bytes;
+
+        /**
+         * The fragment at offset zero, which is the one whose header the
+         * reassembled packet is given.
+         */
+        private IPPacket first;
+
+        private Datagram(final FragmentKey key, final long created) {
+            this.key = key;
+            this.created = created;
+            this.holes.add(new Hole(0, Integer.MAX_VALUE));
+        }
+
+        /**
+         * @return the number of bytes we are now holding on to because of
+         *         this fragment, which is zero for a duplicate, or -1 if the
+         *         fragment is inconsistent with the fragments already seen.
+         */
+        private int add(final IPPacket fragment, final int offset, final int length, final boolean last) {
+            final int end = offset + length;
+            if (last) {
+                if (this.length != -1 && this.length != end) {
+                    return -1;
+                }
+                for (final Fragment f : this.fragments) {
+                    if (f.offset + f.payload.getReadableBytes() > end) {
+                        return -1;
+                    }
+                }
+                this.length = end;
+            } else if (this.length != -1 && end > this.length) {
+                return -1;
+            }
+
+            boolean filled = false;
+            for (int i = 0; i < this.holes.size(); ++i) {
+                final Hole hole = this.holes.get(i);
+                if (offset >= hole.last || end <= hole.first) {
+                    continue;
+                }
+
+                filled = true;
+                this.holes.remove(i--);
+                if (hole.first < offset) {
+                    this.holes.add(++i, new Hole(hole.first, offset));
+                }
+                if (end < hole.last && !last) {
+                    this.holes.add(++i, new Hole(end, hole.last));
+                }
+            }
+
+            if (last) {
+                // nothing beyond the end of the packet can be missing
+                for (int i = this.holes.size() - 1; i >= 0 && this.holes.get(i).last > end; --i) {
+                    final Hole hole = this.holes.get(i);
+                    if (hole.first >= end) {
+                        this.holes.remove(i);
+                    } else {
+                        this.holes.set(i, new Hole(hole.first, end));
+                    }
+                }
+            }
+
+            if (!filled) {
+                // a duplicate, nothing new in it
+                return 0;
+            }
+
+            if (offset == 0) {
+                this.first = fragment;
+            }
+
+            int index = this.fragments.size();
+            while (index > 0 && this.fragments.get(index - 1).offset > offset) {
+                --index;
+            }
+            this.fragments.add(index, new Fragment(offset, fragment.getPayload()));
+            this.bytes += length;
+            return length;
+        }
+
+        private boolean isComplete() {
+            return this.holes.isEmpty() && this.length != -1;
+        }
+
+        /**
+         * Stitch together the payloads of the fragments, without copying
+         * them, skipping over any bytes we already have from an earlier
+         * fragment.
+         */
+        private IPPacket reassemble(final IPPacket last) {
+            final List<Buffer> parts = new ArrayList<Buffer>(this.fragments.size());
+            int covered = 0;
+            for (final Fragment fragment : this.fragments) {
+                final int end = fragment.offset + fragment.payload.getReadableBytes();
+                if (end <= covered) {
+                    continue;
+                }
+                parts.add(fragment.payload.slice(covered - fragment.offset, end - fragment.offset));
+                covered = end;
+            }
+
+            final Buffer payload = Buffers.wrap(parts.toArray(new Buffer[parts.size()]));
+            final Packet parent = last.getParentPacket();
+            if (this.first instanceof IPv4Packet) {
+                return createIPv4Packet(parent, (IPv4Packet) this.first, payload);
+            }
+            return createIPv6Packet(parent, (IPv6Packet) this.first, payload);
+        }
+
+        private IPPacket createIPv4Packet(final Packet parent, final IPv4Packet first, final Buffer payload) {
+            final Buffer headers = Buffers.wrap(new byte[IPv4_HEADER_LENGTH]);
+            headers.setByte(0, (byte) 0x45);
+            headers.setByte(1, (byte) (first.getDSCP() << 2 | first.getECN()));
+            headers.setUnsignedShort(2, IPv4_HEADER_LENGTH + this.length);
+            headers.setUnsignedShort(4, first.getIdentification());
+            headers.setByte(8, (byte) first.getTimeToLive());
+            headers.setByte(9, (byte) first.getNextProtocol());
+            headers.setInt(12, first.getSourceIPv4AsInt());
+            headers.setInt(16, first.getDestinationIPv4AsInt());
+            final IPv4PacketImpl packet = new IPv4PacketImpl(parent, headers, 0, payload);
+            packet.reCalculateChecksum();
+            return packet;
+        }
+
+        private IPPacket createIPv6Packet(final Packet parent, final IPv6Packet first, final Buffer payload) {
+            final int trafficClass = first.getTrafficClass();
+            final int flowLabel = first.getFlowLabel() & 0xFFFFF;
+            final Buffer headers = Buffers.wrap(new byte[IPv6PacketImpl.FIXED_HEADER_LENGTH]);
+            headers.setInt(0, 6 << 28 | trafficClass << 20 | flowLabel);
+            headers.setUnsignedShort(4, this.length);
+            headers.setByte(6, (byte) first.getNextProtocol());
+            headers.setByte(7, (byte) first.getHopLimit());
+            setLong(headers, 8, first.getSourceIPv6High());
+            setLong(headers, 16, first.getSourceIPv6Low());
+            setLong(headers, 24, first.getDestinationIPv6High());
+            setLong(headers, 32, first.getDestinationIPv6Low());
+            return new IPv6PacketImpl(parent, headers, first.getNextProtocol(), payload);
+        }
+
+        private static void setLong(final Buffer buffer, final int index, final long value) {
+            buffer.setInt(index, (int) (value >>> 32));
+            buffer.setInt(index + 4, (int) value);
+        }
+    }
+
+    private static final class Fragment {
+        private final int offset;
+        private final Buffer payload;
+
+        private Fragment(final int offset, final Buffer payload) {
+            this.offset = offset;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * A missing part of the payload, from <code>first</code> (inclusive) to
+     * <code>last</code> (exclusive).
+     */
+    private static final class Hole {
+        private final int first;
+        private final int last;
+
+        private Hole(final int first, final int last) {
+            this.first = first;
+            this.last = last;
+        }
+    }
+
+    /**
+     * An IPv4 or IPv6 address, where an IPv4 address is kept in the low
+     * bits.
+     */
+    private static final class Address {
+        private final long high;
+        private final long low;
+
+        private Address(final long high, final long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(this.high) * 31 + Long.hashCode(this.low);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Address)) {
+                return false;
+            }
+            final Address address = (Address) other;
+            return this.high == address.high && this.low == address.low;
+        }
+
+        @Override
+        public String toString() {
+            return this.high == 0 ? Long.toHexString(this.low) : Long.toHexString(this.high) + ":"
+                    + Long.toHexString(this.low);
+        }
+    }
+
+    /**
+     * Identifies the fragments belonging to the same original packet.
+     */
+    private static final class FragmentKey {
+        private final Address source;
+        private final Address destination;
+        private final int identification;
+        private final int protocol;
+
+        private FragmentKey(final Address source, final Address destination, final int identification,
+                final int protocol) {
+            this.source = source;
+            this.destination = destination;
+            this.identification = identification;
+            this.protocol = protocol;
+        }
+
+        private static FragmentKey of(final IPv4Packet packet) {
+            return new FragmentKey(new Address(0, packet.getSourceIPv4AsInt() & 0xFFFFFFFFL), new Address(0,
+                    packet.getDestinationIPv4AsInt() & 0xFFFFFFFFL), packet.getIdentification(),
+                    packet.getNextProtocol());
+        }
+
+        /**
+         * Note that the protocol isn't part of the key for IPv6, see RFC
+         * 8200.
+         */
+        private static FragmentKey of(final IPv6Packet packet) {
+            return new FragmentKey(new Address(packet.getSourceIPv6High(), packet.getSourceIPv6Low()),
+                    new Address(packet.getDestinationIPv6High(), packet.getDestinationIPv6Low()),
+                    packet.getFragmentIdentification(), -1);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = this.source.hashCode();
+            result = 31 * result + this.destination.hashCode();
+            result = 31 * result + this.identification;
+            return 31 * result + this.protocol;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof FragmentKey)) {
+                return false;
+            }
+            final FragmentKey key = (FragmentKey) other;
+            return this.identification == key.identification && this.protocol == key.protocol
+                    && this.source.equals(key.source) && this.destination.equals(key.destination);
+        }
+
+        @Override
+        public String toString() {
+            return this.source + " -> " + this.destination + " id " + (this.identification & 0xFFFFFFFFL);
+        }
+    }
+
+}
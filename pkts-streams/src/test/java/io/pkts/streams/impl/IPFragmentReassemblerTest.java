@@ -0,0 +1,256 @@
+/**
+ *
+ */
+package io.pkts.streams.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import io.pkts.Pcap;
+import io.pkts.buffer.Buffer;
+import io.pkts.packet.IPPacket;
+import io.pkts.packet.IPv4Packet;
+import io.pkts.packet.Packet;
+import io.pkts.packet.UDPPacket;
+import io.pkts.packet.sip.SipPacket;
+import io.pkts.protocol.Protocol;
+import io.pkts.streams.StreamHandler;
+import io.pkts.streams.StreamsTestBase;
+import io.pkts.streams.impl.DefaultStreamHandlerTest.StreamCounter;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class IPFragmentReassemblerTest extends StreamsTestBase {
+
+    private IPFragmentReassembler reassembler;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        this.reassembler = new IPFragmentReassembler();
+    }
+
+    /**
+     * Run all the IP packets of the pcap through the reassembler.
+     *
+     * @return whatever the reassembler returned for each packet.
+     */
+    private List<IPPacket> reassemble(final String resource, final IPFragmentReassembler reassembler)
+            throws Exception {
+        final Pcap pcap = Pcap.openStream(StreamsTestBase.class.getResourceAsStream(resource));
+        final List<IPPacket> result = new ArrayList<IPPacket>();
+        pcap.loop(packet -> {
+            final Protocol protocol = packet.hasProtocol(Protocol.IPv4) ? Protocol.IPv4 : Protocol.IPv6;
+            result.add(reassembler.handleFragment((IPPacket) packet.getPacket(protocol)));
+            return true;
+        });
+        pcap.close();
+        return result;
+    }
+
+    /**
+     * The INVITE of the sipp.pcap split into three fragments, which arrive
+     * out of order and with the first one duplicated.
+     */
+    @Test
+    public void testReassembleIPv4() throws Exception {
+        final List<IPPacket> packets = reassemble("fragmented_invite.pcap", this.reassembler);
+        assertThat(packets.size(), is(4));
+        assertThat(packets.get(0), nullValue());
+        assertThat(packets.get(1), nullValue());
+        assertThat(packets.get(2), nullValue());
+        assertThat(this.reassembler.getNumberOfIncompletePackets(), is(0));
+
+        final IPv4Packet ip = (IPv4Packet) packets.get(3);
+        assertThat(ip.isFragmented(), is(false));
+        assertThat(ip.getTotalIPLength(), is(533));
+        assertThat(ip.getIdentification(), is(0x1234));
+        assertThat(ip.verifyIpChecksum(), is(true));
+        assertThat(ip.getSourceIP(), is("127.0.0.1"));
+
+        final UDPPacket udp = (UDPPacket) ip.getPacket(Protocol.UDP);
+        assertThat(udp.getLength(), is(513));
+        final SipPacket sip = (SipPacket) ip.getPacket(Protocol.SIP);
+        assertThat(sip.isInvite(), is(true));
+
+        // should be the very same bytes as the original INVITE
+        final Packet original = loadFirstPacket("sipp.pcap");
+        final Buffer expected = original.getPacket(Protocol.IPv4).getPayload();
+        assertThat(ip.getPayload(), is(expected));
+        assertThat(ip.getArrivalTime(), is(original.getArrivalTime() + 300));
+    }
+
+    @Test
+    public void testReassembleIPv6() throws Exception {
+        final List<IPPacket> packets = reassemble("ipv6_frag.pcap", this.reassembler);
+        assertThat(packets.size(), is(5));
+        for (int i = 0; i < 4; ++i) {
+            assertThat(packets.get(i), nullValue());
+        }
+
+        final IPPacket ip = packets.get(4);
+        assertThat(ip.isFragmented(), is(false));
+        assertThat(ip.getVersion(), is(6));
+        assertThat(ip.getPayload().getReadableBytes(), is(5008));
+        final UDPPacket udp = (UDPPacket) ip.getPacket(Protocol.UDP);
+        assertThat(udp, notNullValue());
+        assertThat(udp.getLength(), is(5008));
+    }
+
+    /**
+     * A 40000 byte UDP datagram split in two, where the offset of the second
+     * fragment is 32768, which is too large for a signed short.
+     */
+    @Test
+    public void testReassembleIPv6LargeOffset() throws Exception {
+        final byte[] udp = new byte[40008];
+        final ByteBuffer header = ByteBuffer.wrap(udp);
+        header.putShort((short) 5060).putShort((short) 5060).putShort((short) udp.length);
+        for (int i = 8; i < udp.length; ++i) {
+            udp[i] = (byte) i;
+        }
+
+        final ByteBuffer pcap = ByteBuffer.allocate(24 + 2 * 16 + 2 * 62 + udp.length).order(ByteOrder.LITTLE_ENDIAN);
+        pcap.putInt(0xa1b2c3d4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(65535).putInt(1);
+        addIPv6Fragment(pcap, udp, 0, 32768, true);
+        addIPv6Fragment(pcap, udp, 32768, udp.length - 32768, false);
+
+        final List<IPPacket> packets = new ArrayList<IPPacket>();
+        final Pcap in = Pcap.openStream(new ByteArrayInputStream(pcap.array()));
+        in.loop(packet -> packets.add(this.reassembler.handleFragment((IPPacket) packet.getPacket(Protocol.IPv6))));
+        in.close();
+
+        assertThat(packets.size(), is(2));
+        assertThat(packets.get(0), nullValue());
+        final IPPacket ip = packets.get(1);
+        assertThat(ip.isFragmented(), is(false));
+        assertThat(ip.getPayload().getArray(), is(udp));
+        assertThat(((UDPPacket) ip.getPacket(Protocol.UDP)).getLength(), is(udp.length));
+        assertThat(this.reassembler.getNumberOfIncompletePackets(), is(0));
+    }
+
+    /**
+     * Add a pcap record with an ethernet frame carrying the given part of
+     * the UDP datagram as an IPv6 fragment.
+     */
+    private static void addIPv6Fragment(final ByteBuffer pcap, final byte[] udp, final int offset,
+            final int length, final boolean more) {
+        final int frameLength = 14 + 40 + 8 + length;
+        pcap.order(ByteOrder.LITTLE_ENDIAN);
+        pcap.putInt(1).putInt(0).putInt(frameLength).putInt(frameLength);
+
+        pcap.order(ByteOrder.BIG_ENDIAN);
+        pcap.put(new byte[12]).putShort((short) 0x86DD);
+        pcap.putInt(0x60000000).putShort((short) (8 + length)).put((byte) 44).put((byte) 64);
+        pcap.put(new byte[15]).put((byte) 1).put(new byte[15]).put((byte) 2);
+        pcap.put((byte) 17).put((byte) 0).putShort((short) (offset | (more ? 1 : 0))).putInt(0x1234);
+        pcap.put(udp, offset, length);
+    }
+
+    /**
+     * Only the first fragment of the INVITE made it into the capture so we
+     * should hang on to it until it times out.
+     */
+    @Test
+    public void testMissingFragmentsTimeOut() throws Exception {
+        final List<IPPacket> packets = reassemble("fragmented_udp_sip.pcap", this.reassembler);
+        assertThat(packets.get(0), nullValue());
+        assertThat(packets.get(1), notNullValue());
+        assertThat(this.reassembler.getNumberOfIncompletePackets(), is(1));
+
+        final long start = loadFirstPacket("fragmented_udp_sip.pcap").getArrivalTime();
+        this.reassembler.evictExpired(start + (IPFragmentReassembler.DEFAULT_TIMEOUT_MS - 1) * 1000,
+                TimeUnit.MICROSECONDS);
+        assertThat(this.reassembler.getNumberOfIncompletePackets(), is(1));
+        this.reassembler.evictExpired(start + IPFragmentReassembler.DEFAULT_TIMEOUT_MS * 1000,
+                TimeUnit.MICROSECONDS);
+        assertThat(this.reassembler.getNumberOfIncompletePackets(), is(0));
+    }
+
+    /**
+     * The same fragments as in {@link #testReassembleIPv4()} but in a nano
+     * second pcap and a second apart, which is well within the timeout.
+     */
+    @Test
+    public void testReassembleNanoSecondPcap() throws Exception {
+        final byte[] original = readAllBytes(StreamsTestBase.class.getResourceAsStream("fragmented_invite.pcap"));
+        final ByteBuffer in = ByteBuffer.wrap(original).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer out = ByteBuffer.wrap(original.clone()).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(0, 0xa1b23c4d);
+        int i = 0;
+        for (int offset = 24; offset < original.length; ++i) {
+            out.putInt(offset, in.getInt(offset) + i);
+            out.putInt(offset + 4, in.getInt(offset + 4) * 1000);
+            offset += 16 + in.getInt(offset + 8);
+        }
+
+        final List<IPPacket> packets = new ArrayList<IPPacket>();
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(out.array()));
+        assertThat(pcap.getPcapHeader().timestampsInNs(), is(true));
+        pcap.loop(packet -> packets.add(this.reassembler.handleFragment((IPPacket) packet.getPacket(Protocol.IPv4))));
+        pcap.close();
+
+        assertThat(packets.size(), is(4));
+        assertThat(packets.get(3).getPacket(Protocol.SIP) != null, is(true));
+        assertThat(this.reassembler.getNumberOfIncompletePackets(), is(0));
+    }
+
+    private static byte[] readAllBytes(final InputStream is) throws Exception {
+        try {
+            return is.readAllBytes();
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * The first two fragments hold more than the source is allowed to so the
+     * packet is dropped and can never be completed.
+     */
+    @Test
+    public void testMaxBytesPerSource() throws Exception {
+        final IPFragmentReassembler reassembler = new IPFragmentReassembler(1000, 300);
+        final List<IPPacket> packets = reassemble("fragmented_invite.pcap", reassembler);
+        for (final IPPacket packet : packets) {
+            assertThat(packet, nullValue());
+        }
+        assertThat(reassembler.getNumberOfIncompletePackets(), is(0));
+    }
+
+    @Test
+    public void testSipStreamOfFragmentedInvite() throws Exception {
+        final Pcap pcap = Pcap.openStream(StreamsTestBase.class.getResourceAsStream("fragmented_invite.pcap"));
+        final StreamHandler streamHandler = new DefaultStreamHandler();
+        final StreamCounter streamCounter = new StreamCounter();
+        streamHandler.addStreamListener(streamCounter);
+        pcap.loop(streamHandler);
+        pcap.close();
+        assertThat(streamCounter.startCount, is(1));
+    }
+
+    private static Packet loadFirstPacket(final String resource) throws Exception {
+        final Pcap pcap = Pcap.openStream(StreamsTestBase.class.getResourceAsStream(resource));
+        final List<Packet> packets = new ArrayList<Packet>();
+        pcap.loop(packet -> {
+            packets.add(packet);
+            return false;
+        });
+        pcap.close();
+        return packets.get(0);
+    }
+
+}
@@ -0,0 +1,111 @@
+/**
+ *
+ */
+package io.pkts.tools.bench;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.buffer.Buffers;
+import io.pkts.packet.sip.SipMessage;
+import io.pkts.packet.sip.impl.SipParser;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the word-at-a-time scanning of the {@link Buffer}s backed by a
+ * byte-array against the generic, byte-by-byte, implementation in
+ * <code>BaseBuffer</code>, which is what every other buffer (here a direct
+ * buffer) goes through. It also runs {@link SipParser#frame(Buffer)} on a
+ * message with a lot of headers since that is where all the scanning ends up
+ * being done.
+ *
+ * Only compiled with the <code>bench</code> profile, see the pom of this
+ * module for how to run it.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BufferScanBenchmark {
+
+    /**
+     * Which kind of buffer the message is scanned through: "heap" for the
+     * byte-array backed one and "direct" for the generic implementation.
+     */
+    @Param({ "heap", "direct" })
+    public String type;
+
+    private Buffer message;
+
+    @Setup
+    public void setUp() throws IOException {
+        final byte[] bytes = createMessage();
+        if ("heap".equals(this.type)) {
+            this.message = Buffers.wrap(bytes);
+        } else {
+            this.message = Buffers.createDirectBuffer(bytes.length);
+            this.message.write(bytes);
+        }
+    }
+
+    @Benchmark
+    public void readLine(final Blackhole blackhole) throws IOException {
+        final Buffer buffer = this.message.slice();
+        Buffer line;
+        while ((line = buffer.readLine()) != null) {
+            blackhole.consume(line);
+        }
+    }
+
+    @Benchmark
+    public Buffer readUntilDoubleCRLF() throws IOException {
+        return this.message.slice().readUntilDoubleCRLF();
+    }
+
+    @Benchmark
+    public SipMessage frame() throws IOException {
+        return SipParser.frame(this.message.slice());
+    }
+
+    /**
+     * @return a SIP INVITE with a large number of headers, and a body.
+     */
+    private static byte[] createMessage() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("INVITE sip:service@127.0.0.1:5060 SIP/2.0\r\n");
+        sb.append("Via: SIP/2.0/UDP 127.0.1.1:5061;branch=z9hG4bK-1-0\r\n");
+        sb.append("From: sipp <sip:sipp@127.0.1.1:5061>;tag=1\r\n");
+        sb.append("To: sut <sip:service@127.0.0.1:5060>\r\n");
+        sb.append("Call-ID: 1-3330@127.0.1.1\r\n");
+        sb.append("CSeq: 1 INVITE\r\n");
+        sb.append("Contact: sip:sipp@127.0.1.1:5061\r\n");
+        sb.append("Max-Forwards: 70\r\n");
+        for (int i = 0; i < 40; ++i) {
+            sb.append("X-Custom-Header-").append(i).append(": some value that is reasonably long ").append(i)
+            .append("\r\n");
+        }
+        sb.append("Content-Type: application/sdp\r\n");
+        sb.append("Content-Length: 5\r\n");
+        sb.append("\r\n");
+        sb.append("hello");
+        return sb.toString().getBytes();
+    }
+
+}